@@ -0,0 +1,383 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Computes a result for each group of values, see {@link MultiIndexContainer#aggregate(Function, Aggregator)}.
+ * <p>
+ * The state of an aggregator is kept in primitive arrays, with one element (or one block of elements) per group, so that aggregating a value only updates
+ * array elements. Instances are obtained from the static factory methods:
+ * <ul>
+ * <li>{@link #count()} - the number of values in each group
+ * <li>{@link #sum(ToDoubleFunction)}, {@link #min(ToDoubleFunction)}, {@link #max(ToDoubleFunction)}, {@link #average(ToDoubleFunction)} - statistics of
+ * a numeric field
+ * <li>{@link #approximateDistinct(Function)} - an estimate of the number of distinct keys in each group, which takes constant memory per group
+ * </ul>
+ * Aggregators are immutable, and may be used by several aggregations at the same time. The functions passed to them are called from multiple threads.
+ *
+ * @param <V> the type of values
+ * @param <R> the type of the result of each group
+ */
+public final class Aggregator<V, R>
+{
+    /**
+     * The state of an aggregation over some of the values, for a growing number of groups, which are numbered from 0.
+     */
+    abstract static class State<V, R>
+    {
+        /**
+         * Ensures that the groups below the specified count can be accumulated into.
+         */
+        abstract void ensureCapacity(int groupCount);
+
+        abstract void accumulate(int group, V value);
+
+        /**
+         * Merges a group of another state, which has been created by the same aggregator, into a group of this state.
+         */
+        abstract void merge(int group, State<V, R> other, int otherGroup);
+
+        abstract R result(int group);
+
+        static int grownCapacity(int capacity, int groupCount)
+        {
+            return Math.max(groupCount, capacity * 2);
+        }
+    }
+
+    private static final class CountState<V> extends State<V, Long>
+    {
+        private long[] m_counts;
+
+        CountState(int groupCount)
+        {
+            m_counts = new long[groupCount];
+        }
+
+        @Override
+        void ensureCapacity(int groupCount)
+        {
+            if (groupCount > m_counts.length)
+                m_counts = Arrays.copyOf(m_counts, grownCapacity(m_counts.length, groupCount));
+        }
+
+        @Override
+        void accumulate(int group, V value)
+        {
+            ++m_counts[group];
+        }
+
+        @Override
+        void merge(int group, State<V, Long> other, int otherGroup)
+        {
+            m_counts[group] += ((CountState<V>) other).m_counts[otherGroup];
+        }
+
+        @Override
+        Long result(int group)
+        {
+            return m_counts[group];
+        }
+    }
+
+    /**
+     * Combines the numbers of a field by an associative and commutative operator, which covers sum, minimum, and maximum.
+     */
+    private static final class CombiningState<V> extends State<V, Double>
+    {
+        private final ToDoubleFunction<? super V> m_extractor;
+        private final DoubleBinaryOperator m_operator;
+        private final double m_identity;
+        private double[] m_results;
+
+        CombiningState(ToDoubleFunction<? super V> extractor, DoubleBinaryOperator operator, double identity, int groupCount)
+        {
+            m_extractor = extractor;
+            m_operator = operator;
+            m_identity = identity;
+            m_results = new double[groupCount];
+            Arrays.fill(m_results, identity);
+        }
+
+        @Override
+        void ensureCapacity(int groupCount)
+        {
+            if (groupCount > m_results.length) {
+                final int oldLength = m_results.length;
+                m_results = Arrays.copyOf(m_results, grownCapacity(oldLength, groupCount));
+                Arrays.fill(m_results, oldLength, m_results.length, m_identity);
+            }
+        }
+
+        @Override
+        void accumulate(int group, V value)
+        {
+            m_results[group] = m_operator.applyAsDouble(m_results[group], m_extractor.applyAsDouble(value));
+        }
+
+        @Override
+        void merge(int group, State<V, Double> other, int otherGroup)
+        {
+            m_results[group] = m_operator.applyAsDouble(m_results[group], ((CombiningState<V>) other).m_results[otherGroup]);
+        }
+
+        @Override
+        Double result(int group)
+        {
+            return m_results[group];
+        }
+    }
+
+    private static final class AverageState<V> extends State<V, Double>
+    {
+        private final ToDoubleFunction<? super V> m_extractor;
+        private double[] m_sums;
+        private long[] m_counts;
+
+        AverageState(ToDoubleFunction<? super V> extractor, int groupCount)
+        {
+            m_extractor = extractor;
+            m_sums = new double[groupCount];
+            m_counts = new long[groupCount];
+        }
+
+        @Override
+        void ensureCapacity(int groupCount)
+        {
+            if (groupCount > m_sums.length) {
+                m_sums = Arrays.copyOf(m_sums, grownCapacity(m_sums.length, groupCount));
+                m_counts = Arrays.copyOf(m_counts, m_sums.length);
+            }
+        }
+
+        @Override
+        void accumulate(int group, V value)
+        {
+            m_sums[group] += m_extractor.applyAsDouble(value);
+            ++m_counts[group];
+        }
+
+        @Override
+        void merge(int group, State<V, Double> other, int otherGroup)
+        {
+            final AverageState<V> that = (AverageState<V>) other;
+            m_sums[group] += that.m_sums[otherGroup];
+            m_counts[group] += that.m_counts[otherGroup];
+        }
+
+        @Override
+        Double result(int group)
+        {
+            return m_sums[group] / m_counts[group];
+        }
+    }
+
+    /**
+     * Estimates the number of distinct keys by the HyperLogLog algorithm: each key is hashed to one of the registers of its group, which keeps the largest
+     * number of leading zeros of the remaining hash bits seen so far.
+     */
+    private static final class DistinctState<V> extends State<V, Long>
+    {
+        // Each group has 2^PRECISION registers of one byte each, which makes for a standard error of about 3%.
+        private static final int PRECISION = 10;
+        private static final int REGISTERS = 1 << PRECISION;
+        private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+        // Some virtual machines reserve a few header words in an array.
+        private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+        private final Function<? super V, ?> m_keyExtractor;
+        private byte[] m_registers;
+
+        DistinctState(Function<? super V, ?> keyExtractor, int groupCount)
+        {
+            m_keyExtractor = keyExtractor;
+            m_registers = new byte[registerCount(groupCount)];
+        }
+
+        /**
+         * Returns the number of registers of the specified number of groups, which must fit into one array.
+         */
+        private static int registerCount(int groupCount)
+        {
+            final long count = (long) groupCount * REGISTERS;
+            checkState(count <= MAX_ARRAY_LENGTH, "too many groups for an approximate distinct count: %s", groupCount);
+            return (int) count;
+        }
+
+        @Override
+        void ensureCapacity(int groupCount)
+        {
+            if ((long) groupCount * REGISTERS > m_registers.length) {
+                // Growing by doubling may exceed the limit before the requested count does, so cap it.
+                final int grown = Math.min(grownCapacity(m_registers.length / REGISTERS, groupCount), MAX_ARRAY_LENGTH / REGISTERS);
+                m_registers = Arrays.copyOf(m_registers, registerCount(Math.max(grown, groupCount)));
+            }
+        }
+
+        /**
+         * Spreads the bits of a hash code over a long, by the finalizer of MurmurHash3.
+         */
+        private static long mix(int hashCode)
+        {
+            long h = hashCode;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        @Override
+        void accumulate(int group, V value)
+        {
+            final long hash = mix(Objects.hashCode(m_keyExtractor.apply(value)));
+            final int register = group * REGISTERS + (int) (hash >>> (64 - PRECISION));
+            // The marker bit bounds the rank, should all remaining bits be zero.
+            final byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+            if (rank > m_registers[register])
+                m_registers[register] = rank;
+        }
+
+        @Override
+        void merge(int group, State<V, Long> other, int otherGroup)
+        {
+            final byte[] otherRegisters = ((DistinctState<V>) other).m_registers;
+            final int offset = group * REGISTERS;
+            final int otherOffset = otherGroup * REGISTERS;
+            for (int i = 0; i < REGISTERS; ++i) {
+                if (otherRegisters[otherOffset + i] > m_registers[offset + i])
+                    m_registers[offset + i] = otherRegisters[otherOffset + i];
+            }
+        }
+
+        @Override
+        Long result(int group)
+        {
+            double sum = 0;
+            int zeroCount = 0;
+            for (int i = group * REGISTERS; i < (group + 1) * REGISTERS; ++i) {
+                sum += Math.scalb(1.0, -m_registers[i]);
+                if (m_registers[i] == 0)
+                    ++zeroCount;
+            }
+
+            final double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+            // For small cardinalities, counting the empty registers is more accurate.
+            if (estimate <= 2.5 * REGISTERS && zeroCount > 0)
+                return Math.round(REGISTERS * Math.log((double) REGISTERS / zeroCount));
+            return Math.round(estimate);
+        }
+    }
+
+    private final String m_name;
+    private final IntFunction<State<V, R>> m_stateFactory;
+
+    private Aggregator(String name, IntFunction<State<V, R>> stateFactory)
+    {
+        m_name = name;
+        m_stateFactory = stateFactory;
+    }
+
+    /**
+     * Creates an empty state with room for the specified number of groups.
+     */
+    State<V, R> newState(int groupCount)
+    {
+        return m_stateFactory.apply(groupCount);
+    }
+
+    /**
+     * Returns an aggregator that counts the values of each group.
+     *
+     * @return the aggregator, never null
+     * @param <V> the type of values
+     */
+    public static <V> Aggregator<V, Long> count()
+    {
+        return new Aggregator<>("count", CountState::new);
+    }
+
+    /**
+     * Returns an aggregator that sums a numeric field of the values of each group.
+     *
+     * @param extractor the function that extracts the field from a value, must not be null
+     * @return the aggregator, never null
+     * @param <V> the type of values
+     */
+    public static <V> Aggregator<V, Double> sum(ToDoubleFunction<? super V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+        return new Aggregator<>("sum", groupCount -> new CombiningState<>(extractor, Double::sum, 0, groupCount));
+    }
+
+    /**
+     * Returns an aggregator that finds the minimum of a numeric field of the values of each group.
+     *
+     * @param extractor the function that extracts the field from a value, must not be null
+     * @return the aggregator, never null
+     * @param <V> the type of values
+     */
+    public static <V> Aggregator<V, Double> min(ToDoubleFunction<? super V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+        return new Aggregator<>("min", groupCount -> new CombiningState<>(extractor, Math::min, Double.POSITIVE_INFINITY, groupCount));
+    }
+
+    /**
+     * Returns an aggregator that finds the maximum of a numeric field of the values of each group.
+     *
+     * @param extractor the function that extracts the field from a value, must not be null
+     * @return the aggregator, never null
+     * @param <V> the type of values
+     */
+    public static <V> Aggregator<V, Double> max(ToDoubleFunction<? super V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+        return new Aggregator<>("max", groupCount -> new CombiningState<>(extractor, Math::max, Double.NEGATIVE_INFINITY, groupCount));
+    }
+
+    /**
+     * Returns an aggregator that computes the arithmetic mean of a numeric field of the values of each group.
+     *
+     * @param extractor the function that extracts the field from a value, must not be null
+     * @return the aggregator, never null
+     * @param <V> the type of values
+     */
+    public static <V> Aggregator<V, Double> average(ToDoubleFunction<? super V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+        return new Aggregator<>("average", groupCount -> new AverageState<>(extractor, groupCount));
+    }
+
+    /**
+     * Returns an aggregator that estimates the number of distinct keys of the values of each group.
+     * <p>
+     * Keys are told apart by their {@link Object#hashCode()} only, and the estimate has a standard error of about 3%; in return, each group takes a fixed
+     * 1 KB of memory, however many keys it has. Use a {@link #count()} of groups by key where exact results are needed. As the registers of all groups
+     * share one array, an aggregation with more than about two million groups fails with an {@link IllegalStateException}.
+     *
+     * @param keyExtractor the function that extracts the key from a value, must not be null; it may return null
+     * @return the aggregator, never null
+     * @param <V> the type of values
+     */
+    public static <V> Aggregator<V, Long> approximateDistinct(Function<? super V, ?> keyExtractor)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        return new Aggregator<>("approximate distinct", groupCount -> new DistinctState<>(keyExtractor, groupCount));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Aggregator: " + m_name;
+    }
+}
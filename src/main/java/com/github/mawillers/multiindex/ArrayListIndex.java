@@ -1,31 +1,77 @@
 package com.github.mawillers.multiindex;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.function.Function;
 
-import com.google.common.collect.ForwardingIterator;
+import com.google.common.collect.UnmodifiableIterator;
 
 /**
- * An implementation of {@link SequentialIndex} that uses an ArrayList for storage.
+ * An implementation of {@link SequentialIndex} that stores the ordinals of its entries in an int array, and reads the entries themselves from the container.
  *
  * @param <V> the type of elements in this index
  */
-final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer.InternalIndex<V>
+final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer.RowIndex<V>
 {
-    private final ArrayList<V> m_index = new ArrayList<>();
+    // The ordinals of all entries in insertion order. Only the first m_size elements are used.
+    private int[] m_rows = new int[16];
+    private int m_size = 0;
+    private int m_modCount = 0;
     private final MultiIndexContainer<V> m_container;
 
+    // Null while this index belongs to its container; otherwise, the entries at the time it was removed from the container.
+    private EntryOrdinals.Snapshot<V> m_detachedRows = null;
+
     ArrayListIndex(MultiIndexContainer<V> container)
     {
         m_container = container;
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> T cast(Object object)
+    private V valueOf(int row)
+    {
+        return m_detachedRows != null ? m_detachedRows.get(row) : m_container.getByOrdinal(row);
+    }
+
+    private int positionOfRow(int row)
+    {
+        for (int position = 0; position < m_size; ++position) {
+            if (m_rows[position] == row)
+                return position;
+        }
+        return -1;
+    }
+
+    private int positionOfValue(Object value)
+    {
+        for (int position = 0; position < m_size; ++position) {
+            if (Objects.equals(valueOf(m_rows[position]), value))
+                return position;
+        }
+        return -1;
+    }
+
+    private void removeAt(int position)
+    {
+        System.arraycopy(m_rows, position + 1, m_rows, position, m_size - position - 1);
+        --m_size;
+        ++m_modCount;
+    }
+
+    private List<V> values()
     {
-        return (T) object;
+        final ArrayList<V> result = new ArrayList<>(m_size);
+        for (int position = 0; position < m_size; ++position)
+            result.add(valueOf(m_rows[position]));
+        return result;
     }
 
     // --------------------------------------------------------------------
@@ -39,21 +85,60 @@ final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer
     // When these methods are called, all necessary checks have already been done, and we really only need to modify our local data.
 
     @Override
-    public void addInternal(V value)
+    public void addInternal(V value, int ordinal)
+    {
+        if (m_size == m_rows.length)
+            m_rows = Arrays.copyOf(m_rows, m_rows.length * 2);
+        m_rows[m_size++] = ordinal;
+        ++m_modCount;
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
     {
-        m_index.add(value);
+        final int position = positionOfRow(ordinal);
+        if (position < 0)
+            return false;
+        removeAt(position);
+        return true;
     }
 
     @Override
-    public boolean removeInternal(V value)
+    public void removeAllInternal(List<V> values, int[] ordinals)
     {
-        return m_index.remove(value);
+        final BitSet dropped = new BitSet();
+        for (int ordinal : ordinals)
+            dropped.set(ordinal);
+
+        // Compacts the remaining rows in a single pass, rather than shifting the tail once per removed entry.
+        int kept = 0;
+        for (int position = 0; position < m_size; ++position) {
+            if (!dropped.get(m_rows[position]))
+                m_rows[kept++] = m_rows[position];
+        }
+        m_size = kept;
+        ++m_modCount;
     }
 
     @Override
     public void clearInternal()
     {
-        m_index.clear();
+        m_rows = new int[16];
+        m_size = 0;
+        ++m_modCount;
+    }
+
+    @Override
+    public void detachInternal(EntryOrdinals.Snapshot<V> rows)
+    {
+        m_detachedRows = rows;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        final Footprint result = Footprint.ofStructure(MemoryLayout.object(5 * 4) + MemoryLayout.array(m_rows.length, 4));
+        return m_detachedRows == null ? result : result.plus(m_detachedRows.footprint());
     }
 
     // --------------------------------------------------------------------
@@ -74,17 +159,18 @@ final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer
     @Override
     public boolean remove(Object object)
     {
-        try {
-            // This cast is unchecked here, but checks will be done inside those indexes' removeInternal() methods where the value is actually used as a 'V'.
-            final V value = cast(object);
-            final boolean wasRemoved = removeInternal(value);
-
-            m_container.removeFromAllIndexes(this, value);
+        if (m_detachedRows == null) {
+            // The container picks the entry to remove, and removes it from this index along with all others.
+            return m_container.removeFromAllIndexes(object);
+        }
 
-            return wasRemoved;
-        } catch (ClassCastException ex) {
+        // Once removed from its container, this index is no longer kept in sync with it, and must modify its own data.
+        final int position = positionOfValue(object);
+        if (position < 0)
             return false;
-        }
+        removeAt(position);
+        m_container.removeFromAllIndexes(object);
+        return true;
     }
 
     @Override
@@ -99,37 +185,65 @@ final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer
     @Override
     public boolean isEmpty()
     {
-        return m_index.isEmpty();
+        return m_size == 0;
     }
 
     @Override
     public int size()
     {
-        return m_index.size();
+        return m_size;
     }
 
     @Override
     public boolean contains(Object value)
     {
-        return m_index.contains(value);
+        // Once removed from its container, this index is no longer kept in sync with it, and must answer from its own data.
+        if (m_detachedRows != null)
+            return positionOfValue(value) >= 0;
+        return m_container.containsValue(value);
+    }
+
+    @Override
+    public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        return m_container.filter(this, keyExtractor, key);
+    }
+
+    @Override
+    public Cursor<V> cursor()
+    {
+        return m_container.cursor(this, null);
+    }
+
+    @Override
+    public Cursor<V> cursor(String token)
+    {
+        checkNotNull(token, "Token argument was null but expected non-null");
+        return m_container.cursor(this, token);
     }
 
     @Override
     public Iterator<V> iterator()
     {
-        return new ForwardingIterator<V>() {
-            private final Iterator<V> m_delegate = m_index.iterator();
+        return new UnmodifiableIterator<V>() {
+            private final int m_expectedModCount = m_modCount;
+            private int m_position = 0;
 
             @Override
-            protected Iterator<V> delegate()
+            public boolean hasNext()
             {
-                return m_delegate;
+                return m_position < m_size;
             }
 
             @Override
-            public void remove()
+            public V next()
             {
-                throw new UnsupportedOperationException();
+                if (m_modCount != m_expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (m_position >= m_size)
+                    throw new NoSuchElementException();
+                return valueOf(m_rows[m_position++]);
             }
         };
     }
@@ -137,7 +251,7 @@ final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer
     @Override
     public int hashCode()
     {
-        return Objects.hash(m_container, m_index);
+        return Objects.hash(m_container, values());
     }
 
     /**
@@ -159,12 +273,12 @@ final class ArrayListIndex<V> implements SequentialIndex<V>, MultiIndexContainer
 
         final ArrayListIndex<?> other = (ArrayListIndex<?>) o;
         return Objects.equals(m_container, other.m_container) //
-            && Objects.equals(m_index, other.m_index);
+            && Objects.equals(values(), other.values());
     }
 
     @Override
     public String toString()
     {
-        return "ArrayListIndex: " + m_index.toString();
+        return "ArrayListIndex: " + values();
     }
 }
@@ -0,0 +1,75 @@
+package com.github.mawillers.multiindex;
+
+import java.util.function.Function;
+
+/**
+ * The usage statistics of a key extractor passed to {@link SequentialIndex#filter(Function, Object)}, and the control of the hash index that the container
+ * automatically creates for it.
+ * <p>
+ * Instances are obtained from {@link MultiIndexContainer#autoIndexes()}. Like the container itself, they must be synchronized externally.
+ *
+ * @param <V> the type of elements in the container
+ */
+public interface AutoIndex<V>
+{
+    /**
+     * The states of an automatically created index.
+     */
+    public enum State
+    {
+        /**
+         * Queries are counted, but the threshold for creating an index has not been reached yet.
+         */
+        OBSERVED,
+
+        /**
+         * The index is being built in the background. Until it is ready, queries continue to scan all values.
+         */
+        BUILDING,
+
+        /**
+         * The index is maintained along with the container, and answers all queries.
+         */
+        READY,
+
+        /**
+         * The index has been dropped, either explicitly or because the key extractor threw an exception. It is not created automatically again.
+         */
+        DROPPED
+    }
+
+    /**
+     * @return the key extractor, never null
+     */
+    public Function<? super V, ?> keyExtractor();
+
+    /**
+     * @return the number of queries made with the key extractor
+     */
+    public long queryCount();
+
+    /**
+     * @return the number of queries that have been answered by the index rather than by scanning all values
+     */
+    public long indexedQueryCount();
+
+    /**
+     * @return the current state, never null
+     */
+    public State state();
+
+    /**
+     * @return true if the index has been created by {@link #pin()}
+     */
+    public boolean isPinned();
+
+    /**
+     * Builds the index immediately, regardless of the number of queries made so far. This also revokes a previous {@link #drop()}.
+     */
+    public void pin();
+
+    /**
+     * Discards the index, and prevents it from being created automatically again. Queries continue to be counted, and are answered by scanning all values.
+     */
+    public void drop();
+}
@@ -0,0 +1,355 @@
+package com.github.mawillers.multiindex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Observes the key extractors used by {@link SequentialIndex#filter(Function, Object)}, and creates a hash index for each one that is used often enough.
+ * <p>
+ * An index is built on the executor from a snapshot of the container, while the container may continue to be modified; these modifications are recorded and
+ * replayed when the finished index is installed. Installation happens during a later query, so that everything except the snapshot is only ever accessed
+ * under the external synchronization of the container.
+ *
+ * @param <V> the type of elements in the container
+ */
+final class AutoIndexer<V>
+{
+    // Extractors without an index are only tracked up to this number, since capturing lambdas may produce a new extractor instance for each query.
+    private static final int MAX_OBSERVED = 256;
+
+    private static final class Change<V>
+    {
+        final V m_value;
+        final int m_ordinal;
+        final boolean m_wasAdded;
+
+        Change(V value, int ordinal, boolean wasAdded)
+        {
+            m_value = value;
+            m_ordinal = ordinal;
+            m_wasAdded = wasAdded;
+        }
+    }
+
+    private final class Usage implements AutoIndex<V>
+    {
+        private final Function<? super V, ?> m_keyExtractor;
+        private long m_queryCount = 0;
+        private long m_indexedQueryCount = 0;
+        private boolean m_isPinned = false;
+        private boolean m_isDropped = false;
+
+        // The ordinals of the entries by key, in insertion order. Null unless the index is ready.
+        private HashMap<Object, LinkedHashSet<Integer>> m_buckets = null;
+
+        // The index being built, and the modifications of the container since its snapshot was taken. Null unless the index is being built.
+        private CompletableFuture<HashMap<Object, LinkedHashSet<Integer>>> m_build = null;
+        private final ArrayList<Change<V>> m_changes = new ArrayList<>();
+
+        Usage(Function<? super V, ?> keyExtractor)
+        {
+            m_keyExtractor = keyExtractor;
+        }
+
+        boolean isObserved()
+        {
+            return m_buckets == null && m_build == null && !m_isDropped;
+        }
+
+        private HashMap<Object, LinkedHashSet<Integer>> build(EntryOrdinals.Snapshot<V> snapshot)
+        {
+            final HashMap<Object, LinkedHashSet<Integer>> buckets = new HashMap<>();
+            snapshot.forEachInInsertionOrder((value, ordinal) -> buckets.computeIfAbsent(m_keyExtractor.apply(value), k -> new LinkedHashSet<>()).add(ordinal));
+            return buckets;
+        }
+
+        void startBuild()
+        {
+            final EntryOrdinals.Snapshot<V> snapshot = m_container.snapshot();
+            try {
+                m_build = CompletableFuture.supplyAsync(() -> build(snapshot), m_executor);
+                m_maintained.add(this);
+            } catch (RejectedExecutionException ex) {
+                // Try again with the next query.
+                m_build = null;
+            }
+        }
+
+        void installIfBuilt()
+        {
+            if (m_build == null || !m_build.isDone())
+                return;
+
+            final CompletableFuture<HashMap<Object, LinkedHashSet<Integer>>> build = m_build;
+            m_build = null;
+            try {
+                m_buckets = build.join();
+            } catch (CompletionException | CancellationException ex) {
+                discard();
+                m_isDropped = true;
+                return;
+            }
+
+            // A failing key extractor discards the index, and with it the remaining changes.
+            for (int i = 0; i < m_changes.size(); ++i) {
+                final Change<V> change = m_changes.get(i);
+                if (change.m_wasAdded)
+                    added(change.m_value, change.m_ordinal);
+                else
+                    removed(change.m_value, change.m_ordinal);
+            }
+            m_changes.clear();
+        }
+
+        private void discard()
+        {
+            if (m_build != null)
+                m_build.cancel(false);
+            m_build = null;
+            m_buckets = null;
+            m_changes.clear();
+            m_maintained.remove(this);
+        }
+
+        void added(V value, int ordinal)
+        {
+            // Install a finished build right away, rather than logging changes until the next query, which may be long in coming.
+            installIfBuilt();
+            if (m_buckets != null) {
+                try {
+                    m_buckets.computeIfAbsent(m_keyExtractor.apply(value), k -> new LinkedHashSet<>()).add(ordinal);
+                } catch (RuntimeException ex) {
+                    // The index must never make a modification of the container fail.
+                    discard();
+                    m_isDropped = true;
+                }
+            } else if (m_build != null) {
+                m_changes.add(new Change<>(value, ordinal, true));
+            }
+        }
+
+        void removed(V value, int ordinal)
+        {
+            installIfBuilt();
+            if (m_buckets != null) {
+                try {
+                    final Object key = m_keyExtractor.apply(value);
+                    final LinkedHashSet<Integer> bucket = m_buckets.get(key);
+                    if (bucket != null && bucket.remove(ordinal) && bucket.isEmpty())
+                        m_buckets.remove(key);
+                } catch (RuntimeException ex) {
+                    discard();
+                    m_isDropped = true;
+                }
+            } else if (m_build != null) {
+                m_changes.add(new Change<>(value, ordinal, false));
+            }
+        }
+
+        void cleared()
+        {
+            // The container is empty now, so the index can be installed right away, even if it was still being built.
+            if (m_build != null)
+                m_build.cancel(false);
+            m_build = null;
+            m_changes.clear();
+            m_buckets = new HashMap<>();
+        }
+
+        List<V> lookup(Object key)
+        {
+            final LinkedHashSet<Integer> bucket = m_buckets.get(key);
+            if (bucket == null)
+                return new ArrayList<>();
+
+            final ArrayList<V> result = new ArrayList<>(bucket.size());
+            bucket.forEach(ordinal -> result.add(m_container.getByOrdinal(ordinal)));
+            return result;
+        }
+
+        // --------------------------------------------------------------------
+
+        @Override
+        public Function<? super V, ?> keyExtractor()
+        {
+            return m_keyExtractor;
+        }
+
+        @Override
+        public long queryCount()
+        {
+            return m_queryCount;
+        }
+
+        @Override
+        public long indexedQueryCount()
+        {
+            return m_indexedQueryCount;
+        }
+
+        @Override
+        public State state()
+        {
+            installIfBuilt();
+            if (m_isDropped)
+                return State.DROPPED;
+            if (m_buckets != null)
+                return State.READY;
+            return m_build != null ? State.BUILDING : State.OBSERVED;
+        }
+
+        @Override
+        public boolean isPinned()
+        {
+            return m_isPinned;
+        }
+
+        @Override
+        public void pin()
+        {
+            if (m_buckets == null) {
+                // Build on the calling thread, so that the index is ready when this method returns. Any exception of the key extractor reaches the caller.
+                discard();
+                m_buckets = build(m_container.snapshot());
+                m_maintained.add(this);
+            }
+            m_isPinned = true;
+            m_isDropped = false;
+        }
+
+        @Override
+        public void drop()
+        {
+            discard();
+            m_isPinned = false;
+            m_isDropped = true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "AutoIndex: " + state() + ", " + m_indexedQueryCount + " of " + m_queryCount + " queries indexed";
+        }
+    }
+
+    private final MultiIndexContainer<V> m_container;
+    private final int m_threshold;
+    private final Executor m_executor;
+    private final LinkedHashMap<Function<?, ?>, Usage> m_usages = new LinkedHashMap<>();
+
+    // The usages whose index is ready or being built, which must be notified of modifications.
+    private final ArrayList<Usage> m_maintained = new ArrayList<>();
+
+    AutoIndexer(MultiIndexContainer<V> container, int threshold, Executor executor)
+    {
+        m_container = container;
+        m_threshold = threshold;
+        m_executor = executor;
+    }
+
+    /**
+     * Returns all values of the specified source whose key is equal to the specified one, in iteration order.
+     */
+    static <V, K> List<V> scan(Iterable<V> source, Function<? super V, K> keyExtractor, K key)
+    {
+        final ArrayList<V> result = new ArrayList<>();
+        for (V value : source) {
+            if (Objects.equals(keyExtractor.apply(value), key))
+                result.add(value);
+        }
+        return result;
+    }
+
+    <K> List<V> filter(Iterable<V> source, Function<? super V, K> keyExtractor, K key)
+    {
+        Usage usage = m_usages.get(keyExtractor);
+        if (usage == null) {
+            evictObservedIfFull();
+            usage = new Usage(keyExtractor);
+            m_usages.put(keyExtractor, usage);
+        }
+
+        ++usage.m_queryCount;
+        usage.installIfBuilt();
+        if (usage.m_buckets != null) {
+            ++usage.m_indexedQueryCount;
+            return usage.lookup(key);
+        }
+
+        if (usage.isObserved() && usage.m_queryCount >= m_threshold)
+            usage.startBuild();
+        return scan(source, keyExtractor, key);
+    }
+
+    private void evictObservedIfFull()
+    {
+        final List<Usage> observed = new ArrayList<>();
+        m_usages.values().forEach(usage -> {
+            if (usage.isObserved())
+                observed.add(usage);
+        });
+        if (observed.size() >= MAX_OBSERVED) {
+            final Usage leastUsed = Collections.min(observed, Comparator.comparingLong(usage -> usage.m_queryCount));
+            m_usages.remove(leastUsed.m_keyExtractor);
+        }
+    }
+
+    void added(V value, int ordinal)
+    {
+        // Iterate backwards, since a failing key extractor removes its usage from the list.
+        for (int i = m_maintained.size() - 1; i >= 0; --i)
+            m_maintained.get(i).added(value, ordinal);
+    }
+
+    void removed(V value, int ordinal)
+    {
+        for (int i = m_maintained.size() - 1; i >= 0; --i)
+            m_maintained.get(i).removed(value, ordinal);
+    }
+
+    void cleared()
+    {
+        m_maintained.forEach(Usage::cleared);
+    }
+
+    /**
+     * Estimates the memory retained by all indexes that are ready, see {@link Footprint}.
+     */
+    Footprint footprint()
+    {
+        Footprint result = Footprint.ZERO;
+        for (Usage usage : m_maintained) {
+            if (usage.m_buckets == null)
+                continue;
+
+            long structure = MemoryLayout.hashMap(usage.m_buckets.size());
+            long keys = 0;
+            for (Map.Entry<Object, LinkedHashSet<Integer>> bucket : usage.m_buckets.entrySet()) {
+                keys += MemoryLayout.keySize(bucket.getKey());
+                structure += MemoryLayout.linkedHashSet(bucket.getValue().size());
+                for (int ordinal : bucket.getValue())
+                    structure += MemoryLayout.boxedInt(ordinal);
+            }
+            result = result.plus(new Footprint(structure, keys, 0));
+        }
+        return result;
+    }
+
+    List<AutoIndex<V>> usages()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(m_usages.values()));
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.mawillers.multiindex;
+
+import java.util.Set;
+
+/**
+ * An index that allows access to its values by means of a key that only takes few distinct values, such as a status or a city.
+ * <p>
+ * For each key, the index keeps a compressed bitmap of the container's entries with that key. The selections returned by several such indexes of the same
+ * container can be combined with set operations, and counted, without accessing any of the values.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of elements in this index
+ */
+public interface BitmapIndex<K, V> extends Index<V>
+{
+    /**
+     * Returns a selection of all values that have the specified key.
+     * <p>
+     * The selection is a snapshot; it is not updated when the container is modified afterwards.
+     *
+     * @param key the key
+     * @return the selection, never null
+     */
+    public Selection<V> select(K key);
+
+    /**
+     * Returns a selection of all values that have any of the specified keys.
+     *
+     * @param keys the keys, must not be null
+     * @return the selection, never null
+     */
+    public Selection<V> selectAny(Iterable<? extends K> keys);
+
+    /**
+     * Returns the number of values that have the specified key.
+     *
+     * @param key the key
+     * @return the number of values that have the key
+     */
+    public int count(K key);
+
+    /**
+     * Returns all keys that currently exist in this index.
+     *
+     * @return an unmodifiable view of the keys, never null
+     */
+    public Set<K> keys();
+}
@@ -0,0 +1,175 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An axis-aligned rectangle in two-dimensional space, as used by {@link SpatialIndex}. A point is represented by a box without extent.
+ * <p>
+ * Instances of this class are immutable.
+ */
+public final class Box
+{
+    private final double m_minX;
+    private final double m_minY;
+    private final double m_maxX;
+    private final double m_maxY;
+
+    private Box(double minX, double minY, double maxX, double maxY)
+    {
+        m_minX = minX;
+        m_minY = minY;
+        m_maxX = maxX;
+        m_maxY = maxY;
+    }
+
+    /**
+     * Creates a new box from its lower left and upper right corners.
+     *
+     * @param minX the smallest x coordinate
+     * @param minY the smallest y coordinate
+     * @param maxX the largest x coordinate, must not be smaller than minX
+     * @param maxY the largest y coordinate, must not be smaller than minY
+     * @return the new instance, never null
+     */
+    public static Box of(double minX, double minY, double maxX, double maxY)
+    {
+        checkArgument(minX <= maxX && minY <= maxY, "Box coordinates were in wrong order");
+        return new Box(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Creates a new box that represents a single point.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the new instance, never null
+     */
+    public static Box point(double x, double y)
+    {
+        return new Box(x, y, x, y);
+    }
+
+    /**
+     * @return the smallest x coordinate
+     */
+    public double getMinX()
+    {
+        return m_minX;
+    }
+
+    /**
+     * @return the smallest y coordinate
+     */
+    public double getMinY()
+    {
+        return m_minY;
+    }
+
+    /**
+     * @return the largest x coordinate
+     */
+    public double getMaxX()
+    {
+        return m_maxX;
+    }
+
+    /**
+     * @return the largest y coordinate
+     */
+    public double getMaxY()
+    {
+        return m_maxY;
+    }
+
+    /**
+     * Returns true if the specified box lies completely inside this box (including its border).
+     *
+     * @param other the other box
+     * @return true if the other box lies inside this box
+     */
+    public boolean contains(Box other)
+    {
+        return m_minX <= other.m_minX && other.m_maxX <= m_maxX && m_minY <= other.m_minY && other.m_maxY <= m_maxY;
+    }
+
+    /**
+     * Returns true if this box and the specified box have at least one point in common.
+     *
+     * @param other the other box
+     * @return true if both boxes intersect
+     */
+    public boolean intersects(Box other)
+    {
+        return m_minX <= other.m_maxX && other.m_minX <= m_maxX && m_minY <= other.m_maxY && other.m_minY <= m_maxY;
+    }
+
+    /**
+     * Returns the Euclidean distance between the specified point and the nearest point of this box. This is zero if the point lies inside this box.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @return the distance
+     */
+    public double distanceTo(double x, double y)
+    {
+        return Math.sqrt(squaredDistanceTo(x, y));
+    }
+
+    double squaredDistanceTo(double x, double y)
+    {
+        final double dx = Math.max(0.0, Math.max(m_minX - x, x - m_maxX));
+        final double dy = Math.max(0.0, Math.max(m_minY - y, y - m_maxY));
+        return dx * dx + dy * dy;
+    }
+
+    double area()
+    {
+        return (m_maxX - m_minX) * (m_maxY - m_minY);
+    }
+
+    double centerX()
+    {
+        return (m_minX + m_maxX) / 2;
+    }
+
+    double centerY()
+    {
+        return (m_minY + m_maxY) / 2;
+    }
+
+    Box union(Box other)
+    {
+        return new Box(Math.min(m_minX, other.m_minX), Math.min(m_minY, other.m_minY), Math.max(m_maxX, other.m_maxX), Math.max(m_maxY, other.m_maxY));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = Double.hashCode(m_minX);
+        result = 31 * result + Double.hashCode(m_minY);
+        result = 31 * result + Double.hashCode(m_maxX);
+        result = 31 * result + Double.hashCode(m_maxY);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof Box))
+            return false;
+
+        final Box other = (Box) o;
+        return Double.compare(m_minX, other.m_minX) == 0 //
+            && Double.compare(m_minY, other.m_minY) == 0 //
+            && Double.compare(m_maxX, other.m_maxX) == 0 //
+            && Double.compare(m_maxY, other.m_maxY) == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Box: [" + m_minX + ", " + m_minY + "; " + m_maxX + ", " + m_maxY + "]";
+    }
+}
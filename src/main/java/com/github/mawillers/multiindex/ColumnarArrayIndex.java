@@ -0,0 +1,867 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * An implementation of {@link ColumnarIndex} that stores values and columns in plain arrays, which all grow and shrink in lock-step.
+ * <p>
+ * Filters build the resulting bitmaps one 64-bit word at a time, without branches, which allows the JIT compiler to vectorize these loops.
+ *
+ * @param <V> the type of elements in this index
+ */
+final class ColumnarArrayIndex<V> implements ColumnarIndex<V>, MultiIndexContainer.InternalIndex<V>
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The storage of one column, which must be kept aligned with the values of the index.
+     */
+    private abstract class Column
+    {
+        abstract void append(V value, int position);
+
+        abstract void removeAt(int position);
+
+        /**
+         * Moves the elements at the specified positions to the front, keeping their order.
+         */
+        abstract void retain(BitSet positions);
+
+        abstract void resize(int capacity);
+
+        abstract Footprint footprint();
+
+        void clear()
+        {
+            resize(INITIAL_CAPACITY);
+        }
+
+        void fill()
+        {
+            resize(m_values.length);
+            for (int i = 0; i < m_size; ++i)
+                append(get(i), i);
+        }
+    }
+
+    private Object[] m_values = new Object[INITIAL_CAPACITY];
+    // The container's ordinal of each value, which identifies it on removal.
+    private int[] m_ordinals = new int[INITIAL_CAPACITY];
+    private int m_size = 0;
+    private int m_modCount = 0;
+    private final ArrayList<Column> m_columns = new ArrayList<>();
+    private final MultiIndexContainer<V> m_container;
+
+    ColumnarArrayIndex(MultiIndexContainer<V> container)
+    {
+        m_container = container;
+    }
+
+    private static long[] newWords(int size)
+    {
+        return new long[(size + 63) >>> 6];
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        // Cannot extract fields from a null value.
+        return value != null;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        // null-check of value has already been done in canAddInternal(), which always has been called before.
+        checkNotNull(value, "Value argument was null but expected non-null");
+
+        if (m_size == m_values.length) {
+            final int capacity = m_size * 2;
+            m_values = Arrays.copyOf(m_values, capacity);
+            m_ordinals = Arrays.copyOf(m_ordinals, capacity);
+            m_columns.forEach(column -> column.resize(capacity));
+        }
+        m_values[m_size] = value;
+        m_ordinals[m_size] = ordinal;
+        for (Column column : m_columns)
+            column.append(value, m_size);
+        ++m_size;
+        ++m_modCount;
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        // Scanning the ordinals is a tight loop that does not need to access the values.
+        for (int position = 0; position < m_size; ++position) {
+            if (m_ordinals[position] == ordinal) {
+                removeAt(position);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void removeAllInternal(List<V> values, int[] ordinals)
+    {
+        final BitSet dropped = new BitSet();
+        for (int ordinal : ordinals)
+            dropped.set(ordinal);
+        final BitSet kept = new BitSet(m_size);
+        for (int position = 0; position < m_size; ++position) {
+            if (!dropped.get(m_ordinals[position]))
+                kept.set(position);
+        }
+
+        // Compacts the values and each column in a single pass, rather than shifting the tails once per removed entry.
+        int size = 0;
+        for (int position = kept.nextSetBit(0); position >= 0; position = kept.nextSetBit(position + 1)) {
+            m_values[size] = m_values[position];
+            m_ordinals[size] = m_ordinals[position];
+            ++size;
+        }
+        for (Column column : m_columns)
+            column.retain(kept);
+        Arrays.fill(m_values, size, m_size, null);
+        m_size = size;
+        ++m_modCount;
+    }
+
+    private void removeAt(int position)
+    {
+        final int tail = m_size - position - 1;
+        System.arraycopy(m_values, position + 1, m_values, position, tail);
+        System.arraycopy(m_ordinals, position + 1, m_ordinals, position, tail);
+        for (Column column : m_columns)
+            column.removeAt(position);
+        m_values[--m_size] = null;
+        ++m_modCount;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_values = new Object[INITIAL_CAPACITY];
+        m_ordinals = new int[INITIAL_CAPACITY];
+        m_size = 0;
+        m_columns.forEach(Column::clear);
+        ++m_modCount;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        Footprint result = Footprint.ofStructure(MemoryLayout.object(6 * 4) + MemoryLayout.referenceArray(m_values.length)
+            + MemoryLayout.array(m_ordinals.length, 4) + MemoryLayout.arrayList(m_columns.size()));
+        for (Column column : m_columns)
+            result = result.plus(column.footprint());
+        return result;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public boolean remove(Object value)
+    {
+        if (m_container.isRegistered(this)) {
+            // Let the container pick the entry to remove, and remove it from this index along with all others.
+            return m_container.removeFromAllIndexes(value);
+        }
+
+        // Once removed from its container, this index is no longer kept in sync with it, and must modify its own data.
+        m_container.checkWritable();
+        for (int position = 0; position < m_size; ++position) {
+            if (Objects.equals(m_values[position], value)) {
+                removeAt(position);
+                m_container.removeFromAllIndexes(value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_size;
+    }
+
+    @Override
+    public boolean contains(Object value)
+    {
+        // Once removed from its container, this index is no longer kept in sync with it, and must answer from its own data.
+        if (!m_container.isRegistered(this)) {
+            for (int i = 0; i < m_size; ++i) {
+                if (Objects.equals(m_values[i], value))
+                    return true;
+            }
+            return false;
+        }
+        return m_container.containsValue(value);
+    }
+
+    @Override
+    public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        return m_container.filter(this, keyExtractor, key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(int position)
+    {
+        checkElementIndex(position, m_size);
+        return (V) m_values[position];
+    }
+
+    @Override
+    public List<V> valuesAt(BitSet positions)
+    {
+        checkNotNull(positions, "Positions argument was null but expected non-null");
+
+        final ArrayList<V> result = new ArrayList<>(positions.cardinality());
+        for (int i = positions.nextSetBit(0); i >= 0 && i < m_size; i = positions.nextSetBit(i + 1))
+            result.add(get(i));
+        return result;
+    }
+
+    @Override
+    public Cursor<V> cursor()
+    {
+        return m_container.cursor(this, null);
+    }
+
+    @Override
+    public Cursor<V> cursor(String token)
+    {
+        checkNotNull(token, "Token argument was null but expected non-null");
+        return m_container.cursor(this, token);
+    }
+
+    @Override
+    public Iterator<V> iterator()
+    {
+        return new Iterator<V>() {
+            private final int m_expectedModCount = m_modCount;
+            private int m_next = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return m_next < m_size;
+            }
+
+            @Override
+            public V next()
+            {
+                if (m_modCount != m_expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (m_next >= m_size)
+                    throw new NoSuchElementException();
+                return get(m_next++);
+            }
+        };
+    }
+
+    // --------------------------------------------------------------------
+    // Columns
+
+    @Override
+    public IntColumn addIntColumn(ToIntFunction<V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+
+        final IntArrayColumn column = new IntArrayColumn(extractor);
+        column.fill();
+        m_columns.add(column);
+        return column;
+    }
+
+    @Override
+    public LongColumn addLongColumn(ToLongFunction<V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+
+        final LongArrayColumn column = new LongArrayColumn(extractor);
+        column.fill();
+        m_columns.add(column);
+        return column;
+    }
+
+    @Override
+    public DoubleColumn addDoubleColumn(ToDoubleFunction<V> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+
+        final DoubleArrayColumn column = new DoubleArrayColumn(extractor);
+        column.fill();
+        m_columns.add(column);
+        return column;
+    }
+
+    @Override
+    public StringColumn addStringColumn(Function<V, String> extractor)
+    {
+        checkNotNull(extractor, "Extractor argument was null but expected non-null");
+
+        final DictionaryColumn column = new DictionaryColumn(extractor);
+        column.fill();
+        m_columns.add(column);
+        return column;
+    }
+
+    private final class IntArrayColumn extends Column implements IntColumn
+    {
+        private final ToIntFunction<V> m_extractor;
+        private int[] m_data = new int[0];
+
+        IntArrayColumn(ToIntFunction<V> extractor)
+        {
+            m_extractor = extractor;
+        }
+
+        @Override
+        void append(V value, int position)
+        {
+            m_data[position] = m_extractor.applyAsInt(value);
+        }
+
+        @Override
+        void removeAt(int position)
+        {
+            System.arraycopy(m_data, position + 1, m_data, position, m_size - position - 1);
+        }
+
+        @Override
+        void retain(BitSet positions)
+        {
+            int to = 0;
+            for (int from = positions.nextSetBit(0); from >= 0; from = positions.nextSetBit(from + 1))
+                m_data[to++] = m_data[from];
+        }
+
+        @Override
+        void resize(int capacity)
+        {
+            m_data = Arrays.copyOf(m_data, capacity);
+        }
+
+        @Override
+        Footprint footprint()
+        {
+            return Footprint.ofStructure(MemoryLayout.object(3 * 4) + MemoryLayout.array(m_data.length, 4));
+        }
+
+        @Override
+        public int get(int position)
+        {
+            checkElementIndex(position, m_size);
+            return m_data[position];
+        }
+
+        @Override
+        public BitSet whereBetween(int min, int max)
+        {
+            final int[] data = m_data;
+            final long[] words = newWords(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                final long match = (data[i] >= min & data[i] <= max) ? 1L : 0L;
+                words[i >>> 6] |= match << i;
+            }
+            return BitSet.valueOf(words);
+        }
+
+        @Override
+        public BitSet where(IntPredicate predicate)
+        {
+            checkNotNull(predicate, "Predicate argument was null but expected non-null");
+
+            final BitSet result = new BitSet(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                if (predicate.test(m_data[i]))
+                    result.set(i);
+            }
+            return result;
+        }
+
+        @Override
+        public long sum()
+        {
+            final int[] data = m_data;
+            long result = 0;
+            for (int i = 0; i < m_size; ++i)
+                result += data[i];
+            return result;
+        }
+
+        @Override
+        public long sum(BitSet positions)
+        {
+            long result = 0;
+            for (int i = positions.nextSetBit(0); i >= 0 && i < m_size; i = positions.nextSetBit(i + 1))
+                result += m_data[i];
+            return result;
+        }
+
+        @Override
+        public OptionalInt min()
+        {
+            if (m_size == 0)
+                return OptionalInt.empty();
+            int result = m_data[0];
+            for (int i = 1; i < m_size; ++i)
+                result = Math.min(result, m_data[i]);
+            return OptionalInt.of(result);
+        }
+
+        @Override
+        public OptionalInt max()
+        {
+            if (m_size == 0)
+                return OptionalInt.empty();
+            int result = m_data[0];
+            for (int i = 1; i < m_size; ++i)
+                result = Math.max(result, m_data[i]);
+            return OptionalInt.of(result);
+        }
+
+        @Override
+        public OptionalDouble average()
+        {
+            return m_size == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) sum() / m_size);
+        }
+    }
+
+    private final class LongArrayColumn extends Column implements LongColumn
+    {
+        private final ToLongFunction<V> m_extractor;
+        private long[] m_data = new long[0];
+
+        LongArrayColumn(ToLongFunction<V> extractor)
+        {
+            m_extractor = extractor;
+        }
+
+        @Override
+        void append(V value, int position)
+        {
+            m_data[position] = m_extractor.applyAsLong(value);
+        }
+
+        @Override
+        void removeAt(int position)
+        {
+            System.arraycopy(m_data, position + 1, m_data, position, m_size - position - 1);
+        }
+
+        @Override
+        void retain(BitSet positions)
+        {
+            int to = 0;
+            for (int from = positions.nextSetBit(0); from >= 0; from = positions.nextSetBit(from + 1))
+                m_data[to++] = m_data[from];
+        }
+
+        @Override
+        void resize(int capacity)
+        {
+            m_data = Arrays.copyOf(m_data, capacity);
+        }
+
+        @Override
+        Footprint footprint()
+        {
+            return Footprint.ofStructure(MemoryLayout.object(3 * 4) + MemoryLayout.array(m_data.length, 8));
+        }
+
+        @Override
+        public long get(int position)
+        {
+            checkElementIndex(position, m_size);
+            return m_data[position];
+        }
+
+        @Override
+        public BitSet whereBetween(long min, long max)
+        {
+            final long[] data = m_data;
+            final long[] words = newWords(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                final long match = (data[i] >= min & data[i] <= max) ? 1L : 0L;
+                words[i >>> 6] |= match << i;
+            }
+            return BitSet.valueOf(words);
+        }
+
+        @Override
+        public BitSet where(LongPredicate predicate)
+        {
+            checkNotNull(predicate, "Predicate argument was null but expected non-null");
+
+            final BitSet result = new BitSet(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                if (predicate.test(m_data[i]))
+                    result.set(i);
+            }
+            return result;
+        }
+
+        @Override
+        public long sum()
+        {
+            final long[] data = m_data;
+            long result = 0;
+            for (int i = 0; i < m_size; ++i)
+                result += data[i];
+            return result;
+        }
+
+        @Override
+        public long sum(BitSet positions)
+        {
+            long result = 0;
+            for (int i = positions.nextSetBit(0); i >= 0 && i < m_size; i = positions.nextSetBit(i + 1))
+                result += m_data[i];
+            return result;
+        }
+
+        @Override
+        public OptionalLong min()
+        {
+            if (m_size == 0)
+                return OptionalLong.empty();
+            long result = m_data[0];
+            for (int i = 1; i < m_size; ++i)
+                result = Math.min(result, m_data[i]);
+            return OptionalLong.of(result);
+        }
+
+        @Override
+        public OptionalLong max()
+        {
+            if (m_size == 0)
+                return OptionalLong.empty();
+            long result = m_data[0];
+            for (int i = 1; i < m_size; ++i)
+                result = Math.max(result, m_data[i]);
+            return OptionalLong.of(result);
+        }
+    }
+
+    private final class DoubleArrayColumn extends Column implements DoubleColumn
+    {
+        private final ToDoubleFunction<V> m_extractor;
+        private double[] m_data = new double[0];
+
+        DoubleArrayColumn(ToDoubleFunction<V> extractor)
+        {
+            m_extractor = extractor;
+        }
+
+        @Override
+        void append(V value, int position)
+        {
+            m_data[position] = m_extractor.applyAsDouble(value);
+        }
+
+        @Override
+        void removeAt(int position)
+        {
+            System.arraycopy(m_data, position + 1, m_data, position, m_size - position - 1);
+        }
+
+        @Override
+        void retain(BitSet positions)
+        {
+            int to = 0;
+            for (int from = positions.nextSetBit(0); from >= 0; from = positions.nextSetBit(from + 1))
+                m_data[to++] = m_data[from];
+        }
+
+        @Override
+        void resize(int capacity)
+        {
+            m_data = Arrays.copyOf(m_data, capacity);
+        }
+
+        @Override
+        Footprint footprint()
+        {
+            return Footprint.ofStructure(MemoryLayout.object(3 * 4) + MemoryLayout.array(m_data.length, 8));
+        }
+
+        @Override
+        public double get(int position)
+        {
+            checkElementIndex(position, m_size);
+            return m_data[position];
+        }
+
+        @Override
+        public BitSet whereBetween(double min, double max)
+        {
+            final double[] data = m_data;
+            final long[] words = newWords(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                final long match = (data[i] >= min & data[i] <= max) ? 1L : 0L;
+                words[i >>> 6] |= match << i;
+            }
+            return BitSet.valueOf(words);
+        }
+
+        @Override
+        public BitSet where(DoublePredicate predicate)
+        {
+            checkNotNull(predicate, "Predicate argument was null but expected non-null");
+
+            final BitSet result = new BitSet(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                if (predicate.test(m_data[i]))
+                    result.set(i);
+            }
+            return result;
+        }
+
+        @Override
+        public double sum()
+        {
+            final double[] data = m_data;
+            double result = 0;
+            for (int i = 0; i < m_size; ++i)
+                result += data[i];
+            return result;
+        }
+
+        @Override
+        public double sum(BitSet positions)
+        {
+            double result = 0;
+            for (int i = positions.nextSetBit(0); i >= 0 && i < m_size; i = positions.nextSetBit(i + 1))
+                result += m_data[i];
+            return result;
+        }
+
+        @Override
+        public OptionalDouble min()
+        {
+            if (m_size == 0)
+                return OptionalDouble.empty();
+            double result = m_data[0];
+            for (int i = 1; i < m_size; ++i)
+                result = Math.min(result, m_data[i]);
+            return OptionalDouble.of(result);
+        }
+
+        @Override
+        public OptionalDouble max()
+        {
+            if (m_size == 0)
+                return OptionalDouble.empty();
+            double result = m_data[0];
+            for (int i = 1; i < m_size; ++i)
+                result = Math.max(result, m_data[i]);
+            return OptionalDouble.of(result);
+        }
+    }
+
+    private final class DictionaryColumn extends Column implements StringColumn
+    {
+        // Code of null strings
+        private static final int NULL_CODE = -1;
+
+        private final Function<V, String> m_extractor;
+        private int[] m_codes = new int[0];
+        private final ArrayList<String> m_dictionary = new ArrayList<>();
+        private final HashMap<String, Integer> m_codesByString = new HashMap<>();
+
+        DictionaryColumn(Function<V, String> extractor)
+        {
+            m_extractor = extractor;
+        }
+
+        @Override
+        void append(V value, int position)
+        {
+            final String string = m_extractor.apply(value);
+            if (string == null) {
+                m_codes[position] = NULL_CODE;
+                return;
+            }
+            m_codes[position] = m_codesByString.computeIfAbsent(string, s -> {
+                m_dictionary.add(s);
+                return m_dictionary.size() - 1;
+            });
+        }
+
+        @Override
+        void removeAt(int position)
+        {
+            // Unused strings stay in the dictionary until the index is cleared; codes need to be stable.
+            System.arraycopy(m_codes, position + 1, m_codes, position, m_size - position - 1);
+        }
+
+        @Override
+        void retain(BitSet positions)
+        {
+            int to = 0;
+            for (int from = positions.nextSetBit(0); from >= 0; from = positions.nextSetBit(from + 1))
+                m_codes[to++] = m_codes[from];
+        }
+
+        @Override
+        void resize(int capacity)
+        {
+            m_codes = Arrays.copyOf(m_codes, capacity);
+        }
+
+        @Override
+        Footprint footprint()
+        {
+            long structure = MemoryLayout.object(5 * 4) + MemoryLayout.array(m_codes.length, 4) + MemoryLayout.arrayList(m_dictionary.size())
+                + MemoryLayout.hashMap(m_codesByString.size());
+            for (int code = 0; code < m_dictionary.size(); ++code)
+                structure += MemoryLayout.boxedInt(code);
+            // Each distinct string is a key, held once by both the dictionary and the map.
+            final long keys = m_dictionary.stream().mapToLong(MemoryLayout::keySize).sum();
+            return new Footprint(structure, keys, 0);
+        }
+
+        @Override
+        void clear()
+        {
+            super.clear();
+            m_dictionary.clear();
+            m_codesByString.clear();
+        }
+
+        @Override
+        public String get(int position)
+        {
+            checkElementIndex(position, m_size);
+            final int code = m_codes[position];
+            return code == NULL_CODE ? null : m_dictionary.get(code);
+        }
+
+        @Override
+        public BitSet whereEqualTo(String value)
+        {
+            final int code = value == null ? NULL_CODE : m_codesByString.getOrDefault(value, Integer.MIN_VALUE);
+            if (code == Integer.MIN_VALUE)
+                return new BitSet();
+
+            final int[] codes = m_codes;
+            final long[] words = newWords(m_size);
+            for (int i = 0; i < m_size; ++i) {
+                final long match = codes[i] == code ? 1L : 0L;
+                words[i >>> 6] |= match << i;
+            }
+            return BitSet.valueOf(words);
+        }
+
+        @Override
+        public Map<String, Integer> countByValue()
+        {
+            final int[] counts = new int[m_dictionary.size()];
+            for (int i = 0; i < m_size; ++i) {
+                if (m_codes[i] != NULL_CODE)
+                    ++counts[m_codes[i]];
+            }
+
+            final HashMap<String, Integer> result = new HashMap<>();
+            for (int code = 0; code < counts.length; ++code) {
+                if (counts[code] > 0)
+                    result.put(m_dictionary.get(code), counts[code]);
+            }
+            return result;
+        }
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, Arrays.asList(m_values).subList(0, m_size));
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also a ColumnarArrayIndex, both Indexes originate from the same MultiIndexContainer instance, and
+     * all corresponding pairs of elements in the two Indexes are equal. Columns are not taken into account.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof ColumnarArrayIndex))
+            return false;
+
+        final ColumnarArrayIndex<?> other = (ColumnarArrayIndex<?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Arrays.asList(m_values).subList(0, m_size).equals(Arrays.asList(other.m_values).subList(0, other.m_size));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ColumnarArrayIndex: " + Arrays.asList(m_values).subList(0, m_size);
+    }
+}
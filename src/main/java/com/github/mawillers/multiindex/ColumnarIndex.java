@@ -0,0 +1,244 @@
+package com.github.mawillers.multiindex;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A sequential index that additionally stores selected fields of its values in primitive arrays (columns), aligned with the positions of the values.
+ * <p>
+ * Filters and aggregations over a column run over these arrays only, without accessing the values themselves. Filters return the matching positions as a
+ * {@link BitSet}, so that the results of several filters can be combined with the usual BitSet operations, and then passed on to aggregations or to
+ * {@link #valuesAt(BitSet)}.
+ * <p>
+ * Positions are those of the values in iteration order. They change when values are removed, so they are only valid until the next modification of the
+ * container. This index does not accept null values.
+ *
+ * @param <V> the type of elements in this index
+ */
+public interface ColumnarIndex<V> extends SequentialIndex<V>
+{
+    /**
+     * A column of int values.
+     */
+    public interface IntColumn
+    {
+        /**
+         * @param position the position, must be less than the size of the index
+         * @return the value at the specified position
+         */
+        public int get(int position);
+
+        /**
+         * @param min the lower bound (inclusive)
+         * @param max the upper bound (inclusive)
+         * @return the positions of all values within the specified range
+         */
+        public BitSet whereBetween(int min, int max);
+
+        /**
+         * @param predicate the predicate, must not be null
+         * @return the positions of all values that satisfy the predicate
+         */
+        public BitSet where(IntPredicate predicate);
+
+        /**
+         * @return the sum of all values
+         */
+        public long sum();
+
+        /**
+         * @param positions the positions to consider, must not be null
+         * @return the sum of the values at the specified positions
+         */
+        public long sum(BitSet positions);
+
+        /**
+         * @return the smallest value, or empty if the index is empty
+         */
+        public OptionalInt min();
+
+        /**
+         * @return the largest value, or empty if the index is empty
+         */
+        public OptionalInt max();
+
+        /**
+         * @return the arithmetic mean of all values, or empty if the index is empty
+         */
+        public OptionalDouble average();
+    }
+
+    /**
+     * A column of long values.
+     */
+    public interface LongColumn
+    {
+        /**
+         * @param position the position, must be less than the size of the index
+         * @return the value at the specified position
+         */
+        public long get(int position);
+
+        /**
+         * @param min the lower bound (inclusive)
+         * @param max the upper bound (inclusive)
+         * @return the positions of all values within the specified range
+         */
+        public BitSet whereBetween(long min, long max);
+
+        /**
+         * @param predicate the predicate, must not be null
+         * @return the positions of all values that satisfy the predicate
+         */
+        public BitSet where(LongPredicate predicate);
+
+        /**
+         * @return the sum of all values
+         */
+        public long sum();
+
+        /**
+         * @param positions the positions to consider, must not be null
+         * @return the sum of the values at the specified positions
+         */
+        public long sum(BitSet positions);
+
+        /**
+         * @return the smallest value, or empty if the index is empty
+         */
+        public OptionalLong min();
+
+        /**
+         * @return the largest value, or empty if the index is empty
+         */
+        public OptionalLong max();
+    }
+
+    /**
+     * A column of double values.
+     */
+    public interface DoubleColumn
+    {
+        /**
+         * @param position the position, must be less than the size of the index
+         * @return the value at the specified position
+         */
+        public double get(int position);
+
+        /**
+         * @param min the lower bound (inclusive)
+         * @param max the upper bound (inclusive)
+         * @return the positions of all values within the specified range
+         */
+        public BitSet whereBetween(double min, double max);
+
+        /**
+         * @param predicate the predicate, must not be null
+         * @return the positions of all values that satisfy the predicate
+         */
+        public BitSet where(DoublePredicate predicate);
+
+        /**
+         * @return the sum of all values
+         */
+        public double sum();
+
+        /**
+         * @param positions the positions to consider, must not be null
+         * @return the sum of the values at the specified positions
+         */
+        public double sum(BitSet positions);
+
+        /**
+         * @return the smallest value, or empty if the index is empty
+         */
+        public OptionalDouble min();
+
+        /**
+         * @return the largest value, or empty if the index is empty
+         */
+        public OptionalDouble max();
+    }
+
+    /**
+     * A column of String values, stored as codes into a dictionary of distinct strings. This suits fields with comparatively few distinct values.
+     */
+    public interface StringColumn
+    {
+        /**
+         * @param position the position, must be less than the size of the index
+         * @return the value at the specified position, may be null
+         */
+        public String get(int position);
+
+        /**
+         * @param value the value to look for, may be null
+         * @return the positions of all values equal to the specified one
+         */
+        public BitSet whereEqualTo(String value);
+
+        /**
+         * @return the number of occurrences of each distinct non-null value
+         */
+        public Map<String, Integer> countByValue();
+    }
+
+    /**
+     * Adds a column of int values. If the index already contains values, the column is filled from them.
+     *
+     * @param extractor a function defining the field to store in the column, must not be null
+     * @return the new column, never null
+     */
+    public IntColumn addIntColumn(ToIntFunction<V> extractor);
+
+    /**
+     * Adds a column of long values. If the index already contains values, the column is filled from them.
+     *
+     * @param extractor a function defining the field to store in the column, must not be null
+     * @return the new column, never null
+     */
+    public LongColumn addLongColumn(ToLongFunction<V> extractor);
+
+    /**
+     * Adds a column of double values. If the index already contains values, the column is filled from them.
+     *
+     * @param extractor a function defining the field to store in the column, must not be null
+     * @return the new column, never null
+     */
+    public DoubleColumn addDoubleColumn(ToDoubleFunction<V> extractor);
+
+    /**
+     * Adds a dictionary-encoded column of String values. If the index already contains values, the column is filled from them.
+     *
+     * @param extractor a function defining the field to store in the column, must not be null; it may return null
+     * @return the new column, never null
+     */
+    public StringColumn addStringColumn(Function<V, String> extractor);
+
+    /**
+     * Returns the value at the specified position.
+     *
+     * @param position the position, must be less than the size of the index
+     * @return the value at the specified position
+     */
+    public V get(int position);
+
+    /**
+     * Returns the values at the specified positions.
+     *
+     * @param positions the positions, must not be null
+     * @return a new list with the values, in iteration order, never null
+     */
+    public List<V> valuesAt(BitSet positions);
+}
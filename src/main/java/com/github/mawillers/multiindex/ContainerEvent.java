@@ -0,0 +1,152 @@
+package com.github.mawillers.multiindex;
+
+/**
+ * A notable operation of a {@link MultiIndexContainer}, reported to the {@link ContainerEventListener} of the container.
+ * <p>
+ * Events are only created while a listener is installed, see {@link MultiIndexContainer#setEventListener(ContainerEventListener, long)}.
+ *
+ * @param <V> the type that the container contains
+ */
+public final class ContainerEvent<V>
+{
+    /**
+     * The kinds of events.
+     */
+    public enum Kind
+    {
+        /**
+         * A value has not been added, because the reported index rejected it.
+         */
+        REJECTED,
+
+        /**
+         * A collection of values has been added.
+         */
+        BULK_LOAD,
+
+        /**
+         * All values have been removed.
+         */
+        CLEAR,
+
+        /**
+         * The reported index has been created.
+         */
+        INDEX_CREATED,
+
+        /**
+         * The reported index has been removed.
+         */
+        INDEX_REMOVED,
+
+        /**
+         * Adding a single value took at least the threshold of the listener. The reported index is the one that took longest.
+         */
+        SLOW_ADD,
+
+        /**
+         * Removing a single value took at least the threshold of the listener. The reported index is the one that took longest.
+         */
+        SLOW_REMOVE,
+
+        /**
+         * The values have been reconciled with a new snapshot. The reported index is the identity index, and the affected count is the number of values that
+         * have been added, removed, or replaced.
+         */
+        RECONCILE
+    }
+
+    private final Kind m_kind;
+    private final MultiIndexContainer<V> m_container;
+    private final Index<V> m_index;
+    private final long m_durationNanos;
+    private final long m_indexNanos;
+    private final int m_affectedCount;
+    private final int m_entryCount;
+
+    ContainerEvent(Kind kind, MultiIndexContainer<V> container, Index<V> index, long durationNanos, long indexNanos, int affectedCount, int entryCount)
+    {
+        m_kind = kind;
+        m_container = container;
+        m_index = index;
+        m_durationNanos = durationNanos;
+        m_indexNanos = indexNanos;
+        m_affectedCount = affectedCount;
+        m_entryCount = entryCount;
+    }
+
+    /**
+     * @return the kind of event, never null
+     */
+    public Kind kind()
+    {
+        return m_kind;
+    }
+
+    /**
+     * @return the container that the event occurred in, never null
+     */
+    public MultiIndexContainer<V> container()
+    {
+        return m_container;
+    }
+
+    /**
+     * @return the index that the event refers to, or null for events that refer to the container as a whole
+     */
+    public Index<V> index()
+    {
+        return m_index;
+    }
+
+    /**
+     * Returns the name of the implementation of the index, such as "HashMapIndex", which is also the prefix of its toString() result.
+     *
+     * @return the name, or null for events that refer to the container as a whole
+     */
+    public String indexType()
+    {
+        return m_index == null ? null : m_index.getClass().getSimpleName();
+    }
+
+    /**
+     * @return the time that the operation took, in nanoseconds
+     */
+    public long durationNanos()
+    {
+        return m_durationNanos;
+    }
+
+    /**
+     * Returns the time that the operation spent in the reported index, including the evaluation of its key extractor.
+     *
+     * @return the time in nanoseconds, or zero for events that refer to the container as a whole
+     */
+    public long indexNanos()
+    {
+        return m_indexNanos;
+    }
+
+    /**
+     * @return the number of values that the operation has added or removed
+     */
+    public int affectedCount()
+    {
+        return m_affectedCount;
+    }
+
+    /**
+     * @return the number of values in the container after the operation
+     */
+    public int entryCount()
+    {
+        return m_entryCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ContainerEvent: " + m_kind + (m_index == null ? "" : " in " + indexType()) + ", " + m_durationNanos + " ns (" + m_indexNanos + " ns in index), "
+            + m_affectedCount + " affected, " + m_entryCount + " entries";
+    }
+}
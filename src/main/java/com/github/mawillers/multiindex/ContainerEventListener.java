@@ -0,0 +1,20 @@
+package com.github.mawillers.multiindex;
+
+/**
+ * Receives the events of a {@link MultiIndexContainer}, for instance to forward them to a monitoring system or a flight recorder.
+ * <p>
+ * The listener is called synchronously by the thread that performs the operation, after the operation has taken effect. It must not modify the container,
+ * and should return quickly.
+ *
+ * @param <V> the type that the container contains
+ */
+@FunctionalInterface
+public interface ContainerEventListener<V>
+{
+    /**
+     * Called for each event.
+     *
+     * @param event the event, never null
+     */
+    public void onEvent(ContainerEvent<V> event);
+}
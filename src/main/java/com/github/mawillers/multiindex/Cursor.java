@@ -0,0 +1,25 @@
+package com.github.mawillers.multiindex;
+
+import java.util.Iterator;
+
+/**
+ * An iterator over a {@link SequentialIndex} that keeps its position while the container is modified, and whose position can be saved as a token and
+ * resumed later, see {@link SequentialIndex#cursor(String)}.
+ * <p>
+ * In contrast to the iterator of the index, a cursor never throws ConcurrentModificationException. It returns the entries that follow its position in
+ * insertion order at the time {@link #hasNext()} and {@link #next()} are called: entries added in the meantime are returned, and entries removed in the
+ * meantime are skipped. Like the index itself, a cursor must be synchronized externally.
+ *
+ * @param <V> the type of elements in the index
+ */
+public interface Cursor<V> extends Iterator<V>
+{
+    /**
+     * Returns a token for the current position, that is, right after the value last returned by {@link #next()}.
+     * <p>
+     * Tokens are opaque strings that are only meaningful to the index that created them, and remain valid while the container is modified.
+     *
+     * @return the token, never null
+     */
+    public String token();
+}
@@ -0,0 +1,100 @@
+package com.github.mawillers.multiindex;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over the keys and values of a {@link UniqueIndex}, see {@link UniqueIndex#entries()}.
+ * <p>
+ * In contrast to an iterator over {@link java.util.Map.Entry} objects, this iterator does not allocate an entry object per entry: {@link #next()} moves
+ * to the next entry, whose key and value are then returned by {@link #key()} and {@link #value()}. Numeric keys can be read as primitives by
+ * {@link #intKey()}, {@link #longKey()}, and {@link #doubleKey()}:
+ * <!-- @formatter:off -->
+ * <pre>{@code
+ *   for (EntryIterator<Integer, Employee> it = byId.entries(); it.next();)
+ *       total += it.intKey() * it.value().getSalary();
+ * }</pre>
+ * <!-- @formatter:on -->
+ * <p>
+ * The keys are read from the index as stored, so numeric keys are stored boxed and merely unboxed by the numeric accessors. Only indexes that do not store
+ * their keys extract them from the value on each call; see {@link UniqueIndex#entries()}.
+ * <p>
+ * The entries are returned in no particular order. Unless stated otherwise by the container, the index must not be modified while it is iterated.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of elements in the index
+ */
+public abstract class EntryIterator<K, V>
+{
+    EntryIterator()
+    {
+        // Only implemented by the indexes of this package.
+    }
+
+    /**
+     * Throws unless the iterator is positioned on an entry.
+     */
+    static void checkEntry(boolean hasEntry)
+    {
+        if (!hasEntry)
+            throw new NoSuchElementException();
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return true if there is a next entry, false if all entries have been visited
+     */
+    public abstract boolean next();
+
+    /**
+     * Returns the key of the current entry.
+     *
+     * @return the key
+     * @throws NoSuchElementException if {@link #next()} has not been called or returned false
+     */
+    public abstract K key();
+
+    /**
+     * Returns the value of the current entry.
+     *
+     * @return the value
+     * @throws NoSuchElementException if {@link #next()} has not been called or returned false
+     */
+    public abstract V value();
+
+    /**
+     * Returns the key of the current entry as an int, for indexes whose keys are numbers.
+     *
+     * @return the key, converted as by {@link Number#intValue()}
+     * @throws NoSuchElementException if {@link #next()} has not been called or returned false
+     * @throws ClassCastException if the key is not a number
+     */
+    public int intKey()
+    {
+        return ((Number) key()).intValue();
+    }
+
+    /**
+     * Returns the key of the current entry as a long, for indexes whose keys are numbers.
+     *
+     * @return the key, converted as by {@link Number#longValue()}
+     * @throws NoSuchElementException if {@link #next()} has not been called or returned false
+     * @throws ClassCastException if the key is not a number
+     */
+    public long longKey()
+    {
+        return ((Number) key()).longValue();
+    }
+
+    /**
+     * Returns the key of the current entry as a double, for indexes whose keys are numbers.
+     *
+     * @return the key, converted as by {@link Number#doubleValue()}
+     * @throws NoSuchElementException if {@link #next()} has not been called or returned false
+     * @throws ClassCastException if the key is not a number
+     */
+    public double doubleKey()
+    {
+        return ((Number) key()).doubleValue();
+    }
+}
@@ -0,0 +1,362 @@
+package com.github.mawillers.multiindex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Assigns each entry of a {@link MultiIndexContainer} an ordinal that stays stable as long as the entry is in the container.
+ * <p>
+ * Ordinals are small non-negative numbers; those of removed entries are reused for subsequently added entries. This keeps the range of ordinals dense, so
+ * that indexes can use them as positions in bitmaps or arrays.
+ * <p>
+ * This is also the central row store of the container: it holds the only reference to each entry that is shared by all indexes, so that indexes may store
+ * ordinals in primitive arrays instead of references, and read the entries from here.
+ *
+ * @param <V> the type of entries
+ */
+final class EntryOrdinals<V>
+{
+    /**
+     * A copy of the entries and their insertion order, which may be processed on another thread while the container is modified.
+     *
+     * @param <V> the type of entries
+     */
+    static final class Snapshot<V>
+    {
+        private final Object[] m_values;
+        private final long[] m_stamps;
+
+        private Snapshot(Object[] values, long[] stamps)
+        {
+            m_values = values;
+            m_stamps = stamps;
+        }
+
+        /**
+         * Returns the entry with the specified ordinal, or null if that ordinal was not in use.
+         */
+        @SuppressWarnings("unchecked")
+        V get(int ordinal)
+        {
+            return ordinal < m_values.length ? (V) m_values[ordinal] : null;
+        }
+
+        Footprint footprint()
+        {
+            return Footprint.ofStructure(MemoryLayout.object(2 * 4) + MemoryLayout.referenceArray(m_values.length) + MemoryLayout.array(m_stamps.length, 8));
+        }
+
+        /**
+         * Calls the specified action with each entry and its ordinal, in insertion order.
+         */
+        @SuppressWarnings("unchecked")
+        void forEachInInsertionOrder(ObjIntConsumer<V> action)
+        {
+            IntStream.range(0, m_stamps.length) //
+                .filter(ordinal -> m_stamps[ordinal] >= 0) //
+                .boxed() //
+                .sorted(Comparator.comparingLong(ordinal -> m_stamps[ordinal])) //
+                .forEachOrdered(ordinal -> action.accept((V) m_values[ordinal], ordinal));
+        }
+    }
+
+    // Maps each value to its ordinal, stored as an Integer. Only if a value has been added more than once, its ordinals are stored in an int[] instead.
+    private final HashMap<V, Object> m_ordinalsByValue = new HashMap<>();
+    private Object[] m_values = new Object[16];
+    // The insertion stamp of each ordinal in use. Stamps increase with each addition, so they define the insertion order. A released ordinal holds
+    // released(stamp) of its last entry instead, which is negative, until it is reused.
+    private long[] m_stamps = new long[16];
+    private long m_nextStamp = 0;
+    // The ordinals in use form a doubly linked list in insertion order; -1 denotes the end of the list. A released ordinal keeps the successor its entry had
+    // when it was released, along with the stamp of that successor in m_nextStamps, so that cursors can resume after it, see next().
+    private int[] m_next = new int[16];
+    private long[] m_nextStamps = new long[16];
+    private int[] m_previous = new int[16];
+    private int m_first = -1;
+    private int m_last = -1;
+    // The released ordinals, as a ring whose length is a power of two. The ordinal released first is reused first, which keeps the successors of released
+    // ordinals as long as possible.
+    private int[] m_free = new int[16];
+    private int m_freeHead = 0;
+    private int m_freeCount = 0;
+    private int m_bound = 0;
+    private int m_size = 0;
+
+    /**
+     * Assigns an ordinal to a newly added entry.
+     */
+    int add(V value)
+    {
+        final int ordinal;
+        if (m_freeCount > 0) {
+            ordinal = m_free[m_freeHead];
+            m_freeHead = (m_freeHead + 1) & (m_free.length - 1);
+            --m_freeCount;
+        } else {
+            ordinal = m_bound++;
+            if (ordinal == m_values.length) {
+                m_values = Arrays.copyOf(m_values, m_values.length * 2);
+                m_stamps = Arrays.copyOf(m_stamps, m_stamps.length * 2);
+                m_next = Arrays.copyOf(m_next, m_next.length * 2);
+                m_nextStamps = Arrays.copyOf(m_nextStamps, m_nextStamps.length * 2);
+                m_previous = Arrays.copyOf(m_previous, m_previous.length * 2);
+            }
+        }
+        m_values[ordinal] = value;
+        m_stamps[ordinal] = m_nextStamp++;
+        ++m_size;
+
+        m_previous[ordinal] = m_last;
+        m_next[ordinal] = -1;
+        if (m_last < 0)
+            m_first = ordinal;
+        else
+            m_next[m_last] = ordinal;
+        m_last = ordinal;
+
+        m_ordinalsByValue.merge(value, ordinal, (previous, unused) -> {
+            if (previous instanceof Integer)
+                return new int[] { (Integer) previous, ordinal };
+            final int[] ordinals = (int[]) previous;
+            final int[] result = Arrays.copyOf(ordinals, ordinals.length + 1);
+            result[ordinals.length] = ordinal;
+            return result;
+        });
+        return ordinal;
+    }
+
+    /**
+     * Releases the ordinal of the first added entry that is equal to the specified value.
+     *
+     * @return the released ordinal, or -1 if no such entry exists
+     */
+    int remove(Object value)
+    {
+        final int ordinal = first(value);
+        if (ordinal >= 0)
+            release(ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Releases the specified ordinal, which must be in use.
+     */
+    void release(int ordinal)
+    {
+        @SuppressWarnings("unchecked")
+        final V value = (V) m_values[ordinal];
+        final Object ordinals = m_ordinalsByValue.get(value);
+        if (ordinals instanceof Integer) {
+            m_ordinalsByValue.remove(value);
+        } else {
+            final int[] array = (int[]) ordinals;
+            final int[] remaining = new int[array.length - 1];
+            int count = 0;
+            for (int existing : array) {
+                if (existing != ordinal && count < remaining.length)
+                    remaining[count++] = existing;
+            }
+            m_ordinalsByValue.put(value, remaining.length == 1 ? (Object) remaining[0] : remaining);
+        }
+
+        if (m_previous[ordinal] < 0)
+            m_first = m_next[ordinal];
+        else
+            m_next[m_previous[ordinal]] = m_next[ordinal];
+        if (m_next[ordinal] < 0)
+            m_last = m_previous[ordinal];
+        else
+            m_previous[m_next[ordinal]] = m_previous[ordinal];
+
+        m_values[ordinal] = null;
+        m_nextStamps[ordinal] = m_next[ordinal] < 0 ? -1 : m_stamps[m_next[ordinal]];
+        m_stamps[ordinal] = released(m_stamps[ordinal]);
+        --m_size;
+        if (m_freeCount == m_free.length) {
+            // Unroll the ring, so that it continues at the end of the longer array.
+            final int[] free = new int[m_free.length * 2];
+            for (int i = 0; i < m_freeCount; ++i)
+                free[i] = m_free[(m_freeHead + i) & (m_free.length - 1)];
+            m_free = free;
+            m_freeHead = 0;
+        }
+        m_free[(m_freeHead + m_freeCount++) & (m_free.length - 1)] = ordinal;
+    }
+
+    /**
+     * Encodes the stamp of a released entry, such that it is negative, and differs from the encoding of every other stamp.
+     */
+    private static long released(long stamp)
+    {
+        return -2 - stamp;
+    }
+
+    /**
+     * Returns the ordinal of the most recently added entry, or -1 if there are no entries.
+     */
+    int last()
+    {
+        return m_last;
+    }
+
+    /**
+     * Returns the ordinal of the first added entry that is equal to the specified value, or -1 if no such entry exists.
+     */
+    int first(Object value)
+    {
+        final Object ordinals = m_ordinalsByValue.get(value);
+        if (ordinals == null)
+            return -1;
+        return ordinals instanceof Integer ? (Integer) ordinals : ((int[]) ordinals)[0];
+    }
+
+    boolean contains(Object value)
+    {
+        return m_ordinalsByValue.containsKey(value);
+    }
+
+    /**
+     * Returns the entry with the specified ordinal.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int ordinal)
+    {
+        return (V) m_values[ordinal];
+    }
+
+    int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Returns the insertion stamp of the entry with the specified ordinal, which identifies the entry even after its ordinal has been reused; a negative
+     * number if the ordinal is not in use.
+     */
+    long stamp(int ordinal)
+    {
+        return m_stamps[ordinal];
+    }
+
+    /**
+     * Returns the ordinal of the entry that follows the specified one in insertion order, or -1 if there is no such entry. The specified entry is given by its
+     * ordinal and stamp; an ordinal of -1 denotes the position before the first entry.
+     * <p>
+     * This takes constant time if the specified entry is still in use. If it has been released, the successors recorded on release are followed instead,
+     * which are shortened to the result for the next call. Only if the ordinal has been reused since, or a successor has been, the list is searched for the
+     * first entry that has been added after the specified one.
+     */
+    int next(int ordinal, long stamp)
+    {
+        if (ordinal < 0 || ordinal >= m_bound || stamp < 0)
+            return firstAfter(stamp);
+        if (m_stamps[ordinal] == stamp)
+            return m_next[ordinal];
+        if (m_stamps[ordinal] != released(stamp))
+            return firstAfter(stamp);
+
+        for (int current = ordinal;;) {
+            final int successor = m_next[current];
+            final long successorStamp = m_nextStamps[current];
+            if (successor < 0) {
+                // The entry was the last one when it was released, so all entries that follow it have been added since.
+                return lastAddedAfter(stamp);
+            }
+            if (m_stamps[successor] == successorStamp) {
+                m_next[ordinal] = successor;
+                m_nextStamps[ordinal] = successorStamp;
+                return successor;
+            }
+            if (m_stamps[successor] != released(successorStamp))
+                return firstAfter(stamp);
+            current = successor;
+        }
+    }
+
+    /**
+     * Searches the list from its beginning for the first entry that has been added after the specified stamp.
+     */
+    private int firstAfter(long stamp)
+    {
+        int result = m_first;
+        while (result >= 0 && m_stamps[result] <= stamp)
+            result = m_next[result];
+        return result;
+    }
+
+    /**
+     * Searches the list from its end for the first entry that has been added after the specified stamp, which takes time proportional to the number of
+     * entries added since.
+     */
+    private int lastAddedAfter(long stamp)
+    {
+        int result = -1;
+        for (int current = m_last; current >= 0 && m_stamps[current] > stamp; current = m_previous[current])
+            result = current;
+        return result;
+    }
+
+    /**
+     * Returns an upper bound (exclusive) of all ordinals currently in use.
+     */
+    int bound()
+    {
+        return m_bound;
+    }
+
+    /**
+     * Returns a copy of all entries currently in use.
+     */
+    Snapshot<V> snapshot()
+    {
+        return new Snapshot<>(Arrays.copyOf(m_values, m_bound), Arrays.copyOf(m_stamps, m_bound));
+    }
+
+    /**
+     * Estimates the memory retained by this instance, counting each distinct entry instance once as a value.
+     */
+    Footprint footprint()
+    {
+        long structure = MemoryLayout.object(13 * 4 + 8) + MemoryLayout.hashMap(m_ordinalsByValue.size());
+        for (Object ordinals : m_ordinalsByValue.values()) {
+            if (ordinals instanceof Integer)
+                structure += MemoryLayout.boxedInt((Integer) ordinals);
+            else
+                structure += MemoryLayout.array(((int[]) ordinals).length, 4);
+        }
+        structure += MemoryLayout.referenceArray(m_values.length) + 2 * MemoryLayout.array(m_stamps.length, 8)
+            + MemoryLayout.array(m_free.length, 4) + 2 * MemoryLayout.array(m_next.length, 4);
+
+        // Equal entries may be the same instance, which is only retained once.
+        final Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        long values = 0;
+        for (int ordinal = 0; ordinal < m_bound; ++ordinal) {
+            if (m_values[ordinal] != null && counted.add(m_values[ordinal]))
+                values += MemoryLayout.shallowSize(m_values[ordinal]);
+        }
+        return new Footprint(structure, 0, values);
+    }
+
+    void clear()
+    {
+        m_ordinalsByValue.clear();
+        m_values = new Object[16];
+        m_stamps = new long[16];
+        m_next = new int[16];
+        m_nextStamps = new long[16];
+        m_previous = new int[16];
+        m_first = -1;
+        m_last = -1;
+        // Stamps keep increasing, so that positions saved before clearing never match entries added afterwards.
+        m_freeHead = 0;
+        m_freeCount = 0;
+        m_bound = 0;
+        m_size = 0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.mawillers.multiindex;
+
+import java.util.Objects;
+
+/**
+ * An estimate of the heap memory retained by a {@link MultiIndexContainer} or one of its indexes, see {@link MultiIndexContainer#footprint()}.
+ * <p>
+ * The estimate assumes the common layout of a 64-bit HotSpot JVM with compressed references: 12 bytes of object header, 4 bytes per reference, and sizes
+ * aligned to 8 bytes. It distinguishes the structure of the indexes themselves, the keys that they hold in addition to the values, and the values, which
+ * are shared by all indexes and therefore only counted once by the container.
+ */
+public final class Footprint
+{
+    static final Footprint ZERO = new Footprint(0, 0, 0);
+
+    private final long m_structureBytes;
+    private final long m_keyBytes;
+    private final long m_valueBytes;
+
+    Footprint(long structureBytes, long keyBytes, long valueBytes)
+    {
+        m_structureBytes = structureBytes;
+        m_keyBytes = keyBytes;
+        m_valueBytes = valueBytes;
+    }
+
+    static Footprint ofStructure(long bytes)
+    {
+        return new Footprint(bytes, 0, 0);
+    }
+
+    Footprint plus(Footprint other)
+    {
+        return new Footprint(m_structureBytes + other.m_structureBytes, m_keyBytes + other.m_keyBytes, m_valueBytes + other.m_valueBytes);
+    }
+
+    Footprint plusStructure(long bytes)
+    {
+        return new Footprint(m_structureBytes + bytes, m_keyBytes, m_valueBytes);
+    }
+
+    Footprint plusKeys(long bytes)
+    {
+        return new Footprint(m_structureBytes, m_keyBytes + bytes, m_valueBytes);
+    }
+
+    /**
+     * Returns the bytes of the arrays, nodes, and other objects that make up the data structures.
+     *
+     * @return the number of bytes
+     */
+    public long structureBytes()
+    {
+        return m_structureBytes;
+    }
+
+    /**
+     * Returns the bytes of the keys that are held in addition to the values, such as the strings of a prefix index.
+     * <p>
+     * Only the keys themselves are counted, not the objects that they refer to; strings and boxed primitives are the exception. Keys that are also referenced
+     * by the values are counted nevertheless, so this is an upper bound.
+     *
+     * @return the number of bytes
+     */
+    public long keyBytes()
+    {
+        return m_keyBytes;
+    }
+
+    /**
+     * Returns the bytes of the values. Each value instance is counted once, by its shallow size; the objects that it refers to are not counted. Footprints
+     * of single indexes do not include any values.
+     *
+     * @return the number of bytes
+     */
+    public long valueBytes()
+    {
+        return m_valueBytes;
+    }
+
+    /**
+     * @return the sum of structure, key, and value bytes
+     */
+    public long totalBytes()
+    {
+        return m_structureBytes + m_keyBytes + m_valueBytes;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_structureBytes, m_keyBytes, m_valueBytes);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof Footprint))
+            return false;
+
+        final Footprint other = (Footprint) o;
+        return m_structureBytes == other.m_structureBytes //
+            && m_keyBytes == other.m_keyBytes //
+            && m_valueBytes == other.m_valueBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Footprint: " + totalBytes() + " bytes (structure " + m_structureBytes + ", keys " + m_keyBytes + ", values " + m_valueBytes + ")";
+    }
+}
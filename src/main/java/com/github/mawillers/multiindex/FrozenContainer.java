@@ -0,0 +1,403 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.Iterators;
+
+/**
+ * An immutable copy of a {@link MultiIndexContainer}, created by {@link MultiIndexContainer#freeze()}.
+ * <p>
+ * All values are stored in a single array, in insertion order. Each unique index is an open-addressed hash table of longs, each of which combines the hash
+ * code of a key with the position of its value in that array, plus a parallel array of the keys themselves. This takes less memory than the mutable
+ * indexes, and lookups touch only two arrays until they have found the key.
+ * <p>
+ * The indexes of a frozen container are obtained by passing the corresponding indexes of the original container to {@link #index(SequentialIndex)} or
+ * {@link #index(UniqueIndex)}. All methods that would modify the container throw UnsupportedOperationException. Since it is immutable, a frozen container
+ * may be read by multiple threads without synchronization.
+ *
+ * @param <V> the type that this Container contains
+ */
+public final class FrozenContainer<V>
+{
+    private static final int ABSENT = -1;
+
+    private final Object[] m_values;
+    private final FrozenSequentialIndex m_sequentialIndex = new FrozenSequentialIndex();
+    private final IdentityHashMap<Index<V>, FrozenUniqueIndex<?>> m_uniqueIndexes = new IdentityHashMap<>();
+    private final IdentityHashMap<Index<V>, Boolean> m_sequentialIndexes = new IdentityHashMap<>();
+
+    FrozenContainer(Object[] values)
+    {
+        m_values = values;
+    }
+
+    void addSequentialIndex(SequentialIndex<V> original)
+    {
+        m_sequentialIndexes.put(original, Boolean.TRUE);
+    }
+
+    <K> void addUniqueIndex(UniqueIndex<K, V> original, Function<V, K> keyExtractor, Equivalence<? super K> equivalence)
+    {
+        m_uniqueIndexes.put(original, new FrozenUniqueIndex<>(keyExtractor, equivalence));
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int position)
+    {
+        return (V) m_values[position];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Returns the number of values in the container.
+     *
+     * @return the number of values in the container
+     */
+    public int size()
+    {
+        return m_values.length;
+    }
+
+    /**
+     * Returns the frozen counterpart of the specified sequential index, which must belong to the original container.
+     *
+     * @param original the sequential index of the original container, must not be null
+     * @return the frozen index, never null
+     */
+    public SequentialIndex<V> index(SequentialIndex<V> original)
+    {
+        checkNotNull(original, "Original argument was null but expected non-null");
+        checkArgument(m_sequentialIndexes.containsKey(original), "Original argument was not a sequential index of the frozen container");
+
+        // All sequential indexes hold the values in insertion order, so they share a single frozen index.
+        return m_sequentialIndex;
+    }
+
+    /**
+     * Returns the frozen counterpart of the specified unique index, which must belong to the original container and be based on hashing keys.
+     *
+     * @param original the unique index of the original container, must not be null
+     * @return the frozen index, never null
+     * @param <K> the type of key
+     */
+    public <K> UniqueIndex<K, V> index(UniqueIndex<K, V> original)
+    {
+        checkNotNull(original, "Original argument was null but expected non-null");
+        final FrozenUniqueIndex<K> index = cast(m_uniqueIndexes.get(original));
+        checkArgument(index != null, "Original argument was not a hashed unique index of the frozen container");
+        return index;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Base class of all indexes, which rejects all modifications.
+     */
+    private abstract class FrozenIndex implements Index<V>
+    {
+        @Override
+        public boolean add(V value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends V> values)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return m_values.length == 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return m_values.length;
+        }
+    }
+
+    private final class FrozenSequentialIndex extends FrozenIndex implements SequentialIndex<V>
+    {
+        @Override
+        public boolean remove(Object value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean contains(Object value)
+        {
+            for (Object existing : m_values) {
+                if (Objects.equals(existing, value))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+        {
+            checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+            return AutoIndexer.scan(this, keyExtractor, key);
+        }
+
+        @Override
+        public Cursor<V> cursor()
+        {
+            return new FrozenCursor(0);
+        }
+
+        @Override
+        public Cursor<V> cursor(String token)
+        {
+            checkNotNull(token, "Token argument was null but expected non-null");
+
+            // Since the values never change, a position is simply the number of values before it.
+            final int position;
+            try {
+                position = Integer.parseInt(token, Character.MAX_RADIX);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Token argument was malformed", ex);
+            }
+            checkArgument(position >= 0 && position <= m_values.length, "Token argument was malformed");
+            return new FrozenCursor(position);
+        }
+
+        @Override
+        public Iterator<V> iterator()
+        {
+            return Iterators.unmodifiableIterator(Iterators.transform(Iterators.forArray(m_values), value -> FrozenContainer.<V> cast(value)));
+        }
+
+        @Override
+        public String toString()
+        {
+            return "FrozenSequentialIndex: " + Arrays.toString(m_values);
+        }
+    }
+
+    private final class FrozenCursor implements Cursor<V>
+    {
+        private int m_position;
+
+        FrozenCursor(int position)
+        {
+            m_position = position;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return m_position < m_values.length;
+        }
+
+        @Override
+        public V next()
+        {
+            if (m_position >= m_values.length)
+                throw new NoSuchElementException();
+            return valueAt(m_position++);
+        }
+
+        @Override
+        public String token()
+        {
+            return Integer.toString(m_position, Character.MAX_RADIX);
+        }
+    }
+
+    private final class FrozenUniqueIndex<K> extends FrozenIndex implements UniqueIndex<K, V>
+    {
+        private final Function<V, K> m_keyExtractor;
+        private final Equivalence<? super K> m_equivalence;
+
+        // Each slot holds the hash code of a key in its upper half, and the position of its value plus one in its lower half; zero denotes an empty slot.
+        // The key itself is at the same position of m_keys.
+        private final long[] m_slots;
+        private final Object[] m_keys;
+        private final int m_size;
+
+        FrozenUniqueIndex(Function<V, K> keyExtractor, Equivalence<? super K> equivalence)
+        {
+            m_keyExtractor = keyExtractor;
+            m_equivalence = equivalence;
+
+            // Keep the load factor between one third and two thirds, so that linear probing stays short.
+            final int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, m_values.length * 3 / 2) * 2 - 1));
+            m_slots = new long[capacity];
+            m_keys = new Object[capacity];
+            int size = 0;
+            for (int position = 0; position < m_values.length; ++position) {
+                final V value = valueAt(position);
+                if (value == null)
+                    continue;
+
+                final K key = m_keyExtractor.apply(value);
+                final int hash = hash(key);
+                int slot = hash & (capacity - 1);
+                while (m_slots[slot] != 0)
+                    slot = (slot + 1) & (capacity - 1);
+                m_slots[slot] = ((long) hash << 32) | (position + 1);
+                m_keys[slot] = key;
+                ++size;
+            }
+            m_size = size;
+        }
+
+        private int hash(K key)
+        {
+            final int hash = m_equivalence.hash(key);
+            return hash ^ (hash >>> 16);
+        }
+
+        private int find(K key)
+        {
+            final int hash = hash(key);
+            final int mask = m_slots.length - 1;
+            for (int slot = hash & mask; m_slots[slot] != 0; slot = (slot + 1) & mask) {
+                final long entry = m_slots[slot];
+                if ((int) (entry >>> 32) == hash && m_equivalence.equivalent(cast(m_keys[slot]), key))
+                    return (int) entry - 1;
+            }
+            return ABSENT;
+        }
+
+        @Override
+        public int size()
+        {
+            return m_size;
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return m_size == 0;
+        }
+
+        @Override
+        public V remove(Object key)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            try {
+                return find(cast(key)) != ABSENT;
+            } catch (ClassCastException ex) {
+                // The equivalence cannot handle this key, so it cannot be contained.
+                return false;
+            }
+        }
+
+        @Override
+        public boolean containsValue(Object object)
+        {
+            if (object == null)
+                return false;
+
+            try {
+                final V value = cast(object);
+                final int position = find(m_keyExtractor.apply(value));
+                return position != ABSENT && object.equals(m_values[position]);
+            } catch (ClassCastException ex) {
+                // The key extractor cannot handle this value, so it cannot be contained.
+                return false;
+            }
+        }
+
+        @Override
+        public Optional<V> getOptional(K key)
+        {
+            final int position = find(key);
+            return position == ABSENT ? Optional.empty() : Optional.of(valueAt(position));
+        }
+
+        @Override
+        public Set<K> keys()
+        {
+            return new KeySetView<>(this);
+        }
+
+        @Override
+        public EntryIterator<K, V> entries()
+        {
+            return new EntryIterator<K, V>() {
+                private int m_slot = -1;
+
+                @Override
+                public boolean next()
+                {
+                    while (++m_slot < m_slots.length) {
+                        if (m_slots[m_slot] != 0)
+                            return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public K key()
+                {
+                    checkEntry(m_slot >= 0 && m_slot < m_slots.length);
+                    return cast(m_keys[m_slot]);
+                }
+
+                @Override
+                public V value()
+                {
+                    checkEntry(m_slot >= 0 && m_slot < m_slots.length);
+                    return valueAt((int) m_slots[m_slot] - 1);
+                }
+            };
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action)
+        {
+            checkNotNull(action, "Action argument was null but expected non-null");
+
+            for (int slot = 0; slot < m_slots.length; ++slot) {
+                if (m_slots[slot] != 0)
+                    action.accept(cast(m_keys[slot]), valueAt((int) m_slots[slot] - 1));
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "FrozenUniqueIndex: " + m_size + " values";
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.mawillers.multiindex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Implements {@link MultiIndexContainer#aggregate(Function, Aggregator)}: the ordinals of the container are split into chunks, which are aggregated in
+ * parallel on the common fork-join pool, and the partial results are merged.
+ * <p>
+ * Each task aggregates into a group table of its own, so no synchronization is needed. A task forks off the upper halves of its range until the rest is
+ * small enough, which it then aggregates itself; the tables of the forked tasks are merged into its table afterwards. Hence, there are about as many
+ * tables as tasks that other threads have stolen, rather than one per chunk.
+ *
+ * @param <V> the type of values
+ * @param <K> the type of group keys
+ * @param <R> the type of the result of each group
+ */
+final class GroupAggregation<V, K, R>
+{
+    // The number of ordinals that a task aggregates itself rather than forking off.
+    static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Maps each group key to a group number by open addressing, and holds the aggregator state of all groups.
+     */
+    private static final class GroupTable<V, R>
+    {
+        // Each slot holds the number of a group plus one, or 0 if it is free.
+        private int[] m_slots = new int[16];
+        private Object[] m_keys = new Object[8];
+        private int[] m_hashes = new int[8];
+        private int m_groupCount = 0;
+        private final Aggregator.State<V, R> m_state;
+
+        GroupTable(Aggregator<V, R> aggregator)
+        {
+            m_state = aggregator.newState(m_keys.length);
+        }
+
+        private static int spread(int hash)
+        {
+            return (hash ^ (hash >>> 16)) * 0x9e3779b9;
+        }
+
+        /**
+         * Returns the number of the group with the specified key and hash, which is added if it does not exist yet.
+         */
+        int group(Object key, int hash)
+        {
+            final int mask = m_slots.length - 1;
+            int slot = spread(hash) & mask;
+            while (m_slots[slot] != 0) {
+                final int group = m_slots[slot] - 1;
+                if (m_hashes[group] == hash && Objects.equals(m_keys[group], key))
+                    return group;
+                slot = (slot + 1) & mask;
+            }
+
+            final int group = m_groupCount++;
+            if (group == m_keys.length) {
+                m_keys = Arrays.copyOf(m_keys, group * 2);
+                m_hashes = Arrays.copyOf(m_hashes, group * 2);
+                m_state.ensureCapacity(group * 2);
+            }
+            m_keys[group] = key;
+            m_hashes[group] = hash;
+            m_slots[slot] = group + 1;
+            // Keep the load factor at most one half.
+            if (m_groupCount * 2 > m_slots.length)
+                rehash();
+            return group;
+        }
+
+        private void rehash()
+        {
+            m_slots = new int[m_slots.length * 2];
+            final int mask = m_slots.length - 1;
+            for (int group = 0; group < m_groupCount; ++group) {
+                int slot = spread(m_hashes[group]) & mask;
+                while (m_slots[slot] != 0)
+                    slot = (slot + 1) & mask;
+                m_slots[slot] = group + 1;
+            }
+        }
+
+        void accumulate(Object key, V value)
+        {
+            m_state.accumulate(group(key, Objects.hashCode(key)), value);
+        }
+
+        void merge(GroupTable<V, R> other)
+        {
+            for (int group = 0; group < other.m_groupCount; ++group)
+                m_state.merge(group(other.m_keys[group], other.m_hashes[group]), other.m_state, group);
+        }
+
+        @SuppressWarnings("unchecked")
+        <K> Map<K, R> toMap()
+        {
+            final HashMap<K, R> result = new HashMap<>(Math.max(16, m_groupCount * 4 / 3 + 1));
+            for (int group = 0; group < m_groupCount; ++group)
+                result.put((K) m_keys[group], m_state.result(group));
+            return result;
+        }
+    }
+
+    private final class Task extends RecursiveTask<GroupTable<V, R>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int m_from;
+        private final int m_to;
+
+        Task(int from, int to)
+        {
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected GroupTable<V, R> compute()
+        {
+            final ArrayList<Task> forked = new ArrayList<>();
+            int to = m_to;
+            while (to - m_from > CHUNK_SIZE) {
+                final int middle = (m_from + to) >>> 1;
+                final Task upper = new Task(middle, to);
+                upper.fork();
+                forked.add(upper);
+                to = middle;
+            }
+
+            final GroupTable<V, R> table = new GroupTable<>(m_aggregator);
+            for (int ordinal = m_from; ordinal < to; ++ordinal) {
+                if (m_ordinals.stamp(ordinal) >= 0) {
+                    final V value = m_ordinals.get(ordinal);
+                    table.accumulate(m_groupKey.apply(value), value);
+                }
+            }
+
+            // Join in reverse order of forking, so that the tasks most likely to still be queued locally are run by this thread.
+            for (int i = forked.size() - 1; i >= 0; --i)
+                table.merge(forked.get(i).join());
+            return table;
+        }
+    }
+
+    private final EntryOrdinals<? extends V> m_ordinals;
+    private final Function<? super V, ? extends K> m_groupKey;
+    private final Aggregator<V, R> m_aggregator;
+
+    GroupAggregation(EntryOrdinals<? extends V> ordinals, Function<? super V, ? extends K> groupKey, Aggregator<V, R> aggregator)
+    {
+        m_ordinals = ordinals;
+        m_groupKey = groupKey;
+        m_aggregator = aggregator;
+    }
+
+    Map<K, R> run()
+    {
+        return ForkJoinPool.commonPool().invoke(new Task(0, m_ordinals.bound())).toMap();
+    }
+}
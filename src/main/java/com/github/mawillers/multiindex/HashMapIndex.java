@@ -6,26 +6,126 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 /**
- * An implementation of {@link UniqueIndex} that uses a HashMap for storage.
+ * An implementation of {@link UniqueIndex} that uses an open-addressed hash table of ordinals for storage.
+ * <p>
+ * The table stores the ordinal of each entry and the hash code of its key in two int arrays, and the key itself in a parallel array, so that lookups
+ * compare keys without reading the entries from the container, and iterations return the keys without extracting them again.
  *
  * @param <K> the type of key
  * @param <V> the type of elements in this index
  */
-final class HashMapIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer.InternalIndex<V>
+final class HashMapIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer.RowIndex<V>
 {
-    private final HashMap<K, V> m_index = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int ABSENT = -1;
+
+    // Each slot holds the ordinal of an entry plus one, or zero if it is empty, and the hash code and the key of the entry at the same position.
+    private int[] m_slots = new int[INITIAL_CAPACITY];
+    private int[] m_hashes = new int[INITIAL_CAPACITY];
+    private Object[] m_keys = new Object[INITIAL_CAPACITY];
+    private int m_size = 0;
+
     private final MultiIndexContainer<V> m_container;
     private final Function<V, K> m_keyExtractor;
 
+    // Null while this index belongs to its container; otherwise, the entries at the time it was removed from the container.
+    private EntryOrdinals.Snapshot<V> m_detachedRows = null;
+
     HashMapIndex(MultiIndexContainer<V> container, Function<V, K> keyExtractor)
     {
         m_container = container;
         m_keyExtractor = keyExtractor;
     }
 
+    Function<V, K> keyExtractor()
+    {
+        return m_keyExtractor;
+    }
+
+    private V valueOf(int row)
+    {
+        return m_detachedRows != null ? m_detachedRows.get(row) : m_container.getByOrdinal(row);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    private static int hash(Object key)
+    {
+        // Consecutive hash codes, as of integer keys, would otherwise fill consecutive slots. The resulting cluster makes delete() scan all of it.
+        final int hash = Objects.hashCode(key);
+        return (hash ^ (hash >>> 16)) * 0x9e3779b9;
+    }
+
+    /**
+     * Returns the slot that holds the entry with the specified key, or ABSENT.
+     */
+    private int find(Object key)
+    {
+        final int hash = hash(key);
+        final int mask = m_slots.length - 1;
+        for (int slot = hash & mask; m_slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_hashes[slot] == hash && Objects.equals(m_keys[slot], key))
+                return slot;
+        }
+        return ABSENT;
+    }
+
+    private void insert(int row, int hash, Object key)
+    {
+        final int mask = m_slots.length - 1;
+        int slot = hash & mask;
+        while (m_slots[slot] != 0)
+            slot = (slot + 1) & mask;
+        m_slots[slot] = row + 1;
+        m_hashes[slot] = hash;
+        m_keys[slot] = key;
+    }
+
+    /**
+     * Empties the specified slot, and moves subsequent entries of the same probe sequence back, so that lookups never need to skip deleted slots.
+     */
+    private void delete(int slot)
+    {
+        final int mask = m_slots.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; m_slots[next] != 0; next = (next + 1) & mask) {
+            // An entry may only fill the gap if its home slot is not cyclically between the gap (exclusive) and its current slot (inclusive).
+            final int home = m_hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                m_slots[gap] = m_slots[next];
+                m_hashes[gap] = m_hashes[next];
+                m_keys[gap] = m_keys[next];
+                gap = next;
+            }
+        }
+        m_slots[gap] = 0;
+        m_keys[gap] = null;
+        --m_size;
+    }
+
+    private void grow()
+    {
+        final int[] slots = m_slots;
+        final int[] hashes = m_hashes;
+        final Object[] keys = m_keys;
+        m_slots = new int[slots.length * 2];
+        m_hashes = new int[hashes.length * 2];
+        m_keys = new Object[keys.length * 2];
+        for (int slot = 0; slot < slots.length; ++slot) {
+            if (slots[slot] != 0)
+                insert(slots[slot] - 1, hashes[slot], keys[slot]);
+        }
+    }
+
     // --------------------------------------------------------------------
 
     @Override
@@ -37,37 +137,67 @@ final class HashMapIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer
         }
 
         final K key = m_keyExtractor.apply(value);
-        final boolean isContained = m_index.containsKey(key);
         // When a value is already associated with this key, we cannot add this new value.
-        return !isContained;
+        return find(key) == ABSENT;
     }
 
     @Override
-    public void addInternal(V value)
+    public void addInternal(V value, int ordinal)
     {
         // null-check of value has already been done in canAddInternal(), which always has been called before.
         checkNotNull(value, "Value argument was null but expected non-null");
 
+        // Keep the load factor at most three quarters, so that probe sequences stay short.
+        if ((m_size + 1) * 4L > m_slots.length * 3L)
+            grow();
         final K key = m_keyExtractor.apply(value);
-        m_index.put(key, value);
+        insert(ordinal, hash(key), key);
+        ++m_size;
     }
 
     @Override
-    public boolean removeInternal(V value)
+    public boolean removeInternal(V value, int ordinal)
     {
         if (value == null) {
             // Cannot extract a key from a null value.
             return false;
         }
 
-        final K key = m_keyExtractor.apply(value);
-        return m_index.remove(key, value);
+        final int hash = hash(m_keyExtractor.apply(value));
+        final int mask = m_slots.length - 1;
+        for (int slot = hash & mask; m_slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_slots[slot] == ordinal + 1) {
+                delete(slot);
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public void clearInternal()
     {
-        m_index.clear();
+        m_slots = new int[INITIAL_CAPACITY];
+        m_hashes = new int[INITIAL_CAPACITY];
+        m_keys = new Object[INITIAL_CAPACITY];
+        m_size = 0;
+    }
+
+    @Override
+    public void detachInternal(EntryOrdinals.Snapshot<V> rows)
+    {
+        m_detachedRows = rows;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        final long structure = MemoryLayout.object(7 * 4) + 2 * MemoryLayout.array(m_slots.length, 4) + MemoryLayout.referenceArray(m_keys.length);
+        long keys = 0;
+        for (Object key : m_keys)
+            keys += MemoryLayout.keySize(key);
+        final Footprint result = new Footprint(structure, keys, 0);
+        return m_detachedRows == null ? result : result.plus(m_detachedRows.footprint());
     }
 
     // --------------------------------------------------------------------
@@ -87,14 +217,25 @@ final class HashMapIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer
     @Override
     public V remove(Object key)
     {
-        final V valueToRemove = m_index.remove(key);
+        // This index modifies its own data before the container, so it must check first.
+        m_container.checkWritable();
+        final int slot = find(key);
 
-        // A null result means that this key does not exist in the Map (we don't support null values, because we cannot extract a key from a null value).
-        // This in turn means that no Index can contain what the user is trying to remove, as all indexes contain the same values.
-        if (valueToRemove != null)
-            m_container.removeFromAllIndexes(this, valueToRemove);
+        // An absent key means that no Index can contain what the user is trying to remove, as all indexes contain the same values.
+        if (slot == ABSENT)
+            return null;
 
-        return valueToRemove;
+        final int ordinal = m_slots[slot] - 1;
+        delete(slot);
+        if (m_detachedRows != null) {
+            // Once removed from its container, this index holds the ordinals of its snapshot, which the container may have reused meanwhile.
+            final V valueToRemove = valueOf(ordinal);
+            m_container.removeFromAllIndexes(valueToRemove);
+            return valueToRemove;
+        }
+
+        // The slot already knows the ordinal, so the container need not look the entry up again.
+        return m_container.removeFromAllIndexes(this, ordinal);
     }
 
     @Override
@@ -108,39 +249,107 @@ final class HashMapIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer
     @Override
     public boolean isEmpty()
     {
-        return m_index.isEmpty();
+        return m_size == 0;
     }
 
     @Override
     public int size()
     {
-        return m_index.size();
+        return m_size;
     }
 
     @Override
     public boolean containsKey(Object key)
     {
-        return m_index.containsKey(key);
+        return find(key) != ABSENT;
     }
 
     @Override
     public boolean containsValue(Object value)
     {
-        return m_index.containsValue(value);
+        // Once removed from its container, this index is no longer kept in sync with it, and must answer from its own data.
+        if (m_detachedRows != null)
+            return toMap().containsValue(value);
+        return m_container.containsValue(value);
     }
 
     @Override
     public Optional<V> getOptional(K key)
     {
-        final V value = m_index.get(key);
-        // Since null values are not supported, a null result from the Map lookup can safely be taken as non-existence.
-        return Optional.ofNullable(value);
+        final int slot = find(key);
+        return slot == ABSENT ? Optional.empty() : Optional.of(valueOf(m_slots[slot] - 1));
+    }
+
+    @Override
+    public Set<K> keys()
+    {
+        return new KeySetView<>(this);
+    }
+
+    @Override
+    public EntryIterator<K, V> entries()
+    {
+        return new EntryIterator<K, V>() {
+            private int m_slot = -1;
+            private V m_value = null;
+
+            @Override
+            public boolean next()
+            {
+                while (++m_slot < m_slots.length) {
+                    if (m_slots[m_slot] != 0) {
+                        m_value = valueOf(m_slots[m_slot] - 1);
+                        return true;
+                    }
+                }
+                m_value = null;
+                return false;
+            }
+
+            @Override
+            public K key()
+            {
+                checkEntry(m_slot >= 0 && m_slot < m_slots.length);
+                return cast(m_keys[m_slot]);
+            }
+
+            @Override
+            public V value()
+            {
+                checkEntry(m_slot >= 0 && m_slot < m_slots.length);
+                return m_value;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action)
+    {
+        checkNotNull(action, "Action argument was null but expected non-null");
+
+        for (int slot = 0; slot < m_slots.length; ++slot) {
+            if (m_slots[slot] != 0)
+                action.accept(cast(m_keys[slot]), valueOf(m_slots[slot] - 1));
+        }
+    }
+
+    /**
+     * Returns the current mappings as a HashMap, which is only meant for the rarely used methods below.
+     */
+    private HashMap<K, V> toMap()
+    {
+        final HashMap<K, V> result = new HashMap<>();
+        for (int slot = 0; slot < m_slots.length; ++slot) {
+            if (m_slots[slot] != 0)
+                result.put(cast(m_keys[slot]), valueOf(m_slots[slot] - 1));
+        }
+        return result;
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(m_container, m_index, m_keyExtractor);
+        return Objects.hash(m_container, toMap(), m_keyExtractor);
     }
 
     /**
@@ -162,13 +371,13 @@ final class HashMapIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer
 
         final HashMapIndex<?, ?> other = (HashMapIndex<?, ?>) o;
         return Objects.equals(m_container, other.m_container) //
-            && Objects.equals(m_index, other.m_index) //
+            && Objects.equals(toMap(), other.toMap()) //
             && Objects.equals(m_keyExtractor, other.m_keyExtractor);
     }
 
     @Override
     public String toString()
     {
-        return "HashMapIndex: " + m_index;
+        return "HashMapIndex: " + toMap();
     }
 }
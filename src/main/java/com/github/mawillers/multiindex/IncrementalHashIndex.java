@@ -0,0 +1,459 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.google.common.base.Equivalence;
+
+/**
+ * An implementation of {@link UniqueIndex} that uses a hash table which grows incrementally.
+ * <p>
+ * When the table needs to grow, a table of twice the size is allocated, and the nodes are migrated to it a few buckets at a time with each subsequent
+ * modification, while lookups consult both tables. Hence, no single addition has to rehash the whole table, which bounds its latency.
+ * <p>
+ * Keys are hashed and compared by an {@link Equivalence}, so that lookups may use keys that are equivalent, but not equal, to the stored ones.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of elements in this index
+ */
+final class IncrementalHashIndex<K, V> implements UniqueIndex<K, V>, MultiIndexContainer.InternalIndex<V>
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The number of non-empty buckets migrated with each modification, and the number of empty buckets that may be skipped while looking for them.
+    private static final int MIGRATION_STEPS = 4;
+    private static final int MAX_EMPTY_VISITS = MIGRATION_STEPS * 10;
+
+    private static final class Node<K, V>
+    {
+        final K m_key;
+        final int m_hash;
+        final V m_value;
+        Node<K, V> m_next;
+
+        Node(K key, int hash, V value, Node<K, V> next)
+        {
+            m_key = key;
+            m_hash = hash;
+            m_value = value;
+            m_next = next;
+        }
+    }
+
+    private Node<K, V>[] m_table = newTable(INITIAL_CAPACITY);
+    // The table being migrated to, or null. While migrating, buckets of m_table below m_migrated have been emptied already.
+    private Node<K, V>[] m_newTable = null;
+    private int m_migrated = 0;
+    private int m_size = 0;
+
+    private final MultiIndexContainer<V> m_container;
+    private final Function<V, K> m_keyExtractor;
+    private final Equivalence<? super K> m_equivalence;
+
+    IncrementalHashIndex(MultiIndexContainer<V> container, Function<V, K> keyExtractor, Equivalence<? super K> equivalence)
+    {
+        m_container = container;
+        m_keyExtractor = keyExtractor;
+        m_equivalence = equivalence;
+    }
+
+    Function<V, K> keyExtractor()
+    {
+        return m_keyExtractor;
+    }
+
+    Equivalence<? super K> equivalence()
+    {
+        return m_equivalence;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newTable(int length)
+    {
+        return (Node<K, V>[]) new Node<?, ?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    private int hash(K key)
+    {
+        final int hash = m_equivalence.hash(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    private Node<K, V> find(K key, int hash)
+    {
+        if (m_newTable != null) {
+            for (Node<K, V> node = m_newTable[hash & (m_newTable.length - 1)]; node != null; node = node.m_next) {
+                if (node.m_hash == hash && m_equivalence.equivalent(node.m_key, key))
+                    return node;
+            }
+        }
+        for (Node<K, V> node = m_table[hash & (m_table.length - 1)]; node != null; node = node.m_next) {
+            if (node.m_hash == hash && m_equivalence.equivalent(node.m_key, key))
+                return node;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the node with the specified key, and, if the specified value is not null, that value, from the specified table.
+     */
+    private Node<K, V> unlink(Node<K, V>[] table, K key, int hash, Object value)
+    {
+        final int bucket = hash & (table.length - 1);
+        Node<K, V> previous = null;
+        for (Node<K, V> node = table[bucket]; node != null; previous = node, node = node.m_next) {
+            if (node.m_hash == hash && m_equivalence.equivalent(node.m_key, key)) {
+                if (value != null && !value.equals(node.m_value))
+                    return null;
+                if (previous == null)
+                    table[bucket] = node.m_next;
+                else
+                    previous.m_next = node.m_next;
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private Node<K, V> unlink(K key, Object value)
+    {
+        final int hash = hash(key);
+        Node<K, V> node = m_newTable == null ? null : unlink(m_newTable, key, hash, value);
+        if (node == null)
+            node = unlink(m_table, key, hash, value);
+        if (node != null)
+            --m_size;
+        return node;
+    }
+
+    /**
+     * Moves a few buckets from the old table to the new one, and finishes the migration once the old table is empty.
+     */
+    private void migrate()
+    {
+        if (m_newTable == null)
+            return;
+
+        int migrated = 0;
+        int emptyVisits = 0;
+        while (migrated < MIGRATION_STEPS && emptyVisits < MAX_EMPTY_VISITS && m_migrated < m_table.length) {
+            Node<K, V> node = m_table[m_migrated];
+            if (node == null) {
+                ++emptyVisits;
+            } else {
+                m_table[m_migrated] = null;
+                while (node != null) {
+                    final Node<K, V> next = node.m_next;
+                    final int bucket = node.m_hash & (m_newTable.length - 1);
+                    node.m_next = m_newTable[bucket];
+                    m_newTable[bucket] = node;
+                    node = next;
+                }
+                ++migrated;
+            }
+            ++m_migrated;
+        }
+
+        if (m_migrated == m_table.length) {
+            m_table = m_newTable;
+            m_newTable = null;
+            m_migrated = 0;
+        }
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        if (value == null) {
+            // Cannot extract a key from a null value.
+            return false;
+        }
+
+        final K key = m_keyExtractor.apply(value);
+        // When a value is already associated with this key, we cannot add this new value.
+        return find(key, hash(key)) == null;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        // null-check of value has already been done in canAddInternal(), which always has been called before.
+        checkNotNull(value, "Value argument was null but expected non-null");
+
+        migrate();
+        if (m_newTable == null && m_size >= m_table.length - (m_table.length >>> 2))
+            m_newTable = newTable(m_table.length * 2);
+
+        // New nodes always go to the newest table, so that the old one only ever shrinks.
+        final Node<K, V>[] table = m_newTable != null ? m_newTable : m_table;
+        final K key = m_keyExtractor.apply(value);
+        final int hash = hash(key);
+        final int bucket = hash & (table.length - 1);
+        table[bucket] = new Node<>(key, hash, value, table[bucket]);
+        ++m_size;
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        if (value == null) {
+            // Cannot extract a key from a null value.
+            return false;
+        }
+
+        migrate();
+        return unlink(m_keyExtractor.apply(value), value) != null;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_table = newTable(INITIAL_CAPACITY);
+        m_newTable = null;
+        m_migrated = 0;
+        m_size = 0;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        long structure = MemoryLayout.object(7 * 4) + MemoryLayout.referenceArray(m_table.length) + (long) m_size * MemoryLayout.object(4 * 4);
+        long keys = keyBytes(m_table);
+        if (m_newTable != null) {
+            structure += MemoryLayout.referenceArray(m_newTable.length);
+            keys += keyBytes(m_newTable);
+        }
+        return new Footprint(structure, keys, 0);
+    }
+
+    private static <K, V> long keyBytes(Node<K, V>[] table)
+    {
+        long result = 0;
+        for (Node<K, V> head : table) {
+            for (Node<K, V> node = head; node != null; node = node.m_next)
+                result += MemoryLayout.keySize(node.m_key);
+        }
+        return result;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        // This index modifies its own data before the container, so it must check first.
+        m_container.checkWritable();
+        final Node<K, V> node;
+        try {
+            migrate();
+            node = unlink(cast(key), null);
+        } catch (ClassCastException ex) {
+            // The equivalence cannot handle this key, so it cannot have been added.
+            return null;
+        }
+
+        // Null values are not supported, so a missing node means that no Index can contain what the user is trying to remove.
+        if (node == null)
+            return null;
+
+        m_container.removeFromAllIndexes(this, node.m_value);
+        return node.m_value;
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_size;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        try {
+            final K k = cast(key);
+            return find(k, hash(k)) != null;
+        } catch (ClassCastException ex) {
+            // The equivalence cannot handle this key, so it cannot have been added.
+            return false;
+        }
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        // Once removed from its container, this index is no longer kept in sync with it, and must answer from its own data.
+        if (!m_container.isRegistered(this))
+            return toMap().containsValue(value);
+        return m_container.containsValue(value);
+    }
+
+    @Override
+    public Optional<V> getOptional(K key)
+    {
+        final Node<K, V> node = find(key, hash(key));
+        return node == null ? Optional.empty() : Optional.of(node.m_value);
+    }
+
+    @Override
+    public Set<K> keys()
+    {
+        return new KeySetView<>(this);
+    }
+
+    @Override
+    public EntryIterator<K, V> entries()
+    {
+        return new EntryIterator<K, V>() {
+            // While migrating, entries are in both tables; the old table is visited first.
+            private Node<K, V>[] m_visited = m_table;
+            private int m_bucket = -1;
+            private Node<K, V> m_node = null;
+
+            @Override
+            public boolean next()
+            {
+                if (m_node != null)
+                    m_node = m_node.m_next;
+                while (m_node == null && m_visited != null) {
+                    if (++m_bucket < m_visited.length) {
+                        m_node = m_visited[m_bucket];
+                    } else {
+                        m_visited = m_visited == m_table ? m_newTable : null;
+                        m_bucket = -1;
+                    }
+                }
+                return m_node != null;
+            }
+
+            @Override
+            public K key()
+            {
+                checkEntry(m_node != null);
+                return m_node.m_key;
+            }
+
+            @Override
+            public V value()
+            {
+                checkEntry(m_node != null);
+                return m_node.m_value;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action)
+    {
+        checkNotNull(action, "Action argument was null but expected non-null");
+
+        forEach(m_table, action);
+        if (m_newTable != null)
+            forEach(m_newTable, action);
+    }
+
+    private static <K, V> void forEach(Node<K, V>[] table, BiConsumer<? super K, ? super V> action)
+    {
+        for (Node<K, V> head : table) {
+            for (Node<K, V> node = head; node != null; node = node.m_next)
+                action.accept(node.m_key, node.m_value);
+        }
+    }
+
+    /**
+     * Returns the current mappings as a HashMap, which is only meant for the rarely used methods below.
+     */
+    private HashMap<K, V> toMap()
+    {
+        final HashMap<K, V> result = new HashMap<>();
+        putAll(result, m_table);
+        if (m_newTable != null)
+            putAll(result, m_newTable);
+        return result;
+    }
+
+    private static <K, V> void putAll(HashMap<K, V> map, Node<K, V>[] table)
+    {
+        for (Node<K, V> head : table) {
+            for (Node<K, V> node = head; node != null; node = node.m_next)
+                map.put(node.m_key, node.m_value);
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, toMap(), m_keyExtractor, m_equivalence);
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also an IncrementalHashIndex, both Indexes originate from the same MultiIndexContainer instance,
+     * all corresponding pairs of elements in the two Indexes are equal, the key extractor arguments of both Indexes refer to the same Function instance, and
+     * both Indexes use equal Equivalences.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof IncrementalHashIndex))
+            return false;
+
+        final IncrementalHashIndex<?, ?> other = (IncrementalHashIndex<?, ?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Objects.equals(toMap(), other.toMap()) //
+            && Objects.equals(m_keyExtractor, other.m_keyExtractor) //
+            && Objects.equals(m_equivalence, other.m_equivalence);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IncrementalHashIndex: " + toMap();
+    }
+}
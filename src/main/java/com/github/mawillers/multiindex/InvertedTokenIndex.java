@@ -0,0 +1,395 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An implementation of {@link TokenIndex} that uses an inverted index with compressed posting lists for storage.
+ * <p>
+ * Every entry is assigned an id in ascending order. For each token, a posting list holds the ids of all entries containing that token, encoded as
+ * variable-length deltas. Since ids only ever grow, additions simply append to the posting lists. Removals only mark the id as deleted; once deleted ids
+ * dominate, all posting lists are compacted in one go, so that the cost of removals stays amortized constant.
+ *
+ * @param <V> the type of elements in this index
+ */
+final class InvertedTokenIndex<V> implements TokenIndex<V>, MultiIndexContainer.InternalIndex<V>
+{
+    // Compaction is only worthwhile once there is a reasonable amount of garbage.
+    private static final int MIN_DELETED_FOR_COMPACTION = 64;
+
+    /**
+     * A sorted list of entry ids, stored as variable-length encoded differences between consecutive ids.
+     */
+    private static final class PostingList
+    {
+        private byte[] m_data = new byte[4];
+        private int m_length = 0;
+        private int m_lastId = -1;
+        // The number of encoded ids, including those of deleted entries.
+        private int m_encoded = 0;
+        // The number of ids that refer to entries that still exist.
+        int m_live = 0;
+
+        void append(int id)
+        {
+            int delta = id - m_lastId;
+            m_lastId = id;
+            ++m_encoded;
+            ++m_live;
+
+            if (m_length + 5 > m_data.length)
+                m_data = Arrays.copyOf(m_data, Math.max(m_length + 5, m_data.length * 2));
+            while ((delta & ~0x7F) != 0) {
+                m_data[m_length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            m_data[m_length++] = (byte) delta;
+        }
+
+        int[] decode()
+        {
+            final int[] result = new int[m_encoded];
+            int id = -1;
+            int pos = 0;
+            for (int i = 0; i < m_encoded; ++i) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = m_data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += delta;
+                result[i] = id;
+            }
+            return result;
+        }
+    }
+
+    // Entries by id; removed entries are null. Null values cannot be added to this index, so this is unambiguous.
+    private ArrayList<V> m_entries = new ArrayList<>();
+    private int m_deleted = 0;
+    private HashMap<String, PostingList> m_postings = new HashMap<>();
+    // The ids of each value; a value may have been added more than once.
+    private ArrayListMultimap<V, Integer> m_ids = ArrayListMultimap.create();
+
+    private final MultiIndexContainer<V> m_container;
+    private final ImmutableList<Function<V, ? extends CharSequence>> m_fieldExtractors;
+
+    InvertedTokenIndex(MultiIndexContainer<V> container, Collection<Function<V, ? extends CharSequence>> fieldExtractors)
+    {
+        m_container = container;
+        m_fieldExtractors = ImmutableList.copyOf(fieldExtractors);
+    }
+
+    private static void tokenize(CharSequence text, Set<String> tokens)
+    {
+        final StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString().toLowerCase(Locale.ROOT));
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0)
+            tokens.add(token.toString().toLowerCase(Locale.ROOT));
+    }
+
+    private Set<String> tokenize(V value)
+    {
+        final HashSet<String> tokens = new HashSet<>();
+        for (Function<V, ? extends CharSequence> extractor : m_fieldExtractors) {
+            final CharSequence text = extractor.apply(value);
+            if (text != null)
+                tokenize(text, tokens);
+        }
+        return tokens;
+    }
+
+    private static Set<String> tokenizeTerms(String... terms)
+    {
+        checkNotNull(terms, "Terms argument was null but expected non-null");
+
+        final HashSet<String> tokens = new HashSet<>();
+        for (String term : terms)
+            tokenize(checkNotNull(term, "Term was null but expected non-null"), tokens);
+        return tokens;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        // Null marks deleted entries, see m_entries.
+        return value != null;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        // null-check of value has already been done in canAddInternal(), which always has been called before.
+        checkNotNull(value, "Value argument was null but expected non-null");
+
+        final int id = m_entries.size();
+        m_entries.add(value);
+        m_ids.put(value, id);
+        for (String token : tokenize(value))
+            m_postings.computeIfAbsent(token, t -> new PostingList()).append(id);
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        if (value == null || !m_ids.containsKey(value))
+            return false;
+
+        final int id = m_ids.get(value).remove(0);
+        m_entries.set(id, null);
+        ++m_deleted;
+        for (String token : tokenize(value)) {
+            final PostingList postings = m_postings.get(token);
+            if (--postings.m_live == 0)
+                m_postings.remove(token);
+        }
+
+        if (m_deleted >= MIN_DELETED_FOR_COMPACTION && m_deleted > m_entries.size() / 2)
+            compact();
+        return true;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_entries = new ArrayList<>();
+        m_deleted = 0;
+        m_postings = new HashMap<>();
+        m_ids = ArrayListMultimap.create();
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        long structure = MemoryLayout.object(6 * 4) + MemoryLayout.arrayList(m_entries.size()) + MemoryLayout.hashMap(m_postings.size());
+        long keys = 0;
+        for (Map.Entry<String, PostingList> entry : m_postings.entrySet()) {
+            structure += MemoryLayout.object(5 * 4) + MemoryLayout.array(entry.getValue().m_data.length, 1);
+            keys += MemoryLayout.keySize(entry.getKey());
+        }
+
+        // The multimap holds a list of boxed ids for each distinct value; the values themselves are shared.
+        structure += MemoryLayout.object(3 * 4) + MemoryLayout.hashMap(m_ids.keySet().size());
+        for (Collection<Integer> ids : m_ids.asMap().values()) {
+            structure += MemoryLayout.arrayList(Math.max(3, ids.size()));
+            for (int id : ids)
+                structure += MemoryLayout.boxedInt(id);
+        }
+        return new Footprint(structure, keys, 0);
+    }
+
+    /**
+     * Assigns new, dense ids to all remaining entries, preserving their order, and drops the ids of deleted entries from all posting lists.
+     */
+    private void compact()
+    {
+        final int[] newIds = new int[m_entries.size()];
+        final ArrayList<V> entries = new ArrayList<>(m_entries.size() - m_deleted);
+        final ArrayListMultimap<V, Integer> ids = ArrayListMultimap.create();
+        for (int oldId = 0; oldId < m_entries.size(); ++oldId) {
+            final V value = m_entries.get(oldId);
+            newIds[oldId] = entries.size();
+            if (value != null) {
+                ids.put(value, entries.size());
+                entries.add(value);
+            }
+        }
+
+        final HashMap<String, PostingList> postings = new HashMap<>(m_postings.size() * 2);
+        for (Map.Entry<String, PostingList> entry : m_postings.entrySet()) {
+            final PostingList compacted = new PostingList();
+            for (int oldId : entry.getValue().decode()) {
+                if (m_entries.get(oldId) != null)
+                    compacted.append(newIds[oldId]);
+            }
+            postings.put(entry.getKey(), compacted);
+        }
+
+        m_entries = entries;
+        m_deleted = 0;
+        m_postings = postings;
+        m_ids = ids;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_entries.size() - m_deleted;
+    }
+
+    @Override
+    public List<V> withAllTerms(String... terms)
+    {
+        final Set<String> tokens = tokenizeTerms(terms);
+        if (tokens.isEmpty())
+            return new ArrayList<>();
+
+        final ArrayList<PostingList> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            final PostingList postings = m_postings.get(token);
+            if (postings == null)
+                return new ArrayList<>();
+            lists.add(postings);
+        }
+
+        // Start with the shortest list, so that the intermediate results are as small as possible.
+        lists.sort(Comparator.comparingInt(postings -> postings.m_encoded));
+        int[] candidates = lists.get(0).decode();
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; ++i) {
+            final int[] other = lists.get(i).decode();
+            int kept = 0;
+            int j = 0;
+            for (int k = 0; k < count && j < other.length; ++k) {
+                while (j < other.length && other[j] < candidates[k])
+                    ++j;
+                if (j < other.length && other[j] == candidates[k])
+                    candidates[kept++] = candidates[k];
+            }
+            count = kept;
+        }
+
+        final ArrayList<V> result = new ArrayList<>(count);
+        for (int k = 0; k < count; ++k) {
+            final V value = m_entries.get(candidates[k]);
+            if (value != null)
+                result.add(value);
+        }
+        return result;
+    }
+
+    @Override
+    public List<V> withAnyTerm(String... terms)
+    {
+        final BitSet ids = new BitSet(m_entries.size());
+        int expected = 0;
+        for (String token : tokenizeTerms(terms)) {
+            final PostingList postings = m_postings.get(token);
+            if (postings != null) {
+                for (int id : postings.decode())
+                    ids.set(id);
+                expected += postings.m_live;
+            }
+        }
+
+        final ArrayList<V> result = new ArrayList<>(Math.min(expected, size()));
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            final V value = m_entries.get(id);
+            if (value != null)
+                result.add(value);
+        }
+        return result;
+    }
+
+    @Override
+    public int countWithTerm(String term)
+    {
+        final Set<String> tokens = tokenizeTerms(term);
+        if (tokens.size() != 1) {
+            // A term that consists of several tokens cannot be counted without intersecting the posting lists.
+            return tokens.isEmpty() ? 0 : withAllTerms(term).size();
+        }
+
+        final PostingList postings = m_postings.get(tokens.iterator().next());
+        return postings == null ? 0 : postings.m_live;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, m_fieldExtractors, size());
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also an InvertedTokenIndex, both Indexes originate from the same MultiIndexContainer instance, both
+     * Indexes contain equal elements in the same order, and the field extractor arguments of both Indexes refer to the same Function instances.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof InvertedTokenIndex))
+            return false;
+
+        final InvertedTokenIndex<?> other = (InvertedTokenIndex<?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Objects.equals(m_fieldExtractors, other.m_fieldExtractors) //
+            && Objects.equals(liveEntries(), other.liveEntries());
+    }
+
+    private List<V> liveEntries()
+    {
+        final ArrayList<V> result = new ArrayList<>(size());
+        m_entries.stream().filter(Objects::nonNull).forEach(result::add);
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "InvertedTokenIndex: " + liveEntries();
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Joins the values of two indexes, which usually belong to different containers, by equal keys.
+ * <p>
+ * Each value of the left side is looked up in an index of the right side by the key that a function extracts from it; each match yields a {@link Pair}.
+ * Pairs are produced lazily, as the returned stream is consumed. The streams are sequential, but the left side is split into batches of values, so calling
+ * {@link Stream#parallel()} probes the right side from multiple threads:
+ * <!-- @formatter:off -->
+ * <pre>{@code
+ *   Join.join(employees, e -> e.m_departmentId, departmentsById)
+ *       .parallel()
+ *       .forEach(pair -> report(pair.left(), pair.right()));
+ * }</pre>
+ * <!-- @formatter:on -->
+ * <p>
+ * Keys are compared by {@link Object#equals(Object)}, as by {@link SequentialIndex#filter(Function, Object)}; hence null keys match each other. Neither
+ * container may be modified while a stream is consumed. The lookups of all indexes created by {@link MultiIndexContainer} may run concurrently, as long as
+ * the containers are not modified.
+ */
+public final class Join
+{
+    /**
+     * A value of the left side together with a matching value of the right side.
+     *
+     * @param <L> the type of the left value
+     * @param <R> the type of the right value
+     */
+    public static final class Pair<L, R>
+    {
+        private final L m_left;
+        private final R m_right;
+
+        Pair(L left, R right)
+        {
+            m_left = left;
+            m_right = right;
+        }
+
+        /**
+         * @return the value of the left side
+         */
+        public L left()
+        {
+            return m_left;
+        }
+
+        /**
+         * @return the value of the right side
+         */
+        public R right()
+        {
+            return m_right;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(m_left, m_right);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o == this)
+                return true;
+            if (!(o instanceof Pair))
+                return false;
+
+            final Pair<?, ?> other = (Pair<?, ?>) o;
+            return Objects.equals(m_left, other.m_left) //
+                && Objects.equals(m_right, other.m_right);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "(" + m_left + ", " + m_right + ")";
+        }
+    }
+
+    private Join()
+    {
+        // Only static methods.
+    }
+
+    /**
+     * Returns a stream of the values of the specified index that can be split for parallel processing.
+     */
+    private static <V> Stream<V> stream(SequentialIndex<V> index)
+    {
+        return StreamSupport.stream(Spliterators.spliterator(index.iterator(), index.size(), Spliterator.ORDERED), false);
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Joins the values of a stream with a unique index, by looking up the key of each value of the stream in the index.
+     * <p>
+     * The pairs are in the order of the stream, and the stream is parallel if the specified stream is.
+     *
+     * @param left the left side, must not be null
+     * @param leftKey the function that extracts the key from each value of the left side, must not be null
+     * @param right the right side, must not be null
+     * @return a stream with a pair for each value of the left side whose key is contained in the right side, never null
+     * @param <L> the type of the left values
+     * @param <R> the type of the right values
+     * @param <K> the type of key
+     */
+    public static <L, R, K> Stream<Pair<L, R>> join(Stream<L> left, Function<? super L, K> leftKey, UniqueIndex<K, R> right)
+    {
+        checkNotNull(left, "Left argument was null but expected non-null");
+        checkNotNull(leftKey, "Left key argument was null but expected non-null");
+        checkNotNull(right, "Right argument was null but expected non-null");
+
+        return left //
+            .map(value -> right.getOptional(leftKey.apply(value)).map(match -> new Pair<>(value, match))) //
+            .filter(Optional::isPresent) //
+            .map(Optional::get);
+    }
+
+    /**
+     * Joins the values of a sequential index with a unique index, by looking up the key of each value of the sequential index in the unique one.
+     * <p>
+     * The pairs are in the order of the sequential index.
+     *
+     * @param left the left side, must not be null
+     * @param leftKey the function that extracts the key from each value of the left side, must not be null
+     * @param right the right side, must not be null
+     * @return a stream with a pair for each value of the left side whose key is contained in the right side, never null
+     * @param <L> the type of the left values
+     * @param <R> the type of the right values
+     * @param <K> the type of key
+     */
+    public static <L, R, K> Stream<Pair<L, R>> join(SequentialIndex<L> left, Function<? super L, K> leftKey, UniqueIndex<K, R> right)
+    {
+        checkNotNull(left, "Left argument was null but expected non-null");
+        return join(stream(left), leftKey, right);
+    }
+
+    /**
+     * Joins the values of a sequential index with a bitmap index, which may hold any number of values for each key.
+     * <p>
+     * The pairs are in the order of the sequential index, and the matches of each left value in the order in which they were added to the right side.
+     *
+     * @param left the left side, must not be null
+     * @param leftKey the function that extracts the key from each value of the left side, must not be null
+     * @param right the right side, must not be null
+     * @return a stream with a pair for each combination of a left and a right value with equal keys, never null
+     * @param <L> the type of the left values
+     * @param <R> the type of the right values
+     * @param <K> the type of key
+     */
+    public static <L, R, K> Stream<Pair<L, R>> join(SequentialIndex<L> left, Function<? super L, K> leftKey, BitmapIndex<K, R> right)
+    {
+        checkNotNull(left, "Left argument was null but expected non-null");
+        checkNotNull(leftKey, "Left key argument was null but expected non-null");
+        checkNotNull(right, "Right argument was null but expected non-null");
+
+        return stream(left).flatMap(value -> right.select(leftKey.apply(value)).values().stream().map(match -> new Pair<>(value, match)));
+    }
+
+    /**
+     * Joins the values of two sequential indexes, neither of which has an index on the key.
+     * <p>
+     * This builds a hash table of the smaller side immediately, and then probes it lazily with the values of the larger side. The pairs are in the order of
+     * the larger side, and for each of its values, in the order of the smaller side.
+     *
+     * @param left the left side, must not be null
+     * @param leftKey the function that extracts the key from each value of the left side, must not be null
+     * @param right the right side, must not be null
+     * @param rightKey the function that extracts the key from each value of the right side, must not be null
+     * @return a stream with a pair for each combination of a left and a right value with equal keys, never null
+     * @param <L> the type of the left values
+     * @param <R> the type of the right values
+     * @param <K> the type of key
+     */
+    public static <L, R, K> Stream<Pair<L, R>> join(SequentialIndex<L> left, Function<? super L, K> leftKey, SequentialIndex<R> right,
+        Function<? super R, K> rightKey)
+    {
+        checkNotNull(left, "Left argument was null but expected non-null");
+        checkNotNull(leftKey, "Left key argument was null but expected non-null");
+        checkNotNull(right, "Right argument was null but expected non-null");
+        checkNotNull(rightKey, "Right key argument was null but expected non-null");
+
+        if (right.size() <= left.size()) {
+            final HashMap<K, List<R>> table = buildTable(right, rightKey);
+            return stream(left).flatMap(value -> probe(table, leftKey.apply(value)).stream().map(match -> new Pair<>(value, match)));
+        }
+
+        final HashMap<K, List<L>> table = buildTable(left, leftKey);
+        return stream(right).flatMap(value -> probe(table, rightKey.apply(value)).stream().map(match -> new Pair<>(match, value)));
+    }
+
+    private static <V, K> HashMap<K, List<V>> buildTable(SequentialIndex<V> index, Function<? super V, K> keyExtractor)
+    {
+        final HashMap<K, List<V>> result = new HashMap<>();
+        for (V value : index)
+            result.computeIfAbsent(keyExtractor.apply(value), key -> new ArrayList<>(1)).add(value);
+        return result;
+    }
+
+    private static <V, K> List<V> probe(HashMap<K, List<V>> table, K key)
+    {
+        return table.getOrDefault(key, Collections.emptyList());
+    }
+}
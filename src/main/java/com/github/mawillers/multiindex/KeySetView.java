@@ -0,0 +1,71 @@
+package com.github.mawillers.multiindex;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * An unmodifiable view of the keys of a {@link UniqueIndex}, see {@link UniqueIndex#keys()}. It iterates the entries of the index, and answers membership
+ * queries by means of the index.
+ *
+ * @param <K> the type of key
+ */
+final class KeySetView<K> extends AbstractSet<K>
+{
+    private final UniqueIndex<K, ?> m_index;
+
+    KeySetView(UniqueIndex<K, ?> index)
+    {
+        m_index = index;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_index.size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_index.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object key)
+    {
+        return m_index.containsKey(key);
+    }
+
+    @Override
+    public Iterator<K> iterator()
+    {
+        final EntryIterator<K, ?> entries = m_index.entries();
+        return new UnmodifiableIterator<K>() {
+            // Whether the entries have been advanced past the key returned last, and if so, whether they are positioned on an entry.
+            private boolean m_advanced = false;
+            private boolean m_hasNext = false;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (!m_advanced) {
+                    m_hasNext = entries.next();
+                    m_advanced = true;
+                }
+                return m_hasNext;
+            }
+
+            @Override
+            public K next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                m_advanced = false;
+                return entries.key();
+            }
+        };
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.mawillers.multiindex;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Estimates the sizes of objects on the heap, for {@link Footprint}. See there for the assumed layout.
+ */
+final class MemoryLayout
+{
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+
+    // Since Java 9, strings store Latin-1 text with one byte per character.
+    private static final int BYTES_PER_CHAR = System.getProperty("java.specification.version").startsWith("1.") ? 2 : 1;
+
+    // The sizes of the fields of instances of each class, including those of its superclasses.
+    private static final ClassValue<Long> s_fieldBytes = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type)
+        {
+            long bytes = 0;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()))
+                        bytes += sizeOf(field.getType());
+                }
+            }
+            return bytes;
+        }
+    };
+
+    private MemoryLayout()
+    {
+        // Only static methods.
+    }
+
+    private static int sizeOf(Class<?> type)
+    {
+        if (type == long.class || type == double.class)
+            return 8;
+        if (type == int.class || type == float.class)
+            return 4;
+        if (type == short.class || type == char.class)
+            return 2;
+        if (type == byte.class || type == boolean.class)
+            return 1;
+        return REFERENCE;
+    }
+
+    static long align(long bytes)
+    {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Returns the size of an object with fields of the specified total size.
+     */
+    static long object(int fieldBytes)
+    {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    static long array(int length, int elementBytes)
+    {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    static long referenceArray(int length)
+    {
+        return array(length, REFERENCE);
+    }
+
+    /**
+     * Returns the size of an ArrayList with the specified capacity, excluding its elements.
+     */
+    static long arrayList(int capacity)
+    {
+        return object(3 * 4) + referenceArray(capacity);
+    }
+
+    /**
+     * Returns the size of a HashMap with the specified number of mappings, excluding its keys and values.
+     */
+    static long hashMap(int size)
+    {
+        // HashMap grows its table once it is three quarters full.
+        int capacity = 16;
+        while (size > capacity / 4 * 3)
+            capacity *= 2;
+        return object(8 * 4) + (size == 0 ? 0 : referenceArray(capacity)) + size * object(4 * 4);
+    }
+
+    /**
+     * Returns the size of a LinkedHashSet with the specified number of elements, excluding its elements.
+     */
+    static long linkedHashSet(int size)
+    {
+        // A HashSet wrapping a LinkedHashMap, whose entries also link to their neighbours.
+        return object(REFERENCE) + hashMap(size) + object(3 * 4) + size * (object(6 * 4) - object(4 * 4));
+    }
+
+    /**
+     * Returns the size of the specified object, excluding the objects that it refers to.
+     */
+    static long shallowSize(Object object)
+    {
+        if (object == null)
+            return 0;
+
+        final Class<?> type = object.getClass();
+        if (type.isArray())
+            return array(Array.getLength(object), sizeOf(type.getComponentType()));
+        return object((int) (long) s_fieldBytes.get(type));
+    }
+
+    /**
+     * Returns the size of the specified key. Strings include their characters, and boxed primitives that the JVM caches do not count at all.
+     */
+    static long keySize(Object key)
+    {
+        if (key == null || key instanceof Boolean)
+            return 0;
+        if (key instanceof String)
+            return shallowSize(key) + array(((String) key).length(), BYTES_PER_CHAR);
+        if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte) {
+            final long value = ((Number) key).longValue();
+            if (value >= -128 && value <= 127)
+                return 0;
+        }
+        if (key instanceof Character && (Character) key <= 127)
+            return 0;
+        return shallowSize(key);
+    }
+
+    /**
+     * Returns the size of an Integer for the specified value, which is zero for the values that the JVM caches.
+     */
+    static long boxedInt(int value)
+    {
+        return value >= -128 && value <= 127 ? 0 : object(4);
+    }
+}
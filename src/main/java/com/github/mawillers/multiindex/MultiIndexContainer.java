@@ -1,23 +1,42 @@
 package com.github.mawillers.multiindex;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.google.common.base.Equivalence;
 
 /**
  * A container class with dynamic indexes.
  * <p>
  * This container stores values of a given type, and allows retrieval of these values by an arbitrary number of indexes.
  * <p>
- * Currently, two index types have been implemented, these are:
+ * Currently, the following index types have been implemented:
  * <ul>
  * <li>{@link SequentialIndex} - an index that allows sequential access to its values in insertion order
+ * <li>{@link PositionalIndex} - a sequential index that also allows access to its values by position in logarithmic time
+ * <li>{@link QueueIndex} - a sequential index that also allows removing its oldest values in constant time, for first-in-first-out use
+ * <li>{@link ColumnarIndex} - a sequential index that also stores selected fields of its values in primitive arrays, for fast filters and aggregations
  * <li>{@link UniqueIndex} - an index that allows access to its values by means of a key
+ * <li>{@link PrefixIndex} - an index that allows access to its values by means of a prefix of a textual key
+ * <li>{@link TokenIndex} - an index that allows access to its values by means of the words contained in their textual fields
+ * <li>{@link BitmapIndex} - an index that allows combining selections of its values by means of keys with few distinct values
+ * <li>{@link SpatialIndex} - an index that allows access to its values by means of their location in two-dimensional space
  * </ul>
  * <p>
  * The container itself does not hold any data - all data is contained in the indexes. All indexes must be created before data can be put into the container
@@ -82,15 +101,69 @@ public final class MultiIndexContainer<V>
     {
         boolean canAddInternal(V value);
 
-        void addInternal(V value);
+        // The ordinal identifies the entry as long as it is in the container, see EntryOrdinals. Most indexes do not need it.
+        void addInternal(V value, int ordinal);
+
+        boolean removeInternal(V value, int ordinal);
+
+        // Removes many entries at once; the values are those of the ordinals at the same positions. Indexes that would otherwise move their storage once
+        // per entry should override this to do it once for all of them.
+        default void removeAllInternal(List<V> values, int[] ordinals)
+        {
+            for (int i = 0; i < ordinals.length; ++i)
+                removeInternal(values.get(i), ordinals[i]);
+        }
 
-        boolean removeInternal(V value);
+        // Called before and after addAll() adds its values one by one. Indexes that build their structure faster from many entries at once may defer
+        // applying the additions until then; queries cannot run in between.
+        default void beginAddAllInternal()
+        {
+        }
+
+        default void endAddAllInternal()
+        {
+        }
 
         void clearInternal();
+
+        // Estimates the memory retained by the index alone, excluding the values, which are shared by all indexes, see Footprint.
+        Footprint footprintInternal();
+    }
+
+    /**
+     * This interface is to be implemented by indexes that only store the ordinals of their entries, and read the entries themselves from the container.
+     *
+     * @param <V> the type that this container contains
+     */
+    interface RowIndex<V> extends InternalIndex<V>
+    {
+        // Called when the index is removed from the container, which no longer keeps its entries for it. From then on, the index must read its entries
+        // from the specified snapshot.
+        void detachInternal(EntryOrdinals.Snapshot<V> rows);
     }
 
     private final ArrayList<InternalIndex<V>> m_indexes = new ArrayList<>();
 
+    // All values currently held by the container. All indexes hold the same values, so this allows answering membership queries for any of them without
+    // scanning their storage.
+    private final EntryOrdinals<V> m_ordinals = new EntryOrdinals<>();
+
+    // Null unless auto-indexing has been enabled.
+    private AutoIndexer<V> m_autoIndexer = null;
+
+    // Incremented with each modification of the values, see version().
+    private long m_version = 0;
+
+    // Null unless the modifications of this container are replicated to other containers, see ReplicationPrimary.
+    private ReplicationPrimary<V> m_primary = null;
+
+    // Null unless this container is a replica, see ReplicationReplica; then, only this thread may modify the container.
+    private Thread m_replicaThread = null;
+
+    // Null unless a listener has been installed. All timing happens only while it is installed, so that events cost nothing otherwise.
+    private ContainerEventListener<V> m_eventListener = null;
+    private long m_slowOperationNanos = 0;
+
     private MultiIndexContainer()
     {
         // Nothing to do, but make this constructor private so that the factory method is used instead.
@@ -100,32 +173,409 @@ public final class MultiIndexContainer<V>
 
     boolean addToAllIndexes(V value)
     {
+        checkWritable();
+        if (m_eventListener != null)
+            return addToAllIndexesRecorded(value);
+
         final boolean canAdd = m_indexes.stream().allMatch(index -> index.canAddInternal(value));
-        if (canAdd)
-            m_indexes.forEach(idx -> idx.addInternal(value));
+        if (canAdd && !m_indexes.isEmpty()) {
+            final int ordinal = m_ordinals.add(value);
+            m_indexes.forEach(idx -> idx.addInternal(value, ordinal));
+            added(value, ordinal);
+        }
         return canAdd;
     }
 
     boolean addAllToAllIndexes(Collection<? extends V> values)
     {
-        final boolean atLeastOneValueWasAdded = values.stream() //
-            .map(value -> addToAllIndexes(value)) //
-            .reduce(false, (result, element) -> result | element);
+        final long start = m_eventListener != null ? System.nanoTime() : 0;
+        final int sizeBefore = m_ordinals.size();
+
+        final boolean atLeastOneValueWasAdded;
+        m_indexes.forEach(InternalIndex::beginAddAllInternal);
+        try {
+            atLeastOneValueWasAdded = values.stream() //
+                .map(value -> addToAllIndexes(value)) //
+                .reduce(false, (result, element) -> result | element);
+        } finally {
+            m_indexes.forEach(InternalIndex::endAddAllInternal);
+        }
+
+        if (m_eventListener != null)
+            fire(ContainerEvent.Kind.BULK_LOAD, null, System.nanoTime() - start, 0, m_ordinals.size() - sizeBefore);
         return atLeastOneValueWasAdded;
     }
 
+    /**
+     * Notifies everything that follows the values of this container of an added entry.
+     */
+    private void added(V value, int ordinal)
+    {
+        ++m_version;
+        if (m_autoIndexer != null)
+            m_autoIndexer.added(value, ordinal);
+        if (m_primary != null)
+            m_primary.added(value, ordinal);
+    }
+
+    /**
+     * Adds the specified value like {@link #addToAllIndexes(Object)}, and returns the ordinal of its entry, or -1 if it has not been added.
+     */
+    int addAndGetOrdinal(V value)
+    {
+        return addToAllIndexes(value) && !m_indexes.isEmpty() ? m_ordinals.last() : -1;
+    }
+
+    /**
+     * Implements {@link #addToAllIndexes(Object)} while an event listener is installed, measuring the time spent in each index.
+     */
+    private boolean addToAllIndexesRecorded(V value)
+    {
+        final long start = System.nanoTime();
+        final long[] nanos = new long[m_indexes.size()];
+        for (int i = 0; i < m_indexes.size(); ++i) {
+            final long indexStart = System.nanoTime();
+            final boolean canAdd = m_indexes.get(i).canAddInternal(value);
+            nanos[i] += System.nanoTime() - indexStart;
+            if (!canAdd) {
+                fire(ContainerEvent.Kind.REJECTED, m_indexes.get(i), System.nanoTime() - start, nanos[i], 0);
+                return false;
+            }
+        }
+
+        if (!m_indexes.isEmpty()) {
+            final int ordinal = m_ordinals.add(value);
+            for (int i = 0; i < m_indexes.size(); ++i) {
+                final long indexStart = System.nanoTime();
+                m_indexes.get(i).addInternal(value, ordinal);
+                nanos[i] += System.nanoTime() - indexStart;
+            }
+            added(value, ordinal);
+        }
+
+        fireIfSlow(ContainerEvent.Kind.SLOW_ADD, System.nanoTime() - start, nanos);
+        return true;
+    }
+
     void removeFromAllIndexes(Index<V> except, V value)
     {
         checkNotNull(except);
+        checkWritable();
+
+        final int ordinal = m_ordinals.remove(value);
+        if (ordinal < 0) {
+            // All indexes contain the same values, so none of them can contain this one.
+            return;
+        }
 
-        m_indexes.stream() //
-            .filter(idx -> idx != except) // this index instance has already handled itself
-            .forEach(idx -> idx.removeInternal(value));
+        // This index instance has already handled itself.
+        removeFromIndexes(except, value, ordinal);
+    }
+
+    /**
+     * Removes the entry with the specified ordinal from all indexes except the specified one, which has already dropped it.
+     */
+    V removeFromAllIndexes(Index<V> except, int ordinal)
+    {
+        checkNotNull(except);
+        checkWritable();
+
+        final V value = m_ordinals.get(ordinal);
+        m_ordinals.release(ordinal);
+        removeFromIndexes(except, value, ordinal);
+        return value;
+    }
+
+    /**
+     * Removes the first added entry that is equal to the specified value from all indexes, including the calling one.
+     */
+    boolean removeFromAllIndexes(Object value)
+    {
+        checkWritable();
+        final int ordinal = m_ordinals.remove(value);
+        if (ordinal < 0)
+            return false;
+
+        // The value is equal to an entry that has been added to the container, so it must be a V.
+        @SuppressWarnings("unchecked")
+        final V entry = (V) value;
+        removeFromIndexes(null, entry, ordinal);
+        return true;
+    }
+
+    /**
+     * Removes the entry with the specified ordinal from all indexes, including the calling one.
+     */
+    V removeFromAllIndexes(int ordinal)
+    {
+        checkWritable();
+        final V value = m_ordinals.get(ordinal);
+        m_ordinals.release(ordinal);
+        removeFromIndexes(null, value, ordinal);
+        return value;
+    }
+
+    /**
+     * Removes the entries with the specified ordinals from all indexes except the specified one, which has already dropped them all at once. Each of the
+     * other indexes removes them in a single call, see {@link InternalIndex#removeAllInternal(List, int[])}.
+     */
+    void removeAllFromAllIndexes(Index<V> except, int[] ordinals)
+    {
+        checkNotNull(except);
+        checkWritable();
+
+        final ArrayList<V> values = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            values.add(m_ordinals.get(ordinal));
+            m_ordinals.release(ordinal);
+        }
+
+        if (m_eventListener == null) {
+            m_indexes.stream() //
+                .filter(idx -> idx != except) //
+                .forEach(idx -> idx.removeAllInternal(values, ordinals));
+        } else {
+            final long start = System.nanoTime();
+            final long[] nanos = new long[m_indexes.size()];
+            for (int i = 0; i < m_indexes.size(); ++i) {
+                if (m_indexes.get(i) != except) {
+                    final long indexStart = System.nanoTime();
+                    m_indexes.get(i).removeAllInternal(values, ordinals);
+                    nanos[i] = System.nanoTime() - indexStart;
+                }
+            }
+            fireIfSlow(ContainerEvent.Kind.SLOW_REMOVE, System.nanoTime() - start, nanos);
+        }
+        m_version += ordinals.length;
+
+        for (int i = 0; i < ordinals.length; ++i) {
+            if (m_autoIndexer != null)
+                m_autoIndexer.removed(values.get(i), ordinals[i]);
+            if (m_primary != null)
+                m_primary.removed(ordinals[i]);
+        }
+    }
+
+    /**
+     * Removes the entry with the specified ordinal, which has already been released, from all indexes except the specified one, which may be null.
+     */
+    private void removeFromIndexes(Index<V> except, V value, int ordinal)
+    {
+        if (m_eventListener == null) {
+            m_indexes.stream() //
+                .filter(idx -> idx != except) //
+                .forEach(idx -> idx.removeInternal(value, ordinal));
+        } else {
+            final long start = System.nanoTime();
+            final long[] nanos = new long[m_indexes.size()];
+            for (int i = 0; i < m_indexes.size(); ++i) {
+                if (m_indexes.get(i) != except) {
+                    final long indexStart = System.nanoTime();
+                    m_indexes.get(i).removeInternal(value, ordinal);
+                    nanos[i] = System.nanoTime() - indexStart;
+                }
+            }
+            fireIfSlow(ContainerEvent.Kind.SLOW_REMOVE, System.nanoTime() - start, nanos);
+        }
+        ++m_version;
+
+        if (m_autoIndexer != null)
+            m_autoIndexer.removed(value, ordinal);
+        if (m_primary != null)
+            m_primary.removed(ordinal);
     }
 
     void clearAllIndexes()
     {
+        checkWritable();
+        final long start = m_eventListener != null ? System.nanoTime() : 0;
+        final int sizeBefore = m_ordinals.size();
+
         m_indexes.forEach(idx -> idx.clearInternal());
+        m_ordinals.clear();
+        ++m_version;
+        if (m_autoIndexer != null)
+            m_autoIndexer.cleared();
+        if (m_primary != null)
+            m_primary.cleared();
+
+        if (m_eventListener != null)
+            fire(ContainerEvent.Kind.CLEAR, null, System.nanoTime() - start, 0, sizeBefore);
+    }
+
+    /**
+     * Throws unless the values of this container may be modified by the current thread, which is not the case while it is a replica.
+     */
+    void checkWritable()
+    {
+        checkState(m_replicaThread == null || m_replicaThread == Thread.currentThread(), "container is a read-only replica");
+        // The primary reads the container while holding its monitor, see ReplicationPrimary. Checking here fails before anything has been modified.
+        checkState(m_primary == null || Thread.holdsLock(this), "container is replicated, so it must be modified while holding its monitor");
+    }
+
+    /**
+     * Sets the primary that replicates the modifications of this container, or null to stop replicating them.
+     */
+    void setPrimary(ReplicationPrimary<V> primary)
+    {
+        checkState(primary == null || (m_primary == null && m_replicaThread == null), "container is already replicated or a replica");
+        m_primary = primary;
+    }
+
+    /**
+     * Sets the thread that applies the modifications of a primary to this container, which is the only one that may modify it from then on; null makes it
+     * writable again.
+     */
+    void setReplicaThread(Thread thread)
+    {
+        checkState(thread == null || (m_primary == null && m_replicaThread == null), "container is already replicated or a replica");
+        m_replicaThread = thread;
+    }
+
+    private void fire(ContainerEvent.Kind kind, Index<V> index, long durationNanos, long indexNanos, int affectedCount)
+    {
+        m_eventListener.onEvent(new ContainerEvent<>(kind, this, index, durationNanos, indexNanos, affectedCount, m_ordinals.size()));
+    }
+
+    /**
+     * Reports a single-value operation if it took at least the threshold, along with the index that took longest.
+     */
+    private void fireIfSlow(ContainerEvent.Kind kind, long durationNanos, long[] nanos)
+    {
+        if (durationNanos < m_slowOperationNanos || nanos.length == 0)
+            return;
+
+        int slowest = 0;
+        for (int i = 1; i < nanos.length; ++i) {
+            if (nanos[i] > nanos[slowest])
+                slowest = i;
+        }
+        fire(kind, m_indexes.get(slowest), durationNanos, nanos[slowest], 1);
+    }
+
+    private void register(InternalIndex<V> index)
+    {
+        m_indexes.add(index);
+        if (m_eventListener != null)
+            fire(ContainerEvent.Kind.INDEX_CREATED, index, 0, 0, 0);
+    }
+
+    /**
+     * Returns true if the specified index is currently maintained by this container.
+     */
+    boolean isRegistered(Index<V> index)
+    {
+        // Typically, only very few indexes exist, so a linear search is cheap enough.
+        return m_indexes.stream().anyMatch(idx -> idx == index);
+    }
+
+    /**
+     * Returns true if the container holds the specified value. This runs in constant time, regardless of the kind of indexes that exist.
+     */
+    boolean containsValue(Object value)
+    {
+        return m_ordinals.contains(value);
+    }
+
+    /**
+     * Returns the ordinal of the first added entry that is equal to the specified value, or -1 if the container does not hold such an entry.
+     */
+    int ordinalOf(Object value)
+    {
+        return m_ordinals.first(value);
+    }
+
+    /**
+     * Returns the entry with the specified ordinal.
+     */
+    V getByOrdinal(int ordinal)
+    {
+        return m_ordinals.get(ordinal);
+    }
+
+    /**
+     * Returns a copy of all entries, see {@link EntryOrdinals#snapshot()}.
+     */
+    EntryOrdinals.Snapshot<V> snapshot()
+    {
+        return m_ordinals.snapshot();
+    }
+
+    /**
+     * Implements {@link SequentialIndex#filter(Function, Object)} for the specified index.
+     */
+    <K> List<V> filter(SequentialIndex<V> source, Function<? super V, K> keyExtractor, K key)
+    {
+        // An index that has been removed from this container is no longer kept in sync with it, and must answer from its own data.
+        if (m_autoIndexer == null || !isRegistered(source))
+            return AutoIndexer.scan(source, keyExtractor, key);
+        return m_autoIndexer.filter(source, keyExtractor, key);
+    }
+
+    /**
+     * Implements {@link SequentialIndex#cursor(String)} for the specified index, whose order must be the insertion order of the container. A null token
+     * denotes the position before the first entry.
+     */
+    Cursor<V> cursor(SequentialIndex<V> source, String token)
+    {
+        checkState(isRegistered(source), "index has been removed from its container");
+
+        // A token consists of the stamp and the ordinal of the entry at the position, both incremented so that the start is "0-0".
+        long stamp = -1;
+        int ordinal = -1;
+        if (token != null) {
+            final int separator = token.indexOf('-');
+            try {
+                checkArgument(separator > 0, "Token argument was malformed");
+                stamp = Long.parseLong(token.substring(0, separator), Character.MAX_RADIX) - 1;
+                ordinal = Integer.parseInt(token.substring(separator + 1), Character.MAX_RADIX) - 1;
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Token argument was malformed", ex);
+            }
+            checkArgument(stamp >= -1 && ordinal >= -1, "Token argument was malformed");
+        }
+
+        final long initialStamp = stamp;
+        final int initialOrdinal = ordinal;
+        return new Cursor<V>() {
+            private long m_stamp = initialStamp;
+            private int m_ordinal = initialOrdinal;
+
+            @Override
+            public boolean hasNext()
+            {
+                return m_ordinals.next(m_ordinal, m_stamp) >= 0;
+            }
+
+            @Override
+            public V next()
+            {
+                final int next = m_ordinals.next(m_ordinal, m_stamp);
+                if (next < 0)
+                    throw new NoSuchElementException();
+
+                m_ordinal = next;
+                m_stamp = m_ordinals.stamp(next);
+                return m_ordinals.get(next);
+            }
+
+            @Override
+            public String token()
+            {
+                return Long.toString(m_stamp + 1, Character.MAX_RADIX) + "-" + Integer.toString(m_ordinal + 1, Character.MAX_RADIX);
+            }
+
+            @Override
+            public String toString()
+            {
+                return "Cursor: " + token();
+            }
+        };
+    }
+
+    private void checkNoDataYet()
+    {
+        checkState(m_indexes.stream().findFirst().map(idx -> idx.size()).orElse(0) == 0, "must create all indexes before putting data into the container");
     }
 
     // --------------------------------------------------------------------
@@ -158,10 +608,56 @@ public final class MultiIndexContainer<V>
      */
     public SequentialIndex<V> createSequentialIndex()
     {
-        checkState(m_indexes.stream().findFirst().map(idx -> idx.size()).orElse(0) == 0, "must create all indexes before putting data into the container");
+        checkNoDataYet();
 
         final ArrayListIndex<V> index = new ArrayListIndex<>(this);
-        m_indexes.add(index);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new sequential index that allows removing its oldest values cheaply, for using the container as a first-in-first-out queue.
+     * <p>
+     * In contrast to the index returned by {@link #createSequentialIndex()}, this index does not accept null values.
+     *
+     * @return the new index, never null
+     */
+    public QueueIndex<V> createQueueIndex()
+    {
+        checkNoDataYet();
+
+        final SegmentedArrayIndex<V> index = new SegmentedArrayIndex<>(this);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new sequential index that stores selected fields of its values in primitive columns.
+     * <p>
+     * In contrast to the index returned by {@link #createSequentialIndex()}, this index does not accept null values.
+     *
+     * @return the new index, never null
+     */
+    public ColumnarIndex<V> createColumnarIndex()
+    {
+        checkNoDataYet();
+
+        final ColumnarArrayIndex<V> index = new ColumnarArrayIndex<>(this);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new sequential index that also allows access to its values by position.
+     *
+     * @return the new index, never null
+     */
+    public PositionalIndex<V> createPositionalIndex()
+    {
+        checkNoDataYet();
+
+        final TreapIndex<V> index = new TreapIndex<>(this);
+        register(index);
         return index;
     }
 
@@ -175,13 +671,416 @@ public final class MultiIndexContainer<V>
     public <K> UniqueIndex<K, V> createHashedUniqueIndex(Function<V, K> keyExtractor)
     {
         checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
-        checkState(m_indexes.stream().findFirst().map(idx -> idx.size()).orElse(0) == 0, "must create all indexes before putting data into the container");
+        checkNoDataYet();
 
         final HashMapIndex<K, V> index = new HashMapIndex<>(this, keyExtractor);
-        m_indexes.add(index);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new UniqueIndex that is based on hashing keys, whose hash table grows incrementally.
+     * <p>
+     * In contrast to the index returned by {@link #createHashedUniqueIndex(Function)}, growing the table does not rehash all keys at once, but spreads the
+     * work over subsequent modifications. This avoids latency spikes when adding values to large indexes.
+     *
+     * @param keyExtractor a function defining which key to use for the values
+     * @return the new index, never null
+     * @param <K> the type of key
+     */
+    public <K> UniqueIndex<K, V> createIncrementalHashedUniqueIndex(Function<V, K> keyExtractor)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        checkNoDataYet();
+
+        final IncrementalHashIndex<K, V> index = new IncrementalHashIndex<>(this, keyExtractor, Equivalence.equals());
+        register(index);
         return index;
     }
 
+    /**
+     * Creates a new UniqueIndex that is based on hashing keys, and compares keys by the specified equivalence instead of their equals() method.
+     * <p>
+     * This allows, for instance, case-insensitive lookups without normalizing the keys, neither when adding values nor when looking them up. As with
+     * {@link #createIncrementalHashedUniqueIndex(Function)}, the hash table of this index grows incrementally.
+     *
+     * @param keyExtractor a function defining which key to use for the values
+     * @param equivalence the equivalence that defines when two keys are the same, must not be null
+     * @return the new index, never null
+     * @param <K> the type of key
+     */
+    public <K> UniqueIndex<K, V> createHashedUniqueIndex(Function<V, K> keyExtractor, Equivalence<? super K> equivalence)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        checkNotNull(equivalence, "Equivalence argument was null but expected non-null");
+        checkNoDataYet();
+
+        final IncrementalHashIndex<K, V> index = new IncrementalHashIndex<>(this, keyExtractor, equivalence);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new PrefixIndex that is based on a radix tree of textual keys.
+     * <p>
+     * In contrast to a UniqueIndex, multiple values may have the same key.
+     *
+     * @param keyExtractor a function defining which key to use for the values
+     * @return the new index, never null
+     */
+    public PrefixIndex<V> createPrefixIndex(Function<V, ? extends CharSequence> keyExtractor)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        checkNoDataYet();
+
+        final RadixTreeIndex<V> index = new RadixTreeIndex<>(this, keyExtractor);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new TokenIndex that is based on an inverted index of the words contained in the specified textual fields.
+     *
+     * @param fieldExtractors functions defining which textual fields of the values to index, must not be empty; a function may return null if the value
+     *            has no such field
+     * @return the new index, never null
+     */
+    public TokenIndex<V> createTokenIndex(Collection<Function<V, ? extends CharSequence>> fieldExtractors)
+    {
+        checkNotNull(fieldExtractors, "Field extractors argument was null but expected non-null");
+        checkArgument(!fieldExtractors.isEmpty(), "Field extractors argument was empty but expected at least one extractor");
+        checkNoDataYet();
+
+        final InvertedTokenIndex<V> index = new InvertedTokenIndex<>(this, fieldExtractors);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new BitmapIndex, which keeps a compressed bitmap of entries per key.
+     * <p>
+     * In contrast to a UniqueIndex, multiple values may have the same key. This index type is suited for keys with few distinct values.
+     *
+     * @param keyExtractor a function defining which key to use for the values
+     * @return the new index, never null
+     * @param <K> the type of key
+     */
+    public <K> BitmapIndex<K, V> createBitmapIndex(Function<V, K> keyExtractor)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        checkNoDataYet();
+
+        final RoaringBitmapIndex<K, V> index = new RoaringBitmapIndex<>(this, keyExtractor);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates a new SpatialIndex that is based on an R-tree.
+     * <p>
+     * In contrast to a UniqueIndex, multiple values may have the same location.
+     *
+     * @param boxExtractor a function defining the location of the values; use {@link Box#point(double, double)} for values that are located by a point
+     * @return the new index, never null
+     */
+    public SpatialIndex<V> createSpatialIndex(Function<V, Box> boxExtractor)
+    {
+        checkNotNull(boxExtractor, "Box extractor argument was null but expected non-null");
+        checkNoDataYet();
+
+        final RTreeIndex<V> index = new RTreeIndex<>(this, boxExtractor);
+        register(index);
+        return index;
+    }
+
+    /**
+     * Creates an immutable copy of this container, which takes less memory and answers lookups faster.
+     * <p>
+     * The copy holds all values in a single array, and copies of all sequential indexes and of all unique indexes that are based on hashing keys; use
+     * {@link FrozenContainer#index(SequentialIndex)} and {@link FrozenContainer#index(UniqueIndex)} to obtain them. Other indexes are not copied. This
+     * container is not affected, and may still be modified.
+     *
+     * @return the frozen copy, never null
+     */
+    public FrozenContainer<V> freeze()
+    {
+        final ArrayList<V> values = new ArrayList<>(m_ordinals.size());
+        m_ordinals.snapshot().forEachInInsertionOrder((value, ordinal) -> values.add(value));
+
+        final FrozenContainer<V> result = new FrozenContainer<>(values.toArray());
+        for (InternalIndex<V> index : m_indexes) {
+            if (index instanceof SequentialIndex) {
+                result.addSequentialIndex((SequentialIndex<V>) index);
+            } else if (index instanceof HashMapIndex) {
+                freezeHashMapIndex(result, (HashMapIndex<?, V>) index);
+            } else if (index instanceof IncrementalHashIndex) {
+                freezeIncrementalHashIndex(result, (IncrementalHashIndex<?, V>) index);
+            }
+        }
+        return result;
+    }
+
+    private static <K, V> void freezeHashMapIndex(FrozenContainer<V> result, HashMapIndex<K, V> index)
+    {
+        result.addUniqueIndex(index, index.keyExtractor(), Equivalence.equals());
+    }
+
+    private static <K, V> void freezeIncrementalHashIndex(FrozenContainer<V> result, IncrementalHashIndex<K, V> index)
+    {
+        result.addUniqueIndex(index, index.keyExtractor(), index.equivalence());
+    }
+
+    /**
+     * Replaces the contents of this container with a new snapshot of them, by applying only the differences.
+     * <p>
+     * Values are matched by their keys in the specified identity index. Values of the container whose key is not in the snapshot are removed, values of the
+     * snapshot whose key is not in the container are added, and values whose key is in both but which are not equal replace the previous ones. Values that
+     * are equal to the previous ones are not touched at all: they keep their positions in sequential indexes, and no index does any work for them. Added and
+     * replacing values are appended in the order of the snapshot.
+     * <p>
+     * In contrast to clearing the container and adding the snapshot, the container is never empty in between, and the indexes only do work for the
+     * differences. Finding the differences still takes time proportional to the number of values in the container and in the snapshot, as every key of
+     * both is looked up. This is done in parallel, so the key extractor of the identity index must be safe to call from multiple threads. The differences are
+     * then applied in a single thread: removals first, so that added values may take over the keys of removed ones in other unique indexes, then
+     * replacements, then additions.
+     * <p>
+     * Replacements are applied one at a time, each removing the previous value and then adding the new one. Hence, if two values swap their keys in another
+     * unique index, each replacement still finds the key taken by the other previous value, and both are always rejected. Should a previous value not be
+     * accepted again after its replacement has been rejected, it is counted as removed.
+     *
+     * @param newContents the new contents, must not be null, and must not contain two values with equal keys
+     * @param identity a unique index of this container that is based on hashing keys, must not be null
+     * @return the differences that have been applied, never null
+     * @throws IllegalArgumentException if the identity index is not a hashed unique index of this container, or if the new contents contain equal keys
+     * @param <K> the type of key
+     */
+    public <K> Reconciliation reconcile(Collection<? extends V> newContents, UniqueIndex<K, V> identity)
+    {
+        checkNotNull(newContents, "New contents argument was null but expected non-null");
+        checkNotNull(identity, "Identity argument was null but expected non-null");
+        checkArgument(isRegistered(identity), "Identity argument was not an index of this container");
+        checkWritable();
+
+        final Function<V, Equivalence.Wrapper<K>> identityKey = identityKey(identity);
+        final long start = m_eventListener != null ? System.nanoTime() : 0;
+
+        // Computing the differences only reads the container, so it can run in parallel.
+        final List<V> values = new ArrayList<>(newContents);
+        final List<Equivalence.Wrapper<K>> keys = values.parallelStream().map(identityKey).collect(Collectors.toList());
+        final Set<Equivalence.Wrapper<K>> keySet = new HashSet<>(keys);
+        checkArgument(keySet.size() == keys.size(), "New contents argument contained values with equal keys");
+
+        final List<V> previous = keys.parallelStream().map(key -> identity.getOptional(key.get()).orElse(null)).collect(Collectors.toList());
+        final int[] removedOrdinals = IntStream.range(0, m_ordinals.bound()) //
+            .parallel() //
+            .filter(ordinal -> m_ordinals.stamp(ordinal) >= 0 && !keySet.contains(identityKey.apply(m_ordinals.get(ordinal)))) //
+            .toArray();
+
+        for (int ordinal : removedOrdinals)
+            removeFromAllIndexes(ordinal);
+
+        int removed = removedOrdinals.length;
+        int changed = 0;
+        int unchanged = 0;
+        int rejected = 0;
+        for (int i = 0; i < values.size(); ++i) {
+            final V existing = previous.get(i);
+            if (existing == null)
+                continue;
+            if (Objects.equals(existing, values.get(i))) {
+                ++unchanged;
+                continue;
+            }
+
+            removeFromAllIndexes(m_ordinals.first(existing));
+            if (addToAllIndexes(values.get(i))) {
+                ++changed;
+            } else {
+                ++rejected;
+                // The previous value has just given up its keys, so this only fails if an index does not accept what it held before.
+                if (!addToAllIndexes(existing))
+                    ++removed;
+            }
+        }
+
+        int added = 0;
+        for (int i = 0; i < values.size(); ++i) {
+            if (previous.get(i) != null)
+                continue;
+            if (addToAllIndexes(values.get(i)))
+                ++added;
+            else
+                ++rejected;
+        }
+
+        if (m_eventListener != null)
+            fire(ContainerEvent.Kind.RECONCILE, identity, System.nanoTime() - start, 0, added + removed + changed);
+        return new Reconciliation(added, removed, changed, unchanged, rejected);
+    }
+
+    /**
+     * Returns a function that extracts the key of the specified index from a value, wrapped such that keys are compared like the index compares them.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Function<V, Equivalence.Wrapper<K>> identityKey(UniqueIndex<K, V> index)
+    {
+        if (index instanceof HashMapIndex) {
+            final Function<V, K> keyExtractor = ((HashMapIndex<K, V>) index).keyExtractor();
+            return value -> Equivalence.equals().wrap(keyExtractor.apply(value));
+        }
+        if (index instanceof IncrementalHashIndex) {
+            final IncrementalHashIndex<K, V> hashIndex = (IncrementalHashIndex<K, V>) index;
+            final Function<V, K> keyExtractor = hashIndex.keyExtractor();
+            final Equivalence<? super K> equivalence = hashIndex.equivalence();
+            return value -> equivalence.wrap(keyExtractor.apply(value));
+        }
+        throw new IllegalArgumentException("Identity argument was not a hashed unique index");
+    }
+
+    /**
+     * Enables the automatic creation of hash indexes for the key extractors passed to {@link SequentialIndex#filter(Function, Object)}.
+     * <p>
+     * Once an extractor has been used for the specified number of queries, an index for it is built on the specified executor, from a snapshot of the
+     * container. Until it is ready, queries continue to scan all values; afterwards, they are answered by the index, which is maintained along with the
+     * container. Key extractors must therefore be safe to call from the executor's threads. Use {@link #autoIndexes()} to inspect, pin, or drop these indexes.
+     * <p>
+     * In contrast to the indexes created by the other factory methods, auto-indexing may be enabled when the container already holds data.
+     *
+     * @param threshold the number of queries after which an index is built, must be positive
+     * @param executor the executor to build indexes on, must not be null
+     */
+    public void enableAutoIndexing(int threshold, Executor executor)
+    {
+        checkArgument(threshold > 0, "Threshold argument was not positive");
+        checkNotNull(executor, "Executor argument was null but expected non-null");
+        checkState(m_autoIndexer == null, "auto-indexing has already been enabled");
+
+        m_autoIndexer = new AutoIndexer<>(this, threshold, executor);
+    }
+
+    /**
+     * Installs a listener that is notified of notable operations of this container, see {@link ContainerEvent.Kind}; null removes the current listener.
+     * <p>
+     * While no listener is installed, operations do not measure any time, so that the events cost nothing. While one is installed, single additions and
+     * removals report the time spent in each index, which includes the evaluation of key extractors, if they take at least the specified threshold.
+     *
+     * @param listener the listener, or null
+     * @param slowOperationNanos the threshold in nanoseconds, from which on single additions and removals are reported, must not be negative
+     */
+    public void setEventListener(ContainerEventListener<V> listener, long slowOperationNanos)
+    {
+        checkArgument(slowOperationNanos >= 0, "Slow operation nanos argument was negative");
+
+        m_eventListener = listener;
+        m_slowOperationNanos = slowOperationNanos;
+    }
+
+    /**
+     * Returns the usage statistics of all key extractors observed since auto-indexing was enabled.
+     *
+     * @return an unmodifiable list, in the order the extractors were first used; empty if auto-indexing has not been enabled
+     */
+    public List<AutoIndex<V>> autoIndexes()
+    {
+        return m_autoIndexer == null ? Collections.emptyList() : m_autoIndexer.usages();
+    }
+
+    /**
+     * Returns the modification version of this container, which changes whenever a value is added or removed, the container is cleared, or an index is
+     * removed.
+     * <p>
+     * All indexes of a container hold the same values, so any modification affects all of them, and this version applies to each of them alike. Comparing
+     * it with a version obtained earlier tells whether the result of a query over any of the indexes may have changed in the meantime; see
+     * {@link QueryCache}, which does so for the results of expensive queries.
+     *
+     * @return the version
+     */
+    public long version()
+    {
+        return m_version;
+    }
+
+    /**
+     * Creates a cache for the results of queries over this container, which are recomputed once the container has been modified.
+     * <p>
+     * In contrast to the indexes, a cache may be created at any time.
+     *
+     * @param capacity the maximum number of results, must be positive; once reached, the least recently used result is evicted
+     * @return the new cache, never null
+     */
+    public QueryCache<V> createQueryCache(int capacity)
+    {
+        checkArgument(capacity > 0, "Capacity argument was not positive");
+        return new QueryCache<>(this, capacity);
+    }
+
+    /**
+     * Groups the values of this container by a key, and aggregates each group, in parallel. For instance:
+     * <!-- @formatter:off -->
+     * <pre>{@code
+     *   Map<String, Double> averageAgeByCity = container.aggregate(e -> e.getCity(), Aggregator.average(e -> e.getAge()));
+     *   Map<String, Long> countByName = container.aggregate(e -> e.getName(), Aggregator.count());
+     * }</pre>
+     * <!-- @formatter:on -->
+     * <p>
+     * The values are split into chunks, which are aggregated on the common fork-join pool into tables of their own, keyed by the group keys and holding the
+     * state of the aggregator in primitive arrays; the tables are then merged. Hence, both functions must be safe to call from multiple threads, and the
+     * container must not be modified until this method returns. Group keys are compared by {@link Object#equals(Object)}; null is a key like any other.
+     *
+     * @param groupKey the function that extracts the group key from a value, must not be null
+     * @param aggregator the aggregator that computes the result of each group, must not be null
+     * @return a new mutable map from the key of each non-empty group to its result, never null
+     * @param <K> the type of group keys
+     * @param <R> the type of the result of each group
+     */
+    public <K, R> Map<K, R> aggregate(Function<? super V, ? extends K> groupKey, Aggregator<? super V, R> aggregator)
+    {
+        checkNotNull(groupKey, "Group key argument was null but expected non-null");
+        checkNotNull(aggregator, "Aggregator argument was null but expected non-null");
+
+        // An aggregator only consumes values, so one for a supertype of V is one for V.
+        @SuppressWarnings("unchecked")
+        final Aggregator<V, R> typedAggregator = (Aggregator<V, R>) aggregator;
+        return new GroupAggregation<V, K, R>(m_ordinals, groupKey, typedAggregator).run();
+    }
+
+    /**
+     * Estimates the heap memory retained by this container: the values, each counted once, the table of all values that the indexes share, all indexes,
+     * and the indexes created by auto-indexing.
+     * <p>
+     * This takes time proportional to the number of values, and must be synchronized like any other access.
+     *
+     * @return the estimate, never null
+     */
+    public Footprint footprint()
+    {
+        Footprint result = m_ordinals.footprint();
+        for (InternalIndex<V> index : m_indexes)
+            result = result.plus(index.footprintInternal());
+        if (m_autoIndexer != null)
+            result = result.plus(m_autoIndexer.footprint());
+        return result;
+    }
+
+    /**
+     * Estimates the heap memory retained by the specified index alone, which excludes the values, since they are shared by all indexes.
+     * <p>
+     * This allows comparing the costs of different kinds of indexes over the same values.
+     *
+     * @param index an index of this container, must not be null
+     * @return the estimate, never null
+     */
+    public Footprint footprint(Index<V> index)
+    {
+        checkNotNull(index, "Index argument was null but expected non-null");
+
+        return m_indexes.stream() //
+            .filter(idx -> idx == index) //
+            .findFirst() //
+            .orElseThrow(() -> new IllegalArgumentException("Index argument was not an index of this container")) //
+            .footprintInternal();
+    }
+
     /**
      * Removes the specified index from this container.
      *
@@ -191,6 +1090,23 @@ public final class MultiIndexContainer<V>
     {
         checkNotNull(index, "Index argument was null but expected non-null");
 
-        m_indexes.remove(index);
+        // Indexes may be equal to each other, so make sure to remove exactly the specified instance.
+        if (!m_indexes.removeIf(idx -> idx == index))
+            return;
+        if (index instanceof RowIndex)
+            ((RowIndex<V>) index).detachInternal(m_ordinals.snapshot());
+        if (m_eventListener != null)
+            fire(ContainerEvent.Kind.INDEX_REMOVED, index, 0, 0, 0);
+
+        // Queries that read the removed index no longer see modifications of the container.
+        ++m_version;
+        if (m_indexes.isEmpty()) {
+            // Values are only held by indexes; without any index, the container is empty.
+            m_ordinals.clear();
+            if (m_autoIndexer != null)
+                m_autoIndexer.cleared();
+            if (m_primary != null)
+                m_primary.cleared();
+        }
     }
 }
@@ -0,0 +1,367 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * A front-end that applies modifications of a {@link MultiIndexContainer} on a single writer thread.
+ * <p>
+ * Any number of threads may submit modifications concurrently. They are placed into a bounded lock-free ring buffer, from which the writer thread takes them
+ * in batches; a submitting thread only blocks while the buffer is full. Each batch is applied while holding the monitor of the container, so other threads
+ * may read from the container by synchronizing on it:
+ * <!-- @formatter:off -->
+ * <pre>{@code
+ *   MutationPipeline<Employee> pipeline = MutationPipeline.create(container, 1024);
+ *   pipeline.add(employee); // from any thread
+ *   synchronized (container) {
+ *       byId.getOptional(42);
+ *   }
+ * }</pre>
+ * <!-- @formatter:on -->
+ * <p>
+ * The results of modifications are delivered as CompletableFutures, which are completed by the writer thread after it has released the monitor. Dependent
+ * actions should therefore be cheap, or use the asynchronous variants of the CompletableFuture methods. While the pipeline is open, the container must not be
+ * modified by other means.
+ * <p>
+ * A modification that throws completes its future exceptionally, and does not affect the others. Should the writer thread fail nevertheless, all pending
+ * modifications are completed exceptionally, and the pipeline refuses further ones like a closed pipeline.
+ *
+ * @param <V> the type that the container contains
+ */
+public final class MutationPipeline<V> implements AutoCloseable
+{
+    // The most commands that are applied while holding the monitor of the container, which bounds the time that readers have to wait.
+    private static final int MAX_BATCH_SIZE = 256;
+
+    // Set in the tail sequence once the pipeline has been closed, so that no further commands can be claimed.
+    private static final long CLOSED = 1L << 62;
+
+    // The longest time a producer waits for room in the buffer before checking again, in case it has not been woken.
+    private static final long MAX_PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private abstract static class Command<V, R>
+    {
+        final CompletableFuture<R> m_result = new CompletableFuture<>();
+        R m_value;
+        Throwable m_exception;
+
+        abstract R apply(MultiIndexContainer<V> container);
+
+        void complete()
+        {
+            if (m_exception != null)
+                m_result.completeExceptionally(m_exception);
+            else
+                m_result.complete(m_value);
+        }
+    }
+
+    private final MultiIndexContainer<V> m_container;
+    private final AtomicReferenceArray<Command<V, ?>> m_slots;
+    private final int m_mask;
+
+    // The sequence of the next slot to be claimed by a producer, possibly combined with CLOSED.
+    private final AtomicLong m_tail = new AtomicLong();
+    // The sequence of the next slot to be taken by the writer thread. Only the writer thread modifies it.
+    private final AtomicLong m_head = new AtomicLong();
+
+    private final Thread m_writer;
+    private volatile boolean m_isWriterParked = false;
+    // The producers that wait for room in the buffer, which the writer thread wakes whenever it has taken commands.
+    private final ConcurrentLinkedQueue<Thread> m_waitingProducers = new ConcurrentLinkedQueue<>();
+    // Set before the pipeline is closed because the writer thread has failed.
+    private volatile Throwable m_writerFailure = null;
+
+    private MutationPipeline(MultiIndexContainer<V> container, int capacity)
+    {
+        m_container = container;
+        m_slots = new AtomicReferenceArray<>(capacity);
+        m_mask = capacity - 1;
+        m_writer = new Thread(this::run, "MutationPipeline writer");
+        m_writer.setDaemon(true);
+    }
+
+    /**
+     * Creates a new instance, and starts its writer thread.
+     *
+     * @param container the container to modify, must not be null
+     * @param capacity the number of modifications that may be pending before submitting threads block, must be positive; it is rounded up to a power of two
+     * @return the new instance, never null
+     * @param <V> the type that the container contains
+     */
+    public static <V> MutationPipeline<V> create(MultiIndexContainer<V> container, int capacity)
+    {
+        checkNotNull(container, "Container argument was null but expected non-null");
+        checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity argument was not within the supported range");
+
+        final MutationPipeline<V> pipeline = new MutationPipeline<>(container, Integer.highestOneBit(capacity * 2 - 1));
+        pipeline.m_writer.start();
+        return pipeline;
+    }
+
+    // --------------------------------------------------------------------
+
+    private <R> CompletableFuture<R> enqueue(Command<V, R> command)
+    {
+        long sequence;
+        while (true) {
+            sequence = m_tail.get();
+            if ((sequence & CLOSED) != 0)
+                throw new IllegalStateException(m_writerFailure == null ? "pipeline has been closed" : "writer thread has failed", m_writerFailure);
+
+            if (sequence - m_head.get() >= m_slots.length()) {
+                // The buffer is full; wait for the writer thread to make room.
+                awaitRoom(sequence);
+            } else if (m_tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        m_slots.set((int) sequence & m_mask, command);
+        if (m_isWriterParked)
+            LockSupport.unpark(m_writer);
+        return command.m_result;
+    }
+
+    /**
+     * Parks the calling producer until the writer thread has taken commands from the full buffer, or another producer has claimed the specified sequence, or
+     * the pipeline has been closed.
+     */
+    private void awaitRoom(long sequence)
+    {
+        final Thread producer = Thread.currentThread();
+        m_waitingProducers.add(producer);
+        try {
+            // Check again after registering, as the writer thread may have made room and looked for waiting producers in between.
+            if (m_tail.get() == sequence && sequence - m_head.get() >= m_slots.length())
+                LockSupport.parkNanos(this, MAX_PRODUCER_PARK_NANOS);
+        } finally {
+            m_waitingProducers.remove(producer);
+        }
+    }
+
+    private void wakeProducers()
+    {
+        if (!m_waitingProducers.isEmpty())
+            m_waitingProducers.forEach(LockSupport::unpark);
+    }
+
+    private void run()
+    {
+        final ArrayList<Command<V, ?>> batch = new ArrayList<>(Math.min(m_slots.length(), MAX_BATCH_SIZE));
+        try {
+            process(batch);
+        } catch (Throwable ex) {
+            m_writerFailure = ex;
+            batch.forEach(command -> command.m_result.completeExceptionally(ex));
+            failPending(new IllegalStateException("writer thread has failed", ex));
+            throw ex;
+        }
+    }
+
+    private void process(ArrayList<Command<V, ?>> batch)
+    {
+        while (true) {
+            long head = m_head.get();
+            while (batch.size() < MAX_BATCH_SIZE) {
+                final int slot = (int) head & m_mask;
+                final Command<V, ?> command = m_slots.get(slot);
+                if (command == null) {
+                    // Either the buffer is empty, or the producer that claimed this slot has not published its command yet.
+                    break;
+                }
+                batch.add(command);
+                m_slots.lazySet(slot, null);
+                ++head;
+            }
+
+            if (!batch.isEmpty()) {
+                // Producers register before checking the head again, so they either see this head, or are woken.
+                m_head.set(head);
+                wakeProducers();
+
+                synchronized (m_container) {
+                    batch.forEach(command -> {
+                        try {
+                            command.m_value = cast(command.apply(m_container));
+                        } catch (Throwable ex) {
+                            command.m_exception = ex;
+                        }
+                    });
+                }
+                batch.forEach(Command::complete);
+                batch.clear();
+                continue;
+            }
+
+            final long tail = m_tail.get();
+            if ((tail & CLOSED) != 0 && (tail & ~CLOSED) == head)
+                return;
+
+            m_isWriterParked = true;
+            if (m_slots.get((int) head & m_mask) == null && (m_tail.get() & CLOSED) == 0)
+                LockSupport.park(this);
+            m_isWriterParked = false;
+        }
+    }
+
+    /**
+     * Closes the pipeline, and completes all commands that are still in the buffer with the specified exception.
+     */
+    private void failPending(IllegalStateException exception)
+    {
+        long tail;
+        do {
+            tail = m_tail.get();
+        } while ((tail & CLOSED) == 0 && !m_tail.compareAndSet(tail, tail | CLOSED));
+
+        for (long head = m_head.get(); head < (tail & ~CLOSED); ++head) {
+            final int slot = (int) head & m_mask;
+            Command<V, ?> command;
+            // A producer that has claimed this slot is about to publish its command.
+            while ((command = m_slots.get(slot)) == null)
+                Thread.yield();
+            m_slots.lazySet(slot, null);
+            m_head.lazySet(head + 1);
+            command.m_result.completeExceptionally(exception);
+        }
+        wakeProducers();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Adds the specified value to the container.
+     *
+     * @param value the value to add
+     * @return a future that is completed with true if the value has been added, see {@link Index#add(Object)}
+     * @throws IllegalStateException if the pipeline has been closed
+     */
+    public CompletableFuture<Boolean> add(V value)
+    {
+        return enqueue(new Command<V, Boolean>() {
+            @Override
+            Boolean apply(MultiIndexContainer<V> container)
+            {
+                return container.addToAllIndexes(value);
+            }
+        });
+    }
+
+    /**
+     * Removes the first added entry that is equal to the specified value from the container.
+     *
+     * @param value the value to remove
+     * @return a future that is completed with true if an entry has been removed
+     * @throws IllegalStateException if the pipeline has been closed
+     */
+    public CompletableFuture<Boolean> remove(Object value)
+    {
+        return enqueue(new Command<V, Boolean>() {
+            @Override
+            Boolean apply(MultiIndexContainer<V> container)
+            {
+                return container.removeFromAllIndexes(value);
+            }
+        });
+    }
+
+    /**
+     * Replaces the value that has the specified key in the specified index by the specified value, or adds the value if there is no such key.
+     * <p>
+     * If the new value is rejected by any index, the previous value is added again. It is then the most recently added value, as seen by sequential indexes
+     * and cursors, rather than at its former position.
+     *
+     * @param index the index that defines the key, must not be null and must belong to the container
+     * @param key the key of the new value in the index
+     * @param value the new value
+     * @return a future that is completed with true if the new value has been stored, or false if it has been rejected
+     * @throws IllegalArgumentException if the index does not belong to the container
+     * @throws IllegalStateException if the pipeline has been closed
+     * @param <K> the type of key
+     */
+    public <K> CompletableFuture<Boolean> upsert(UniqueIndex<K, V> index, K key, V value)
+    {
+        checkNotNull(index, "Index argument was null but expected non-null");
+        // The writer thread holds the monitor while applying modifications, which may remove indexes.
+        synchronized (m_container) {
+            checkArgument(m_container.isRegistered(index), "Index argument was not an index of the container");
+        }
+
+        return enqueue(new Command<V, Boolean>() {
+            @Override
+            Boolean apply(MultiIndexContainer<V> container)
+            {
+                final V previous = index.remove(key);
+                if (container.addToAllIndexes(value))
+                    return true;
+                if (previous != null)
+                    container.addToAllIndexes(previous);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Runs the specified function on the writer thread, after all previously submitted modifications have been applied.
+     * <p>
+     * This is an alternative to synchronizing on the container, for instance to read values that depend on a modification.
+     *
+     * @param function the function, must not be null
+     * @return a future that is completed with the result of the function
+     * @throws IllegalStateException if the pipeline has been closed
+     * @param <R> the type of result
+     */
+    public <R> CompletableFuture<R> submit(Function<? super MultiIndexContainer<V>, R> function)
+    {
+        checkNotNull(function, "Function argument was null but expected non-null");
+
+        return enqueue(new Command<V, R>() {
+            @Override
+            R apply(MultiIndexContainer<V> container)
+            {
+                return function.apply(container);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting modifications, and waits until the writer thread has applied all pending ones.
+     */
+    @Override
+    public void close()
+    {
+        long tail;
+        do {
+            tail = m_tail.get();
+        } while ((tail & CLOSED) == 0 && !m_tail.compareAndSet(tail, tail | CLOSED));
+        LockSupport.unpark(m_writer);
+        wakeProducers();
+
+        boolean wasInterrupted = false;
+        while (m_writer.isAlive()) {
+            try {
+                m_writer.join();
+            } catch (InterruptedException ex) {
+                wasInterrupted = true;
+            }
+        }
+        if (wasInterrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,713 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A thread-safe container that distributes its values over a fixed number of partitions, each of which is a {@link MultiIndexContainer} of its own.
+ * <p>
+ * Each value is assigned to a partition by hashing its partition key. Every partition is guarded by a lock of its own, so modifications of values that
+ * belong to different partitions can run in parallel.
+ * <p>
+ * The following indexes are supported:
+ * <ul>
+ * <li>{@link #createSequentialIndex()} - sequential access to the values in insertion order <i>within each partition</i>; partitions follow each other
+ * <li>{@link #createPartitionKeyIndex()} - access by partition key, which is unique; lookups only involve the partition that the key belongs to
+ * <li>{@link #createHashedUniqueIndex(Function)} - access by another key, which is unique across all partitions
+ * </ul>
+ * As with MultiIndexContainer, all indexes must be created before data can be put into the container. Creating indexes is not thread-safe.
+ * <p>
+ * Uniqueness of keys other than the partition key is enforced by reserving the key in a concurrent map before a value is added to its partition. Hence,
+ * lookups via such a key can observe a value while its addition is still in progress, and might be rolled back because of another index's constraint.
+ * Clearing the container waits for additions in progress, and blocks new ones, so that it cannot discard the reservation of a value that is added after.
+ * <p>
+ * Iteration works on a snapshot of each partition, taken while holding its lock, and never throws ConcurrentModificationException. However, the snapshots
+ * of different partitions are taken at different times. Cursors take no snapshots; they visit the partitions one after another, each in insertion order.
+ *
+ * @param <P> the type of partition key
+ * @param <V> the type that this Container contains
+ */
+public final class PartitionedContainer<P, V>
+{
+    private static final class Partition<V>
+    {
+        final MultiIndexContainer<V> m_container = MultiIndexContainer.create();
+        final SequentialIndex<V> m_bySequence = m_container.createSequentialIndex();
+        UniqueIndex<Object, V> m_byPartitionKey = null;
+    }
+
+    private final Partition<V>[] m_partitions;
+    private final Function<V, P> m_partitionKeyExtractor;
+    private final CopyOnWriteArrayList<GlobalUniqueIndex<?>> m_globalIndexes = new CopyOnWriteArrayList<>();
+    // Additions hold the read lock from reserving their keys until the value is in its partition; clearing holds the write lock.
+    private final ReadWriteLock m_clearLock = new ReentrantReadWriteLock();
+
+    private PartitionedContainer(int partitionCount, Function<V, P> partitionKeyExtractor)
+    {
+        m_partitions = newPartitions(partitionCount);
+        for (int i = 0; i < partitionCount; ++i)
+            m_partitions[i] = new Partition<>();
+        m_partitionKeyExtractor = partitionKeyExtractor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Partition<V>[] newPartitions(int length)
+    {
+        return (Partition<V>[]) new Partition<?>[length];
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param partitionCount the number of partitions, must be positive; typically about the number of threads that modify the container concurrently
+     * @param partitionKeyExtractor a function defining by which key values are assigned to partitions
+     * @return the new instance, never null
+     * @param <P> the type of partition key
+     * @param <V> the type that the new container is to contain
+     */
+    public static <P, V> PartitionedContainer<P, V> create(int partitionCount, Function<V, P> partitionKeyExtractor)
+    {
+        checkArgument(partitionCount > 0, "Partition count argument was not positive");
+        checkNotNull(partitionKeyExtractor, "Partition key extractor argument was null but expected non-null");
+
+        return new PartitionedContainer<>(partitionCount, partitionKeyExtractor);
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return the number of partitions
+     */
+    public int partitionCount()
+    {
+        return m_partitions.length;
+    }
+
+    private Partition<V> partitionOfKey(Object partitionKey)
+    {
+        final int hash = Objects.hashCode(partitionKey);
+        return m_partitions[Math.floorMod(hash ^ (hash >>> 16), m_partitions.length)];
+    }
+
+    private Partition<V> partitionOf(V value)
+    {
+        return partitionOfKey(m_partitionKeyExtractor.apply(value));
+    }
+
+    private void checkNoDataYet()
+    {
+        checkState(size() == 0, "must create all indexes before putting data into the container");
+    }
+
+    // --------------------------------------------------------------------
+
+    boolean add(V value)
+    {
+        if (value == null) {
+            // Cannot extract a partition key from a null value.
+            return false;
+        }
+
+        int reserved = 0;
+        m_clearLock.readLock().lock();
+        try {
+            for (; reserved < m_globalIndexes.size(); ++reserved) {
+                if (!m_globalIndexes.get(reserved).reserve(value))
+                    return false;
+            }
+
+            final Partition<V> partition = partitionOf(value);
+            final boolean wasAdded;
+            synchronized (partition) {
+                wasAdded = partition.m_bySequence.add(value);
+            }
+            if (wasAdded)
+                reserved = 0; // keep all reservations
+            return wasAdded;
+        } finally {
+            for (int i = 0; i < reserved; ++i)
+                m_globalIndexes.get(i).release(value);
+            m_clearLock.readLock().unlock();
+        }
+    }
+
+    boolean addAll(Collection<? extends V> values)
+    {
+        boolean atLeastOneValueWasAdded = false;
+        for (V value : values)
+            atLeastOneValueWasAdded |= add(value);
+        return atLeastOneValueWasAdded;
+    }
+
+    /**
+     * Removes the value from its partition, and releases its keys in all global indexes.
+     */
+    private boolean remove(Partition<V> partition, V value)
+    {
+        synchronized (partition) {
+            if (!partition.m_bySequence.remove(value))
+                return false;
+            // Release while still holding the lock, so that a concurrent removal of the same value cannot release keys that have been reserved again.
+            m_globalIndexes.forEach(index -> index.release(value));
+            return true;
+        }
+    }
+
+    void clear()
+    {
+        m_clearLock.writeLock().lock();
+        try {
+            clear(0);
+        } finally {
+            m_clearLock.writeLock().unlock();
+        }
+    }
+
+    private void clear(int from)
+    {
+        // Acquire all locks in ascending order, so that no other thread can see a partially cleared container.
+        if (from < m_partitions.length) {
+            synchronized (m_partitions[from]) {
+                clear(from + 1);
+                m_partitions[from].m_bySequence.clear();
+            }
+        } else {
+            m_globalIndexes.forEach(GlobalUniqueIndex::clearInternal);
+        }
+    }
+
+    int size()
+    {
+        int result = 0;
+        for (Partition<V> partition : m_partitions) {
+            synchronized (partition) {
+                result += partition.m_bySequence.size();
+            }
+        }
+        return result;
+    }
+
+    private List<V> snapshot(Partition<V> partition)
+    {
+        synchronized (partition) {
+            final ArrayList<V> result = new ArrayList<>(partition.m_bySequence.size());
+            partition.m_bySequence.forEach(result::add);
+            return result;
+        }
+    }
+
+    /**
+     * Returns a parallel stream of all values in the container.
+     * <p>
+     * The partitions are processed concurrently on the common fork-join pool, each one from a snapshot taken while holding its lock.
+     *
+     * @return a parallel stream, never null
+     */
+    public Stream<V> parallelStream()
+    {
+        return IntStream.range(0, m_partitions.length) //
+            .parallel() //
+            .mapToObj(i -> snapshot(m_partitions[i])) //
+            .flatMap(List::stream);
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Creates a new sequential index.
+     *
+     * @return the new index, never null
+     */
+    public SequentialIndex<V> createSequentialIndex()
+    {
+        checkNoDataYet();
+        return new PartitionedSequentialIndex();
+    }
+
+    /**
+     * Creates a new UniqueIndex on the partition key.
+     *
+     * @return the new index, never null
+     */
+    public UniqueIndex<P, V> createPartitionKeyIndex()
+    {
+        checkNoDataYet();
+        for (Partition<V> partition : m_partitions) {
+            if (partition.m_byPartitionKey == null)
+                partition.m_byPartitionKey = partition.m_container.createHashedUniqueIndex(m_partitionKeyExtractor::apply);
+        }
+        return new PartitionKeyIndex();
+    }
+
+    /**
+     * Creates a new UniqueIndex whose keys are unique across all partitions.
+     *
+     * @param keyExtractor a function defining which key to use for the values
+     * @return the new index, never null
+     * @param <K> the type of key
+     */
+    public <K> UniqueIndex<K, V> createHashedUniqueIndex(Function<V, K> keyExtractor)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        checkNoDataYet();
+
+        final GlobalUniqueIndex<K> index = new GlobalUniqueIndex<>(keyExtractor);
+        m_globalIndexes.add(index);
+        return index;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Base class of all indexes, which implements modifications by delegating to the container.
+     */
+    private abstract class PartitionedIndex implements Index<V>
+    {
+        @Override
+        public boolean add(V value)
+        {
+            return PartitionedContainer.this.add(value);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends V> values)
+        {
+            return PartitionedContainer.this.addAll(values);
+        }
+
+        @Override
+        public void clear()
+        {
+            PartitionedContainer.this.clear();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return size() == 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return PartitionedContainer.this.size();
+        }
+
+        boolean containsValueInternal(Object object)
+        {
+            try {
+                final V value = cast(object);
+                final Partition<V> partition = partitionOf(value);
+                synchronized (partition) {
+                    return partition.m_bySequence.contains(value);
+                }
+            } catch (ClassCastException ex) {
+                // The partition key extractor cannot handle this value, so it cannot have been added.
+                return false;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    private final class PartitionedSequentialIndex extends PartitionedIndex implements SequentialIndex<V>
+    {
+        @Override
+        public boolean remove(Object object)
+        {
+            try {
+                final V value = cast(object);
+                return value != null && PartitionedContainer.this.remove(partitionOf(value), value);
+            } catch (ClassCastException ex) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean contains(Object value)
+        {
+            return value != null && containsValueInternal(value);
+        }
+
+        @Override
+        public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+        {
+            checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+
+            final ArrayList<V> result = new ArrayList<>();
+            for (Partition<V> partition : m_partitions) {
+                synchronized (partition) {
+                    result.addAll(partition.m_bySequence.filter(keyExtractor, key));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Cursor<V> cursor()
+        {
+            return new PartitionedCursor(0, null);
+        }
+
+        @Override
+        public Cursor<V> cursor(String token)
+        {
+            checkNotNull(token, "Token argument was null but expected non-null");
+
+            // A token consists of the number of the partition and the token of the cursor within that partition.
+            final int separator = token.indexOf(':');
+            final int partition;
+            try {
+                checkArgument(separator > 0, "Token argument was malformed");
+                partition = Integer.parseInt(token.substring(0, separator), Character.MAX_RADIX);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Token argument was malformed", ex);
+            }
+            checkArgument(partition >= 0 && partition < m_partitions.length, "Token argument was malformed");
+            return new PartitionedCursor(partition, token.substring(separator + 1));
+        }
+
+        @Override
+        public Iterator<V> iterator()
+        {
+            return Iterators.unmodifiableIterator(Iterators.concat(Iterators.transform(Iterators.forArray(m_partitions), p -> snapshot(p).iterator())));
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PartitionedSequentialIndex: " + Iterators.toString(iterator());
+        }
+    }
+
+    /**
+     * A cursor that visits the partitions one after another, using a cursor of the current partition while holding its lock.
+     */
+    private final class PartitionedCursor implements Cursor<V>
+    {
+        private int m_partition;
+        private Cursor<V> m_cursor;
+
+        PartitionedCursor(int partition, String token)
+        {
+            m_partition = partition;
+            final Partition<V> current = m_partitions[partition];
+            synchronized (current) {
+                m_cursor = token == null ? current.m_bySequence.cursor() : current.m_bySequence.cursor(token);
+            }
+        }
+
+        /**
+         * Moves on to the next partition that has a value after the current position, and returns that partition, or null if there is none.
+         */
+        private Partition<V> advance()
+        {
+            while (true) {
+                final Partition<V> current = m_partitions[m_partition];
+                synchronized (current) {
+                    if (m_cursor.hasNext())
+                        return current;
+                }
+                if (m_partition == m_partitions.length - 1)
+                    return null;
+
+                final Partition<V> next = m_partitions[++m_partition];
+                synchronized (next) {
+                    m_cursor = next.m_bySequence.cursor();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return advance() != null;
+        }
+
+        @Override
+        public V next()
+        {
+            // Another thread may remove the value after advance() has seen it, so check again while holding the lock.
+            for (Partition<V> current = advance(); current != null; current = advance()) {
+                synchronized (current) {
+                    if (m_cursor.hasNext())
+                        return m_cursor.next();
+                }
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public String token()
+        {
+            synchronized (m_partitions[m_partition]) {
+                return Integer.toString(m_partition, Character.MAX_RADIX) + ":" + m_cursor.token();
+            }
+        }
+    }
+
+    private final class PartitionKeyIndex extends PartitionedIndex implements UniqueIndex<P, V>
+    {
+        @Override
+        public V remove(Object key)
+        {
+            final Partition<V> partition = partitionOfKey(key);
+            synchronized (partition) {
+                final Optional<V> value = partition.m_byPartitionKey.getOptional(key);
+                if (value.isPresent())
+                    PartitionedContainer.this.remove(partition, value.get());
+                return value.orElse(null);
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            final Partition<V> partition = partitionOfKey(key);
+            synchronized (partition) {
+                return partition.m_byPartitionKey.containsKey(key);
+            }
+        }
+
+        @Override
+        public boolean containsValue(Object value)
+        {
+            return value != null && containsValueInternal(value);
+        }
+
+        @Override
+        public Optional<V> getOptional(P key)
+        {
+            final Partition<V> partition = partitionOfKey(key);
+            synchronized (partition) {
+                return partition.m_byPartitionKey.getOptional(key);
+            }
+        }
+
+        @Override
+        public Set<P> keys()
+        {
+            return new KeySetView<>(this);
+        }
+
+        // Like iteration of the sequential index, this works on a snapshot of each partition, taken while holding its lock. The arrays of the snapshots are
+        // reused for all partitions.
+
+        @Override
+        public EntryIterator<P, V> entries()
+        {
+            return new EntryIterator<P, V>() {
+                private int m_partition = -1;
+                private Object[] m_keys = new Object[0];
+                private Object[] m_values = new Object[0];
+                private int m_count = 0;
+                private int m_position = -1;
+
+                @Override
+                public boolean next()
+                {
+                    while (m_position + 1 >= m_count) {
+                        if (m_partition + 1 >= m_partitions.length) {
+                            m_position = m_count;
+                            return false;
+                        }
+                        takeSnapshot(m_partitions[++m_partition]);
+                    }
+                    ++m_position;
+                    return true;
+                }
+
+                private void takeSnapshot(Partition<V> partition)
+                {
+                    synchronized (partition) {
+                        final int size = partition.m_byPartitionKey.size();
+                        if (size > m_keys.length) {
+                            m_keys = new Object[size];
+                            m_values = new Object[size];
+                        }
+                        final EntryIterator<Object, V> entries = partition.m_byPartitionKey.entries();
+                        for (m_count = 0; entries.next(); ++m_count) {
+                            m_keys[m_count] = entries.key();
+                            m_values[m_count] = entries.value();
+                        }
+                    }
+                    m_position = -1;
+                }
+
+                @Override
+                public P key()
+                {
+                    checkEntry(m_position >= 0 && m_position < m_count);
+                    return cast(m_keys[m_position]);
+                }
+
+                @Override
+                public V value()
+                {
+                    checkEntry(m_position >= 0 && m_position < m_count);
+                    return cast(m_values[m_position]);
+                }
+            };
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super P, ? super V> action)
+        {
+            checkNotNull(action, "Action argument was null but expected non-null");
+
+            // The action is not called while holding a lock, since it might access other partitions.
+            for (EntryIterator<P, V> entries = entries(); entries.next();)
+                action.accept(entries.key(), entries.value());
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PartitionKeyIndex: " + size() + " values";
+        }
+    }
+
+    private final class GlobalUniqueIndex<K> extends PartitionedIndex implements UniqueIndex<K, V>
+    {
+        private final ConcurrentHashMap<K, V> m_index = new ConcurrentHashMap<>();
+        private final Function<V, K> m_keyExtractor;
+
+        GlobalUniqueIndex(Function<V, K> keyExtractor)
+        {
+            m_keyExtractor = keyExtractor;
+        }
+
+        boolean reserve(V value)
+        {
+            final K key = m_keyExtractor.apply(value);
+            // ConcurrentHashMap does not support null keys; such values are rejected, as MultiIndexContainer does not support them either.
+            return key != null && m_index.putIfAbsent(key, value) == null;
+        }
+
+        void release(V value)
+        {
+            final K key = m_keyExtractor.apply(value);
+            if (key != null)
+                m_index.remove(key, value);
+        }
+
+        void clearInternal()
+        {
+            m_index.clear();
+        }
+
+        @Override
+        public V remove(Object key)
+        {
+            if (key == null)
+                return null;
+
+            final V value = m_index.get(key);
+            if (value == null)
+                return null;
+            // Another thread might have removed this value in the meantime, in which case the value was not removed by this thread.
+            return PartitionedContainer.this.remove(partitionOf(value), value) ? value : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return key != null && m_index.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value)
+        {
+            return value != null && containsValueInternal(value);
+        }
+
+        @Override
+        public Optional<V> getOptional(K key)
+        {
+            return key == null ? Optional.empty() : Optional.ofNullable(m_index.get(key));
+        }
+
+        @Override
+        public Set<K> keys()
+        {
+            return Collections.unmodifiableSet(m_index.keySet());
+        }
+
+        // Like the concurrent map, this is weakly consistent: it reflects some, but not necessarily all modifications made while iterating.
+
+        @Override
+        public EntryIterator<K, V> entries()
+        {
+            // Iterating the keys avoids the entry objects that the concurrent map creates for iterating its entries.
+            final Iterator<K> keys = m_index.keySet().iterator();
+            return new EntryIterator<K, V>() {
+                private K m_key = null;
+                private V m_value = null;
+
+                @Override
+                public boolean next()
+                {
+                    m_value = null;
+                    while (m_value == null && keys.hasNext()) {
+                        m_key = keys.next();
+                        // The value may have been removed in the meantime.
+                        m_value = m_index.get(m_key);
+                    }
+                    return m_value != null;
+                }
+
+                @Override
+                public K key()
+                {
+                    checkEntry(m_value != null);
+                    return m_key;
+                }
+
+                @Override
+                public V value()
+                {
+                    checkEntry(m_value != null);
+                    return m_value;
+                }
+            };
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action)
+        {
+            checkNotNull(action, "Action argument was null but expected non-null");
+            m_index.forEach(action);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "GlobalUniqueIndex: " + m_index;
+        }
+    }
+}
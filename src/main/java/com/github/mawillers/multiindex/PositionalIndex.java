@@ -0,0 +1,49 @@
+package com.github.mawillers.multiindex;
+
+import java.util.List;
+
+/**
+ * A sequential index that additionally allows access to its values by their position in insertion order.
+ * <p>
+ * All positional operations run in logarithmic time, which makes this index suitable for paginating through large containers.
+ *
+ * @param <V> the type of elements in this index
+ */
+public interface PositionalIndex<V> extends SequentialIndex<V>
+{
+    /**
+     * Returns the value at the specified position.
+     *
+     * @param position the position, must be less than the size of the index
+     * @return the value at the specified position
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public V get(int position);
+
+    /**
+     * Returns the position of the first occurrence of the specified value.
+     *
+     * @param value the value
+     * @return the position of the first occurrence of the value, or -1 if this index does not contain the value
+     */
+    public int indexOf(Object value);
+
+    /**
+     * Returns the values between the specified positions.
+     *
+     * @param fromPosition the first position (inclusive)
+     * @param toPosition the last position (exclusive), must not be less than fromPosition
+     * @return a new list with the values, never null
+     * @throws IndexOutOfBoundsException if the positions are out of range
+     */
+    public List<V> subList(int fromPosition, int toPosition);
+
+    /**
+     * Removes the value at the specified position from the container.
+     *
+     * @param position the position, must be less than the size of the index
+     * @return the value that has been removed
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public V removeAt(int position);
+}
@@ -0,0 +1,40 @@
+package com.github.mawillers.multiindex;
+
+import java.util.List;
+
+/**
+ * An index that allows access to its values by means of a prefix of a textual key.
+ * <p>
+ * Multiple values may share the same key. Values are returned in lexicographic order of their keys, and values with equal keys in insertion order.
+ *
+ * @param <V> the type of elements in this index
+ */
+public interface PrefixIndex<V> extends Index<V>
+{
+    /**
+     * Returns all values whose key starts with the specified prefix.
+     * <p>
+     * The returned Iterable is a live view of this index; iterating it while the container is being modified has unspecified results.
+     *
+     * @param prefix the prefix, must not be null; an empty prefix matches all values
+     * @return the values whose key starts with the prefix, never null
+     */
+    public Iterable<V> withPrefix(CharSequence prefix);
+
+    /**
+     * Returns at most the first {@code limit} values whose key starts with the specified prefix.
+     *
+     * @param prefix the prefix, must not be null; an empty prefix matches all values
+     * @param limit the maximum number of values to return, must not be negative
+     * @return a new list with the matching values, never null
+     */
+    public List<V> withPrefix(CharSequence prefix, int limit);
+
+    /**
+     * Returns the number of values whose key starts with the specified prefix.
+     *
+     * @param prefix the prefix, must not be null; an empty prefix matches all values
+     * @return the number of matching values
+     */
+    public int countWithPrefix(CharSequence prefix);
+}
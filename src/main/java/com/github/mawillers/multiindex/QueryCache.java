@@ -0,0 +1,153 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache for the results of expensive queries over a {@link MultiIndexContainer}, such as filtered scans or sorted top-N lists, created by
+ * {@link MultiIndexContainer#createQueryCache(int)}.
+ * <p>
+ * Results are cached by a key that identifies the query, and are valid as long as the {@link MultiIndexContainer#version() version} of the container is
+ * the one at which they were computed. Once the container has been modified, all results are discarded at the next access, so a cached result is never
+ * stale, and a hit costs a lookup of the key plus a single version comparison:
+ * <!-- @formatter:off -->
+ * <pre>{@code
+ *   QueryCache<Employee> cache = container.createQueryCache(100);
+ *   List<Employee> oldest = cache.get("oldest-10", () -> topN(bySequence, 10, byAge));
+ * }</pre>
+ * <!-- @formatter:on -->
+ * <p>
+ * Results are returned as they were computed, so they should be immutable. Like the container, a cache must be synchronized externally.
+ *
+ * @param <V> the type that the container contains
+ */
+public final class QueryCache<V>
+{
+    // Stands for a null result, so that a single lookup tells whether a result is cached.
+    private static final Object NULL_RESULT = new Object();
+
+    private final MultiIndexContainer<V> m_container;
+    private final LinkedHashMap<Object, Object> m_results;
+
+    // The version of the container at which all cached results have been computed.
+    private long m_version;
+    private long m_hitCount = 0;
+    private long m_missCount = 0;
+
+    QueryCache(MultiIndexContainer<V> container, int capacity)
+    {
+        m_container = container;
+        m_version = container.version();
+        // An access-ordered map evicts the least recently used result.
+        m_results = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Discards all results if the container has been modified since they were computed.
+     */
+    private void validate()
+    {
+        final long version = m_container.version();
+        if (version != m_version) {
+            m_results.clear();
+            m_version = version;
+        }
+    }
+
+    /**
+     * Returns the result of the specified query, from the cache if it holds a result for the key, otherwise by running the query and caching its result.
+     * <p>
+     * The query must only read the container. Its result may be null, which is cached as well.
+     *
+     * @param key the key that identifies the query, including its parameters and result type, must not be null
+     * @param query the query, must not be null
+     * @return the result of the query
+     * @param <R> the type of result
+     */
+    public <R> R get(Object key, Supplier<? extends R> query)
+    {
+        checkNotNull(key, "Key argument was null but expected non-null");
+        checkNotNull(query, "Query argument was null but expected non-null");
+
+        validate();
+        final Object cached = m_results.get(key);
+        if (cached != null) {
+            ++m_hitCount;
+            return cached == NULL_RESULT ? null : cast(cached);
+        }
+
+        ++m_missCount;
+        final R result = query.get();
+        // If the query has modified the container after all, the result is discarded at the next access.
+        m_results.put(key, result == null ? NULL_RESULT : result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    /**
+     * Discards the result for the specified key, if any.
+     *
+     * @param key the key of the query
+     */
+    public void invalidate(Object key)
+    {
+        m_results.remove(key);
+    }
+
+    /**
+     * Discards all results.
+     */
+    public void invalidateAll()
+    {
+        m_results.clear();
+    }
+
+    /**
+     * Returns the number of results that are currently valid.
+     *
+     * @return the number of results
+     */
+    public int size()
+    {
+        validate();
+        return m_results.size();
+    }
+
+    /**
+     * @return the number of calls to {@link #get(Object, Supplier)} that have been answered from the cache
+     */
+    public long hitCount()
+    {
+        return m_hitCount;
+    }
+
+    /**
+     * @return the number of calls to {@link #get(Object, Supplier)} that have run the query
+     */
+    public long missCount()
+    {
+        return m_missCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueryCache: " + m_results.size() + " results, " + m_hitCount + " hits, " + m_missCount + " misses";
+    }
+}
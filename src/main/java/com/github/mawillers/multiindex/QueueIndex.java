@@ -0,0 +1,38 @@
+package com.github.mawillers.multiindex;
+
+/**
+ * A sequential index that additionally allows removing its oldest values cheaply, for using the container as a first-in-first-out queue with a retention
+ * limit.
+ * <p>
+ * Removing values from the head of this index runs in constant time, and whole blocks of old values are released at once. Values can still be removed from
+ * any position by means of other indexes. This index does not accept null values, so that null can signal an empty index.
+ *
+ * @param <V> the type of elements in this index
+ */
+public interface QueueIndex<V> extends SequentialIndex<V>
+{
+    /**
+     * Returns the value that was added first, without removing it.
+     *
+     * @return the oldest value, or null if this index is empty
+     */
+    public V peekFirst();
+
+    /**
+     * Removes the value that was added first from the container.
+     *
+     * @return the oldest value, which has been removed, or null if this index is empty
+     */
+    public V pollFirst();
+
+    /**
+     * Removes all values except the specified number of most recently added ones from the container.
+     * <p>
+     * The removed values are removed from all other indexes in one pass, and this index releases its storage for them in blocks.
+     *
+     * @param count the number of values to retain, must not be negative
+     * @return the number of values that have been removed
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public int truncateOlderThan(int count);
+}
@@ -0,0 +1,572 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import com.google.common.collect.HashMultiset;
+
+/**
+ * An implementation of {@link SpatialIndex} that uses an R-tree for storage.
+ * <p>
+ * Additions are buffered in a short list, which queries scan in addition to the tree. Once the buffer is full, its entries are applied: if the buffer has
+ * grown at least as large as the tree itself, as during an initial bulk load, the tree is rebuilt from scratch using Sort-Tile-Recursive packing, which gives
+ * nearly optimal nodes; otherwise, the buffered entries are inserted one by one. During {@link #addAll(Collection)}, the buffer is not applied before all values
+ * have been added, so that loading many values at once packs them, however large the tree already is. Removals are applied immediately; underfull nodes are dissolved and their
+ * entries re-inserted.
+ * <p>
+ * The tree is only changed by modifications of the container, never by queries, so queries may run concurrently.
+ *
+ * @param <V> the type of elements in this index
+ */
+final class RTreeIndex<V> implements SpatialIndex<V>, MultiIndexContainer.InternalIndex<V>
+{
+    private static final int MAX_CHILDREN = 16;
+    private static final int MIN_CHILDREN = 6;
+    // The number of buffered additions at which they are applied to the tree.
+    private static final int MAX_PENDING = 256;
+
+    private static final class Entry<V>
+    {
+        final Box m_box;
+        final V m_value;
+        final int m_ordinal;
+
+        Entry(Box box, V value, int ordinal)
+        {
+            m_box = box;
+            m_value = value;
+            m_ordinal = ordinal;
+        }
+    }
+
+    private static final class Node<V>
+    {
+        Box m_box;
+        final boolean m_isLeaf;
+        // Either Entry<V> or Node<V> instances, depending on m_isLeaf.
+        final ArrayList<Object> m_children = new ArrayList<>(MAX_CHILDREN + 1);
+
+        Node(boolean isLeaf)
+        {
+            m_isLeaf = isLeaf;
+        }
+
+        Box childBox(int i)
+        {
+            final Object child = m_children.get(i);
+            return m_isLeaf ? ((Entry<?>) child).m_box : ((Node<?>) child).m_box;
+        }
+
+        void recomputeBox()
+        {
+            Box box = childBox(0);
+            for (int i = 1; i < m_children.size(); ++i)
+                box = box.union(childBox(i));
+            m_box = box;
+        }
+    }
+
+    private Node<V> m_root = new Node<>(true);
+    private int m_treeSize = 0;
+    private ArrayList<Entry<V>> m_pending = new ArrayList<>();
+    // Whether addAll() is in progress, which applies the buffer only once it is done.
+    private boolean m_addingAll = false;
+    private final MultiIndexContainer<V> m_container;
+    private final Function<V, Box> m_boxExtractor;
+
+    RTreeIndex(MultiIndexContainer<V> container, Function<V, Box> boxExtractor)
+    {
+        m_container = container;
+        m_boxExtractor = boxExtractor;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        // Cannot extract a box from a null value, and cannot locate a value without a box.
+        return value != null && m_boxExtractor.apply(value) != null;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        // null-check of value has already been done in canAddInternal(), which always has been called before.
+        checkNotNull(value, "Value argument was null but expected non-null");
+
+        m_pending.add(new Entry<>(m_boxExtractor.apply(value), value, ordinal));
+        if (!m_addingAll && m_pending.size() >= MAX_PENDING)
+            flushPending();
+    }
+
+    @Override
+    public void beginAddAllInternal()
+    {
+        m_addingAll = true;
+    }
+
+    @Override
+    public void endAddAllInternal()
+    {
+        m_addingAll = false;
+        if (m_pending.size() >= MAX_PENDING)
+            flushPending();
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        if (value == null) {
+            // Cannot extract a box from a null value.
+            return false;
+        }
+
+        // Recently added entries are most likely to be removed again soon, so search backwards.
+        for (int i = m_pending.size() - 1; i >= 0; --i) {
+            if (m_pending.get(i).m_ordinal == ordinal) {
+                m_pending.remove(i);
+                return true;
+            }
+        }
+
+        final Box box = m_boxExtractor.apply(value);
+        if (box == null || m_treeSize == 0)
+            return false;
+
+        final ArrayList<Entry<V>> orphans = new ArrayList<>();
+        if (!remove(m_root, box, ordinal, orphans))
+            return false;
+
+        --m_treeSize;
+        while (!m_root.m_isLeaf && m_root.m_children.size() == 1)
+            m_root = cast(m_root.m_children.get(0));
+        if (m_root.m_children.isEmpty())
+            m_root = new Node<>(true);
+        else
+            m_root.recomputeBox();
+
+        m_treeSize -= orphans.size();
+        orphans.forEach(this::insert);
+        return true;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_root = new Node<>(true);
+        m_treeSize = 0;
+        m_pending = new ArrayList<>();
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        // The boxes of the entries are their keys; those of the nodes are part of the structure.
+        final long entrySize = MemoryLayout.object(3 * 4);
+        long structure = MemoryLayout.object(5 * 4 + 1) + MemoryLayout.arrayList(m_pending.size()) + (long) m_pending.size() * entrySize;
+        long keys = 0;
+        for (Entry<V> entry : m_pending)
+            keys += MemoryLayout.keySize(entry.m_box);
+
+        final ArrayDeque<Node<V>> pending = new ArrayDeque<>();
+        pending.push(m_root);
+        while (!pending.isEmpty()) {
+            final Node<V> node = pending.pop();
+            structure += MemoryLayout.object(2 * 4 + 1) + MemoryLayout.arrayList(MAX_CHILDREN + 1) + MemoryLayout.shallowSize(node.m_box);
+            for (Object child : node.m_children) {
+                if (node.m_isLeaf) {
+                    structure += entrySize;
+                    keys += MemoryLayout.keySize(((Entry<?>) child).m_box);
+                } else {
+                    pending.push(cast(child));
+                }
+            }
+        }
+        return new Footprint(structure, keys, 0);
+    }
+
+    // --------------------------------------------------------------------
+    // Tree maintenance
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    private void flushPending()
+    {
+        if (m_pending.size() >= m_treeSize) {
+            final ArrayList<Entry<V>> entries = new ArrayList<>(m_treeSize + m_pending.size());
+            collectEntries(m_root, entries);
+            entries.addAll(m_pending);
+            m_root = bulkLoad(entries);
+            m_treeSize = entries.size();
+        } else {
+            m_pending.forEach(this::insert);
+        }
+        m_pending = new ArrayList<>();
+    }
+
+    private static <V> void collectEntries(Node<V> node, List<Entry<V>> result)
+    {
+        if (node.m_isLeaf) {
+            node.m_children.forEach(child -> result.add(cast(child)));
+        } else {
+            node.m_children.forEach(child -> collectEntries(cast(child), result));
+        }
+    }
+
+    /**
+     * Builds a new tree using Sort-Tile-Recursive packing: sort by x, cut into vertical slices, sort each slice by y, and fill the nodes of one level in that
+     * order. Then repeat with these nodes to build the next level.
+     */
+    private static <V> Node<V> bulkLoad(List<Entry<V>> entries)
+    {
+        if (entries.isEmpty())
+            return new Node<>(true);
+
+        List<Node<V>> level = pack(entries, true, entry -> entry.m_box.centerX(), entry -> entry.m_box.centerY());
+        while (level.size() > 1)
+            level = pack(level, false, node -> node.m_box.centerX(), node -> node.m_box.centerY());
+        return level.get(0);
+    }
+
+    private static <V, T> List<Node<V>> pack(List<T> items, boolean isLeaf, ToDoubleFunction<T> centerX, ToDoubleFunction<T> centerY)
+    {
+        final ArrayList<T> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingDouble(centerX));
+
+        final int nodeCount = (sorted.size() + MAX_CHILDREN - 1) / MAX_CHILDREN;
+        final int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        final int sliceSize = sliceCount * MAX_CHILDREN;
+
+        final ArrayList<Node<V>> result = new ArrayList<>(nodeCount);
+        for (int sliceStart = 0; sliceStart < sorted.size(); sliceStart += sliceSize) {
+            final List<T> slice = sorted.subList(sliceStart, Math.min(sliceStart + sliceSize, sorted.size()));
+            slice.sort(Comparator.comparingDouble(centerY));
+            for (int nodeStart = 0; nodeStart < slice.size(); nodeStart += MAX_CHILDREN) {
+                final Node<V> node = new Node<>(isLeaf);
+                node.m_children.addAll(slice.subList(nodeStart, Math.min(nodeStart + MAX_CHILDREN, slice.size())));
+                node.recomputeBox();
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    private void insert(Entry<V> entry)
+    {
+        final Node<V> sibling = insert(m_root, entry);
+        if (sibling != null) {
+            final Node<V> newRoot = new Node<>(false);
+            newRoot.m_children.add(m_root);
+            newRoot.m_children.add(sibling);
+            newRoot.recomputeBox();
+            m_root = newRoot;
+        }
+        ++m_treeSize;
+    }
+
+    /**
+     * Inserts the entry into the subtree, and returns the new sibling of the node if it had to be split, or null otherwise.
+     */
+    private static <V> Node<V> insert(Node<V> node, Entry<V> entry)
+    {
+        if (node.m_isLeaf) {
+            node.m_children.add(entry);
+        } else {
+            final Node<V> child = chooseSubtree(node, entry.m_box);
+            final Node<V> sibling = insert(child, entry);
+            if (sibling != null)
+                node.m_children.add(sibling);
+        }
+
+        if (node.m_children.size() > MAX_CHILDREN)
+            return split(node);
+        node.m_box = node.m_box == null ? entry.m_box : node.m_box.union(entry.m_box);
+        return null;
+    }
+
+    private static <V> Node<V> chooseSubtree(Node<V> node, Box box)
+    {
+        Node<V> best = null;
+        double bestEnlargement = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+        for (Object object : node.m_children) {
+            final Node<V> child = cast(object);
+            final double area = child.m_box.area();
+            final double enlargement = child.m_box.union(box).area() - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = child;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Splits an overfull node along the axis where this separates its children best, keeps the lower half, and returns the upper half as a new node.
+     */
+    private static <V> Node<V> split(Node<V> node)
+    {
+        final ArrayList<Object> children = new ArrayList<>(node.m_children);
+        final Comparator<Object> byX = Comparator.comparingDouble(child -> boxOf(node, child).centerX());
+        final Comparator<Object> byY = Comparator.comparingDouble(child -> boxOf(node, child).centerY());
+
+        children.sort(byX);
+        final double marginX = splitMargin(node, children);
+        final ArrayList<Object> sortedByY = new ArrayList<>(node.m_children);
+        sortedByY.sort(byY);
+        final List<Object> best = splitMargin(node, sortedByY) < marginX ? sortedByY : children;
+
+        final int half = best.size() / 2;
+        final Node<V> sibling = new Node<>(node.m_isLeaf);
+        node.m_children.clear();
+        node.m_children.addAll(best.subList(0, half));
+        sibling.m_children.addAll(best.subList(half, best.size()));
+        node.recomputeBox();
+        sibling.recomputeBox();
+        return sibling;
+    }
+
+    private static Box boxOf(Node<?> node, Object child)
+    {
+        return node.m_isLeaf ? ((Entry<?>) child).m_box : ((Node<?>) child).m_box;
+    }
+
+    /**
+     * Returns the sum of the perimeters of both halves; smaller values indicate squarer, better separated nodes.
+     */
+    private static double splitMargin(Node<?> node, List<Object> children)
+    {
+        final int half = children.size() / 2;
+        Box lower = boxOf(node, children.get(0));
+        for (int i = 1; i < half; ++i)
+            lower = lower.union(boxOf(node, children.get(i)));
+        Box upper = boxOf(node, children.get(half));
+        for (int i = half + 1; i < children.size(); ++i)
+            upper = upper.union(boxOf(node, children.get(i)));
+        return perimeter(lower) + perimeter(upper);
+    }
+
+    private static double perimeter(Box box)
+    {
+        return (box.getMaxX() - box.getMinX()) + (box.getMaxY() - box.getMinY());
+    }
+
+    /**
+     * Removes the entry with the specified ordinal from the subtree. Children that become underfull are dissolved, and their entries added to orphans.
+     */
+    private static <V> boolean remove(Node<V> node, Box box, int ordinal, List<Entry<V>> orphans)
+    {
+        if (node.m_isLeaf) {
+            for (int i = 0; i < node.m_children.size(); ++i) {
+                final Entry<V> entry = cast(node.m_children.get(i));
+                if (entry.m_ordinal == ordinal) {
+                    node.m_children.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int i = 0; i < node.m_children.size(); ++i) {
+            final Node<V> child = cast(node.m_children.get(i));
+            if (!child.m_box.contains(box) || !remove(child, box, ordinal, orphans))
+                continue;
+
+            if (child.m_children.size() < MIN_CHILDREN) {
+                node.m_children.remove(i);
+                collectEntries(child, orphans);
+            } else {
+                child.recomputeBox();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_treeSize + m_pending.size();
+    }
+
+    @Override
+    public List<V> within(Box box)
+    {
+        checkNotNull(box, "Box argument was null but expected non-null");
+
+        final ArrayList<V> result = new ArrayList<>();
+        search(m_root, box, true, result);
+        for (Entry<V> entry : m_pending) {
+            if (box.contains(entry.m_box))
+                result.add(entry.m_value);
+        }
+        return result;
+    }
+
+    @Override
+    public List<V> intersecting(Box box)
+    {
+        checkNotNull(box, "Box argument was null but expected non-null");
+
+        final ArrayList<V> result = new ArrayList<>();
+        search(m_root, box, false, result);
+        for (Entry<V> entry : m_pending) {
+            if (box.intersects(entry.m_box))
+                result.add(entry.m_value);
+        }
+        return result;
+    }
+
+    private static <V> void search(Node<V> node, Box box, boolean mustContain, List<V> result)
+    {
+        if (node.m_children.isEmpty() || !box.intersects(node.m_box))
+            return;
+
+        for (Object child : node.m_children) {
+            if (node.m_isLeaf) {
+                final Entry<V> entry = cast(child);
+                if (mustContain ? box.contains(entry.m_box) : box.intersects(entry.m_box))
+                    result.add(entry.m_value);
+            } else {
+                search(cast(child), box, mustContain, result);
+            }
+        }
+    }
+
+    @Override
+    public List<V> nearest(double x, double y, int k)
+    {
+        checkArgument(k >= 0, "k argument was negative but expected non-negative");
+
+        final ArrayList<V> result = new ArrayList<>(Math.min(k, size()));
+        if (k == 0 || size() == 0)
+            return result;
+
+        // Best-first search: both nodes and entries are queued by their distance; an entry at the head of the queue is nearer than anything left.
+        final class Candidate
+        {
+            final Object m_item;
+            final double m_distance;
+
+            Candidate(Object item, Box box)
+            {
+                m_item = item;
+                m_distance = box.squaredDistanceTo(x, y);
+            }
+        }
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingDouble(candidate -> candidate.m_distance));
+        if (!m_root.m_children.isEmpty())
+            queue.add(new Candidate(m_root, m_root.m_box));
+        for (Entry<V> entry : m_pending)
+            queue.add(new Candidate(entry, entry.m_box));
+        while (!queue.isEmpty() && result.size() < k) {
+            final Object item = queue.poll().m_item;
+            if (item instanceof Entry) {
+                final Entry<V> entry = cast(item);
+                result.add(entry.m_value);
+            } else {
+                final Node<V> node = cast(item);
+                for (Object child : node.m_children)
+                    queue.add(new Candidate(child, boxOf(node, child)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values in the tree and in the buffer, in no particular order.
+     */
+    private HashMultiset<V> values()
+    {
+        final ArrayList<Entry<V>> entries = new ArrayList<>(size());
+        collectEntries(m_root, entries);
+        entries.addAll(m_pending);
+        final HashMultiset<V> result = HashMultiset.create(entries.size());
+        entries.forEach(entry -> result.add(entry.m_value));
+        return result;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, m_boxExtractor, values());
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also an RTreeIndex, both Indexes originate from the same MultiIndexContainer instance, both Indexes
+     * contain equal elements, regardless of their order, and the box extractor arguments of both Indexes refer to the same Function instance.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof RTreeIndex))
+            return false;
+
+        final RTreeIndex<?> other = (RTreeIndex<?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Objects.equals(m_boxExtractor, other.m_boxExtractor) //
+            && Objects.equals(values(), other.values());
+    }
+
+    @Override
+    public String toString()
+    {
+        final ArrayList<Entry<V>> entries = new ArrayList<>(size());
+        collectEntries(m_root, entries);
+        entries.addAll(m_pending);
+        final ArrayList<V> values = new ArrayList<>(entries.size());
+        entries.forEach(entry -> values.add(entry.m_value));
+        return "RTreeIndex: " + values;
+    }
+}
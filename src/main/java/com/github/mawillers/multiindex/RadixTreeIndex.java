@@ -0,0 +1,357 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * An implementation of {@link PrefixIndex} that uses a compact radix tree for storage.
+ * <p>
+ * Each node stores the part of the key on the edge leading to it, the values whose key ends at this node, and the number of values in its whole subtree.
+ * Lookups therefore run in time proportional to the length of the prefix, plus the number of values returned.
+ *
+ * @param <V> the type of elements in this index
+ */
+final class RadixTreeIndex<V> implements PrefixIndex<V>, MultiIndexContainer.InternalIndex<V>
+{
+    private static final class Node<V>
+    {
+        String m_label;
+        // Sorted by the first character of their labels, which are unique among siblings.
+        final ArrayList<Node<V>> m_children = new ArrayList<>(2);
+        ArrayList<V> m_values;
+        int m_count;
+
+        Node(String label)
+        {
+            m_label = label;
+        }
+
+        int findChild(char c)
+        {
+            int low = 0;
+            int high = m_children.size() - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final char midChar = m_children.get(mid).m_label.charAt(0);
+                if (midChar < c)
+                    low = mid + 1;
+                else if (midChar > c)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+    }
+
+    private Node<V> m_root = new Node<>("");
+    private final MultiIndexContainer<V> m_container;
+    private final Function<V, ? extends CharSequence> m_keyExtractor;
+
+    RadixTreeIndex(MultiIndexContainer<V> container, Function<V, ? extends CharSequence> keyExtractor)
+    {
+        m_container = container;
+        m_keyExtractor = keyExtractor;
+    }
+
+    private static int commonPrefixLength(String label, CharSequence key, int offset)
+    {
+        final int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i))
+            ++i;
+        return i;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        // Cannot extract a key from a null value, and cannot place a null key in the tree.
+        return value != null && m_keyExtractor.apply(value) != null;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        // null-check of value has already been done in canAddInternal(), which always has been called before.
+        checkNotNull(value, "Value argument was null but expected non-null");
+
+        final CharSequence key = m_keyExtractor.apply(value);
+        Node<V> node = m_root;
+        int offset = 0;
+        while (true) {
+            ++node.m_count;
+            if (offset == key.length())
+                break;
+
+            final int pos = node.findChild(key.charAt(offset));
+            if (pos < 0) {
+                final Node<V> leaf = new Node<>(key.subSequence(offset, key.length()).toString());
+                node.m_children.add(-(pos + 1), leaf);
+                node = leaf;
+                ++node.m_count;
+                break;
+            }
+
+            final Node<V> child = node.m_children.get(pos);
+            final int common = commonPrefixLength(child.m_label, key, offset);
+            if (common < child.m_label.length()) {
+                // The key diverges inside the child's label, so split the child into an intermediate node and its remainder.
+                final Node<V> intermediate = new Node<>(child.m_label.substring(0, common));
+                intermediate.m_count = child.m_count;
+                child.m_label = child.m_label.substring(common);
+                intermediate.m_children.add(child);
+                node.m_children.set(pos, intermediate);
+                node = intermediate;
+            } else {
+                node = child;
+            }
+            offset += common;
+        }
+
+        if (node.m_values == null)
+            node.m_values = new ArrayList<>(1);
+        node.m_values.add(value);
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        if (value == null) {
+            // Cannot extract a key from a null value.
+            return false;
+        }
+
+        final CharSequence key = m_keyExtractor.apply(value);
+        if (key == null)
+            return false;
+
+        final ArrayList<Node<V>> path = new ArrayList<>();
+        Node<V> node = m_root;
+        int offset = 0;
+        path.add(node);
+        while (offset < key.length()) {
+            final int pos = node.findChild(key.charAt(offset));
+            if (pos < 0)
+                return false;
+            node = node.m_children.get(pos);
+            if (commonPrefixLength(node.m_label, key, offset) < node.m_label.length())
+                return false;
+            offset += node.m_label.length();
+            path.add(node);
+        }
+
+        if (node.m_values == null || !node.m_values.remove(value))
+            return false;
+        if (node.m_values.isEmpty())
+            node.m_values = null;
+        path.forEach(n -> --n.m_count);
+
+        // Restore compactness bottom-up: drop empty leaves, and merge nodes without values into their only child.
+        for (int i = path.size() - 1; i > 0; --i) {
+            final Node<V> current = path.get(i);
+            final Node<V> parent = path.get(i - 1);
+            if (current.m_count == 0) {
+                parent.m_children.remove(parent.findChild(current.m_label.charAt(0)));
+            } else if (current.m_values == null && current.m_children.size() == 1) {
+                final Node<V> onlyChild = current.m_children.get(0);
+                onlyChild.m_label = current.m_label + onlyChild.m_label;
+                parent.m_children.set(parent.findChild(current.m_label.charAt(0)), onlyChild);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_root = new Node<>("");
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        long structure = MemoryLayout.object(3 * 4);
+        long keys = 0;
+        final ArrayDeque<Node<V>> pending = new ArrayDeque<>();
+        pending.push(m_root);
+        while (!pending.isEmpty()) {
+            final Node<V> node = pending.pop();
+            structure += MemoryLayout.object(4 * 4) + MemoryLayout.arrayList(Math.max(2, node.m_children.size()));
+            if (node.m_values != null)
+                structure += MemoryLayout.arrayList(node.m_values.size());
+            // The labels are parts of the keys, which are stored only once along each path.
+            keys += MemoryLayout.keySize(node.m_label);
+            node.m_children.forEach(pending::push);
+        }
+        return new Footprint(structure, keys, 0);
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_root.m_count == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_root.m_count;
+    }
+
+    /**
+     * Returns the node whose subtree contains exactly the values with the specified key prefix, or null if there are none.
+     */
+    private Node<V> findPrefixNode(CharSequence prefix)
+    {
+        checkNotNull(prefix, "Prefix argument was null but expected non-null");
+
+        Node<V> node = m_root;
+        int offset = 0;
+        while (offset < prefix.length()) {
+            final int pos = node.findChild(prefix.charAt(offset));
+            if (pos < 0)
+                return null;
+            node = node.m_children.get(pos);
+            final int common = commonPrefixLength(node.m_label, prefix, offset);
+            if (common < node.m_label.length()) {
+                // The prefix may end in the middle of a label, in which case the whole subtree matches.
+                return offset + common == prefix.length() ? node : null;
+            }
+            offset += common;
+        }
+        return node;
+    }
+
+    @Override
+    public Iterable<V> withPrefix(CharSequence prefix)
+    {
+        checkNotNull(prefix, "Prefix argument was null but expected non-null");
+        return () -> new SubtreeIterator<>(findPrefixNode(prefix));
+    }
+
+    @Override
+    public List<V> withPrefix(CharSequence prefix, int limit)
+    {
+        checkArgument(limit >= 0, "Limit argument was negative but expected non-negative");
+
+        final Node<V> node = findPrefixNode(prefix);
+        final ArrayList<V> result = new ArrayList<>(node == null ? 0 : Math.min(limit, node.m_count));
+        Iterables.addAll(result, Iterables.limit(() -> new SubtreeIterator<>(node), limit));
+        return result;
+    }
+
+    @Override
+    public int countWithPrefix(CharSequence prefix)
+    {
+        final Node<V> node = findPrefixNode(prefix);
+        return node == null ? 0 : node.m_count;
+    }
+
+    /**
+     * Iterates over the values of a subtree in depth-first order, which yields the keys in lexicographic order.
+     */
+    private static final class SubtreeIterator<V> implements Iterator<V>
+    {
+        private final ArrayDeque<Node<V>> m_pending = new ArrayDeque<>();
+        private Iterator<V> m_current = null;
+
+        SubtreeIterator(Node<V> start)
+        {
+            if (start != null)
+                m_pending.push(start);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (m_current == null || !m_current.hasNext()) {
+                if (m_pending.isEmpty())
+                    return false;
+                final Node<V> node = m_pending.pop();
+                for (int i = node.m_children.size() - 1; i >= 0; --i)
+                    m_pending.push(node.m_children.get(i));
+                m_current = node.m_values == null ? null : node.m_values.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public V next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return m_current.next();
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, m_keyExtractor, size());
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also a RadixTreeIndex, both Indexes originate from the same MultiIndexContainer instance, both
+     * Indexes contain equal elements in the same order, and the key extractor arguments of both Indexes refer to the same Function instance.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof RadixTreeIndex))
+            return false;
+
+        final RadixTreeIndex<?> other = (RadixTreeIndex<?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Objects.equals(m_keyExtractor, other.m_keyExtractor) //
+            && Iterables.elementsEqual(withPrefix(""), other.withPrefix(""));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RadixTreeIndex: " + Iterables.toString(withPrefix(""));
+    }
+}
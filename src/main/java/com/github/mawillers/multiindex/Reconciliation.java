@@ -0,0 +1,98 @@
+package com.github.mawillers.multiindex;
+
+import java.util.Objects;
+
+/**
+ * The differences that {@link MultiIndexContainer#reconcile(java.util.Collection, UniqueIndex)} has found between the contents of a container and a new
+ * snapshot of them, and applied to the container.
+ */
+public final class Reconciliation
+{
+    private final int m_added;
+    private final int m_removed;
+    private final int m_changed;
+    private final int m_unchanged;
+    private final int m_rejected;
+
+    Reconciliation(int added, int removed, int changed, int unchanged, int rejected)
+    {
+        m_added = added;
+        m_removed = removed;
+        m_changed = changed;
+        m_unchanged = unchanged;
+        m_rejected = rejected;
+    }
+
+    /**
+     * @return the number of values whose key was not in the container, and that have been added
+     */
+    public int added()
+    {
+        return m_added;
+    }
+
+    /**
+     * @return the number of values whose key was not in the new snapshot, and that have been removed, plus the number of previous values that could not be
+     *         added again after their replacement was rejected
+     */
+    public int removed()
+    {
+        return m_removed;
+    }
+
+    /**
+     * @return the number of values whose key was in the container with a value that was not equal, and that have been replaced
+     */
+    public int changed()
+    {
+        return m_changed;
+    }
+
+    /**
+     * @return the number of values that were in the container already, and that have not been touched
+     */
+    public int unchanged()
+    {
+        return m_unchanged;
+    }
+
+    /**
+     * Returns the number of added or changed values that another index of the container rejected. A changed value that is rejected is replaced by the
+     * previous value again, which moves to the end of the insertion order.
+     *
+     * @return the number of rejected values
+     */
+    public int rejected()
+    {
+        return m_rejected;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_added, m_removed, m_changed, m_unchanged, m_rejected);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof Reconciliation))
+            return false;
+
+        final Reconciliation other = (Reconciliation) o;
+        return m_added == other.m_added //
+            && m_removed == other.m_removed //
+            && m_changed == other.m_changed //
+            && m_unchanged == other.m_unchanged //
+            && m_rejected == other.m_rejected;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Reconciliation: added " + m_added + ", removed " + m_removed + ", changed " + m_changed + ", unchanged " + m_unchanged + ", rejected "
+            + m_rejected;
+    }
+}
@@ -0,0 +1,710 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A container that holds its values through weak or soft references, so that values disappear from all indexes once they are no longer referenced
+ * elsewhere (weak), or once the garbage collector needs the memory (soft).
+ * <p>
+ * Each value is wrapped in a single reference that is shared by all indexes. References cleared by the garbage collector are taken from a reference queue
+ * and removed from all indexes at the beginning of every operation on the container or its indexes, without a thread of its own. Every cleared reference is
+ * removed once, in constant time, so the cost of purging is amortized over the operations.
+ * <p>
+ * The following indexes are supported:
+ * <ul>
+ * <li>{@link #createSequentialIndex()} - sequential access to the values in insertion order
+ * <li>{@link #createHashedUniqueIndex(Function)} - access by a unique key
+ * </ul>
+ * As with MultiIndexContainer, all indexes must be created before data can be put into the container. Null values are not supported.
+ * <p>
+ * Hashed indexes do not store keys; they store the hash code of each key, and compare keys by applying the key extractor to the values. Hence, a value may
+ * be its own key, which suits interning and canonicalization, and key extractors should be cheap. A key must not be changed while its value is in the
+ * container.
+ * <p>
+ * Since the garbage collector may clear references at any time, the size of the container and the result of queries may change between two operations even
+ * if the container is not modified. <strong>Note that this implementation is not synchronized.</strong>
+ *
+ * @param <V> the type that this Container contains
+ */
+public final class ReferenceContainer<V>
+{
+    /**
+     * The reference that wraps a value, shared by all indexes. It links the values in insertion order, and stores the hash codes of their keys.
+     */
+    private static final class Entry<V>
+    {
+        Reference<V> m_reference;
+        final int[] m_hashes;
+        // Increases with each addition, so that cursors can find their position even after this entry has been removed.
+        final long m_stamp;
+        Entry<V> m_previous;
+        Entry<V> m_next;
+        boolean m_isRemoved = false;
+
+        Entry(int[] hashes, long stamp)
+        {
+            m_hashes = hashes;
+            m_stamp = stamp;
+        }
+    }
+
+    // The references know their entry, so that an entry can be found when its reference is taken from the queue.
+
+    private static final class WeakEntryReference<V> extends WeakReference<V>
+    {
+        final Entry<V> m_entry;
+
+        WeakEntryReference(V value, ReferenceQueue<V> queue, Entry<V> entry)
+        {
+            super(value, queue);
+            m_entry = entry;
+        }
+    }
+
+    private static final class SoftEntryReference<V> extends SoftReference<V>
+    {
+        final Entry<V> m_entry;
+
+        SoftEntryReference(V value, ReferenceQueue<V> queue, Entry<V> entry)
+        {
+            super(value, queue);
+            m_entry = entry;
+        }
+    }
+
+    private static final class Node<V>
+    {
+        final Entry<V> m_entry;
+        final int m_hash;
+        Node<V> m_next;
+
+        Node(Entry<V> entry, int hash, Node<V> next)
+        {
+            m_entry = entry;
+            m_hash = hash;
+            m_next = next;
+        }
+    }
+
+    private final boolean m_isSoft;
+    private final ReferenceQueue<V> m_queue = new ReferenceQueue<>();
+    private final ArrayList<HashedIndex<?>> m_hashedIndexes = new ArrayList<>();
+    private Entry<V> m_first = null;
+    private Entry<V> m_last = null;
+    private int m_size = 0;
+    private int m_modCount = 0;
+    private long m_nextStamp = 0;
+
+    private ReferenceContainer(boolean isSoft)
+    {
+        m_isSoft = isSoft;
+    }
+
+    /**
+     * Creates a new instance that holds its values through weak references.
+     *
+     * @return the new instance, never null
+     * @param <V> the type that the new container is to contain
+     */
+    public static <V> ReferenceContainer<V> createWeak()
+    {
+        return new ReferenceContainer<>(false);
+    }
+
+    /**
+     * Creates a new instance that holds its values through soft references.
+     *
+     * @return the new instance, never null
+     * @param <V> the type that the new container is to contain
+     */
+    public static <V> ReferenceContainer<V> createSoft()
+    {
+        return new ReferenceContainer<>(true);
+    }
+
+    private void checkNoDataYet()
+    {
+        checkState(m_first == null, "must create all indexes before putting data into the container");
+    }
+
+    private static int hash(Object key)
+    {
+        final int hash = Objects.hashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Removes the entries of all values that have been collected.
+     */
+    private void purge()
+    {
+        Reference<? extends V> reference;
+        while ((reference = m_queue.poll()) != null) {
+            final Entry<V> entry = entryOf(reference);
+            if (!entry.m_isRemoved)
+                unlink(entry);
+        }
+    }
+
+    /**
+     * Returns the entry that the specified reference has been created for; only references to entries of this container are put into its queue.
+     */
+    private static <V> Entry<V> entryOf(Reference<? extends V> reference)
+    {
+        final Entry<?> entry = reference instanceof WeakEntryReference ? ((WeakEntryReference<?>) reference).m_entry
+            : ((SoftEntryReference<?>) reference).m_entry;
+        @SuppressWarnings("unchecked")
+        final Entry<V> result = (Entry<V>) entry;
+        return result;
+    }
+
+    private void unlink(Entry<V> entry)
+    {
+        entry.m_isRemoved = true;
+        if (entry.m_previous == null)
+            m_first = entry.m_next;
+        else
+            entry.m_previous.m_next = entry.m_next;
+        if (entry.m_next == null)
+            m_last = entry.m_previous;
+        else
+            entry.m_next.m_previous = entry.m_previous;
+        entry.m_previous = null;
+        entry.m_next = null;
+
+        m_hashedIndexes.forEach(index -> index.removeInternal(entry));
+        --m_size;
+        ++m_modCount;
+    }
+
+    private void remove(Entry<V> entry)
+    {
+        unlink(entry);
+        // A cleared reference is never enqueued, so the entry will not be seen by purge().
+        entry.m_reference.clear();
+    }
+
+    boolean add(V value)
+    {
+        purge();
+        if (value == null)
+            return false;
+
+        final int[] hashes = new int[m_hashedIndexes.size()];
+        for (int i = 0; i < hashes.length; ++i) {
+            final HashedIndex<?> index = m_hashedIndexes.get(i);
+            final Object key = index.m_keyExtractor.apply(value);
+            hashes[i] = hash(key);
+            if (index.find(key, hashes[i]) != null)
+                return false;
+        }
+
+        final Entry<V> entry = new Entry<>(hashes, m_nextStamp++);
+        entry.m_reference = m_isSoft ? new SoftEntryReference<>(value, m_queue, entry) : new WeakEntryReference<>(value, m_queue, entry);
+        entry.m_previous = m_last;
+        if (m_last == null)
+            m_first = entry;
+        else
+            m_last.m_next = entry;
+        m_last = entry;
+
+        m_hashedIndexes.forEach(index -> index.addInternal(entry));
+        ++m_size;
+        ++m_modCount;
+        return true;
+    }
+
+    boolean addAll(Collection<? extends V> values)
+    {
+        boolean atLeastOneValueWasAdded = false;
+        for (V value : values)
+            atLeastOneValueWasAdded |= add(value);
+        return atLeastOneValueWasAdded;
+    }
+
+    void clear()
+    {
+        for (Entry<V> entry = m_first; entry != null; entry = entry.m_next) {
+            entry.m_isRemoved = true;
+            entry.m_reference.clear();
+        }
+        m_first = null;
+        m_last = null;
+        m_hashedIndexes.forEach(HashedIndex::clearInternal);
+        m_size = 0;
+        ++m_modCount;
+
+        // References enqueued before now belong to entries that have just been removed.
+        while (m_queue.poll() != null) {
+            // Nothing to do.
+        }
+    }
+
+    int size()
+    {
+        purge();
+        return m_size;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * A cursor over the entries in insertion order. It continues from the entry it has returned last, as long as that entry has not been removed; otherwise,
+     * and when resuming from a token, it searches the entries from the first one for the position.
+     */
+    private final class ReferenceCursor implements Cursor<V>
+    {
+        private Entry<V> m_entry = null;
+        private long m_stamp;
+        // The next value is held strongly, so that it cannot be collected between hasNext() and next().
+        private Entry<V> m_nextEntry = null;
+        private V m_next = null;
+
+        ReferenceCursor(long stamp)
+        {
+            m_stamp = stamp;
+        }
+
+        private Entry<V> following()
+        {
+            if (m_entry != null && !m_entry.m_isRemoved)
+                return m_entry.m_next;
+
+            Entry<V> entry = m_first;
+            while (entry != null && entry.m_stamp <= m_stamp)
+                entry = entry.m_next;
+            return entry;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            purge();
+            if (m_next != null && !m_nextEntry.m_isRemoved)
+                return true;
+
+            m_next = null;
+            for (Entry<V> entry = following(); entry != null; entry = entry.m_next) {
+                final V value = entry.m_reference.get();
+                if (value != null) {
+                    m_nextEntry = entry;
+                    m_next = value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public V next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final V value = m_next;
+            m_entry = m_nextEntry;
+            m_stamp = m_entry.m_stamp;
+            m_nextEntry = null;
+            m_next = null;
+            return value;
+        }
+
+        @Override
+        public String token()
+        {
+            return Long.toString(m_stamp + 1, Character.MAX_RADIX);
+        }
+    }
+
+    /**
+     * Creates a new sequential index.
+     *
+     * @return the new index, never null
+     */
+    public SequentialIndex<V> createSequentialIndex()
+    {
+        checkNoDataYet();
+        return new ReferenceSequentialIndex();
+    }
+
+    /**
+     * Creates a new UniqueIndex that is based on hashing keys.
+     *
+     * @param keyExtractor a function defining which key to use for the values; the key may be the value itself
+     * @return the new index, never null
+     * @param <K> the type of key
+     */
+    public <K> UniqueIndex<K, V> createHashedUniqueIndex(Function<V, K> keyExtractor)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        checkNoDataYet();
+
+        final HashedIndex<K> index = new HashedIndex<>(m_hashedIndexes.size(), keyExtractor);
+        m_hashedIndexes.add(index);
+        return index;
+    }
+
+    // --------------------------------------------------------------------
+
+    /**
+     * Base class of all indexes, which implements modifications by delegating to the container.
+     */
+    private abstract class ReferenceIndex implements Index<V>
+    {
+        @Override
+        public boolean add(V value)
+        {
+            return ReferenceContainer.this.add(value);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends V> values)
+        {
+            return ReferenceContainer.this.addAll(values);
+        }
+
+        @Override
+        public void clear()
+        {
+            ReferenceContainer.this.clear();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return size() == 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return ReferenceContainer.this.size();
+        }
+    }
+
+    private final class ReferenceSequentialIndex extends ReferenceIndex implements SequentialIndex<V>
+    {
+        private Entry<V> find(Object value)
+        {
+            for (Entry<V> entry = m_first; entry != null; entry = entry.m_next) {
+                if (value.equals(entry.m_reference.get()))
+                    return entry;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean remove(Object value)
+        {
+            purge();
+            final Entry<V> entry = value == null ? null : find(value);
+            if (entry == null)
+                return false;
+            ReferenceContainer.this.remove(entry);
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object value)
+        {
+            purge();
+            return value != null && find(value) != null;
+        }
+
+        @Override
+        public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+        {
+            checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+            return AutoIndexer.scan(this, keyExtractor, key);
+        }
+
+        @Override
+        public Cursor<V> cursor()
+        {
+            return new ReferenceCursor(-1);
+        }
+
+        @Override
+        public Cursor<V> cursor(String token)
+        {
+            checkNotNull(token, "Token argument was null but expected non-null");
+
+            // A token is the stamp of the entry at the position, incremented so that the start is "0".
+            final long stamp;
+            try {
+                stamp = Long.parseLong(token, Character.MAX_RADIX) - 1;
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Token argument was malformed", ex);
+            }
+            checkArgument(stamp >= -1, "Token argument was malformed");
+            return new ReferenceCursor(stamp);
+        }
+
+        @Override
+        public Iterator<V> iterator()
+        {
+            purge();
+            return new Iterator<V>() {
+                private final int m_expectedModCount = m_modCount;
+                private Entry<V> m_entry = m_first;
+                // The next value is held strongly, so that it cannot be collected between hasNext() and next().
+                private V m_next = null;
+
+                @Override
+                public boolean hasNext()
+                {
+                    if (m_modCount != m_expectedModCount)
+                        throw new ConcurrentModificationException();
+
+                    while (m_next == null && m_entry != null) {
+                        m_next = m_entry.m_reference.get();
+                        m_entry = m_entry.m_next;
+                    }
+                    return m_next != null;
+                }
+
+                @Override
+                public V next()
+                {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+
+                    final V value = m_next;
+                    m_next = null;
+                    return value;
+                }
+            };
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ReferenceSequentialIndex: " + Iterators.toString(iterator());
+        }
+    }
+
+    private final class HashedIndex<K> extends ReferenceIndex implements UniqueIndex<K, V>
+    {
+        private final int m_slot;
+        private final Function<V, K> m_keyExtractor;
+        private Node<V>[] m_table = newTable(16);
+        private int m_count = 0;
+
+        HashedIndex(int slot, Function<V, K> keyExtractor)
+        {
+            m_slot = slot;
+            m_keyExtractor = keyExtractor;
+        }
+
+        private Node<V>[] newTable(int length)
+        {
+            @SuppressWarnings("unchecked")
+            final Node<V>[] result = (Node<V>[]) new Node<?>[length];
+            return result;
+        }
+
+        /**
+         * Returns the entry of the live value with the specified key, or null if there is none.
+         */
+        Entry<V> find(Object key, int hash)
+        {
+            for (Node<V> node = m_table[hash & (m_table.length - 1)]; node != null; node = node.m_next) {
+                if (node.m_hash == hash) {
+                    final V value = node.m_entry.m_reference.get();
+                    if (value != null && Objects.equals(m_keyExtractor.apply(value), key))
+                        return node.m_entry;
+                }
+            }
+            return null;
+        }
+
+        void addInternal(Entry<V> entry)
+        {
+            if (m_count >= m_table.length - (m_table.length >>> 2)) {
+                final Node<V>[] table = newTable(m_table.length * 2);
+                for (Node<V> head : m_table) {
+                    Node<V> node = head;
+                    while (node != null) {
+                        final Node<V> next = node.m_next;
+                        final int bucket = node.m_hash & (table.length - 1);
+                        node.m_next = table[bucket];
+                        table[bucket] = node;
+                        node = next;
+                    }
+                }
+                m_table = table;
+            }
+
+            final int hash = entry.m_hashes[m_slot];
+            final int bucket = hash & (m_table.length - 1);
+            m_table[bucket] = new Node<>(entry, hash, m_table[bucket]);
+            ++m_count;
+        }
+
+        void removeInternal(Entry<V> entry)
+        {
+            // The value may have been collected already, so the entry is found by its hash code instead of its key.
+            final int bucket = entry.m_hashes[m_slot] & (m_table.length - 1);
+            Node<V> previous = null;
+            for (Node<V> node = m_table[bucket]; node != null; previous = node, node = node.m_next) {
+                if (node.m_entry == entry) {
+                    if (previous == null)
+                        m_table[bucket] = node.m_next;
+                    else
+                        previous.m_next = node.m_next;
+                    --m_count;
+                    return;
+                }
+            }
+        }
+
+        void clearInternal()
+        {
+            m_table = newTable(16);
+            m_count = 0;
+        }
+
+        private V get(Object key)
+        {
+            purge();
+            final Entry<V> entry = find(key, hash(key));
+            // The value may have been collected right after it was found.
+            return entry == null ? null : entry.m_reference.get();
+        }
+
+        @Override
+        public V remove(Object key)
+        {
+            final V value = get(key);
+            if (value != null)
+                ReferenceContainer.this.remove(find(key, hash(key)));
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Override
+        public boolean containsValue(Object object)
+        {
+            if (object == null)
+                return false;
+
+            try {
+                final V value = cast(object);
+                return object.equals(get(m_keyExtractor.apply(value)));
+            } catch (ClassCastException ex) {
+                // The key extractor cannot handle this value, so it cannot have been added.
+                return false;
+            }
+        }
+
+        @Override
+        public Optional<V> getOptional(K key)
+        {
+            return Optional.ofNullable(get(key));
+        }
+
+        @Override
+        public Set<K> keys()
+        {
+            return new KeySetView<>(this);
+        }
+
+        // Keys are not stored, as a key may be its value and would keep it reachable, so they are extracted from the values. Values that have been collected
+        // are skipped.
+
+        @Override
+        public EntryIterator<K, V> entries()
+        {
+            purge();
+            return new EntryIterator<K, V>() {
+                private int m_bucket = -1;
+                private Node<V> m_node = null;
+                // Holds the current value strongly, so that it cannot be collected while it is being read.
+                private V m_value = null;
+
+                @Override
+                public boolean next()
+                {
+                    m_value = null;
+                    while (m_value == null) {
+                        if (m_node != null)
+                            m_node = m_node.m_next;
+                        while (m_node == null && ++m_bucket < m_table.length)
+                            m_node = m_table[m_bucket];
+                        if (m_node == null)
+                            return false;
+                        m_value = m_node.m_entry.m_reference.get();
+                    }
+                    return true;
+                }
+
+                @Override
+                public K key()
+                {
+                    return m_keyExtractor.apply(value());
+                }
+
+                @Override
+                public V value()
+                {
+                    checkEntry(m_value != null);
+                    return m_value;
+                }
+            };
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action)
+        {
+            checkNotNull(action, "Action argument was null but expected non-null");
+
+            purge();
+            for (Node<V> head : m_table) {
+                for (Node<V> node = head; node != null; node = node.m_next) {
+                    final V value = node.m_entry.m_reference.get();
+                    if (value != null)
+                        action.accept(m_keyExtractor.apply(value), value);
+                }
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "HashedIndex: " + size() + " values";
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Replicates the modifications of a {@link MultiIndexContainer} to any number of {@link ReplicationReplica} instances in other processes, over TCP.
+ * <p>
+ * The primary records each addition, removal, and clearing of the container, and sends all modifications recorded since the previous commit as one batch
+ * when {@link #commit()} is called. Values are written by a {@link ValueCodec}; removals only carry the ordinal of the entry, so a batch is compact. A
+ * replica that connects is bootstrapped from a snapshot of the container, and then receives the batches of all later commits.
+ * <p>
+ * Replicas are accepted on a thread of the primary, which reads the container while holding its monitor. Hence, all modifications of the container and all
+ * calls of {@link #commit()} must hold the monitor as well, as {@link MutationPipeline} does; otherwise, they throw an {@link IllegalStateException}:
+ * <!-- @formatter:off -->
+ * <pre>{@code
+ *   ReplicationPrimary<Employee> primary = ReplicationPrimary.create(container, codec, new InetSocketAddress(4711));
+ *   synchronized (container) {
+ *       byId.add(employee);
+ *       primary.commit();
+ *   }
+ * }</pre>
+ * <!-- @formatter:on -->
+ * <p>
+ * Each replica is served by a thread of its own, so a slow replica does not delay the primary. A replica that falls too far behind is disconnected; it
+ * has to connect anew, and is then bootstrapped again.
+ *
+ * @param <V> the type that the container contains
+ */
+public final class ReplicationPrimary<V> implements AutoCloseable
+{
+    // The most frames that may be waiting to be sent to a replica.
+    private static final int MAX_PENDING_FRAMES = 1024;
+
+    private final class Replica implements Runnable
+    {
+        private final Socket m_socket;
+        private final LinkedBlockingQueue<byte[]> m_frames = new LinkedBlockingQueue<>(MAX_PENDING_FRAMES);
+        private final Thread m_sender = new Thread(this, "ReplicationPrimary sender");
+        private volatile boolean m_isOpen = true;
+
+        Replica(Socket socket)
+        {
+            m_socket = socket;
+            m_sender.setDaemon(true);
+        }
+
+        void send(byte[] frame)
+        {
+            if (!m_frames.offer(frame))
+                close();
+        }
+
+        @Override
+        public void run()
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(m_socket.getOutputStream()))) {
+                out.writeInt(ReplicationProtocol.MAGIC);
+                out.writeByte(ReplicationProtocol.FORMAT_VERSION);
+                while (m_isOpen) {
+                    byte[] frame = m_frames.poll();
+                    if (frame == null) {
+                        // Only flush once all pending frames have been written, so that small batches share packets.
+                        out.flush();
+                        frame = m_frames.take();
+                    }
+                    out.write(frame);
+                }
+            } catch (IOException | InterruptedException ex) {
+                // The replica has disconnected, or the primary is being closed.
+            } finally {
+                close();
+            }
+        }
+
+        void close()
+        {
+            m_isOpen = false;
+            m_sender.interrupt();
+            closeQuietly(m_socket);
+        }
+    }
+
+    private final MultiIndexContainer<V> m_container;
+    private final ValueCodec<V> m_codec;
+    private final ServerSocket m_serverSocket;
+    private final Thread m_acceptor = new Thread(this::accept, "ReplicationPrimary acceptor");
+
+    // The following fields are guarded by the monitor of the container.
+    private final ArrayList<Replica> m_replicas = new ArrayList<>();
+    private long m_sequence = 0;
+    private boolean m_isClosed = false;
+
+    // The modifications recorded since the last commit. They are only recorded while replicas are connected.
+    private byte[] m_opKinds = new byte[16];
+    private int[] m_opOrdinals = new int[16];
+    private Object[] m_opValues = new Object[16];
+    private int m_opCount = 0;
+
+    private ReplicationPrimary(MultiIndexContainer<V> container, ValueCodec<V> codec, ServerSocket serverSocket)
+    {
+        m_container = container;
+        m_codec = codec;
+        m_serverSocket = serverSocket;
+        m_acceptor.setDaemon(true);
+    }
+
+    /**
+     * Creates a new instance that accepts replicas on the specified address, and starts replicating the modifications of the specified container.
+     *
+     * @param container the container to replicate, must not be null, and must neither be replicated nor a replica already
+     * @param codec the codec that writes the values, must not be null
+     * @param address the address to accept replicas on, must not be null; port 0 picks a free port, see {@link #address()}
+     * @return the new instance, never null
+     * @throws IOException if the address cannot be bound
+     * @param <V> the type that the container contains
+     */
+    public static <V> ReplicationPrimary<V> create(MultiIndexContainer<V> container, ValueCodec<V> codec, InetSocketAddress address) throws IOException
+    {
+        checkNotNull(container, "Container argument was null but expected non-null");
+        checkNotNull(codec, "Codec argument was null but expected non-null");
+        checkNotNull(address, "Address argument was null but expected non-null");
+
+        final ServerSocket serverSocket = new ServerSocket();
+        try {
+            serverSocket.bind(address);
+        } catch (IOException ex) {
+            closeQuietly(serverSocket);
+            throw ex;
+        }
+
+        final ReplicationPrimary<V> primary = new ReplicationPrimary<>(container, codec, serverSocket);
+        synchronized (container) {
+            try {
+                container.setPrimary(primary);
+            } catch (IllegalStateException ex) {
+                closeQuietly(serverSocket);
+                throw ex;
+            }
+        }
+        primary.m_acceptor.start();
+        return primary;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable)
+    {
+        try {
+            closeable.close();
+        } catch (Exception ex) {
+            // Nothing left to do about it.
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Called by the container while it is being modified.
+
+    void added(V value, int ordinal)
+    {
+        record(ReplicationProtocol.ADD, ordinal, value);
+    }
+
+    void removed(int ordinal)
+    {
+        record(ReplicationProtocol.REMOVE, ordinal, null);
+    }
+
+    void cleared()
+    {
+        // Clearing makes all modifications recorded before irrelevant.
+        Arrays.fill(m_opValues, 0, m_opCount, null);
+        m_opCount = 0;
+        record(ReplicationProtocol.CLEAR, 0, null);
+    }
+
+    private void record(int kind, int ordinal, V value)
+    {
+        checkState(Thread.holdsLock(m_container), "container was modified without holding its monitor");
+        // Replicas that connect later are bootstrapped from a snapshot, which includes all modifications made until then.
+        if (m_replicas.isEmpty())
+            return;
+
+        if (m_opCount == m_opKinds.length) {
+            m_opKinds = Arrays.copyOf(m_opKinds, m_opCount * 2);
+            m_opOrdinals = Arrays.copyOf(m_opOrdinals, m_opCount * 2);
+            m_opValues = Arrays.copyOf(m_opValues, m_opCount * 2);
+        }
+        m_opKinds[m_opCount] = (byte) kind;
+        m_opOrdinals[m_opCount] = ordinal;
+        m_opValues[m_opCount] = value;
+        ++m_opCount;
+    }
+
+    // --------------------------------------------------------------------
+
+    private void accept()
+    {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = m_serverSocket.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException ex) {
+                // The primary has been closed.
+                return;
+            }
+
+            synchronized (m_container) {
+                if (m_isClosed) {
+                    closeQuietly(socket);
+                    return;
+                }
+
+                final byte[] snapshot;
+                try {
+                    // The snapshot includes the modifications that have not been committed yet, so send them to the other replicas first.
+                    commit();
+                    snapshot = encodeSnapshot();
+                } catch (RuntimeException ex) {
+                    // Most likely, the codec has failed to write a value. This replica cannot be bootstrapped, but others may connect later.
+                    closeQuietly(socket);
+                    continue;
+                }
+                final Replica replica = new Replica(socket);
+                replica.send(snapshot);
+                replica.m_sender.start();
+                m_replicas.add(replica);
+            }
+        }
+    }
+
+    private byte[] encodeSnapshot()
+    {
+        final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        final DataOutputStream entriesOut = new DataOutputStream(entries);
+        final int[] count = { 0 };
+        m_container.snapshot().forEachInInsertionOrder((value, ordinal) -> {
+            try {
+                ReplicationProtocol.writeVarInt(entriesOut, ordinal);
+                m_codec.write(value, entriesOut);
+                ++count[0];
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(entries.size() + 5);
+        try {
+            ReplicationProtocol.writeVarInt(new DataOutputStream(payload), count[0]);
+            entries.writeTo(payload);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return frame(ReplicationProtocol.SNAPSHOT, payload);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] encodeBatch()
+    {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(payload);
+        try {
+            ReplicationProtocol.writeVarInt(out, m_opCount);
+            for (int op = 0; op < m_opCount; ++op) {
+                out.writeByte(m_opKinds[op]);
+                if (m_opKinds[op] == ReplicationProtocol.CLEAR)
+                    continue;
+                ReplicationProtocol.writeVarInt(out, m_opOrdinals[op]);
+                if (m_opKinds[op] == ReplicationProtocol.ADD)
+                    m_codec.write((V) m_opValues[op], out);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return frame(ReplicationProtocol.BATCH, payload);
+    }
+
+    private byte[] frame(int kind, ByteArrayOutputStream payload)
+    {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(payload.size() + 13);
+        final DataOutputStream out = new DataOutputStream(result);
+        try {
+            out.writeByte(kind);
+            out.writeLong(m_sequence);
+            out.writeInt(payload.size());
+            payload.writeTo(out);
+        } catch (IOException ex) {
+            // Writing to a byte array does not fail.
+            throw new UncheckedIOException(ex);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Sends all modifications of the container since the previous commit to the replicas, as one batch.
+     * <p>
+     * This only encodes the batch; it is sent by the threads that serve the replicas, so this method does not wait for the network.
+     *
+     * @return the sequence number of this commit, which replicas report once they have applied it, see {@link ReplicationReplica#appliedSequence()}
+     * @throws IllegalStateException if this primary has been closed, or if the current thread does not hold the monitor of the container
+     * @throws UncheckedIOException if the codec fails to write a value
+     */
+    public long commit()
+    {
+        checkState(Thread.holdsLock(m_container), "commit was called without holding the monitor of the container");
+        checkState(!m_isClosed, "primary has been closed");
+
+        m_replicas.removeIf(replica -> !replica.m_isOpen);
+        if (m_opCount == 0)
+            return m_sequence;
+
+        ++m_sequence;
+        final byte[] frame = encodeBatch();
+        for (Replica replica : m_replicas)
+            replica.send(frame);
+
+        Arrays.fill(m_opValues, 0, m_opCount, null);
+        m_opCount = 0;
+        return m_sequence;
+    }
+
+    /**
+     * @return the address that this primary accepts replicas on, never null
+     */
+    public InetSocketAddress address()
+    {
+        return (InetSocketAddress) m_serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the number of replicas that are currently connected.
+     *
+     * @return the number of replicas
+     */
+    public int replicaCount()
+    {
+        synchronized (m_container) {
+            return (int) m_replicas.stream().filter(replica -> replica.m_isOpen).count();
+        }
+    }
+
+    /**
+     * Stops replicating: disconnects all replicas, and stops accepting new ones. Modifications that have not been committed are not sent.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (m_container) {
+            if (m_isClosed)
+                return;
+
+            m_isClosed = true;
+            m_container.setPrimary(null);
+            m_replicas.forEach(Replica::close);
+            m_replicas.clear();
+            Arrays.fill(m_opValues, 0, m_opCount, null);
+            m_opCount = 0;
+        }
+        closeQuietly(m_serverSocket);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ReplicationPrimary: " + address() + ", sequence " + m_sequence;
+    }
+}
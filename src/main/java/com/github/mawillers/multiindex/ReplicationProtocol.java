@@ -0,0 +1,60 @@
+package com.github.mawillers.multiindex;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The binary format in which a {@link ReplicationPrimary} sends the modifications of its container to each {@link ReplicationReplica}.
+ * <p>
+ * A connection starts with a header of {@link #MAGIC} and {@link #FORMAT_VERSION}, followed by frames. Each frame consists of its kind, the sequence number
+ * of the last commit that it contains, the length of its payload, and the payload:
+ * <ul>
+ * <li>{@link #SNAPSHOT} - the number of entries, followed by the ordinal and value of each entry in insertion order
+ * <li>{@link #BATCH} - the number of operations, followed by the operations: {@link #ADD} with the ordinal and value of the new entry, {@link #REMOVE} with
+ * the ordinal of the removed entry, or {@link #CLEAR}
+ * </ul>
+ * Ordinals are those of the container of the primary, and are written as variable-length integers; values are written by a {@link ValueCodec}.
+ */
+final class ReplicationProtocol
+{
+    static final int MAGIC = 0x4d495850;
+    static final int FORMAT_VERSION = 1;
+
+    static final int SNAPSHOT = 1;
+    static final int BATCH = 2;
+
+    static final int ADD = 1;
+    static final int REMOVE = 2;
+    static final int CLEAR = 3;
+
+    private ReplicationProtocol()
+    {
+        // Only static methods.
+    }
+
+    /**
+     * Writes a non-negative int in 7-bit groups, least significant first, so that small ordinals take a single byte.
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException
+    {
+        int remaining = value;
+        while ((remaining & ~0x7f) != 0) {
+            out.writeByte((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    static int readVarInt(DataInput in) throws IOException
+    {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IOException("malformed variable-length integer");
+    }
+}
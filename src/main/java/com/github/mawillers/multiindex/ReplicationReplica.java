@@ -0,0 +1,284 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Keeps a {@link MultiIndexContainer} a copy of the container of a {@link ReplicationPrimary}, in another process.
+ * <p>
+ * The replica is bootstrapped from a snapshot of the primary, and then applies each batch that the primary commits. The container of the replica has
+ * indexes of its own, which need not be those of the primary; values that its indexes reject are skipped. Except for the thread that applies the batches,
+ * the container is read-only: modifying it throws an {@link IllegalStateException}, until the replica is closed.
+ * <p>
+ * Batches are applied while holding the monitor of the container, so other threads may read the container by synchronizing on it:
+ * <!-- @formatter:off -->
+ * <pre>{@code
+ *   ReplicationReplica<Employee> replica = ReplicationReplica.connect(container, codec, primaryAddress);
+ *   synchronized (container) {
+ *       employee = byId.get(4711);
+ *   }
+ * }</pre>
+ * <!-- @formatter:on -->
+ *
+ * @param <V> the type that the container contains
+ */
+public final class ReplicationReplica<V> implements AutoCloseable
+{
+    private final MultiIndexContainer<V> m_container;
+    private final ValueCodec<V> m_codec;
+    private final Socket m_socket;
+    private final Thread m_reader = new Thread(this::read, "ReplicationReplica reader");
+
+    // Maps each ordinal of the primary to the ordinal of the same entry in the local container, or -1. Only used by the reader thread.
+    private int[] m_localOrdinals = new int[16];
+    private volatile boolean m_isClosing = false;
+
+    // The following fields are guarded by this.
+    private long m_appliedSequence = -1;
+    private boolean m_isConnected = true;
+    private Exception m_failure = null;
+
+    private ReplicationReplica(MultiIndexContainer<V> container, ValueCodec<V> codec, Socket socket)
+    {
+        m_container = container;
+        m_codec = codec;
+        m_socket = socket;
+        m_reader.setDaemon(true);
+        Arrays.fill(m_localOrdinals, -1);
+    }
+
+    /**
+     * Connects the specified container to a primary, replacing its contents by those of the primary.
+     *
+     * @param container the container to keep a copy in, must not be null, and must neither be replicated nor a replica already
+     * @param codec the codec that reads the values, must not be null
+     * @param primary the address of the primary, must not be null
+     * @return the new instance, never null
+     * @throws IOException if connecting fails
+     * @param <V> the type that the container contains
+     */
+    public static <V> ReplicationReplica<V> connect(MultiIndexContainer<V> container, ValueCodec<V> codec, InetSocketAddress primary) throws IOException
+    {
+        checkNotNull(container, "Container argument was null but expected non-null");
+        checkNotNull(codec, "Codec argument was null but expected non-null");
+        checkNotNull(primary, "Primary argument was null but expected non-null");
+
+        final Socket socket = new Socket();
+        try {
+            socket.connect(primary);
+            socket.setTcpNoDelay(true);
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+
+        final ReplicationReplica<V> replica = new ReplicationReplica<>(container, codec, socket);
+        synchronized (container) {
+            try {
+                container.setReplicaThread(replica.m_reader);
+            } catch (IllegalStateException ex) {
+                socket.close();
+                throw ex;
+            }
+        }
+        replica.m_reader.start();
+        return replica;
+    }
+
+    private void read()
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(m_socket.getInputStream()))) {
+            if (in.readInt() != ReplicationProtocol.MAGIC || in.readUnsignedByte() != ReplicationProtocol.FORMAT_VERSION)
+                throw new IOException("peer is not a compatible replication primary");
+
+            while (true) {
+                final int kind = in.readUnsignedByte();
+                final long sequence = in.readLong();
+                final byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                final DataInputStream frame = new DataInputStream(new ByteArrayInputStream(payload));
+                if (kind == ReplicationProtocol.SNAPSHOT)
+                    applySnapshot(frame);
+                else if (kind == ReplicationProtocol.BATCH)
+                    applyBatch(frame);
+                else
+                    throw new IOException("unknown frame kind " + kind);
+
+                synchronized (this) {
+                    m_appliedSequence = sequence;
+                    notifyAll();
+                }
+            }
+        } catch (Exception ex) {
+            synchronized (this) {
+                // Closing the socket ends the reader as well, which is no failure.
+                if (!m_isClosing)
+                    m_failure = ex;
+                m_isConnected = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void applySnapshot(DataInputStream frame) throws IOException
+    {
+        // Decode the values before taking the monitor, so that readers only wait for the indexes.
+        final int count = ReplicationProtocol.readVarInt(frame);
+        final int[] ordinals = new int[count];
+        final Object[] values = new Object[count];
+        for (int i = 0; i < count; ++i) {
+            ordinals[i] = ReplicationProtocol.readVarInt(frame);
+            values[i] = m_codec.read(frame);
+        }
+
+        synchronized (m_container) {
+            m_container.clearAllIndexes();
+            Arrays.fill(m_localOrdinals, -1);
+            for (int i = 0; i < count; ++i)
+                mapOrdinal(ordinals[i], m_container.addAndGetOrdinal(cast(values[i])));
+        }
+    }
+
+    private void applyBatch(DataInputStream frame) throws IOException
+    {
+        final int count = ReplicationProtocol.readVarInt(frame);
+        final byte[] kinds = new byte[count];
+        final int[] ordinals = new int[count];
+        final Object[] values = new Object[count];
+        for (int op = 0; op < count; ++op) {
+            kinds[op] = frame.readByte();
+            if (kinds[op] == ReplicationProtocol.CLEAR)
+                continue;
+            ordinals[op] = ReplicationProtocol.readVarInt(frame);
+            if (kinds[op] == ReplicationProtocol.ADD)
+                values[op] = m_codec.read(frame);
+            else if (kinds[op] != ReplicationProtocol.REMOVE)
+                throw new IOException("unknown operation " + kinds[op]);
+        }
+
+        synchronized (m_container) {
+            for (int op = 0; op < count; ++op) {
+                switch (kinds[op]) {
+                case ReplicationProtocol.ADD:
+                    mapOrdinal(ordinals[op], m_container.addAndGetOrdinal(cast(values[op])));
+                    break;
+                case ReplicationProtocol.REMOVE:
+                    // An entry that the local indexes have rejected has no local ordinal.
+                    if (ordinals[op] < m_localOrdinals.length && m_localOrdinals[ordinals[op]] >= 0) {
+                        m_container.removeFromAllIndexes(m_localOrdinals[ordinals[op]]);
+                        m_localOrdinals[ordinals[op]] = -1;
+                    }
+                    break;
+                default:
+                    m_container.clearAllIndexes();
+                    Arrays.fill(m_localOrdinals, -1);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void mapOrdinal(int primaryOrdinal, int localOrdinal)
+    {
+        if (primaryOrdinal >= m_localOrdinals.length) {
+            final int oldLength = m_localOrdinals.length;
+            m_localOrdinals = Arrays.copyOf(m_localOrdinals, Math.max(oldLength * 2, primaryOrdinal + 1));
+            Arrays.fill(m_localOrdinals, oldLength, m_localOrdinals.length, -1);
+        }
+        m_localOrdinals[primaryOrdinal] = localOrdinal;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object)
+    {
+        return (T) object;
+    }
+
+    /**
+     * Returns the sequence number of the last commit of the primary that this replica has applied, see {@link ReplicationPrimary#commit()}.
+     *
+     * @return the sequence number, or -1 if the replica has not been bootstrapped yet
+     */
+    public synchronized long appliedSequence()
+    {
+        return m_appliedSequence;
+    }
+
+    /**
+     * Waits until this replica has applied the commit of the primary with the specified sequence number, or has been disconnected.
+     *
+     * @param sequence the sequence number returned by {@link ReplicationPrimary#commit()}
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout, must not be null
+     * @return true if the commit has been applied, false if the timeout has elapsed or the replica has been disconnected before
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public synchronized boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        checkNotNull(unit, "Unit argument was null but expected non-null");
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (m_appliedSequence < sequence && m_isConnected) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return m_appliedSequence >= sequence;
+    }
+
+    /**
+     * @return true if this replica is still receiving the commits of the primary
+     */
+    public synchronized boolean isConnected()
+    {
+        return m_isConnected;
+    }
+
+    /**
+     * Returns the reason why the connection to the primary has been lost, if it has not been closed by {@link #close()}.
+     *
+     * @return the failure, or null if there has been none
+     */
+    public synchronized Exception failure()
+    {
+        return m_failure;
+    }
+
+    /**
+     * Disconnects from the primary, and makes the container writable again. Its contents remain those of the last commit applied.
+     * <p>
+     * This waits until the batch that is being applied, if any, is complete. Should the current thread be interrupted meanwhile, it still waits, and its
+     * interrupt status is set again on return.
+     */
+    @Override
+    public void close()
+    {
+        m_isClosing = true;
+        try {
+            m_socket.close();
+        } catch (IOException ex) {
+            // Nothing left to do about it.
+        }
+        Uninterruptibles.joinUninterruptibly(m_reader);
+        synchronized (m_container) {
+            m_container.setReplicaThread(null);
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ReplicationReplica: " + m_socket.getRemoteSocketAddress() + ", sequence " + m_appliedSequence + (m_isConnected ? "" : ", disconnected");
+    }
+}
@@ -0,0 +1,462 @@
+package com.github.mawillers.multiindex;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed bitmap of non-negative ints, following the design of Roaring bitmaps.
+ * <p>
+ * The 32-bit range is split into chunks of 2^16 values, keyed by their upper 16 bits. Each non-empty chunk is stored in a container of its own: sparse chunks
+ * as a sorted array of their lower 16 bits, dense chunks as a plain bitmap of 2^16 bits. Set operations combine corresponding chunks only, and choose the
+ * cheaper container representation for each result.
+ */
+final class RoaringBitmap
+{
+    // Above this cardinality, a plain bitmap (8 KiB) is smaller than a sorted array of chars.
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    private abstract static class Chunk
+    {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        // Returns the chunk containing the result, which may be this one, or another one with a different representation.
+        abstract Chunk add(char low);
+
+        abstract Chunk remove(char low);
+
+        abstract Chunk copy();
+
+        abstract void forEach(int high, IntConsumer consumer);
+
+        abstract BitmapChunk toBitmap();
+
+        abstract long footprint();
+    }
+
+    private static final class ArrayChunk extends Chunk
+    {
+        char[] m_values;
+        int m_cardinality;
+
+        ArrayChunk(char[] values, int cardinality)
+        {
+            m_values = values;
+            m_cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return m_cardinality;
+        }
+
+        @Override
+        long footprint()
+        {
+            return MemoryLayout.object(2 * 4) + MemoryLayout.array(m_values.length, 2);
+        }
+
+        private int indexOf(char low)
+        {
+            return Arrays.binarySearch(m_values, 0, m_cardinality, low);
+        }
+
+        @Override
+        boolean contains(char low)
+        {
+            return indexOf(low) >= 0;
+        }
+
+        @Override
+        Chunk add(char low)
+        {
+            final int pos = indexOf(low);
+            if (pos >= 0)
+                return this;
+            if (m_cardinality == MAX_ARRAY_CARDINALITY)
+                return toBitmap().add(low);
+
+            final int insertAt = -(pos + 1);
+            if (m_cardinality == m_values.length)
+                m_values = Arrays.copyOf(m_values, Math.min(MAX_ARRAY_CARDINALITY, Math.max(4, m_cardinality * 2)));
+            System.arraycopy(m_values, insertAt, m_values, insertAt + 1, m_cardinality - insertAt);
+            m_values[insertAt] = low;
+            ++m_cardinality;
+            return this;
+        }
+
+        @Override
+        Chunk remove(char low)
+        {
+            final int pos = indexOf(low);
+            if (pos >= 0) {
+                System.arraycopy(m_values, pos + 1, m_values, pos, m_cardinality - pos - 1);
+                --m_cardinality;
+            }
+            return this;
+        }
+
+        @Override
+        Chunk copy()
+        {
+            return new ArrayChunk(Arrays.copyOf(m_values, m_cardinality), m_cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer)
+        {
+            for (int i = 0; i < m_cardinality; ++i)
+                consumer.accept(high | m_values[i]);
+        }
+
+        @Override
+        BitmapChunk toBitmap()
+        {
+            final long[] words = new long[1024];
+            for (int i = 0; i < m_cardinality; ++i)
+                words[m_values[i] >>> 6] |= 1L << m_values[i];
+            return new BitmapChunk(words, m_cardinality);
+        }
+    }
+
+    private static final class BitmapChunk extends Chunk
+    {
+        final long[] m_words;
+        int m_cardinality;
+
+        BitmapChunk(long[] words, int cardinality)
+        {
+            m_words = words;
+            m_cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return m_cardinality;
+        }
+
+        @Override
+        long footprint()
+        {
+            return MemoryLayout.object(2 * 4) + MemoryLayout.array(m_words.length, 8);
+        }
+
+        @Override
+        boolean contains(char low)
+        {
+            return (m_words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Chunk add(char low)
+        {
+            final long before = m_words[low >>> 6];
+            final long after = before | (1L << low);
+            m_words[low >>> 6] = after;
+            if (before != after)
+                ++m_cardinality;
+            return this;
+        }
+
+        @Override
+        Chunk remove(char low)
+        {
+            final long before = m_words[low >>> 6];
+            final long after = before & ~(1L << low);
+            m_words[low >>> 6] = after;
+            if (before != after)
+                --m_cardinality;
+            return m_cardinality <= MAX_ARRAY_CARDINALITY ? toArray(m_words, m_cardinality) : this;
+        }
+
+        @Override
+        Chunk copy()
+        {
+            return new BitmapChunk(m_words.clone(), m_cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer)
+        {
+            for (int i = 0; i < m_words.length; ++i) {
+                long word = m_words[i];
+                while (word != 0) {
+                    consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        BitmapChunk toBitmap()
+        {
+            return this;
+        }
+
+        static Chunk toArray(long[] words, int cardinality)
+        {
+            final char[] values = new char[cardinality];
+            int pos = 0;
+            for (int i = 0; i < words.length; ++i) {
+                long word = words[i];
+                while (word != 0) {
+                    values[pos++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayChunk(values, cardinality);
+        }
+
+        static Chunk of(long[] words)
+        {
+            int cardinality = 0;
+            for (long word : words)
+                cardinality += Long.bitCount(word);
+            return cardinality <= MAX_ARRAY_CARDINALITY ? toArray(words, cardinality) : new BitmapChunk(words, cardinality);
+        }
+    }
+
+    private char[] m_keys;
+    private Chunk[] m_chunks;
+    private int m_size;
+
+    RoaringBitmap()
+    {
+        this(new char[4], new Chunk[4], 0);
+    }
+
+    private RoaringBitmap(char[] keys, Chunk[] chunks, int size)
+    {
+        m_keys = keys;
+        m_chunks = chunks;
+        m_size = size;
+    }
+
+    private int indexOf(char high)
+    {
+        return Arrays.binarySearch(m_keys, 0, m_size, high);
+    }
+
+    void add(int value)
+    {
+        final char high = (char) (value >>> 16);
+        int pos = indexOf(high);
+        if (pos < 0) {
+            pos = -(pos + 1);
+            if (m_size == m_keys.length) {
+                m_keys = Arrays.copyOf(m_keys, m_size * 2);
+                m_chunks = Arrays.copyOf(m_chunks, m_size * 2);
+            }
+            System.arraycopy(m_keys, pos, m_keys, pos + 1, m_size - pos);
+            System.arraycopy(m_chunks, pos, m_chunks, pos + 1, m_size - pos);
+            m_keys[pos] = high;
+            m_chunks[pos] = new ArrayChunk(new char[4], 0);
+            ++m_size;
+        }
+        m_chunks[pos] = m_chunks[pos].add((char) value);
+    }
+
+    void remove(int value)
+    {
+        final int pos = indexOf((char) (value >>> 16));
+        if (pos < 0)
+            return;
+
+        m_chunks[pos] = m_chunks[pos].remove((char) value);
+        if (m_chunks[pos].cardinality() == 0) {
+            System.arraycopy(m_keys, pos + 1, m_keys, pos, m_size - pos - 1);
+            System.arraycopy(m_chunks, pos + 1, m_chunks, pos, m_size - pos - 1);
+            m_chunks[--m_size] = null;
+        }
+    }
+
+    boolean contains(int value)
+    {
+        final int pos = indexOf((char) (value >>> 16));
+        return pos >= 0 && m_chunks[pos].contains((char) value);
+    }
+
+    boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    int cardinality()
+    {
+        int result = 0;
+        for (int i = 0; i < m_size; ++i)
+            result += m_chunks[i].cardinality();
+        return result;
+    }
+
+    /**
+     * Passes all contained values to the consumer, in ascending order.
+     */
+    void forEach(IntConsumer consumer)
+    {
+        for (int i = 0; i < m_size; ++i)
+            m_chunks[i].forEach(m_keys[i] << 16, consumer);
+    }
+
+    /**
+     * Estimates the memory retained by this bitmap, see {@link Footprint}.
+     */
+    long footprint()
+    {
+        long result = MemoryLayout.object(3 * 4) + MemoryLayout.array(m_keys.length, 2) + MemoryLayout.referenceArray(m_chunks.length);
+        for (int i = 0; i < m_size; ++i)
+            result += m_chunks[i].footprint();
+        return result;
+    }
+
+    RoaringBitmap copy()
+    {
+        final Chunk[] chunks = new Chunk[Math.max(4, m_size)];
+        for (int i = 0; i < m_size; ++i)
+            chunks[i] = m_chunks[i].copy();
+        return new RoaringBitmap(Arrays.copyOf(m_keys, chunks.length), chunks, m_size);
+    }
+
+    // --------------------------------------------------------------------
+    // Set operations. These never modify their arguments, and return new instances that share no state with them.
+
+    static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b)
+    {
+        final int capacity = Math.max(4, Math.min(a.m_size, b.m_size));
+        final RoaringBitmap result = new RoaringBitmap(new char[capacity], new Chunk[capacity], 0);
+        int i = 0;
+        int j = 0;
+        while (i < a.m_size && j < b.m_size) {
+            if (a.m_keys[i] < b.m_keys[j]) {
+                ++i;
+            } else if (a.m_keys[i] > b.m_keys[j]) {
+                ++j;
+            } else {
+                final Chunk chunk = and(a.m_chunks[i], b.m_chunks[j]);
+                if (chunk.cardinality() > 0)
+                    result.append(a.m_keys[i], chunk);
+                ++i;
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b)
+    {
+        final int capacity = Math.max(4, a.m_size + b.m_size);
+        final RoaringBitmap result = new RoaringBitmap(new char[capacity], new Chunk[capacity], 0);
+        int i = 0;
+        int j = 0;
+        while (i < a.m_size || j < b.m_size) {
+            if (j == b.m_size || (i < a.m_size && a.m_keys[i] < b.m_keys[j])) {
+                result.append(a.m_keys[i], a.m_chunks[i].copy());
+                ++i;
+            } else if (i == a.m_size || a.m_keys[i] > b.m_keys[j]) {
+                result.append(b.m_keys[j], b.m_chunks[j].copy());
+                ++j;
+            } else {
+                result.append(a.m_keys[i], or(a.m_chunks[i], b.m_chunks[j]));
+                ++i;
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b)
+    {
+        final RoaringBitmap result = new RoaringBitmap(new char[Math.max(4, a.m_size)], new Chunk[Math.max(4, a.m_size)], 0);
+        int j = 0;
+        for (int i = 0; i < a.m_size; ++i) {
+            while (j < b.m_size && b.m_keys[j] < a.m_keys[i])
+                ++j;
+            final Chunk chunk = j < b.m_size && b.m_keys[j] == a.m_keys[i] ? andNot(a.m_chunks[i], b.m_chunks[j]) : a.m_chunks[i].copy();
+            if (chunk.cardinality() > 0)
+                result.append(a.m_keys[i], chunk);
+        }
+        return result;
+    }
+
+    private void append(char key, Chunk chunk)
+    {
+        m_keys[m_size] = key;
+        m_chunks[m_size] = chunk;
+        ++m_size;
+    }
+
+    private static Chunk and(Chunk a, Chunk b)
+    {
+        if (a instanceof BitmapChunk && b instanceof BitmapChunk) {
+            final long[] words = new long[1024];
+            final long[] wordsA = ((BitmapChunk) a).m_words;
+            final long[] wordsB = ((BitmapChunk) b).m_words;
+            for (int k = 0; k < words.length; ++k)
+                words[k] = wordsA[k] & wordsB[k];
+            return BitmapChunk.of(words);
+        }
+
+        // At least one side is sparse; filter its values by membership in the other side.
+        final ArrayChunk sparse = (ArrayChunk) (a instanceof ArrayChunk ? a : b);
+        final Chunk other = sparse == a ? b : a;
+        final char[] values = new char[sparse.m_cardinality];
+        int count = 0;
+        for (int k = 0; k < sparse.m_cardinality; ++k) {
+            if (other.contains(sparse.m_values[k]))
+                values[count++] = sparse.m_values[k];
+        }
+        return new ArrayChunk(values, count);
+    }
+
+    private static Chunk or(Chunk a, Chunk b)
+    {
+        if (a instanceof ArrayChunk && b instanceof ArrayChunk && a.cardinality() + b.cardinality() <= MAX_ARRAY_CARDINALITY) {
+            final ArrayChunk arrayA = (ArrayChunk) a;
+            final ArrayChunk arrayB = (ArrayChunk) b;
+            final char[] values = new char[arrayA.m_cardinality + arrayB.m_cardinality];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < arrayA.m_cardinality || j < arrayB.m_cardinality) {
+                if (j == arrayB.m_cardinality || (i < arrayA.m_cardinality && arrayA.m_values[i] < arrayB.m_values[j])) {
+                    values[count++] = arrayA.m_values[i++];
+                } else if (i == arrayA.m_cardinality || arrayA.m_values[i] > arrayB.m_values[j]) {
+                    values[count++] = arrayB.m_values[j++];
+                } else {
+                    values[count++] = arrayA.m_values[i++];
+                    ++j;
+                }
+            }
+            return new ArrayChunk(values, count);
+        }
+
+        final long[] words = a.toBitmap().m_words.clone();
+        final long[] wordsB = b.toBitmap().m_words;
+        for (int k = 0; k < words.length; ++k)
+            words[k] |= wordsB[k];
+        return BitmapChunk.of(words);
+    }
+
+    private static Chunk andNot(Chunk a, Chunk b)
+    {
+        if (a instanceof ArrayChunk) {
+            final ArrayChunk arrayA = (ArrayChunk) a;
+            final char[] values = new char[arrayA.m_cardinality];
+            int count = 0;
+            for (int k = 0; k < arrayA.m_cardinality; ++k) {
+                if (!b.contains(arrayA.m_values[k]))
+                    values[count++] = arrayA.m_values[k];
+            }
+            return new ArrayChunk(values, count);
+        }
+
+        final long[] words = ((BitmapChunk) a).m_words.clone();
+        final long[] wordsB = b.toBitmap().m_words;
+        for (int k = 0; k < words.length; ++k)
+            words[k] &= ~wordsB[k];
+        return BitmapChunk.of(words);
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * An implementation of {@link BitmapIndex} that keeps a {@link RoaringBitmap} of entry ordinals per key.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of elements in this index
+ */
+final class RoaringBitmapIndex<K, V> implements BitmapIndex<K, V>, MultiIndexContainer.InternalIndex<V>
+{
+    private final HashMap<K, RoaringBitmap> m_index = new HashMap<>();
+    private int m_size = 0;
+    private final MultiIndexContainer<V> m_container;
+    private final Function<V, K> m_keyExtractor;
+
+    RoaringBitmapIndex(MultiIndexContainer<V> container, Function<V, K> keyExtractor)
+    {
+        m_container = container;
+        m_keyExtractor = keyExtractor;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        // Cannot extract a key from a null value.
+        return value != null;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        // null-check of value has already been done in canAddInternal(), which always has been called before.
+        checkNotNull(value, "Value argument was null but expected non-null");
+
+        final K key = m_keyExtractor.apply(value);
+        m_index.computeIfAbsent(key, k -> new RoaringBitmap()).add(ordinal);
+        ++m_size;
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        if (value == null) {
+            // Cannot extract a key from a null value.
+            return false;
+        }
+
+        final K key = m_keyExtractor.apply(value);
+        final RoaringBitmap bitmap = m_index.get(key);
+        if (bitmap == null || !bitmap.contains(ordinal))
+            return false;
+
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty())
+            m_index.remove(key);
+        --m_size;
+        return true;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_index.clear();
+        m_size = 0;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        long structure = MemoryLayout.object(4 * 4) + MemoryLayout.hashMap(m_index.size());
+        long keys = 0;
+        for (Map.Entry<K, RoaringBitmap> entry : m_index.entrySet()) {
+            structure += entry.getValue().footprint();
+            keys += MemoryLayout.keySize(entry.getKey());
+        }
+        return new Footprint(structure, keys, 0);
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_size;
+    }
+
+    @Override
+    public Selection<V> select(K key)
+    {
+        final RoaringBitmap bitmap = m_index.get(key);
+        return new Selection<>(m_container, bitmap == null ? new RoaringBitmap() : bitmap.copy());
+    }
+
+    @Override
+    public Selection<V> selectAny(Iterable<? extends K> keys)
+    {
+        checkNotNull(keys, "Keys argument was null but expected non-null");
+
+        RoaringBitmap result = new RoaringBitmap();
+        for (K key : keys) {
+            final RoaringBitmap bitmap = m_index.get(key);
+            if (bitmap != null)
+                result = RoaringBitmap.or(result, bitmap);
+        }
+        return new Selection<>(m_container, result);
+    }
+
+    @Override
+    public int count(K key)
+    {
+        final RoaringBitmap bitmap = m_index.get(key);
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    @Override
+    public Set<K> keys()
+    {
+        return Collections.unmodifiableSet(m_index.keySet());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, m_keyExtractor, m_size);
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also a RoaringBitmapIndex, both Indexes originate from the same MultiIndexContainer instance, both
+     * Indexes map the same keys to the same entries, and the key extractor arguments of both Indexes refer to the same Function instance.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof RoaringBitmapIndex))
+            return false;
+
+        final RoaringBitmapIndex<?, ?> other = (RoaringBitmapIndex<?, ?>) o;
+        if (!Objects.equals(m_container, other.m_container) || !Objects.equals(m_keyExtractor, other.m_keyExtractor) || m_size != other.m_size)
+            return false;
+
+        // Both indexes belong to the same container and use the same extractor, so their contents can only differ if one of them has been removed from it.
+        return m_index.keySet().equals(other.m_index.keySet()) && m_index.entrySet().stream() //
+            .allMatch(entry -> RoaringBitmap.andNot(entry.getValue(), other.m_index.get(entry.getKey())).isEmpty());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RoaringBitmapIndex: " + m_index.keySet();
+    }
+}
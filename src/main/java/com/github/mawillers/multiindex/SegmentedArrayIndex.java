@@ -0,0 +1,408 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * An implementation of {@link QueueIndex} that stores the ordinals of its entries in a ring of fixed-size segments, and reads the entries themselves from the
+ * container.
+ * <p>
+ * Each entry gets the next position when it is added, and positions are never reused, so that the segment holding a position follows from the position
+ * alone. Entries that are removed by means of other indexes leave an empty slot behind; a segment is released once the head has passed all of its slots.
+ *
+ * @param <V> the type of elements in this index
+ */
+final class SegmentedArrayIndex<V> implements QueueIndex<V>, MultiIndexContainer.RowIndex<V>
+{
+    private static final int SEGMENT_SHIFT = 10;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int EMPTY = -1;
+
+    // The ring of segments. Its length is a power of two; the m_segmentCount segments in use start at slot m_firstSlot, and the first of them holds the
+    // positions starting at m_firstSegment * SEGMENT_SIZE.
+    private int[][] m_ring = new int[4][];
+    private int m_firstSlot = 0;
+    private int m_segmentCount = 0;
+    private long m_firstSegment = 0;
+
+    // The positions of the oldest entry (inclusive) and of the next entry to be added (exclusive). The slot at m_head is never empty unless m_size is zero.
+    private long m_head = 0;
+    private long m_tail = 0;
+    private int m_size = 0;
+    private int m_modCount = 0;
+
+    // The position of each entry by its ordinal, or -1 if the ordinal is not in this index.
+    private long[] m_positions = newPositions(16);
+
+    // The segment released last, which is reused for the next segment needed, so that a queue of steady size does not allocate.
+    private int[] m_spare = null;
+
+    private final MultiIndexContainer<V> m_container;
+
+    // Null while this index belongs to its container; otherwise, the entries at the time it was removed from the container.
+    private EntryOrdinals.Snapshot<V> m_detachedRows = null;
+
+    SegmentedArrayIndex(MultiIndexContainer<V> container)
+    {
+        m_container = container;
+    }
+
+    private static long[] newPositions(int length)
+    {
+        final long[] result = new long[length];
+        Arrays.fill(result, -1);
+        return result;
+    }
+
+    private V valueOf(int row)
+    {
+        return m_detachedRows != null ? m_detachedRows.get(row) : m_container.getByOrdinal(row);
+    }
+
+    private int[] segmentOf(long position)
+    {
+        final int segment = (int) ((position >> SEGMENT_SHIFT) - m_firstSegment);
+        return m_ring[(m_firstSlot + segment) & (m_ring.length - 1)];
+    }
+
+    private int rowAt(long position)
+    {
+        return segmentOf(position)[(int) position & (SEGMENT_SIZE - 1)];
+    }
+
+    private void appendSegment()
+    {
+        if (m_segmentCount == m_ring.length) {
+            final int[][] ring = new int[m_ring.length * 2][];
+            for (int segment = 0; segment < m_segmentCount; ++segment)
+                ring[segment] = m_ring[(m_firstSlot + segment) & (m_ring.length - 1)];
+            m_ring = ring;
+            m_firstSlot = 0;
+        }
+        if (m_segmentCount == 0)
+            m_firstSegment = m_tail >> SEGMENT_SHIFT;
+
+        m_ring[(m_firstSlot + m_segmentCount) & (m_ring.length - 1)] = m_spare != null ? m_spare : new int[SEGMENT_SIZE];
+        m_spare = null;
+        ++m_segmentCount;
+    }
+
+    /**
+     * Moves the head past all empty slots, and releases the segments that the head has passed.
+     */
+    private void advanceHead()
+    {
+        while (m_head < m_tail && rowAt(m_head) == EMPTY)
+            ++m_head;
+
+        while (m_segmentCount > 0 && (m_firstSegment + 1) << SEGMENT_SHIFT <= m_head) {
+            m_spare = m_ring[m_firstSlot];
+            m_ring[m_firstSlot] = null;
+            m_firstSlot = (m_firstSlot + 1) & (m_ring.length - 1);
+            --m_segmentCount;
+            ++m_firstSegment;
+        }
+    }
+
+    private long positionOfValue(Object value)
+    {
+        for (long position = m_head; position < m_tail; ++position) {
+            final int row = rowAt(position);
+            if (row != EMPTY && Objects.equals(valueOf(row), value))
+                return position;
+        }
+        return -1;
+    }
+
+    private List<V> values()
+    {
+        final ArrayList<V> result = new ArrayList<>(m_size);
+        forEach(result::add);
+        return result;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        return value != null;
+    }
+
+    // When these methods are called, all necessary checks have already been done, and we really only need to modify our local data.
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        if ((m_tail & (SEGMENT_SIZE - 1)) == 0)
+            appendSegment();
+        segmentOf(m_tail)[(int) m_tail & (SEGMENT_SIZE - 1)] = ordinal;
+
+        if (ordinal >= m_positions.length) {
+            final long[] positions = newPositions(Math.max(m_positions.length * 2, ordinal + 1));
+            System.arraycopy(m_positions, 0, positions, 0, m_positions.length);
+            m_positions = positions;
+        }
+        m_positions[ordinal] = m_tail++;
+        ++m_size;
+        ++m_modCount;
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        if (ordinal >= m_positions.length || m_positions[ordinal] < 0)
+            return false;
+
+        final long position = m_positions[ordinal];
+        segmentOf(position)[(int) position & (SEGMENT_SIZE - 1)] = EMPTY;
+        m_positions[ordinal] = -1;
+        --m_size;
+        ++m_modCount;
+        if (position == m_head)
+            advanceHead();
+        return true;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_ring = new int[4][];
+        m_firstSlot = 0;
+        m_segmentCount = 0;
+        m_firstSegment = 0;
+        m_head = 0;
+        m_tail = 0;
+        m_size = 0;
+        m_positions = newPositions(16);
+        m_spare = null;
+        ++m_modCount;
+    }
+
+    @Override
+    public void detachInternal(EntryOrdinals.Snapshot<V> rows)
+    {
+        m_detachedRows = rows;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        final long segmentBytes = MemoryLayout.array(SEGMENT_SIZE, 4);
+        final Footprint result = Footprint.ofStructure(MemoryLayout.object(9 * 4 + 3 * 8) + MemoryLayout.referenceArray(m_ring.length)
+            + (m_segmentCount + (m_spare != null ? 1 : 0)) * segmentBytes + MemoryLayout.array(m_positions.length, 8));
+        return m_detachedRows == null ? result : result.plus(m_detachedRows.footprint());
+    }
+
+    // --------------------------------------------------------------------
+    // In the following implementations, must make sure that the call is propagated to all other existing indexes as well.
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public boolean remove(Object object)
+    {
+        if (m_detachedRows == null) {
+            // The container picks the entry to remove, and removes it from this index along with all others.
+            return m_container.removeFromAllIndexes(object);
+        }
+
+        // Once removed from its container, this index is no longer kept in sync with it, and must modify its own data.
+        final long position = positionOfValue(object);
+        if (position < 0)
+            return false;
+        removeInternal(null, rowAt(position));
+        m_container.removeFromAllIndexes(object);
+        return true;
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    @Override
+    public V pollFirst()
+    {
+        if (m_size == 0)
+            return null;
+
+        final int row = rowAt(m_head);
+        if (m_detachedRows == null)
+            return m_container.removeFromAllIndexes(row);
+
+        final V value = valueOf(row);
+        removeInternal(value, row);
+        m_container.removeFromAllIndexes(value);
+        return value;
+    }
+
+    @Override
+    public int truncateOlderThan(int count)
+    {
+        checkArgument(count >= 0, "Count argument was negative");
+        if (m_detachedRows == null)
+            m_container.checkWritable();
+
+        final int removeCount = m_size - count;
+        if (removeCount <= 0)
+            return 0;
+
+        // Collect the oldest entries, then drop them from this index at once by moving the head past them.
+        final int[] rows = new int[removeCount];
+        long position = m_head;
+        for (int i = 0; i < removeCount; ++position) {
+            final int row = rowAt(position);
+            if (row != EMPTY) {
+                rows[i++] = row;
+                m_positions[row] = -1;
+            }
+        }
+        m_head = position;
+        m_size -= removeCount;
+        ++m_modCount;
+        advanceHead();
+
+        if (m_detachedRows == null) {
+            m_container.removeAllFromAllIndexes(this, rows);
+        } else {
+            for (int row : rows)
+                m_container.removeFromAllIndexes(valueOf(row));
+        }
+        return removeCount;
+    }
+
+    // --------------------------------------------------------------------
+    // Query methods. These can easily be satisfied from our local data alone.
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_size;
+    }
+
+    @Override
+    public V peekFirst()
+    {
+        return m_size == 0 ? null : valueOf(rowAt(m_head));
+    }
+
+    @Override
+    public boolean contains(Object value)
+    {
+        // Once removed from its container, this index is no longer kept in sync with it, and must answer from its own data.
+        if (m_detachedRows != null)
+            return positionOfValue(value) >= 0;
+        return m_container.containsValue(value);
+    }
+
+    @Override
+    public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        return m_container.filter(this, keyExtractor, key);
+    }
+
+    @Override
+    public Cursor<V> cursor()
+    {
+        return m_container.cursor(this, null);
+    }
+
+    @Override
+    public Cursor<V> cursor(String token)
+    {
+        checkNotNull(token, "Token argument was null but expected non-null");
+        return m_container.cursor(this, token);
+    }
+
+    @Override
+    public Iterator<V> iterator()
+    {
+        return new UnmodifiableIterator<V>() {
+            private final int m_expectedModCount = m_modCount;
+            private long m_position = m_head;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (m_position < m_tail && rowAt(m_position) == EMPTY)
+                    ++m_position;
+                return m_position < m_tail;
+            }
+
+            @Override
+            public V next()
+            {
+                if (m_modCount != m_expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return valueOf(rowAt(m_position++));
+            }
+        };
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, values());
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also a SegmentedArrayIndex, both Indexes originate from the same MultiIndexContainer instance, and
+     * all corresponding pairs of elements in the two Indexes are equal.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof SegmentedArrayIndex))
+            return false;
+
+        final SegmentedArrayIndex<?> other = (SegmentedArrayIndex<?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Objects.equals(values(), other.values());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SegmentedArrayIndex: " + values();
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A set of entries of a {@link MultiIndexContainer}, as selected via one or more {@link BitmapIndex} instances.
+ * <p>
+ * Selections of the same container can be combined by means of set operations. These operations, as well as counting, work on compressed bitmaps of entry
+ * ordinals alone and never access the values themselves. Selections are immutable; each operation returns a new instance.
+ * <p>
+ * A selection refers to the entries that were in the container when it was created. If the container is modified afterwards, the values returned by
+ * {@link #values()} and {@link #iterator()} are unspecified.
+ *
+ * @param <V> the type of elements in the container
+ */
+public final class Selection<V> implements Iterable<V>
+{
+    private final MultiIndexContainer<V> m_container;
+    private final RoaringBitmap m_ordinals;
+
+    Selection(MultiIndexContainer<V> container, RoaringBitmap ordinals)
+    {
+        m_container = container;
+        m_ordinals = ordinals;
+    }
+
+    private RoaringBitmap ordinalsOf(Selection<V> other)
+    {
+        checkNotNull(other, "Selection argument was null but expected non-null");
+        checkArgument(other.m_container == m_container, "Selection argument belongs to another container");
+        return other.m_ordinals;
+    }
+
+    /**
+     * Returns the entries that are contained in both this and the other selection.
+     *
+     * @param other the other selection, must belong to the same container
+     * @return the new selection, never null
+     */
+    public Selection<V> and(Selection<V> other)
+    {
+        return new Selection<>(m_container, RoaringBitmap.and(m_ordinals, ordinalsOf(other)));
+    }
+
+    /**
+     * Returns the entries that are contained in this or the other selection, or in both.
+     *
+     * @param other the other selection, must belong to the same container
+     * @return the new selection, never null
+     */
+    public Selection<V> or(Selection<V> other)
+    {
+        return new Selection<>(m_container, RoaringBitmap.or(m_ordinals, ordinalsOf(other)));
+    }
+
+    /**
+     * Returns the entries that are contained in this selection, but not in the other one.
+     *
+     * @param other the other selection, must belong to the same container
+     * @return the new selection, never null
+     */
+    public Selection<V> andNot(Selection<V> other)
+    {
+        return new Selection<>(m_container, RoaringBitmap.andNot(m_ordinals, ordinalsOf(other)));
+    }
+
+    /**
+     * Returns the number of entries in this selection.
+     *
+     * @return the number of entries
+     */
+    public int count()
+    {
+        return m_ordinals.cardinality();
+    }
+
+    /**
+     * Returns true if this selection contains no entries.
+     *
+     * @return true if this selection contains no entries
+     */
+    public boolean isEmpty()
+    {
+        return m_ordinals.isEmpty();
+    }
+
+    /**
+     * Returns the values of all entries in this selection.
+     *
+     * @return a new list with the values, never null
+     */
+    public List<V> values()
+    {
+        final ArrayList<V> result = new ArrayList<>(count());
+        m_ordinals.forEach(ordinal -> result.add(m_container.getByOrdinal(ordinal)));
+        return result;
+    }
+
+    @Override
+    public Iterator<V> iterator()
+    {
+        return Iterators.unmodifiableIterator(values().iterator());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Selection: " + values();
+    }
+}
@@ -1,5 +1,9 @@
 package com.github.mawillers.multiindex;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 /**
  * An index that allows sequential access to its values in insertion order.
  *
@@ -22,4 +26,39 @@ public interface SequentialIndex<V> extends Index<V>, Iterable<V>
      * @return true if this index contains the specified value
      */
     public boolean contains(Object value);
+
+    /**
+     * Returns all values whose key, as defined by the specified function, is equal to the specified key.
+     * <p>
+     * This scans all values, unless auto-indexing has been enabled (see {@link MultiIndexContainer#enableAutoIndexing(int, Executor)}); then, frequently used
+     * key extractors are answered from a hash index instead. Key extractors are told apart by {@link Object#equals(Object)}, so the same function instance
+     * should be passed for each query, for instance one kept in a constant.
+     *
+     * @param keyExtractor a function defining the key of the values, must not be null
+     * @param key the key to look for, may be null
+     * @return a new list with the matching values in insertion order, never null
+     * @param <K> the type of key
+     */
+    public <K> List<V> filter(Function<? super V, K> keyExtractor, K key);
+
+    /**
+     * Returns a cursor that starts at the first value of this index, see {@link Cursor}.
+     *
+     * @return the new cursor, never null
+     */
+    public Cursor<V> cursor();
+
+    /**
+     * Returns a cursor that resumes right after the position of the specified token, which has been obtained from {@link Cursor#token()} of a cursor of this
+     * index.
+     * <p>
+     * The cursor resumes at the next value that had been added after the value at that position. This takes constant time if that value is still contained,
+     * and usually also if it has been removed since, as the container remembers the successors of removed values until their storage is reused. Once it
+     * has been reused, resuming may take time proportional to the size of the index.
+     *
+     * @param token the token, must not be null
+     * @return the new cursor, never null
+     * @throws IllegalArgumentException if the token has not been created by this index
+     */
+    public Cursor<V> cursor(String token);
 }
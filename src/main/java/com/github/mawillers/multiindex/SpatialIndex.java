@@ -0,0 +1,39 @@
+package com.github.mawillers.multiindex;
+
+import java.util.List;
+
+/**
+ * An index that allows access to its values by means of their location in two-dimensional space.
+ * <p>
+ * Each value is located by a {@link Box}, which may also be a point.
+ *
+ * @param <V> the type of elements in this index
+ */
+public interface SpatialIndex<V> extends Index<V>
+{
+    /**
+     * Returns all values that lie completely inside the specified box.
+     *
+     * @param box the box, must not be null
+     * @return a new list with the matching values, in no particular order, never null
+     */
+    public List<V> within(Box box);
+
+    /**
+     * Returns all values that have at least one point in common with the specified box.
+     *
+     * @param box the box, must not be null
+     * @return a new list with the matching values, in no particular order, never null
+     */
+    public List<V> intersecting(Box box);
+
+    /**
+     * Returns the values that are nearest to the specified point.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param k the maximum number of values to return, must not be negative
+     * @return a new list with at most k values, ordered by ascending distance, never null
+     */
+    public List<V> nearest(double x, double y, int k);
+}
@@ -0,0 +1,40 @@
+package com.github.mawillers.multiindex;
+
+import java.util.List;
+
+/**
+ * An index that allows access to its values by means of the words (tokens) contained in some of their textual fields.
+ * <p>
+ * Fields are split into tokens at every character that is neither a letter nor a digit, and tokens are compared case-insensitively. Query terms are
+ * normalized in the same way, so querying for "new york" is equivalent to querying for the two terms "NEW" and "York".
+ * <p>
+ * Query results are returned in insertion order.
+ *
+ * @param <V> the type of elements in this index
+ */
+public interface TokenIndex<V> extends Index<V>
+{
+    /**
+     * Returns all values that contain every one of the specified terms.
+     *
+     * @param terms the terms, must not be null; specifying no terms at all matches no values
+     * @return a new list with the matching values, never null
+     */
+    public List<V> withAllTerms(String... terms);
+
+    /**
+     * Returns all values that contain at least one of the specified terms.
+     *
+     * @param terms the terms, must not be null
+     * @return a new list with the matching values, never null
+     */
+    public List<V> withAnyTerm(String... terms);
+
+    /**
+     * Returns the number of values that contain the specified term.
+     *
+     * @param term the term, must not be null
+     * @return the number of values that contain the term
+     */
+    public int countWithTerm(String term);
+}
@@ -0,0 +1,398 @@
+package com.github.mawillers.multiindex;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * An implementation of {@link PositionalIndex} that uses a treap (a randomized balanced binary tree) ordered by insertion.
+ * <p>
+ * Every node knows the size of its subtree, which gives the position of a node in logarithmic time, and vice versa. Nodes also know their parent, and are
+ * found by the container's entry ordinal, so that removing an entry does not require a search.
+ *
+ * @param <V> the type of elements in this index
+ */
+final class TreapIndex<V> implements PositionalIndex<V>, MultiIndexContainer.InternalIndex<V>
+{
+    private static final class Node<V>
+    {
+        final V m_value;
+        final int m_ordinal;
+        final int m_priority;
+        int m_size = 1;
+        Node<V> m_left;
+        Node<V> m_right;
+        Node<V> m_parent;
+
+        Node(V value, int ordinal, int priority)
+        {
+            m_value = value;
+            m_ordinal = ordinal;
+            m_priority = priority;
+        }
+    }
+
+    private Node<V> m_root = null;
+    private Node<V>[] m_nodesByOrdinal = newNodes(16);
+    private int m_modCount = 0;
+    private final SplittableRandom m_random = new SplittableRandom();
+    private final MultiIndexContainer<V> m_container;
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newNodes(int length)
+    {
+        return (Node<V>[]) new Node<?>[length];
+    }
+
+    TreapIndex(MultiIndexContainer<V> container)
+    {
+        m_container = container;
+    }
+
+    private static int size(Node<?> node)
+    {
+        return node == null ? 0 : node.m_size;
+    }
+
+    private static void updateSize(Node<?> node)
+    {
+        node.m_size = 1 + size(node.m_left) + size(node.m_right);
+    }
+
+    /**
+     * Concatenates two trees, keeping the heap order of the priorities.
+     */
+    private static <V> Node<V> merge(Node<V> left, Node<V> right)
+    {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+
+        if (left.m_priority > right.m_priority) {
+            left.m_right = merge(left.m_right, right);
+            left.m_right.m_parent = left;
+            updateSize(left);
+            return left;
+        } else {
+            right.m_left = merge(left, right.m_left);
+            right.m_left.m_parent = right;
+            updateSize(right);
+            return right;
+        }
+    }
+
+    private static int rank(Node<?> node)
+    {
+        int result = size(node.m_left);
+        while (node.m_parent != null) {
+            if (node == node.m_parent.m_right)
+                result += size(node.m_parent.m_left) + 1;
+            node = node.m_parent;
+        }
+        return result;
+    }
+
+    private Node<V> nodeAt(int position)
+    {
+        Node<V> node = m_root;
+        while (true) {
+            final int leftSize = size(node.m_left);
+            if (position < leftSize) {
+                node = node.m_left;
+            } else if (position == leftSize) {
+                return node;
+            } else {
+                position -= leftSize + 1;
+                node = node.m_right;
+            }
+        }
+    }
+
+    private static <V> Node<V> leftmost(Node<V> node)
+    {
+        if (node != null) {
+            while (node.m_left != null)
+                node = node.m_left;
+        }
+        return node;
+    }
+
+    private static <V> Node<V> successor(Node<V> node)
+    {
+        if (node.m_right != null)
+            return leftmost(node.m_right);
+        while (node.m_parent != null && node == node.m_parent.m_right)
+            node = node.m_parent;
+        return node.m_parent;
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean canAddInternal(V value)
+    {
+        return true;
+    }
+
+    @Override
+    public void addInternal(V value, int ordinal)
+    {
+        if (ordinal >= m_nodesByOrdinal.length)
+            m_nodesByOrdinal = Arrays.copyOf(m_nodesByOrdinal, Math.max(ordinal + 1, m_nodesByOrdinal.length * 2));
+
+        final Node<V> node = new Node<>(value, ordinal, m_random.nextInt());
+        m_nodesByOrdinal[ordinal] = node;
+        m_root = merge(m_root, node);
+        m_root.m_parent = null;
+        ++m_modCount;
+    }
+
+    @Override
+    public boolean removeInternal(V value, int ordinal)
+    {
+        final Node<V> node = ordinal < m_nodesByOrdinal.length ? m_nodesByOrdinal[ordinal] : null;
+        if (node == null)
+            return false;
+
+        // Replace the node by the concatenation of its children, and fix the sizes of all its ancestors.
+        final Node<V> replacement = merge(node.m_left, node.m_right);
+        final Node<V> parent = node.m_parent;
+        if (replacement != null)
+            replacement.m_parent = parent;
+        if (parent == null)
+            m_root = replacement;
+        else if (parent.m_left == node)
+            parent.m_left = replacement;
+        else
+            parent.m_right = replacement;
+        for (Node<V> ancestor = parent; ancestor != null; ancestor = ancestor.m_parent)
+            --ancestor.m_size;
+
+        m_nodesByOrdinal[ordinal] = null;
+        ++m_modCount;
+        return true;
+    }
+
+    @Override
+    public void clearInternal()
+    {
+        m_root = null;
+        m_nodesByOrdinal = newNodes(16);
+        ++m_modCount;
+    }
+
+    @Override
+    public Footprint footprintInternal()
+    {
+        return Footprint.ofStructure(MemoryLayout.object(5 * 4) + MemoryLayout.shallowSize(m_random) + MemoryLayout.referenceArray(m_nodesByOrdinal.length)
+            + (long) size() * MemoryLayout.object(7 * 4));
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean add(V value)
+    {
+        return m_container.addToAllIndexes(value);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends V> values)
+    {
+        return m_container.addAllToAllIndexes(values);
+    }
+
+    @Override
+    public boolean remove(Object value)
+    {
+        if (m_container.isRegistered(this)) {
+            // Let the container pick the entry to remove, and remove it from this index along with all others.
+            return m_container.removeFromAllIndexes(value);
+        }
+
+        // Once removed from its container, this index is no longer kept in sync with it, and must modify its own data.
+        m_container.checkWritable();
+        final int position = indexOf(value);
+        if (position < 0)
+            return false;
+        final Node<V> node = nodeAt(position);
+        removeInternal(node.m_value, node.m_ordinal);
+        m_container.removeFromAllIndexes(value);
+        return true;
+    }
+
+    @Override
+    public V removeAt(int position)
+    {
+        checkElementIndex(position, size());
+        final Node<V> node = nodeAt(position);
+        if (m_container.isRegistered(this))
+            return m_container.removeFromAllIndexes(node.m_ordinal);
+
+        // The ordinals of this index are those of the time it was removed from the container, which may have reused them since.
+        m_container.checkWritable();
+        removeInternal(node.m_value, node.m_ordinal);
+        m_container.removeFromAllIndexes(node.m_value);
+        return node.m_value;
+    }
+
+    @Override
+    public void clear()
+    {
+        m_container.clearAllIndexes();
+    }
+
+    // --------------------------------------------------------------------
+
+    @Override
+    public boolean isEmpty()
+    {
+        return m_root == null;
+    }
+
+    @Override
+    public int size()
+    {
+        return size(m_root);
+    }
+
+    @Override
+    public boolean contains(Object value)
+    {
+        return indexOf(value) >= 0;
+    }
+
+    @Override
+    public <K> List<V> filter(Function<? super V, K> keyExtractor, K key)
+    {
+        checkNotNull(keyExtractor, "Key extractor argument was null but expected non-null");
+        return m_container.filter(this, keyExtractor, key);
+    }
+
+    @Override
+    public V get(int position)
+    {
+        checkElementIndex(position, size());
+        return nodeAt(position).m_value;
+    }
+
+    @Override
+    public int indexOf(Object value)
+    {
+        if (!m_container.isRegistered(this)) {
+            // Once removed from its container, this index is no longer kept in sync with it, and must answer from its own data.
+            int position = 0;
+            for (Node<V> node = leftmost(m_root); node != null; node = successor(node), ++position) {
+                if (Objects.equals(node.m_value, value))
+                    return position;
+            }
+            return -1;
+        }
+
+        // Since positions follow insertion order, the first added equal entry is also the first occurrence.
+        final int ordinal = m_container.ordinalOf(value);
+        return ordinal < 0 ? -1 : rank(m_nodesByOrdinal[ordinal]);
+    }
+
+    @Override
+    public List<V> subList(int fromPosition, int toPosition)
+    {
+        checkPositionIndexes(fromPosition, toPosition, size());
+
+        final ArrayList<V> result = new ArrayList<>(toPosition - fromPosition);
+        if (fromPosition < toPosition) {
+            for (Node<V> node = nodeAt(fromPosition); result.size() < toPosition - fromPosition; node = successor(node))
+                result.add(node.m_value);
+        }
+        return result;
+    }
+
+    @Override
+    public Cursor<V> cursor()
+    {
+        return m_container.cursor(this, null);
+    }
+
+    @Override
+    public Cursor<V> cursor(String token)
+    {
+        checkNotNull(token, "Token argument was null but expected non-null");
+        return m_container.cursor(this, token);
+    }
+
+    @Override
+    public Iterator<V> iterator()
+    {
+        return new Iterator<V>() {
+            private final int m_expectedModCount = m_modCount;
+            private Node<V> m_next = leftmost(m_root);
+
+            @Override
+            public boolean hasNext()
+            {
+                return m_next != null;
+            }
+
+            @Override
+            public V next()
+            {
+                if (m_modCount != m_expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (m_next == null)
+                    throw new NoSuchElementException();
+
+                final V value = m_next.m_value;
+                m_next = successor(m_next);
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(m_container, subList(0, size()));
+    }
+
+    /**
+     * Compares the specified object with this Index for equality.
+     * <p>
+     * Returns true if and only if the specified object is also a TreapIndex, both Indexes originate from the same MultiIndexContainer instance, and all
+     * corresponding pairs of elements in the two Indexes are equal.
+     *
+     * @param o the object to be compared for equality with this Index
+     * @return true if the specified object is equal to this Index
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof TreapIndex))
+            return false;
+
+        final TreapIndex<?> other = (TreapIndex<?>) o;
+        return Objects.equals(m_container, other.m_container) //
+            && Iterators.elementsEqual(iterator(), other.iterator());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TreapIndex: " + Iterators.toString(iterator());
+    }
+}
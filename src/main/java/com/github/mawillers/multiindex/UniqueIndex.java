@@ -1,6 +1,8 @@
 package com.github.mawillers.multiindex;
 
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * An index that allows access to its values by means of a key.
@@ -41,4 +43,32 @@ public interface UniqueIndex<K, V> extends Index<V>
      * @return the value that is associated with the specified key
      */
     public Optional<V> getOptional(K key);
+
+    /**
+     * Returns an unmodifiable view of the keys of this index, which reflects later modifications.
+     * <p>
+     * Membership queries are answered by {@link #containsKey(Object)}, so keys are compared as this index compares them.
+     *
+     * @return the keys, never null
+     */
+    public Set<K> keys();
+
+    /**
+     * Returns an iterator over the keys and values of this index, which reads them directly from the data structures of the index, without allocating an
+     * entry object for each of them.
+     * <p>
+     * The keys are those stored by the index, so they are not extracted from the values again. Only the indexes of a {@link ReferenceContainer} do not store
+     * their keys, which would keep the values reachable; for them, each call of {@link EntryIterator#key()} or of the numeric accessors runs the key
+     * extractor on the value again, which costs as much as the extractor does.
+     *
+     * @return a new iterator, never null
+     */
+    public EntryIterator<K, V> entries();
+
+    /**
+     * Calls the specified action with the key and value of each entry of this index, in no particular order.
+     *
+     * @param action the action, must not be null
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action);
 }
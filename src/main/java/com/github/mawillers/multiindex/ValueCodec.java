@@ -0,0 +1,34 @@
+package com.github.mawillers.multiindex;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts values to and from a binary form, for replicating a container to other processes, see {@link ReplicationPrimary} and {@link ReplicationReplica}.
+ * <p>
+ * A value that has been written and read back must be accepted by the same indexes as the original. It need not be equal to the original, since replicas
+ * identify values by their position in the container of the primary, not by equality.
+ *
+ * @param <V> the type of values
+ */
+public interface ValueCodec<V>
+{
+    /**
+     * Writes the specified value.
+     *
+     * @param value the value, never null
+     * @param out the output to write to
+     * @throws IOException if writing fails
+     */
+    public void write(V value, DataOutput out) throws IOException;
+
+    /**
+     * Reads a value that has been written by {@link #write(Object, DataOutput)}.
+     *
+     * @param in the input to read from
+     * @return the value, never null
+     * @throws IOException if reading fails
+     */
+    public V read(DataInput in) throws IOException;
+}
@@ -0,0 +1,140 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class AggregateTest
+{
+    private static final String[] s_cities = { "Sunnydale", "Cleveland", "London", "Los Angeles", "Rome" };
+
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+    }
+
+    /**
+     * Adds enough employees to span many chunks, removing some of them to leave gaps in the ordinals.
+     */
+    private List<Employee> addMany()
+    {
+        final List<Employee> employees = new ArrayList<>();
+        for (int id = 0; id < 8 * GroupAggregation.CHUNK_SIZE; ++id)
+            employees.add(new Employee(id, "Name" + id % 1000, 18 + id % 50, id % 7 == 0 ? null : s_cities[id % s_cities.length]));
+        m_sequentialIndex.addAll(employees);
+
+        for (int id = 0; id < employees.size(); id += 3)
+            m_byId.remove(id);
+        return employees.stream().filter(e -> e.m_id % 3 != 0).collect(Collectors.toList());
+    }
+
+    @Test
+    public void countShouldCountEachGroup()
+    {
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        final Map<Integer, Long> expected = new HashMap<>();
+        expected.put(25, 1L);
+        expected.put(26, 1L);
+        expected.put(54, 1L);
+        assertThat(m_container.aggregate(e -> e.m_age, Aggregator.count()), is(expected));
+        assertThat(m_container.aggregate(e -> e.m_city, Aggregator.count()), is(Collections.singletonMap("Sunnydale", 3L)));
+    }
+
+    @Test
+    public void parallelAggregationShouldMatchSequentialOne()
+    {
+        final List<Employee> employees = addMany();
+
+        final Map<String, Long> counts = employees.stream().collect(Collectors.groupingBy(e -> String.valueOf(e.m_city), Collectors.counting()));
+        final Map<String, Long> actualCounts = new HashMap<>();
+        m_container.aggregate(e -> e.m_city, Aggregator.count()).forEach((city, count) -> actualCounts.put(String.valueOf(city), count));
+        assertThat(actualCounts, is(counts));
+
+        final Map<String, Double> sums = employees.stream().filter(e -> "Rome".equals(e.m_city)).collect(Collectors.groupingBy(e -> e.m_name,
+            Collectors.summingDouble(e -> e.m_age)));
+        assertThat(m_container.aggregate(e -> "Rome".equals(e.m_city) ? e.m_name : null, Aggregator.sum(e -> e.m_age)).get("Name1"), is(sums.get("Name1")));
+
+        final Map<String, Double> averages = employees.stream().filter(e -> e.m_city != null).collect(Collectors.groupingBy(e -> e.m_city,
+            Collectors.averagingDouble(e -> e.m_age)));
+        final Map<String, Double> actualAverages = m_container.aggregate(e -> e.m_city, Aggregator.average(e -> e.m_age));
+        for (String city : s_cities)
+            assertThat(actualAverages.get(city), is(closeTo(averages.get(city), 1e-9)));
+    }
+
+    @Test
+    public void minAndMaxShouldFindExtremes()
+    {
+        final List<Employee> employees = addMany();
+
+        final Map<Integer, Double> min = m_container.aggregate(e -> e.m_id % 2, Aggregator.min(e -> e.m_id));
+        final Map<Integer, Double> max = m_container.aggregate(e -> e.m_id % 2, Aggregator.max(e -> e.m_id));
+
+        assertThat(min.get(0), is(2.0));
+        assertThat(min.get(1), is(1.0));
+        assertThat(max.get(0), is((double) employees.stream().filter(e -> e.m_id % 2 == 0).mapToInt(e -> e.m_id).max().getAsInt()));
+        assertThat(max.get(1), is((double) employees.stream().filter(e -> e.m_id % 2 == 1).mapToInt(e -> e.m_id).max().getAsInt()));
+    }
+
+    @Test
+    public void approximateDistinctShouldBeClose()
+    {
+        addMany();
+
+        final Map<Boolean, Long> distinctIds = m_container.aggregate(e -> true, Aggregator.approximateDistinct(e -> e.m_id));
+        final double exact = m_sequentialIndex.size();
+        assertThat(distinctIds.get(true) / exact, is(closeTo(1.0, 0.1)));
+
+        // Small cardinalities are nearly exact.
+        final Map<String, Long> distinctAges = m_container.aggregate(e -> e.m_city, Aggregator.approximateDistinct(e -> e.m_age));
+        assertThat(distinctAges.get("Sunnydale"), is(10L));
+    }
+
+    @Test
+    public void tooManyDistinctGroupsShouldThrow()
+    {
+        // The registers of this many groups would overflow an int; the state must refuse them rather than allocate a wrapped size.
+        final Aggregator.State<Employee, Long> state = Aggregator.<Employee> approximateDistinct(e -> e.m_id).newState(16);
+
+        m_exception.expect(IllegalStateException.class);
+        state.ensureCapacity(Integer.MAX_VALUE / 512);
+    }
+
+    @Test
+    public void emptyContainerShouldYieldNoGroups()
+    {
+        assertThat(m_container.aggregate(e -> e.m_city, Aggregator.count()).isEmpty(), is(true));
+        assertThat(MultiIndexContainer.<Employee> create().aggregate(e -> e.m_city, Aggregator.count()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void nullAggregatorShouldThrow()
+    {
+        m_exception.expect(NullPointerException.class);
+        m_container.aggregate(e -> e.m_city, null);
+    }
+}
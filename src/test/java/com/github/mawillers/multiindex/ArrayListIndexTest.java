@@ -178,6 +178,19 @@ public final class ArrayListIndexTest
         iter.remove();
     }
 
+    @Test
+    public void removedIndexShouldKeepItsValues()
+    {
+        final SequentialIndex<Employee> other = m_multiIndexContainer.createSequentialIndex();
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        m_multiIndexContainer.removeIndex(other);
+        m_sequentialIndex.remove(TD.m_data1);
+        m_sequentialIndex.add(TD.m_data3);
+
+        assertThat(other, contains(TD.m_data1, TD.m_data2));
+        assertThat(m_sequentialIndex, contains(TD.m_data2, TD.m_data3));
+    }
+
     @Test
     public void sameInstanceAlwaysEquals()
     {
@@ -0,0 +1,207 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class AutoIndexerTest
+{
+    private static final Function<Employee, String> s_byCity = e -> e.m_city;
+    private static final Function<Employee, Integer> s_byAge = e -> e.m_age;
+
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+
+    // Runs the submitted tasks only when asked to, so that the tests can modify the container while an index is being built.
+    private final ArrayDeque<Runnable> m_tasks = new ArrayDeque<>();
+    private final Executor m_executor = m_tasks::add;
+
+    private final Employee m_data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+    private final Employee m_data5 = new Employee(5, "Chase", 25, "Los Angeles");
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3, m_data4));
+    }
+
+    private void runTasks()
+    {
+        while (!m_tasks.isEmpty())
+            m_tasks.poll().run();
+    }
+
+    @Test
+    public void filterShouldScanWithoutAutoIndexing()
+    {
+        assertThat(m_bySequence.filter(s_byAge, 25), contains(TD.m_data2, m_data4));
+        assertThat(m_bySequence.filter(s_byAge, 99), is(empty()));
+        assertThat(m_multiIndexContainer.autoIndexes(), is(empty()));
+    }
+
+    @Test
+    public void filterWithNullExtractorShouldThrow()
+    {
+        m_exception.expect(NullPointerException.class);
+        m_bySequence.filter(null, 25);
+    }
+
+    @Test
+    public void enablingTwiceShouldThrow()
+    {
+        m_multiIndexContainer.enableAutoIndexing(2, m_executor);
+
+        m_exception.expect(IllegalStateException.class);
+        m_multiIndexContainer.enableAutoIndexing(2, m_executor);
+    }
+
+    @Test
+    public void indexShouldBeBuiltAfterThreshold()
+    {
+        m_multiIndexContainer.enableAutoIndexing(2, m_executor);
+
+        m_bySequence.filter(s_byAge, 25);
+        final AutoIndex<Employee> autoIndex = m_multiIndexContainer.autoIndexes().get(0);
+        assertThat(autoIndex.keyExtractor(), is(sameInstance(s_byAge)));
+        assertThat(autoIndex.state(), is(AutoIndex.State.OBSERVED));
+
+        m_bySequence.filter(s_byAge, 25);
+        assertThat(autoIndex.state(), is(AutoIndex.State.BUILDING));
+        assertThat(m_tasks, hasSize(1));
+
+        runTasks();
+        assertThat(m_bySequence.filter(s_byAge, 25), contains(TD.m_data2, m_data4));
+        assertThat(autoIndex.state(), is(AutoIndex.State.READY));
+        assertThat(autoIndex.queryCount(), is(3L));
+        assertThat(autoIndex.indexedQueryCount(), is(1L));
+    }
+
+    @Test
+    public void modificationsDuringBuildShouldBeReplayed()
+    {
+        m_multiIndexContainer.enableAutoIndexing(1, m_executor);
+        m_bySequence.filter(s_byCity, "Sunnydale");
+
+        m_bySequence.remove(TD.m_data1);
+        m_bySequence.add(m_data5);
+        m_bySequence.add(TD.m_data1);
+        runTasks();
+
+        assertThat(m_bySequence.filter(s_byCity, "Sunnydale"), contains(TD.m_data2, TD.m_data3, m_data4, TD.m_data1));
+        assertThat(m_bySequence.filter(s_byCity, "Los Angeles"), contains(m_data5));
+        assertThat(m_multiIndexContainer.autoIndexes().get(0).indexedQueryCount(), is(2L));
+    }
+
+    @Test
+    public void finishedBuildShouldBeInstalledByModifications()
+    {
+        final MultiIndexContainer<Employee> plainContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> plainSequence = plainContainer.createSequentialIndex();
+        plainSequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3, m_data4));
+        m_multiIndexContainer.enableAutoIndexing(1, m_executor);
+        m_bySequence.filter(s_byCity, "Sunnydale");
+        runTasks();
+
+        // Without any query, the index is only installed by the modification; until then, the footprint does not include it.
+        assertThat(m_multiIndexContainer.footprint().totalBytes(), is(plainContainer.footprint().totalBytes()));
+        m_bySequence.add(m_data5);
+        plainSequence.add(m_data5);
+        assertThat(m_multiIndexContainer.footprint().totalBytes(), is(greaterThan(plainContainer.footprint().totalBytes())));
+        assertThat(m_bySequence.filter(s_byCity, "Los Angeles"), contains(m_data5));
+    }
+
+    @Test
+    public void readyIndexShouldBeMaintained()
+    {
+        m_multiIndexContainer.enableAutoIndexing(1, m_executor);
+        m_bySequence.filter(s_byAge, 25);
+        runTasks();
+
+        m_bySequence.remove(TD.m_data2);
+        m_bySequence.add(m_data5);
+        assertThat(m_bySequence.filter(s_byAge, 25), contains(m_data4, m_data5));
+
+        m_bySequence.clear();
+        assertThat(m_bySequence.filter(s_byAge, 25), is(empty()));
+        m_bySequence.add(m_data5);
+        assertThat(m_bySequence.filter(s_byAge, 25), contains(m_data5));
+        assertThat(m_multiIndexContainer.autoIndexes().get(0).state(), is(AutoIndex.State.READY));
+    }
+
+    @Test
+    public void pinShouldBuildImmediately()
+    {
+        m_multiIndexContainer.enableAutoIndexing(100, m_executor);
+        m_bySequence.filter(s_byCity, "Sunnydale");
+
+        final AutoIndex<Employee> autoIndex = m_multiIndexContainer.autoIndexes().get(0);
+        autoIndex.pin();
+        assertThat(autoIndex.isPinned(), is(true));
+        assertThat(autoIndex.state(), is(AutoIndex.State.READY));
+        assertThat(m_tasks, is(empty()));
+        assertThat(m_bySequence.filter(s_byCity, "Sunnydale"), contains(TD.m_data1, TD.m_data2, TD.m_data3, m_data4));
+        assertThat(autoIndex.indexedQueryCount(), is(1L));
+    }
+
+    @Test
+    public void droppedIndexShouldNotBeRebuilt()
+    {
+        m_multiIndexContainer.enableAutoIndexing(1, m_executor);
+        m_bySequence.filter(s_byAge, 25);
+        runTasks();
+
+        final AutoIndex<Employee> autoIndex = m_multiIndexContainer.autoIndexes().get(0);
+        autoIndex.drop();
+        assertThat(autoIndex.state(), is(AutoIndex.State.DROPPED));
+        assertThat(m_bySequence.filter(s_byAge, 25), contains(TD.m_data2, m_data4));
+        assertThat(m_tasks, is(empty()));
+        assertThat(autoIndex.indexedQueryCount(), is(0L));
+
+        autoIndex.pin();
+        assertThat(autoIndex.state(), is(AutoIndex.State.READY));
+    }
+
+    @Test
+    public void failingExtractorShouldDropIndex()
+    {
+        final Function<Employee, String> byNameInitial = e -> e.m_name.substring(0, 1);
+        m_multiIndexContainer.enableAutoIndexing(1, m_executor);
+        m_bySequence.filter(byNameInitial, "S");
+        runTasks();
+
+        // The index must not make this addition fail.
+        m_bySequence.add(new Employee(6, null, 30, "Sunnydale"));
+        assertThat(m_bySequence.size(), is(5));
+        assertThat(m_multiIndexContainer.autoIndexes().get(0).state(), is(AutoIndex.State.DROPPED));
+    }
+
+    @Test
+    public void removedIndexShouldScanItsOwnData()
+    {
+        m_multiIndexContainer.enableAutoIndexing(1, m_executor);
+        m_multiIndexContainer.removeIndex(m_bySequence);
+
+        assertThat(m_bySequence.filter(s_byAge, 25), contains(TD.m_data2, m_data4));
+        assertThat(m_multiIndexContainer.autoIndexes(), is(empty()));
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.OptionalInt;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class ColumnarArrayIndexTest
+{
+    private static final Employee s_nullCity = new Employee(4, "Rosenberg", 19, null);
+
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private ColumnarIndex<Employee> m_columns;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private ColumnarIndex.IntColumn m_age;
+    private ColumnarIndex.StringColumn m_city;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_columns = m_multiIndexContainer.createColumnarIndex();
+        m_byId = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_id);
+        m_age = m_columns.addIntColumn(e -> e.m_age);
+        m_city = m_columns.addStringColumn(e -> e.m_city);
+    }
+
+    private void addAllTestData()
+    {
+        m_columns.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3, s_nullCity));
+    }
+
+    @Test
+    public void creationShouldAlwaysSucceed()
+    {
+        assertThat(m_columns, is(notNullValue()));
+    }
+
+    @Test
+    public void newIndexShouldBeEmpty()
+    {
+        assertThat(m_columns.isEmpty(), is(true));
+        assertThat(m_age.sum(), is(0L));
+        assertThat(m_age.min(), is(OptionalInt.empty()));
+        assertThat(m_city.countByValue().isEmpty(), is(true));
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        addAllTestData();
+        m_columns.clear();
+        assertThat(m_columns.size(), is(0));
+        assertThat(m_age.whereBetween(0, 100).isEmpty(), is(true));
+        assertThat(m_city.countByValue().isEmpty(), is(true));
+
+        m_columns.add(TD.m_data3);
+        assertThat(m_age.get(0), is(54));
+        assertThat(m_city.get(0), is("Sunnydale"));
+    }
+
+    @Test
+    public void addNullShouldFail()
+    {
+        assertThat(m_columns.add(null), is(false));
+    }
+
+    @Test
+    public void testIterationAndPositions()
+    {
+        addAllTestData();
+        assertThat(m_columns, contains(TD.m_data1, TD.m_data2, TD.m_data3, s_nullCity));
+        assertThat(m_columns.get(2), is(TD.m_data3));
+        assertThat(m_age.get(1), is(25));
+        assertThat(m_city.get(3), is(nullValue()));
+    }
+
+    @Test
+    public void testAggregations()
+    {
+        addAllTestData();
+        assertThat(m_age.sum(), is(124L));
+        assertThat(m_age.min().getAsInt(), is(19));
+        assertThat(m_age.max().getAsInt(), is(54));
+        assertThat(m_age.average().getAsDouble(), is(31.0));
+
+        final ColumnarIndex.DoubleColumn ageAsDouble = m_columns.addDoubleColumn(e -> e.m_age / 2.0);
+        assertThat(ageAsDouble.sum(), is(62.0));
+        final ColumnarIndex.LongColumn idAsLong = m_columns.addLongColumn(e -> e.m_id * 1000000000L);
+        assertThat(idAsLong.max().getAsLong(), is(4000000000L));
+    }
+
+    @Test
+    public void testFilters()
+    {
+        addAllTestData();
+
+        final BitSet young = m_age.whereBetween(0, 25);
+        assertThat(m_columns.valuesAt(young), contains(TD.m_data2, s_nullCity));
+        assertThat(m_age.sum(young), is(44L));
+        assertThat(m_age.where(age -> age % 2 == 0), is(m_age.whereBetween(26, 54)));
+
+        final BitSet sunnydale = m_city.whereEqualTo("Sunnydale");
+        sunnydale.and(young);
+        assertThat(m_columns.valuesAt(sunnydale), contains(TD.m_data2));
+        assertThat(m_columns.valuesAt(m_city.whereEqualTo(null)), contains(s_nullCity));
+        assertThat(m_columns.valuesAt(m_city.whereEqualTo("Nowhere")), is(empty()));
+
+        final Map<String, Integer> expected = new HashMap<>();
+        expected.put("Sunnydale", 3);
+        assertThat(m_city.countByValue(), is(expected));
+    }
+
+    @Test
+    public void removalShouldKeepColumnsAligned()
+    {
+        addAllTestData();
+
+        m_byId.remove(2);
+        assertThat(m_columns, contains(TD.m_data1, TD.m_data3, s_nullCity));
+        assertThat(m_age.get(1), is(54));
+        assertThat(m_city.get(2), is(nullValue()));
+
+        assertThat(m_columns.remove(TD.m_data1), is(true));
+        assertThat(m_columns.remove(TD.m_data1), is(false));
+        assertThat(m_byId.containsKey(1), is(false));
+        assertThat(m_age.sum(), is(73L));
+    }
+
+    @Test
+    public void removedIndexShouldRemoveItsOwnRows()
+    {
+        addAllTestData();
+        m_multiIndexContainer.removeIndex(m_columns);
+
+        assertThat(m_columns.remove(TD.m_data2), is(true));
+        assertThat(m_columns.contains(TD.m_data2), is(false));
+        assertThat(m_columns.size(), is(3));
+        assertThat(m_age.get(1), is(54));
+        assertThat(m_city.get(2), is(nullValue()));
+        assertThat(m_byId.containsKey(2), is(false));
+        assertThat(m_columns.remove(TD.m_data2), is(false));
+    }
+
+    @Test
+    public void columnsAddedLaterShouldBeFilled()
+    {
+        addAllTestData();
+        final ColumnarIndex.IntColumn ids = m_columns.addIntColumn(e -> e.m_id);
+        assertThat(ids.sum(), is(10L));
+
+        for (int i = 0; i < 100; ++i)
+            m_columns.add(new Employee(100 + i, "Bulk", i, "Bulk City"));
+        assertThat(ids.get(103), is(199));
+        assertThat(m_city.countByValue().get("Bulk City"), is(100));
+    }
+
+    @Test
+    public void modificationDuringIterationShouldThrow()
+    {
+        addAllTestData();
+        final Iterator<Employee> iter = m_columns.iterator();
+        iter.next();
+        m_columns.add(new Employee(5, "Late", 30, "Sunnydale"));
+
+        m_exception.expect(ConcurrentModificationException.class);
+        iter.next();
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_columns.equals(m_columns), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        final String text = m_columns.toString();
+        assertThat(text, startsWith("ColumnarArrayIndex"));
+    }
+}
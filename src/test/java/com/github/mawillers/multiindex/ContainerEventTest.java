@@ -0,0 +1,122 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class ContainerEventTest
+{
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private final List<ContainerEvent<Employee>> m_events = new ArrayList<>();
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+    }
+
+    private List<ContainerEvent.Kind> kinds()
+    {
+        return m_events.stream().map(ContainerEvent::kind).collect(Collectors.toList());
+    }
+
+    @Test
+    public void noEventsWithoutListener()
+    {
+        m_container.setEventListener(m_events::add, 0);
+        m_container.setEventListener(null, 0);
+        m_sequentialIndex.add(TD.m_data1);
+        m_sequentialIndex.add(TD.m_data1);
+        m_sequentialIndex.clear();
+
+        assertThat(m_events, is(empty()));
+    }
+
+    @Test
+    public void rejectionShouldReportTheRejectingIndex()
+    {
+        m_container.setEventListener(m_events::add, Long.MAX_VALUE);
+        m_sequentialIndex.add(TD.m_data1);
+        m_sequentialIndex.add(TD.m_data1);
+
+        assertThat(kinds(), contains(ContainerEvent.Kind.REJECTED));
+        final ContainerEvent<Employee> event = m_events.get(0);
+        assertThat(event.container(), is(sameInstance(m_container)));
+        assertThat(event.index(), is(sameInstance(m_byId)));
+        assertThat(event.indexType(), is("HashMapIndex"));
+        assertThat(event.entryCount(), is(1));
+        assertThat(event.affectedCount(), is(0));
+    }
+
+    @Test
+    public void slowOperationsShouldBeReportedAboveThreshold()
+    {
+        m_container.setEventListener(m_events::add, 0);
+        m_sequentialIndex.add(TD.m_data1);
+        m_byId.remove(TD.m_data1.m_id);
+
+        assertThat(kinds(), contains(ContainerEvent.Kind.SLOW_ADD, ContainerEvent.Kind.SLOW_REMOVE));
+        final ContainerEvent<Employee> add = m_events.get(0);
+        assertThat(add.durationNanos(), is(greaterThanOrEqualTo(add.indexNanos())));
+        assertThat(add.affectedCount(), is(1));
+        assertThat(add.entryCount(), is(1));
+        assertThat(m_events.get(1).entryCount(), is(0));
+    }
+
+    @Test
+    public void bulkLoadAndClearShouldReportCounts()
+    {
+        m_container.setEventListener(m_events::add, Long.MAX_VALUE);
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data1));
+        m_sequentialIndex.clear();
+
+        assertThat(kinds(), contains(ContainerEvent.Kind.REJECTED, ContainerEvent.Kind.BULK_LOAD, ContainerEvent.Kind.CLEAR));
+        assertThat(m_events.get(1).affectedCount(), is(2));
+        assertThat(m_events.get(1).index(), is(nullValue()));
+        assertThat(m_events.get(2).affectedCount(), is(2));
+        assertThat(m_events.get(2).entryCount(), is(0));
+    }
+
+    @Test
+    public void indexCreationAndRemovalShouldBeReported()
+    {
+        m_container.setEventListener(m_events::add, Long.MAX_VALUE);
+        final PositionalIndex<Employee> positional = m_container.createPositionalIndex();
+        m_container.removeIndex(positional);
+        m_container.removeIndex(positional);
+
+        assertThat(kinds(), contains(ContainerEvent.Kind.INDEX_CREATED, ContainerEvent.Kind.INDEX_REMOVED));
+        assertThat(m_events.get(0).index(), is(sameInstance(positional)));
+        assertThat(m_events.get(0).toString(), startsWith("ContainerEvent: INDEX_CREATED in TreapIndex"));
+    }
+
+    @Test
+    public void negativeThresholdShouldThrow()
+    {
+        m_exception.expect(IllegalArgumentException.class);
+        m_container.setEventListener(m_events::add, -1);
+    }
+}
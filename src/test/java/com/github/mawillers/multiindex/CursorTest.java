@@ -0,0 +1,262 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class CursorTest
+{
+    private static final Employee s_data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+    }
+
+    private static <V> List<V> remaining(Cursor<V> cursor)
+    {
+        final List<V> result = new ArrayList<>();
+        cursor.forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test
+    public void cursorShouldVisitAllValuesInInsertionOrder()
+    {
+        assertThat(remaining(m_sequentialIndex.cursor()), contains(TD.m_data1, TD.m_data2, TD.m_data3));
+    }
+
+    @Test
+    public void tokenShouldResumeAfterTheLastReturnedValue()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        cursor.next();
+        final String token = cursor.token();
+
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(TD.m_data2, TD.m_data3));
+    }
+
+    @Test
+    public void tokenShouldSurviveModificationsOfOtherValues()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        cursor.next();
+        cursor.next();
+        final String token = cursor.token();
+
+        m_byId.remove(TD.m_data1.m_id);
+        m_byId.remove(TD.m_data3.m_id);
+        m_sequentialIndex.add(s_data4);
+        m_sequentialIndex.add(TD.m_data1);
+
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(s_data4, TD.m_data1));
+    }
+
+    @Test
+    public void tokenShouldSurviveRemovalOfItsOwnValue()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        cursor.next();
+        cursor.next();
+        final String token = cursor.token();
+
+        // The ordinal of the removed value is reused by the value added next, which must not be mistaken for the removed one.
+        m_byId.remove(TD.m_data2.m_id);
+        m_sequentialIndex.add(s_data4);
+
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(TD.m_data3, s_data4));
+    }
+
+    @Test
+    public void tokenShouldSurviveRemovalOfItsValueAndItsSuccessors()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        cursor.next();
+        final String token = cursor.token();
+
+        m_byId.remove(TD.m_data1.m_id);
+        m_byId.remove(TD.m_data2.m_id);
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(TD.m_data3));
+
+        m_byId.remove(TD.m_data3.m_id);
+        m_sequentialIndex.add(s_data4);
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(s_data4));
+    }
+
+    @Test
+    public void tokenOfRemovedLastValueShouldResumeAtValuesAddedLater()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        remaining(cursor);
+        final String token = cursor.token();
+
+        m_byId.remove(TD.m_data3.m_id);
+        assertThat(remaining(m_sequentialIndex.cursor(token)).isEmpty(), is(true));
+        m_sequentialIndex.add(s_data4);
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(s_data4));
+    }
+
+    @Test(timeout = 5000)
+    public void pagingWhileRemovingEachPageBoundaryShouldNotRescan()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final QueueIndex<Employee> queue = container.createQueueIndex();
+        final UniqueIndex<Integer, Employee> byId = container.createHashedUniqueIndex(e -> e.m_id);
+        final int count = 100_000;
+        final List<Employee> employees = new ArrayList<>();
+        for (int id = 0; id < 2 * count; ++id)
+            employees.add(new Employee(id, "Name", 30, "City"));
+        queue.addAll(employees);
+
+        // The first half stays, so that searching the list from its beginning would pass it on each resume.
+        Cursor<Employee> cursor = queue.cursor();
+        for (int id = 0; id < count; ++id)
+            cursor.next();
+
+        // Each page of the second half is a single value, which is removed before the next page is requested.
+        for (int id = count; id < 2 * count; ++id) {
+            assertThat(cursor.next().m_id, is(id));
+            final String token = cursor.token();
+            byId.remove(id);
+            cursor = queue.cursor(token);
+        }
+        assertThat(cursor.hasNext(), is(false));
+        assertThat(queue.size(), is(count));
+    }
+
+    @Test
+    public void cursorShouldNotFailOnConcurrentModification()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        assertThat(cursor.next(), is(TD.m_data1));
+
+        m_byId.remove(TD.m_data2.m_id);
+        m_sequentialIndex.add(s_data4);
+
+        assertThat(remaining(cursor), contains(TD.m_data3, s_data4));
+    }
+
+    @Test
+    public void tokenFromBeforeClearShouldNotSkipNewValues()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        cursor.next();
+        final String token = cursor.token();
+
+        m_sequentialIndex.clear();
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data3, s_data4));
+
+        assertThat(remaining(m_sequentialIndex.cursor(token)), contains(TD.m_data3, s_data4));
+    }
+
+    @Test
+    public void tokensShouldBeSharedByAllSequentialIndexesOfTheContainer()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final SequentialIndex<Employee> sequential = container.createSequentialIndex();
+        final PositionalIndex<Employee> positional = container.createPositionalIndex();
+        sequential.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+
+        final Cursor<Employee> cursor = sequential.cursor();
+        cursor.next();
+        assertThat(remaining(positional.cursor(cursor.token())), contains(TD.m_data2));
+    }
+
+    @Test
+    public void exhaustedCursorShouldThrow()
+    {
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        remaining(cursor);
+
+        m_exception.expect(NoSuchElementException.class);
+        cursor.next();
+    }
+
+    @Test
+    public void malformedTokenShouldThrow()
+    {
+        m_exception.expect(IllegalArgumentException.class);
+        m_sequentialIndex.cursor("not a token");
+    }
+
+    @Test
+    public void removedIndexShouldThrow()
+    {
+        m_container.removeIndex(m_sequentialIndex);
+
+        m_exception.expect(IllegalStateException.class);
+        m_sequentialIndex.cursor();
+    }
+
+    @Test
+    public void frozenCursorShouldResumeAtItsPosition()
+    {
+        final SequentialIndex<Employee> frozen = m_container.freeze().index(m_sequentialIndex);
+        final Cursor<Employee> cursor = frozen.cursor();
+        cursor.next();
+
+        assertThat(remaining(frozen.cursor(cursor.token())), contains(TD.m_data2, TD.m_data3));
+    }
+
+    @Test
+    public void partitionedCursorShouldVisitAllPartitions()
+    {
+        final PartitionedContainer<Integer, Employee> container = PartitionedContainer.create(4, e -> e.m_id);
+        final SequentialIndex<Employee> sequential = container.createSequentialIndex();
+        final UniqueIndex<Integer, Employee> byId = container.createPartitionKeyIndex();
+        sequential.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3, s_data4));
+
+        final List<Employee> expected = new ArrayList<>();
+        sequential.forEach(expected::add);
+
+        final Cursor<Employee> cursor = sequential.cursor();
+        final Employee first = cursor.next();
+        final Employee second = cursor.next();
+        final String token = cursor.token();
+        byId.remove(second.m_id);
+
+        final List<Employee> resumed = new ArrayList<>(Arrays.asList(first, second));
+        resumed.addAll(remaining(sequential.cursor(token)));
+        assertThat(resumed, is(expected));
+    }
+
+    @Test
+    public void referenceCursorShouldResumeAfterRemovedValue()
+    {
+        final ReferenceContainer<Employee> container = ReferenceContainer.createSoft();
+        final SequentialIndex<Employee> sequential = container.createSequentialIndex();
+        sequential.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        final Cursor<Employee> cursor = sequential.cursor();
+        cursor.next();
+        cursor.next();
+        final String token = cursor.token();
+        sequential.remove(TD.m_data2);
+        sequential.add(s_data4);
+
+        assertThat(remaining(cursor), contains(TD.m_data3, s_data4));
+        assertThat(remaining(sequential.cursor(token)), contains(TD.m_data3, s_data4));
+    }
+}
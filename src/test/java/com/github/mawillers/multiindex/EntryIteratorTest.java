@@ -0,0 +1,192 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.base.Equivalence;
+
+@SuppressWarnings("javadoc")
+public final class EntryIteratorTest
+{
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private UniqueIndex<String, Employee> m_byName;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+        m_byName = m_container.createIncrementalHashedUniqueIndex(e -> e.m_name);
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+    }
+
+    private static <K, V> Map<K, V> entries(UniqueIndex<K, V> index)
+    {
+        final Map<K, V> result = new HashMap<>();
+        for (EntryIterator<K, V> entries = index.entries(); entries.next();)
+            result.put(entries.key(), entries.value());
+        return result;
+    }
+
+    private static <K, V> Map<K, V> forEach(UniqueIndex<K, V> index)
+    {
+        final Map<K, V> result = new HashMap<>();
+        index.forEach(result::put);
+        return result;
+    }
+
+    private static Map<Integer, Employee> expectedById(Employee... values)
+    {
+        final Map<Integer, Employee> result = new HashMap<>();
+        for (Employee value : values)
+            result.put(value.m_id, value);
+        return result;
+    }
+
+    @Test
+    public void entriesShouldVisitAllKeysAndValues()
+    {
+        final Map<Integer, Employee> expected = expectedById(TD.m_data1, TD.m_data2, TD.m_data3);
+        assertThat(entries(m_byId), is(expected));
+        assertThat(forEach(m_byId), is(expected));
+        assertThat(m_byId.keys(), containsInAnyOrder(1, 2, 3));
+        assertThat(m_byName.keys(), containsInAnyOrder("Harris", "Summers", "Giles"));
+        assertThat(forEach(m_byName).get("Giles"), is(TD.m_data3));
+    }
+
+    @Test
+    public void keysShouldReflectModifications()
+    {
+        final Set<Integer> keys = m_byId.keys();
+        m_byId.remove(2);
+
+        assertThat(keys.size(), is(2));
+        assertThat(keys.contains(2), is(false));
+        assertThat(keys.contains(3), is(true));
+    }
+
+    @Test
+    public void incrementalIndexShouldVisitAllEntriesWhileGrowing()
+    {
+        final List<Employee> values = new ArrayList<>();
+        for (int id = 10; id < 100; ++id)
+            values.add(new Employee(id, "Name" + id, 30, "City"));
+        m_sequentialIndex.addAll(values);
+
+        assertThat(entries(m_byName).size(), is(93));
+        assertThat(m_byName.keys().size(), is(93));
+        assertThat(forEach(m_byName).size(), is(93));
+    }
+
+    @Test
+    public void primitiveKeysShouldNotNeedBoxing()
+    {
+        long sum = 0;
+        for (EntryIterator<Integer, Employee> entries = m_byId.entries(); entries.next();)
+            sum += entries.longKey() + entries.intKey();
+        assertThat(sum, is(12L));
+    }
+
+    @Test
+    public void iterationShouldReadStoredKeys()
+    {
+        final AtomicInteger extractions = new AtomicInteger();
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final UniqueIndex<Integer, Employee> byAge = container.createHashedUniqueIndex(e -> {
+            extractions.incrementAndGet();
+            return e.m_age;
+        });
+        byAge.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        final UniqueIndex<Integer, Employee> frozen = container.freeze().index(byAge);
+        extractions.set(0);
+
+        assertThat(entries(byAge), is(forEach(byAge)));
+        assertThat(entries(frozen), is(forEach(frozen)));
+        assertThat(entries(byAge).keySet(), containsInAnyOrder(26, 25, 54));
+        assertThat(extractions.get(), is(0));
+    }
+
+    @Test
+    public void frozenIndexShouldIterateItsEntries()
+    {
+        final UniqueIndex<Integer, Employee> frozen = m_container.freeze().index(m_byId);
+        assertThat(entries(frozen), is(expectedById(TD.m_data1, TD.m_data2, TD.m_data3)));
+        assertThat(frozen.keys(), containsInAnyOrder(1, 2, 3));
+    }
+
+    @Test
+    public void partitionedIndexesShouldIterateAllPartitions()
+    {
+        final PartitionedContainer<Integer, Employee> container = PartitionedContainer.create(4, e -> e.m_id);
+        final UniqueIndex<Integer, Employee> byId = container.createPartitionKeyIndex();
+        final UniqueIndex<String, Employee> byName = container.createHashedUniqueIndex(e -> e.m_name);
+        byId.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        assertThat(entries(byId), is(expectedById(TD.m_data1, TD.m_data2, TD.m_data3)));
+        assertThat(forEach(byId), is(expectedById(TD.m_data1, TD.m_data2, TD.m_data3)));
+        assertThat(byName.keys(), containsInAnyOrder("Harris", "Summers", "Giles"));
+        assertThat(entries(byName).get("Summers"), is(TD.m_data2));
+    }
+
+    @Test
+    public void referenceIndexShouldIterateLiveValues()
+    {
+        final ReferenceContainer<Employee> container = ReferenceContainer.createSoft();
+        final UniqueIndex<Integer, Employee> byId = container.createHashedUniqueIndex(e -> e.m_id);
+        byId.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+
+        assertThat(entries(byId), is(expectedById(TD.m_data1, TD.m_data2)));
+        assertThat(byId.keys(), containsInAnyOrder(1, 2));
+    }
+
+    @Test
+    public void emptyIndexShouldHaveNoEntries()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final UniqueIndex<String, Employee> byName = container.createHashedUniqueIndex(e -> e.m_name, Equivalence.equals());
+
+        assertThat(byName.entries().next(), is(false));
+        assertThat(byName.keys(), is(empty()));
+    }
+
+    @Test
+    public void exhaustedEntriesShouldThrow()
+    {
+        final EntryIterator<Integer, Employee> entries = m_byId.entries();
+        while (entries.next()) {
+            // Visit all entries.
+        }
+
+        m_exception.expect(NoSuchElementException.class);
+        entries.key();
+    }
+
+    @Test
+    public void keySetShouldBeUnmodifiable()
+    {
+        m_exception.expect(UnsupportedOperationException.class);
+        m_byId.keys().remove(1);
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.mawillers.multiindex;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Compares the footprint estimate with the growth of the heap while a container is filled. The values are created beforehand, so that only the memory of
+ * the container itself is measured.
+ * <p>
+ * The measurement depends on {@link System#gc()} and on the collector in use, so it is not run by the unit tests; run {@link #main(String[])} by hand. A
+ * ratio far from 1 means that the estimates are off by a large factor.
+ */
+@SuppressWarnings("javadoc")
+public final class FootprintBenchmark
+{
+    private static final int VALUE_COUNT = 200_000;
+
+    private FootprintBenchmark()
+    {
+    }
+
+    private static long usedHeap() throws InterruptedException
+    {
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        final List<Employee> values = FootprintTest.employees(VALUE_COUNT);
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final SequentialIndex<Employee> sequentialIndex = container.createSequentialIndex();
+        container.createHashedUniqueIndex(e -> e.m_id);
+        container.createPositionalIndex();
+
+        final long before = usedHeap();
+        sequentialIndex.addAll(values);
+        final long after = usedHeap();
+
+        final Footprint footprint = container.footprint();
+        final long estimate = footprint.totalBytes() - footprint.valueBytes();
+        System.out.println("Measured " + (after - before) + " bytes, estimated " + estimate + " bytes, ratio " + (double) (after - before) / estimate);
+        // Keeps the values reachable until after the measurement.
+        System.out.println(values.size() + " values");
+    }
+}
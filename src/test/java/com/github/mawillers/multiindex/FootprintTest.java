@@ -0,0 +1,93 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class FootprintTest
+{
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+    }
+
+    static List<Employee> employees(int count)
+    {
+        final List<Employee> result = new ArrayList<>(count);
+        for (int id = 0; id < count; ++id)
+            result.add(new Employee(id, "Name", 30, "City"));
+        return result;
+    }
+
+    @Test
+    public void valuesShouldBeCountedOnceByTheContainerOnly()
+    {
+        m_sequentialIndex.addAll(employees(100));
+
+        final long valueBytes = m_container.footprint().valueBytes();
+        assertThat(valueBytes, is(100 * MemoryLayout.shallowSize(TD.m_data1)));
+        assertThat(m_container.footprint(m_sequentialIndex).valueBytes(), is(0L));
+        assertThat(m_container.footprint(m_byId).valueBytes(), is(0L));
+    }
+
+    @Test
+    public void containerFootprintShouldIncludeAllIndexes()
+    {
+        m_sequentialIndex.addAll(employees(100));
+
+        final Footprint total = m_container.footprint();
+        final long indexBytes = m_container.footprint(m_sequentialIndex).totalBytes() + m_container.footprint(m_byId).totalBytes();
+        assertThat(total.totalBytes(), is(greaterThan(indexBytes + total.valueBytes())));
+        assertThat(total.toString(), startsWith("Footprint: " + total.totalBytes() + " bytes"));
+    }
+
+    @Test
+    public void footprintShouldGrowWithTheValues()
+    {
+        final long empty = m_container.footprint(m_byId).totalBytes();
+        m_sequentialIndex.addAll(employees(1000));
+        assertThat(m_container.footprint(m_byId).totalBytes(), is(greaterThan(empty + 1000 * 8)));
+    }
+
+    @Test
+    public void indexesThatStoreKeysShouldReportThem()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final PrefixIndex<Employee> byName = container.createPrefixIndex(e -> e.m_name);
+        container.createIncrementalHashedUniqueIndex(e -> e.m_id);
+        byName.add(TD.m_data1);
+
+        assertThat(container.footprint(byName).keyBytes(), is(greaterThanOrEqualTo((long) TD.m_data1.m_name.length())));
+    }
+
+    @Test
+    public void foreignIndexShouldThrow()
+    {
+        final MultiIndexContainer<Employee> other = MultiIndexContainer.create();
+        final SequentialIndex<Employee> foreign = other.createSequentialIndex();
+
+        m_exception.expect(IllegalArgumentException.class);
+        m_container.footprint(foreign);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.base.Equivalence;
+
+@SuppressWarnings("javadoc")
+public final class FrozenContainerTest
+{
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private UniqueIndex<String, Employee> m_byName;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_byId = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_id);
+        m_byName = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_name, new Equivalence<String>() {
+            @Override
+            protected boolean doEquivalent(String a, String b)
+            {
+                return a.equalsIgnoreCase(b);
+            }
+
+            @Override
+            protected int doHash(String s)
+            {
+                return s.toLowerCase().hashCode();
+            }
+        });
+        m_bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+    }
+
+    @Test
+    public void frozenIndexesShouldHoldAllValues()
+    {
+        final FrozenContainer<Employee> frozen = m_multiIndexContainer.freeze();
+
+        assertThat(frozen.size(), is(3));
+        assertThat(frozen.index(m_bySequence), contains(TD.m_data1, TD.m_data2, TD.m_data3));
+        assertThat(frozen.index(m_bySequence).contains(TD.m_data2), is(true));
+
+        final UniqueIndex<Integer, Employee> byId = frozen.index(m_byId);
+        assertThat(byId.size(), is(3));
+        assertThat(byId.getOptional(2).get(), is(sameInstance(TD.m_data2)));
+        assertThat(byId.getOptional(4).isPresent(), is(false));
+        assertThat(byId.containsKey(3), is(true));
+        assertThat(byId.containsKey("3"), is(false));
+        assertThat(byId.containsValue(TD.m_data1), is(true));
+        assertThat(byId.containsValue(new Employee(1, "Harris", 26, "Sunnydale")), is(false));
+
+        assertThat(frozen.index(m_byName).getOptional("GILES").get(), is(sameInstance(TD.m_data3)));
+    }
+
+    @Test
+    public void frozenContainerShouldNotSeeLaterModifications()
+    {
+        final FrozenContainer<Employee> frozen = m_multiIndexContainer.freeze();
+        m_byId.remove(1);
+
+        assertThat(frozen.index(m_byId).containsKey(1), is(true));
+        assertThat(frozen.size(), is(3));
+    }
+
+    @Test
+    public void manyValuesShouldBeFound()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final UniqueIndex<Integer, Employee> byId = container.createIncrementalHashedUniqueIndex(e -> e.m_id);
+        for (int i = 0; i < 10000; ++i)
+            byId.add(new Employee(i * 7, "E" + i, 30, "City"));
+        byId.remove(70);
+
+        final UniqueIndex<Integer, Employee> frozen = container.freeze().index(byId);
+        assertThat(frozen.size(), is(9999));
+        for (int i = 0; i < 10000; ++i)
+            assertThat(frozen.containsKey(i * 7), is(i != 10));
+        assertThat(frozen.containsKey(1), is(false));
+    }
+
+    @Test
+    public void emptyContainerShouldFreeze()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final UniqueIndex<Integer, Employee> byId = container.createHashedUniqueIndex(e -> e.m_id);
+
+        final UniqueIndex<Integer, Employee> frozen = container.freeze().index(byId);
+        assertThat(frozen.isEmpty(), is(true));
+        assertThat(frozen.containsKey(1), is(false));
+    }
+
+    @Test
+    public void modificationShouldThrow()
+    {
+        final FrozenContainer<Employee> frozen = m_multiIndexContainer.freeze();
+
+        m_exception.expect(UnsupportedOperationException.class);
+        frozen.index(m_byId).addAll(Collections.singleton(new Employee(4, "Rosenberg", 25, "Sunnydale")));
+    }
+
+    @Test
+    public void foreignIndexShouldThrow()
+    {
+        final MultiIndexContainer<Employee> other = MultiIndexContainer.create();
+        final UniqueIndex<Integer, Employee> byId = other.createHashedUniqueIndex(e -> e.m_id);
+
+        m_exception.expect(IllegalArgumentException.class);
+        m_multiIndexContainer.freeze().index(byId);
+    }
+}
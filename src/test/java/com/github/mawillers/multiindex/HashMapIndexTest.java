@@ -4,6 +4,7 @@ import static com.github.npathai.hamcrestopt.OptionalMatchers.isPresent;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 
@@ -140,6 +141,65 @@ public final class HashMapIndexTest
         assertThat(m_byId.getOptional(0), not(isPresent()));
     }
 
+    @Test
+    public void lookupsShouldSurviveGrowingAndRemoving()
+    {
+        for (int id = 0; id < 1000; ++id)
+            m_byId.add(new Employee(id, "Name" + id, 20, "City"));
+        for (int id = 0; id < 1000; id += 3)
+            assertThat(m_byId.remove(id), is(notNullValue()));
+
+        assertThat(m_byId.size(), is(666));
+        for (int id = 0; id < 1000; ++id)
+            assertThat(m_byId.containsKey(id), is(id % 3 != 0));
+    }
+
+    @Test
+    public void removedIndexShouldKeepItsValues()
+    {
+        final UniqueIndex<String, Employee> byName = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_name);
+        m_byId.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        m_multiIndexContainer.removeIndex(byName);
+        m_byId.remove(TD.m_data1.m_id);
+
+        assertThat(byName.size(), is(2));
+        assertThat(byName.getOptional(TD.m_data1.m_name), isPresent());
+        assertThat(byName.containsValue(TD.m_data1), is(true));
+    }
+
+    @Test
+    public void removingFromRemovedIndexShouldNotTouchReusedOrdinals()
+    {
+        final SequentialIndex<Employee> bySequence = m_multiIndexContainer.createSequentialIndex();
+        final UniqueIndex<String, Employee> byName = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_name);
+        final Employee data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+        bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        m_multiIndexContainer.removeIndex(byName);
+        // The new value takes over the ordinal that the removed one had.
+        bySequence.remove(TD.m_data1);
+        bySequence.add(data4);
+
+        assertThat(byName.remove(TD.m_data1.m_name), is(TD.m_data1));
+        assertThat(byName.size(), is(2));
+        assertThat(bySequence, contains(TD.m_data2, TD.m_data3, data4));
+        assertThat(m_byId.containsKey(data4.m_id), is(true));
+
+        assertThat(byName.remove(TD.m_data2.m_name), is(TD.m_data2));
+        assertThat(bySequence, contains(TD.m_data3, data4));
+    }
+
+    @Test(timeout = 5000)
+    public void removingConsecutiveKeysShouldTakeConstantTime()
+    {
+        // Consecutive keys once filled consecutive slots, so that each removal scanned all of them.
+        final int count = 100_000;
+        for (int id = 0; id < count; ++id)
+            m_byId.add(new Employee(id, "Name", 20, "City"));
+        for (int id = 0; id < count; ++id)
+            assertThat(m_byId.remove(id).m_id, is(id));
+        assertThat(m_byId.isEmpty(), is(true));
+    }
+
     @Test
     public void sameInstanceAlwaysEquals()
     {
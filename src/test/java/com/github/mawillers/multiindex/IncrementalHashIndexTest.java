@@ -0,0 +1,161 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Equivalence;
+
+@SuppressWarnings("javadoc")
+public final class IncrementalHashIndexTest
+{
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private SequentialIndex<Employee> m_bySequence;
+
+    private static final Function<Employee, Integer> s_idExtractor = e -> e.m_id;
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_byId = m_multiIndexContainer.createIncrementalHashedUniqueIndex(s_idExtractor);
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+    }
+
+    @Test
+    public void newIndexShouldBeEmpty()
+    {
+        assertThat(m_byId.isEmpty(), is(true));
+        assertThat(m_byId.size(), is(0));
+        assertThat(m_byId.getOptional(1).isPresent(), is(false));
+    }
+
+    @Test
+    public void testAddAndLookup()
+    {
+        assertThat(m_byId.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3)), is(true));
+        assertThat(m_byId.add(new Employee(1, "Other", 30, "Sunnydale")), is(false));
+        assertThat(m_byId.add(null), is(false));
+
+        assertThat(m_byId.size(), is(3));
+        assertThat(m_byId.getOptional(2).get(), is(sameInstance(TD.m_data2)));
+        assertThat(m_byId.containsKey(3), is(true));
+        assertThat(m_byId.containsKey(4), is(false));
+        assertThat(m_byId.containsValue(TD.m_data1), is(true));
+    }
+
+    @Test
+    public void testRemove()
+    {
+        m_byId.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        assertThat(m_byId.remove(2), is(sameInstance(TD.m_data2)));
+        assertThat(m_byId.remove(2), is(nullValue()));
+        assertThat(m_bySequence.remove(TD.m_data1), is(true));
+        assertThat(m_byId.containsKey(1), is(false));
+        assertThat(m_bySequence.size(), is(1));
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        m_byId.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        m_byId.clear();
+        assertThat(m_byId.isEmpty(), is(true));
+        assertThat(m_byId.containsKey(1), is(false));
+    }
+
+    @Test
+    public void shouldAgreeWithHashMapWhileGrowing()
+    {
+        final Random random = new Random(42);
+        final HashMap<Integer, Employee> expected = new HashMap<>();
+        for (int i = 0; i < 50000; ++i) {
+            final int id = random.nextInt(20000);
+            if (random.nextInt(4) > 0) {
+                final Employee e = new Employee(id, "E" + id, 30, "City");
+                assertThat(m_byId.add(e), is(expected.putIfAbsent(id, e) == null));
+            } else {
+                assertThat(m_byId.remove(id), is(sameInstance(expected.remove(id))));
+            }
+        }
+
+        assertThat(m_byId.size(), is(expected.size()));
+        for (int id = 0; id < 20000; ++id)
+            assertThat(m_byId.getOptional(id).orElse(null), is(sameInstance(expected.get(id))));
+    }
+
+    /**
+     * Compares strings while ignoring dashes and case, without creating normalized copies.
+     */
+    private static final class LenientEquivalence extends Equivalence<String>
+    {
+        @Override
+        protected boolean doEquivalent(String a, String b)
+        {
+            int i = 0;
+            int j = 0;
+            while (true) {
+                while (i < a.length() && a.charAt(i) == '-')
+                    ++i;
+                while (j < b.length() && b.charAt(j) == '-')
+                    ++j;
+                if (i == a.length() || j == b.length())
+                    return i == a.length() && j == b.length();
+                if (Character.toLowerCase(a.charAt(i++)) != Character.toLowerCase(b.charAt(j++)))
+                    return false;
+            }
+        }
+
+        @Override
+        protected int doHash(String s)
+        {
+            int hash = 0;
+            for (int i = 0; i < s.length(); ++i) {
+                if (s.charAt(i) != '-')
+                    hash = 31 * hash + Character.toLowerCase(s.charAt(i));
+            }
+            return hash;
+        }
+    }
+
+    @Test
+    public void lookupsShouldUseEquivalence()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final UniqueIndex<String, Employee> byName = container.createHashedUniqueIndex(e -> e.m_name, new LenientEquivalence());
+        byName.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+
+        assertThat(byName.getOptional("HARRIS").get(), is(sameInstance(TD.m_data1)));
+        assertThat(byName.getOptional("Sum-mers").get(), is(sameInstance(TD.m_data2)));
+        assertThat(byName.containsKey("harri"), is(false));
+        assertThat(byName.containsKey(42), is(false));
+        assertThat(byName.add(new Employee(4, "harris", 30, "Sunnydale")), is(false));
+        assertThat(byName.remove("SUMMERS"), is(sameInstance(TD.m_data2)));
+        assertThat(byName.remove(42), is(nullValue()));
+        assertThat(byName.size(), is(1));
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_byId.equals(m_byId), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        assertThat(m_byId.toString(), startsWith("IncrementalHashIndex"));
+    }
+}
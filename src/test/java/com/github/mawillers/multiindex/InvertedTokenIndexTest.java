@@ -0,0 +1,157 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class InvertedTokenIndexTest
+{
+    private static final Employee s_smith = new Employee(20, "John Smith", 40, "New York");
+    private static final Employee s_york = new Employee(21, "Anne York", 35, "Boston");
+    private static final Employee s_newman = new Employee(22, "Paul Newman", 50, "New Haven");
+
+    private static final List<Function<Employee, ? extends CharSequence>> s_extractors = Arrays.asList(e -> e.m_name, e -> e.m_city);
+
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+    private TokenIndex<Employee> m_byText;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_byText = m_multiIndexContainer.createTokenIndex(s_extractors);
+        m_byText.addAll(Arrays.asList(s_smith, s_york, s_newman));
+    }
+
+    @Test
+    public void creationShouldAlwaysSucceed()
+    {
+        assertThat(m_byText, is(notNullValue()));
+    }
+
+    @Test
+    public void creationWithoutExtractorsShouldFail()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+
+        m_exception.expect(IllegalArgumentException.class);
+        container.createTokenIndex(new ArrayList<>());
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        m_byText.clear();
+        assertThat(m_byText.isEmpty(), is(true));
+        assertThat(m_byText.size(), is(0));
+        assertThat(m_byText.withAnyTerm("york"), is(empty()));
+    }
+
+    @Test
+    public void addNullShouldFail()
+    {
+        assertThat(m_byText.add(null), is(false));
+        assertThat(m_bySequence.size(), is(3));
+    }
+
+    @Test
+    public void termsShouldMatchAnyFieldCaseInsensitively()
+    {
+        assertThat(m_byText.withAllTerms("YORK"), contains(s_smith, s_york));
+        assertThat(m_byText.withAllTerms("new"), contains(s_smith, s_newman));
+        assertThat(m_byText.withAllTerms("newman"), contains(s_newman));
+        assertThat(m_byText.withAllTerms("ne"), is(empty()));
+    }
+
+    @Test
+    public void testAllTerms()
+    {
+        assertThat(m_byText.withAllTerms("new", "york"), contains(s_smith));
+        assertThat(m_byText.withAllTerms("new york"), contains(s_smith));
+        assertThat(m_byText.withAllTerms("anne", "boston"), contains(s_york));
+        assertThat(m_byText.withAllTerms("anne", "haven"), is(empty()));
+        assertThat(m_byText.withAllTerms(), is(empty()));
+    }
+
+    @Test
+    public void testAnyTerm()
+    {
+        assertThat(m_byText.withAnyTerm("boston", "haven"), contains(s_york, s_newman));
+        assertThat(m_byText.withAnyTerm("york", "unknown"), contains(s_smith, s_york));
+        assertThat(m_byText.withAnyTerm("unknown"), is(empty()));
+    }
+
+    @Test
+    public void testCountWithTerm()
+    {
+        assertThat(m_byText.countWithTerm("york"), is(2));
+        assertThat(m_byText.countWithTerm("new york"), is(1));
+        assertThat(m_byText.countWithTerm("unknown"), is(0));
+        assertThat(m_byText.countWithTerm(""), is(0));
+    }
+
+    @Test
+    public void removalViaOtherIndexShouldUpdatePostings()
+    {
+        m_bySequence.remove(s_smith);
+        assertThat(m_byText.size(), is(2));
+        assertThat(m_byText.withAllTerms("york"), contains(s_york));
+        assertThat(m_byText.countWithTerm("york"), is(1));
+        assertThat(m_byText.withAnyTerm("new"), contains(s_newman));
+
+        m_bySequence.add(s_smith);
+        assertThat(m_byText.withAllTerms("york"), contains(s_york, s_smith));
+    }
+
+    @Test
+    public void manyRemovalsShouldKeepResultsConsistent()
+    {
+        m_byText.clear();
+        final ArrayList<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            employees.add(new Employee(i, "Name" + (i % 10), 30, i % 2 == 0 ? "Even City" : "Odd City"));
+        m_byText.addAll(employees);
+
+        for (int i = 0; i < 900; ++i)
+            m_bySequence.remove(employees.get(i));
+
+        assertThat(m_byText.size(), is(100));
+        assertThat(m_byText.countWithTerm("even"), is(50));
+        final List<Employee> result = m_byText.withAllTerms("name3", "odd");
+        assertThat(result.size(), is(10));
+        assertThat(result.get(0), is(employees.get(903)));
+        assertThat(m_byText.withAllTerms("name3", "even"), is(empty()));
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_byText.equals(m_byText), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        final String text = m_byText.toString();
+        assertThat(text, startsWith("InvertedTokenIndex"));
+    }
+}
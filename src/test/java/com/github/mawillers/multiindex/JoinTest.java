@@ -0,0 +1,145 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.collect.HashMultiset;
+
+@SuppressWarnings("javadoc")
+public final class JoinTest
+{
+    private static final class City
+    {
+        final String m_name;
+        final String m_country;
+
+        City(String name, String country)
+        {
+            m_name = name;
+            m_country = country;
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_name + ":" + m_country;
+        }
+    }
+
+    private static final Function<Employee, String> s_employeeCity = e -> e.m_city;
+    private static final Function<City, String> s_cityName = c -> c.m_name;
+
+    private static final City s_sunnydale = new City("Sunnydale", "US");
+    private static final City s_london = new City("London", "UK");
+    private static final Employee s_londoner = new Employee(4, "Wyndam-Pryce", 28, "London");
+    private static final Employee s_homeless = new Employee(5, "Nobody", 30, "Nowhere");
+
+    private SequentialIndex<Employee> m_employees;
+    private SequentialIndex<City> m_cities;
+    private UniqueIndex<String, City> m_citiesByName;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        final MultiIndexContainer<Employee> employees = MultiIndexContainer.create();
+        m_employees = employees.createSequentialIndex();
+        m_employees.addAll(Arrays.asList(TD.m_data1, s_londoner, s_homeless, TD.m_data2));
+
+        final MultiIndexContainer<City> cities = MultiIndexContainer.create();
+        m_cities = cities.createSequentialIndex();
+        m_citiesByName = cities.createHashedUniqueIndex(s_cityName);
+        m_cities.addAll(Arrays.asList(s_sunnydale, s_london));
+    }
+
+    private static <L, R> Join.Pair<L, R> pair(L left, R right)
+    {
+        return new Join.Pair<>(left, right);
+    }
+
+    @Test
+    public void uniqueJoinShouldPairInLeftOrder()
+    {
+        final List<Join.Pair<Employee, City>> pairs = Join.join(m_employees, s_employeeCity, m_citiesByName).collect(Collectors.toList());
+        assertThat(pairs, is(Arrays.asList(pair(TD.m_data1, s_sunnydale), pair(s_londoner, s_london), pair(TD.m_data2, s_sunnydale))));
+    }
+
+    @Test
+    public void uniqueJoinShouldAcceptStreams()
+    {
+        final List<Join.Pair<Employee, City>> pairs = Join.join(Arrays.asList(s_homeless, s_londoner).stream(), s_employeeCity, m_citiesByName)
+            .collect(Collectors.toList());
+        assertThat(pairs, is(Arrays.asList(pair(s_londoner, s_london))));
+    }
+
+    @Test
+    public void parallelJoinShouldFindAllPairs()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final SequentialIndex<Employee> many = container.createSequentialIndex();
+        final List<Employee> expected = new ArrayList<>();
+        for (int id = 0; id < 10_000; ++id) {
+            final Employee employee = new Employee(id, "Name", 30, id % 3 == 0 ? "Sunnydale" : "Nowhere");
+            many.add(employee);
+            if (id % 3 == 0)
+                expected.add(employee);
+        }
+
+        final List<Employee> matched = Join.join(many, s_employeeCity, m_citiesByName).parallel().map(Join.Pair::left).collect(Collectors.toList());
+        assertThat(matched, is(expected));
+    }
+
+    @Test
+    public void bitmapJoinShouldPairEachMatch()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final BitmapIndex<String, Employee> byCity = container.createBitmapIndex(s_employeeCity);
+        byCity.addAll(Arrays.asList(TD.m_data1, TD.m_data2, s_londoner));
+
+        final List<Join.Pair<City, Employee>> pairs = Join.join(m_cities, s_cityName, byCity).collect(Collectors.toList());
+        assertThat(pairs, is(Arrays.asList(pair(s_sunnydale, TD.m_data1), pair(s_sunnydale, TD.m_data2), pair(s_london, s_londoner))));
+    }
+
+    @Test
+    public void hashJoinShouldBuildOnEitherSide()
+    {
+        final List<Join.Pair<Employee, City>> smallerRight = Join.join(m_employees, s_employeeCity, m_cities, s_cityName).collect(Collectors.toList());
+        final List<Join.Pair<City, Employee>> smallerLeft = Join.join(m_cities, s_cityName, m_employees, s_employeeCity).collect(Collectors.toList());
+
+        assertThat(smallerRight, is(Arrays.asList(pair(TD.m_data1, s_sunnydale), pair(s_londoner, s_london), pair(TD.m_data2, s_sunnydale))));
+        // The pairs are in the order of the larger side, which is the right one here.
+        final List<Join.Pair<City, Employee>> expectedLeft = Arrays.asList(pair(s_sunnydale, TD.m_data1), pair(s_london, s_londoner), pair(s_sunnydale,
+            TD.m_data2));
+        assertThat(HashMultiset.create(smallerLeft), is(HashMultiset.create(expectedLeft)));
+    }
+
+    @Test
+    public void joinWithEmptySideShouldBeEmpty()
+    {
+        final MultiIndexContainer<City> container = MultiIndexContainer.create();
+        final UniqueIndex<String, City> none = container.createHashedUniqueIndex(s_cityName);
+
+        assertThat(Join.join(m_employees, s_employeeCity, none).collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    public void nullKeyExtractorShouldThrow()
+    {
+        m_exception.expect(NullPointerException.class);
+        Join.join(m_employees, null, m_citiesByName);
+    }
+}
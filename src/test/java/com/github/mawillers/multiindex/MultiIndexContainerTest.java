@@ -214,4 +214,50 @@ public final class MultiIndexContainerTest
         m_exception.expect(IllegalStateException.class);
         m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_id);
     }
+
+    @Test
+    public void containsReflectsRemovalViaOtherIndex()
+    {
+        final SequentialIndex<Employee> seq = m_multiIndexContainer.createSequentialIndex();
+        final UniqueIndex<Integer, Employee> byId = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_id);
+        seq.add(TD.m_data1);
+        seq.add(TD.m_data2);
+
+        byId.remove(1);
+        assertThat(seq.contains(TD.m_data1), is(false));
+        assertThat(byId.containsValue(TD.m_data1), is(false));
+        assertThat(seq.contains(TD.m_data2), is(true));
+        assertThat(byId.containsValue(TD.m_data2), is(true));
+
+        seq.clear();
+        assertThat(seq.contains(TD.m_data2), is(false));
+        assertThat(byId.containsValue(TD.m_data2), is(false));
+    }
+
+    @Test
+    public void containsCountsDuplicateValues()
+    {
+        final SequentialIndex<Employee> seq = m_multiIndexContainer.createSequentialIndex();
+        seq.add(TD.m_data1);
+        seq.add(TD.m_data1);
+
+        assertThat(seq.remove(TD.m_data1), is(true));
+        assertThat(seq.contains(TD.m_data1), is(true));
+        assertThat(seq.remove(TD.m_data1), is(true));
+        assertThat(seq.contains(TD.m_data1), is(false));
+        assertThat(seq.remove(TD.m_data1), is(false));
+    }
+
+    @Test
+    public void removedIndexAnswersContainsFromItsOwnData()
+    {
+        final SequentialIndex<Employee> seq1 = m_multiIndexContainer.createSequentialIndex();
+        final SequentialIndex<Employee> seq2 = m_multiIndexContainer.createSequentialIndex();
+        seq1.add(TD.m_data1);
+
+        m_multiIndexContainer.removeIndex(seq1);
+        seq2.remove(TD.m_data1);
+        assertThat(seq1.contains(TD.m_data1), is(true));
+        assertThat(seq2.contains(TD.m_data1), is(false));
+    }
 }
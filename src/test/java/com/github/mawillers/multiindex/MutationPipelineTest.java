@@ -0,0 +1,200 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class MutationPipelineTest
+{
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private MutationPipeline<Employee> m_pipeline;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_byId = m_multiIndexContainer.createHashedUniqueIndex(e -> e.m_id);
+        m_pipeline = MutationPipeline.create(m_multiIndexContainer, 4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_pipeline.close();
+    }
+
+    @Test
+    public void modificationsShouldBeAppliedInOrder() throws Exception
+    {
+        assertThat(m_pipeline.add(TD.m_data1).get(), is(true));
+        assertThat(m_pipeline.add(TD.m_data2).get(), is(true));
+        assertThat(m_pipeline.add(new Employee(1, "Other", 30, "Sunnydale")).get(), is(false));
+        assertThat(m_pipeline.remove(TD.m_data1).get(), is(true));
+        assertThat(m_pipeline.remove(TD.m_data1).get(), is(false));
+
+        synchronized (m_multiIndexContainer) {
+            assertThat(m_bySequence, contains(TD.m_data2));
+        }
+    }
+
+    @Test
+    public void upsertShouldReplaceValueWithSameKey() throws Exception
+    {
+        final Employee replacement = new Employee(2, "Summers", 26, "Los Angeles");
+        m_pipeline.add(TD.m_data1);
+        m_pipeline.add(TD.m_data2);
+        assertThat(m_pipeline.upsert(m_byId, 2, replacement).get(), is(true));
+        assertThat(m_pipeline.upsert(m_byId, 3, TD.m_data3).get(), is(true));
+
+        final List<Employee> values = m_pipeline.submit(container -> {
+            final List<Employee> result = new ArrayList<>();
+            m_bySequence.forEach(result::add);
+            return result;
+        }).get();
+        assertThat(values, contains(TD.m_data1, replacement, TD.m_data3));
+        assertThat(m_byId.getOptional(2).get(), is(sameInstance(replacement)));
+    }
+
+    @Test
+    public void rejectedUpsertShouldRestorePreviousValue() throws Exception
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final SequentialIndex<Employee> bySequence = container.createSequentialIndex();
+        final UniqueIndex<Integer, Employee> byId = container.createHashedUniqueIndex(e -> e.m_id);
+        final UniqueIndex<String, Employee> byName = container.createHashedUniqueIndex(e -> e.m_name);
+        try (MutationPipeline<Employee> pipeline = MutationPipeline.create(container, 4)) {
+            pipeline.add(TD.m_data1);
+            pipeline.add(TD.m_data2);
+            assertThat(pipeline.upsert(byId, 1, new Employee(1, "Summers", 30, "Sunnydale")).get(), is(false));
+            assertThat(pipeline.submit(c -> byId.getOptional(1).get()).get(), is(sameInstance(TD.m_data1)));
+            assertThat(pipeline.submit(c -> byName.size()).get(), is(2));
+        }
+        // The previous value has been added again, after the other one.
+        assertThat(bySequence, contains(TD.m_data2, TD.m_data1));
+    }
+
+    @Test
+    public void exceptionShouldCompleteFutureExceptionally() throws Exception
+    {
+        final CompletableFuture<Object> result = m_pipeline.submit(container -> {
+            throw new IllegalStateException("test");
+        });
+        assertThat(m_pipeline.add(TD.m_data1).get(), is(true));
+
+        m_exception.expect(ExecutionException.class);
+        result.get();
+    }
+
+    @Test
+    public void errorShouldCompleteFutureExceptionallyAndKeepWriterRunning() throws Exception
+    {
+        final CompletableFuture<Object> result = m_pipeline.submit(container -> {
+            throw new AssertionError("test");
+        });
+        // More modifications than the buffer holds, which would never complete if the writer thread had died.
+        for (Employee e : new Employee[] { TD.m_data1, TD.m_data2, TD.m_data3, new Employee(4, "Rosenberg", 25, "Sunnydale"), new Employee(5, "Osbourne", 28,
+            "Sunnydale") })
+            m_pipeline.add(e);
+        assertThat(m_pipeline.submit(container -> m_bySequence.size()).get(), is(5));
+
+        m_exception.expect(ExecutionException.class);
+        m_exception.expectCause(instanceOf(AssertionError.class));
+        result.get();
+    }
+
+    @Test
+    public void upsertWithIndexOfOtherContainerShouldFail()
+    {
+        final MultiIndexContainer<Employee> other = MultiIndexContainer.create();
+        final UniqueIndex<Integer, Employee> otherById = other.createHashedUniqueIndex(e -> e.m_id);
+
+        m_exception.expect(IllegalArgumentException.class);
+        m_pipeline.upsert(otherById, 1, TD.m_data1);
+    }
+
+    @Test
+    public void concurrentProducersShouldAllBeApplied() throws Exception
+    {
+        final int producerCount = 4;
+        final int perProducer = 2500;
+        final ExecutorService executor = Executors.newFixedThreadPool(producerCount);
+        try {
+            final List<Future<?>> producers = new ArrayList<>();
+            for (int p = 0; p < producerCount; ++p) {
+                final int first = p * perProducer;
+                producers.add(executor.submit(() -> {
+                    final List<CompletableFuture<Boolean>> results = new ArrayList<>();
+                    for (int i = first; i < first + perProducer; ++i)
+                        results.add(m_pipeline.add(new Employee(i, "E" + i, 30, "City")));
+                    results.forEach(result -> assertThat(result.join(), is(true)));
+                    return null;
+                }));
+            }
+            for (Future<?> producer : producers)
+                producer.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        m_pipeline.close();
+        assertThat(m_bySequence.size(), is(producerCount * perProducer));
+        assertThat(m_byId.containsKey(perProducer * producerCount - 1), is(true));
+    }
+
+    @Test
+    public void producerShouldParkWhileBufferIsFull() throws Exception
+    {
+        final Thread producer = new Thread(() -> {
+            for (int id = 0; id < 16; ++id)
+                m_pipeline.add(new Employee(id, "E" + id, 30, "City"));
+        });
+
+        // The writer thread cannot apply its first batch while the monitor is held here, so the buffer fills up.
+        synchronized (m_multiIndexContainer) {
+            producer.start();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (producer.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            assertThat(producer.getState(), is(Thread.State.TIMED_WAITING));
+        }
+
+        producer.join();
+        m_pipeline.close();
+        assertThat(m_bySequence.size(), is(16));
+    }
+
+    @Test
+    public void closedPipelineShouldRejectModifications()
+    {
+        m_pipeline.add(TD.m_data1);
+        m_pipeline.close();
+        assertThat(m_bySequence.size(), is(1));
+
+        m_exception.expect(IllegalStateException.class);
+        m_pipeline.add(TD.m_data2);
+    }
+}
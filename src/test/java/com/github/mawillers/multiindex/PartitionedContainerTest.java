@@ -0,0 +1,204 @@
+package com.github.mawillers.multiindex;
+
+import static com.github.npathai.hamcrestopt.OptionalMatchers.hasValue;
+import static com.github.npathai.hamcrestopt.OptionalMatchers.isEmpty;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class PartitionedContainerTest
+{
+    private PartitionedContainer<Integer, Employee> m_container;
+    private SequentialIndex<Employee> m_bySequence;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private UniqueIndex<String, Employee> m_byName;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = PartitionedContainer.create(4, e -> e.m_id);
+        m_bySequence = m_container.createSequentialIndex();
+        m_byId = m_container.createPartitionKeyIndex();
+        m_byName = m_container.createHashedUniqueIndex(e -> e.m_name);
+    }
+
+    @Test
+    public void newContainerShouldBeEmpty()
+    {
+        assertThat(m_container.partitionCount(), is(4));
+        assertThat(m_bySequence.isEmpty(), is(true));
+        assertThat(m_bySequence, is(emptyIterable()));
+    }
+
+    @Test
+    public void invalidPartitionCountShouldFail()
+    {
+        m_exception.expect(IllegalArgumentException.class);
+        PartitionedContainer.create(0, e -> e);
+    }
+
+    @Test
+    public void testCreateIndexAfterwards()
+    {
+        m_bySequence.add(TD.m_data1);
+
+        m_exception.expect(IllegalStateException.class);
+        m_container.createHashedUniqueIndex(e -> e.m_age);
+    }
+
+    @Test
+    public void testAddAndLookup()
+    {
+        assertThat(m_bySequence.add(TD.m_data1), is(true));
+        assertThat(m_byName.add(TD.m_data2), is(true));
+        assertThat(m_byId.add(TD.m_data3), is(true));
+        assertThat(m_bySequence.add(null), is(false));
+
+        assertThat(m_bySequence.size(), is(3));
+        assertThat(m_bySequence, containsInAnyOrder(TD.m_data1, TD.m_data2, TD.m_data3));
+        assertThat(m_byId.getOptional(2), hasValue(sameInstance(TD.m_data2)));
+        assertThat(m_byName.getOptional("Giles"), hasValue(sameInstance(TD.m_data3)));
+        assertThat(m_byName.getOptional("Nobody"), isEmpty());
+        assertThat(m_byId.containsValue(TD.m_data1), is(true));
+        assertThat(m_bySequence.contains(new Object()), is(false));
+    }
+
+    @Test
+    public void uniquenessShouldBeEnforcedAcrossPartitions()
+    {
+        m_bySequence.add(TD.m_data1);
+
+        // Same partition key
+        assertThat(m_bySequence.add(new Employee(1, "Other", 20, "Elsewhere")), is(false));
+        // Same global key, but most likely another partition
+        for (int id = 100; id < 110; ++id)
+            assertThat(m_bySequence.add(new Employee(id, "Harris", 20, "Elsewhere")), is(false));
+        assertThat(m_bySequence.size(), is(1));
+
+        // A rejected value must not leave its global key reserved
+        final Employee sameIdOtherName = new Employee(1, "Unique", 20, "Elsewhere");
+        assertThat(m_bySequence.add(sameIdOtherName), is(false));
+        assertThat(m_byName.containsKey("Unique"), is(false));
+    }
+
+    @Test
+    public void testRemoval()
+    {
+        m_bySequence.add(TD.m_data1);
+        m_bySequence.add(TD.m_data2);
+        m_bySequence.add(TD.m_data3);
+
+        assertThat(m_byName.remove("Harris"), is(sameInstance(TD.m_data1)));
+        assertThat(m_byName.remove("Harris"), is(nullValue()));
+        assertThat(m_byId.remove(2), is(sameInstance(TD.m_data2)));
+        assertThat(m_byName.containsKey("Summers"), is(false));
+        assertThat(m_bySequence.remove(TD.m_data3), is(true));
+        assertThat(m_bySequence.remove(TD.m_data3), is(false));
+        assertThat(m_bySequence.isEmpty(), is(true));
+
+        // All keys have been released
+        assertThat(m_bySequence.add(TD.m_data1), is(true));
+    }
+
+    @Test
+    public void clearedContainerShouldBeEmpty()
+    {
+        m_bySequence.add(TD.m_data1);
+        m_bySequence.clear();
+        assertThat(m_bySequence.isEmpty(), is(true));
+        assertThat(m_byName.containsKey("Harris"), is(false));
+        assertThat(m_bySequence.add(TD.m_data1), is(true));
+    }
+
+    @Test
+    public void concurrentWritersShouldKeepIndexesConsistent() throws Exception
+    {
+        final int threads = 8;
+        final int perThread = 2000;
+        final AtomicInteger added = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; ++i) {
+                        // Names collide between pairs of threads, so that only one of them can win.
+                        final Employee e = new Employee(thread * perThread + i, "N" + (thread / 2) + "-" + i, 30, "City");
+                        if (m_bySequence.add(e))
+                            added.incrementAndGet();
+                        if (i % 3 == 0 && m_bySequence.remove(e))
+                            added.decrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(m_bySequence.size(), is(added.get()));
+        final List<Employee> all = m_container.parallelStream().collect(Collectors.toList());
+        assertThat(all.size(), is(added.get()));
+        for (Employee e : all) {
+            assertThat(m_byName.getOptional(e.m_name), hasValue(sameInstance(e)));
+            assertThat(m_byId.getOptional(e.m_id), hasValue(sameInstance(e)));
+        }
+    }
+
+    @Test
+    public void clearShouldNotDropReservationsOfConcurrentAdditions() throws Exception
+    {
+        final int threads = 4;
+        final int perThread = 5000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; ++i)
+                        m_bySequence.add(new Employee(thread * perThread + i, "N" + thread + "-" + i, 30, "City"));
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; ++i)
+                    m_bySequence.clear();
+            }));
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        // Every value that survived the last clear must still hold the reservation of its name.
+        final List<Employee> all = m_container.parallelStream().collect(Collectors.toList());
+        assertThat(m_byName.keys().size(), is(all.size()));
+        for (Employee e : all)
+            assertThat(m_byName.getOptional(e.m_name), hasValue(sameInstance(e)));
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class QueryCacheTest
+{
+    private static final Employee s_data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private QueryCache<Employee> m_cache;
+    private final AtomicInteger m_runs = new AtomicInteger();
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        m_cache = m_container.createQueryCache(2);
+    }
+
+    private Supplier<List<Employee>> youngerThan(int age)
+    {
+        return () -> {
+            m_runs.incrementAndGet();
+            return m_sequentialIndex.filter(e -> e.m_age < age, true);
+        };
+    }
+
+    @Test
+    public void repeatedQueryShouldBeAnsweredFromTheCache()
+    {
+        final List<Employee> first = m_cache.get("young", youngerThan(30));
+        final List<Employee> second = m_cache.get("young", youngerThan(30));
+
+        assertThat(second, contains(TD.m_data1, TD.m_data2));
+        assertThat(second == first, is(true));
+        assertThat(m_runs.get(), is(1));
+        assertThat(m_cache.hitCount(), is(1L));
+        assertThat(m_cache.missCount(), is(1L));
+    }
+
+    @Test
+    public void modificationsShouldInvalidateResults()
+    {
+        m_cache.get("young", youngerThan(30));
+        m_sequentialIndex.add(s_data4);
+        assertThat(m_cache.get("young", youngerThan(30)), contains(TD.m_data1, TD.m_data2, s_data4));
+
+        m_byId.remove(1);
+        assertThat(m_cache.get("young", youngerThan(30)), contains(TD.m_data2, s_data4));
+
+        m_sequentialIndex.clear();
+        assertThat(m_cache.get("young", youngerThan(30)).isEmpty(), is(true));
+        assertThat(m_runs.get(), is(4));
+    }
+
+    @Test
+    public void everyModificationShouldChangeTheVersion()
+    {
+        final long initial = m_container.version();
+        m_sequentialIndex.add(s_data4);
+        final long added = m_container.version();
+        m_sequentialIndex.remove(s_data4);
+
+        assertThat(added, is(not(initial)));
+        assertThat(m_container.version(), is(not(added)));
+    }
+
+    @Test
+    public void rejectedAdditionShouldNotInvalidateResults()
+    {
+        m_cache.get("young", youngerThan(30));
+        assertThat(m_sequentialIndex.add(new Employee(1, "Duplicate", 20, "Sunnydale")), is(false));
+
+        m_cache.get("young", youngerThan(30));
+        assertThat(m_runs.get(), is(1));
+    }
+
+    @Test
+    public void leastRecentlyUsedResultShouldBeEvicted()
+    {
+        m_cache.get("young", youngerThan(30));
+        m_cache.get("younger", youngerThan(26));
+        m_cache.get("young", youngerThan(30));
+        m_cache.get("youngest", youngerThan(20));
+        assertThat(m_cache.size(), is(2));
+
+        m_cache.get("young", youngerThan(30));
+        m_cache.get("younger", youngerThan(26));
+        assertThat(m_runs.get(), is(4));
+    }
+
+    @Test
+    public void nullResultsShouldBeCached()
+    {
+        final Supplier<Employee> nobody = () -> {
+            m_runs.incrementAndGet();
+            return null;
+        };
+        assertThat(m_cache.get("nobody", nobody), is(nullValue()));
+        assertThat(m_cache.get("nobody", nobody), is(nullValue()));
+        assertThat(m_runs.get(), is(1));
+    }
+
+    @Test
+    public void invalidateShouldDiscardResults()
+    {
+        m_cache.get("young", youngerThan(30));
+        m_cache.invalidate("young");
+        m_cache.get("young", youngerThan(30));
+        m_cache.invalidateAll();
+        m_cache.get("young", youngerThan(30));
+
+        assertThat(m_runs.get(), is(3));
+    }
+
+    @Test
+    public void nonPositiveCapacityShouldThrow()
+    {
+        m_exception.expect(IllegalArgumentException.class);
+        m_container.createQueryCache(0);
+    }
+}
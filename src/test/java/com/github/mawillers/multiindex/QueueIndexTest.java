@@ -0,0 +1,199 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class QueueIndexTest
+{
+    private static final int SEGMENT_SIZE = SegmentedArrayIndex.SEGMENT_SIZE;
+
+    private MultiIndexContainer<Employee> m_container;
+    private QueueIndex<Employee> m_queue;
+    private UniqueIndex<Integer, Employee> m_byId;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_queue = m_container.createQueueIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+    }
+
+    private static List<Employee> employees(int fromId, int toId)
+    {
+        final List<Employee> result = new ArrayList<>();
+        for (int id = fromId; id < toId; ++id)
+            result.add(new Employee(id, "Name", 30, "City"));
+        return result;
+    }
+
+    private List<Employee> values()
+    {
+        final List<Employee> result = new ArrayList<>();
+        m_queue.forEach(result::add);
+        return result;
+    }
+
+    @Test
+    public void emptyQueueShouldReturnNull()
+    {
+        assertThat(m_queue.peekFirst(), is(nullValue()));
+        assertThat(m_queue.pollFirst(), is(nullValue()));
+        assertThat(m_queue.truncateOlderThan(0), is(0));
+    }
+
+    @Test
+    public void pollFirstShouldRemoveInInsertionOrder()
+    {
+        m_queue.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        assertThat(m_queue.peekFirst(), is(TD.m_data1));
+        assertThat(m_queue.pollFirst(), is(TD.m_data1));
+        assertThat(m_queue.pollFirst(), is(TD.m_data2));
+        assertThat(m_byId.containsKey(TD.m_data1.m_id), is(false));
+        assertThat(m_byId.containsKey(TD.m_data2.m_id), is(false));
+        assertThat(values(), contains(TD.m_data3));
+    }
+
+    @Test
+    public void nullValueShouldBeRejected()
+    {
+        assertThat(m_queue.add(null), is(false));
+        assertThat(m_queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void valuesRemovedByOtherIndexesShouldBeSkipped()
+    {
+        m_queue.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        m_byId.remove(TD.m_data2.m_id);
+        m_byId.remove(TD.m_data1.m_id);
+
+        assertThat(m_queue.size(), is(1));
+        assertThat(m_queue.peekFirst(), is(TD.m_data3));
+        assertThat(values(), contains(TD.m_data3));
+    }
+
+    @Test
+    public void truncateShouldKeepTheNewestValuesAcrossSegments()
+    {
+        final int count = 3 * SEGMENT_SIZE + 5;
+        m_queue.addAll(employees(0, count));
+        m_byId.remove(10);
+        final long structureBytes = m_container.footprint(m_queue).structureBytes();
+
+        assertThat(m_queue.truncateOlderThan(SEGMENT_SIZE), is(count - 1 - SEGMENT_SIZE));
+        assertThat(m_queue.size(), is(SEGMENT_SIZE));
+        assertThat(m_byId.size(), is(SEGMENT_SIZE));
+        assertThat(m_queue.peekFirst().m_id, is(count - SEGMENT_SIZE));
+        assertThat(m_byId.containsKey(count - SEGMENT_SIZE - 1), is(false));
+        assertThat(m_container.footprint(m_queue).structureBytes(), is(lessThan(structureBytes - SEGMENT_SIZE * 4L)));
+    }
+
+    @Test
+    public void truncateShouldCompactOtherIndexesOnce()
+    {
+        final SequentialIndex<Employee> sequentialIndex = m_container.createSequentialIndex();
+        final ColumnarIndex<Employee> columnarIndex = m_container.createColumnarIndex();
+        final ColumnarIndex.IntColumn ids = columnarIndex.addIntColumn(e -> e.m_id);
+        final List<Employee> employees = employees(0, 2 * SEGMENT_SIZE);
+        m_queue.addAll(employees);
+        // Removed out of queue order, so that the remaining entries are not a suffix of the other indexes.
+        m_byId.remove(SEGMENT_SIZE + 1);
+        sequentialIndex.remove(employees.get(SEGMENT_SIZE - 1));
+
+        assertThat(m_queue.truncateOlderThan(SEGMENT_SIZE - 2), is(SEGMENT_SIZE));
+        final List<Employee> expected = new ArrayList<>(employees.subList(SEGMENT_SIZE + 2, 2 * SEGMENT_SIZE));
+        assertThat(values(), is(expected));
+        final List<Employee> sequentialValues = new ArrayList<>();
+        sequentialIndex.forEach(sequentialValues::add);
+        assertThat(sequentialValues, is(expected));
+        assertThat(columnarIndex.size(), is(expected.size()));
+        for (int position = 0; position < expected.size(); ++position)
+            assertThat(ids.get(position), is(expected.get(position).m_id));
+    }
+
+    @Test
+    public void queueShouldWorkAsSlidingWindow()
+    {
+        int nextId = 0;
+        for (int round = 0; round < 10; ++round) {
+            m_queue.addAll(employees(nextId, nextId + 700));
+            nextId += 700;
+            m_queue.truncateOlderThan(1000);
+        }
+
+        assertThat(m_queue.size(), is(1000));
+        assertThat(m_queue.peekFirst().m_id, is(nextId - 1000));
+        for (int id = nextId - 1000; id < nextId; ++id)
+            assertThat(m_queue.pollFirst().m_id, is(id));
+        assertThat(m_queue.isEmpty(), is(true));
+        assertThat(m_byId.isEmpty(), is(true));
+
+        m_queue.add(TD.m_data1);
+        assertThat(values(), contains(TD.m_data1));
+    }
+
+    @Test
+    public void cursorShouldResumeAfterTruncation()
+    {
+        m_queue.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        final Cursor<Employee> cursor = m_queue.cursor();
+        cursor.next();
+        m_queue.truncateOlderThan(1);
+
+        final List<Employee> remaining = new ArrayList<>();
+        m_queue.cursor(cursor.token()).forEachRemaining(remaining::add);
+        assertThat(remaining, contains(TD.m_data3));
+    }
+
+    @Test
+    public void removedIndexShouldKeepItsValues()
+    {
+        m_queue.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        m_container.removeIndex(m_queue);
+        m_byId.remove(TD.m_data1.m_id);
+
+        assertThat(values(), contains(TD.m_data1, TD.m_data2, TD.m_data3));
+        assertThat(m_queue.pollFirst(), is(TD.m_data1));
+        assertThat(m_queue.truncateOlderThan(1), is(1));
+        assertThat(values(), contains(TD.m_data3));
+        assertThat(m_byId.containsKey(TD.m_data2.m_id), is(false));
+    }
+
+    @Test
+    public void iteratorShouldFailAfterModification()
+    {
+        m_queue.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        final Iterator<Employee> iterator = m_queue.iterator();
+        m_queue.pollFirst();
+
+        m_exception.expect(ConcurrentModificationException.class);
+        iterator.next();
+    }
+
+    @Test
+    public void negativeCountShouldThrow()
+    {
+        m_exception.expect(IllegalArgumentException.class);
+        m_queue.truncateOlderThan(-1);
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class RTreeIndexTest
+{
+    // Locate employees by (id, age), which is good enough for testing.
+    private static Box locate(Employee e)
+    {
+        return Box.point(e.m_id, e.m_age);
+    }
+
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+    private SpatialIndex<Employee> m_byLocation;
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_byLocation = m_multiIndexContainer.createSpatialIndex(RTreeIndexTest::locate);
+    }
+
+    private List<Employee> addGrid(int size)
+    {
+        final ArrayList<Employee> employees = new ArrayList<>();
+        for (int x = 0; x < size; ++x) {
+            for (int y = 0; y < size; ++y)
+                employees.add(new Employee(x, "E" + x + "/" + y, y, "Grid"));
+        }
+        m_bySequence.addAll(employees);
+        return employees;
+    }
+
+    @Test
+    public void creationShouldAlwaysSucceed()
+    {
+        assertThat(m_byLocation, is(notNullValue()));
+    }
+
+    @Test
+    public void newIndexShouldBeEmpty()
+    {
+        assertThat(m_byLocation.isEmpty(), is(true));
+        assertThat(m_byLocation.within(Box.of(-1000, -1000, 1000, 1000)), is(empty()));
+        assertThat(m_byLocation.nearest(0, 0, 5), is(empty()));
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        addGrid(10);
+        m_byLocation.clear();
+        assertThat(m_byLocation.size(), is(0));
+        assertThat(m_byLocation.within(Box.of(-1000, -1000, 1000, 1000)), is(empty()));
+    }
+
+    @Test
+    public void addNullShouldFail()
+    {
+        assertThat(m_byLocation.add(null), is(false));
+        assertThat(m_bySequence.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testWithin()
+    {
+        m_byLocation.add(TD.m_data1); // (1, 26)
+        m_byLocation.add(TD.m_data2); // (2, 25)
+        m_byLocation.add(TD.m_data3); // (3, 54)
+
+        assertThat(m_byLocation.within(Box.of(0, 0, 10, 30)), containsInAnyOrder(TD.m_data1, TD.m_data2));
+        assertThat(m_byLocation.within(Box.of(1, 26, 1, 26)), contains(TD.m_data1));
+        assertThat(m_byLocation.within(Box.of(4, 0, 10, 100)), is(empty()));
+    }
+
+    @Test
+    public void testIntersecting()
+    {
+        final MultiIndexContainer<Box> container = MultiIndexContainer.create();
+        final SpatialIndex<Box> boxes = container.createSpatialIndex(b -> b);
+        final Box large = Box.of(0, 0, 10, 10);
+        final Box small = Box.of(20, 20, 21, 21);
+        boxes.add(large);
+        boxes.add(small);
+
+        assertThat(boxes.intersecting(Box.of(5, 5, 20, 20)), containsInAnyOrder(large, small));
+        assertThat(boxes.within(Box.of(5, 5, 30, 30)), contains(small));
+    }
+
+    @Test
+    public void testNearest()
+    {
+        final List<Employee> employees = addGrid(20);
+
+        final List<Employee> nearest = m_byLocation.nearest(5.1, 5.2, 3);
+        assertThat(nearest.size(), is(3));
+        assertThat(nearest.get(0), is(employees.get(5 * 20 + 5)));
+        assertThat(nearest.subList(1, 3), containsInAnyOrder(employees.get(5 * 20 + 6), employees.get(6 * 20 + 5)));
+
+        assertThat(m_byLocation.nearest(0, 0, 0), is(empty()));
+        assertThat(m_byLocation.nearest(0, 0, 1000).size(), is(400));
+    }
+
+    @Test
+    public void bulkLoadAndIncrementalUpdatesShouldAgreeWithScan()
+    {
+        final Random random = new Random(4711);
+        final ArrayList<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i)
+            employees.add(new Employee(random.nextInt(1000), "R" + i, random.nextInt(1000), "Random"));
+        m_bySequence.addAll(employees.subList(0, 1000)); // bulk-loads the tree while the buffer outgrows it
+
+        for (int i = 0; i < 500; ++i)
+            m_bySequence.remove(employees.get(i * 2));
+        employees.subList(1000, 2000).forEach(m_bySequence::add); // inserts these one by one, except for those left in the buffer
+
+        final Box query = Box.of(200, 300, 600, 500);
+        final List<Employee> expected = new ArrayList<>();
+        m_bySequence.forEach(e -> {
+            if (query.contains(locate(e)))
+                expected.add(e);
+        });
+        assertThat(new HashSet<>(m_byLocation.within(query)), is(new HashSet<>(expected)));
+        assertThat(m_byLocation.size(), is(1500));
+
+        final List<Double> distances = m_byLocation.nearest(500, 500, 10).stream() //
+            .map(e -> locate(e).distanceTo(500, 500)) //
+            .collect(Collectors.toList());
+        final List<Double> expectedDistances = new ArrayList<>();
+        m_bySequence.forEach(e -> expectedDistances.add(locate(e).distanceTo(500, 500)));
+        expectedDistances.sort(Comparator.naturalOrder());
+        assertThat(distances, is(expectedDistances.subList(0, 10)));
+    }
+
+    @Test
+    public void addAllShouldPackValuesIntoLargeTree()
+    {
+        final MultiIndexContainer<Employee> packedContainer = MultiIndexContainer.create();
+        final SpatialIndex<Employee> packed = packedContainer.createSpatialIndex(RTreeIndexTest::locate);
+        final MultiIndexContainer<Employee> incrementalContainer = MultiIndexContainer.create();
+        final SpatialIndex<Employee> incremental = incrementalContainer.createSpatialIndex(RTreeIndexTest::locate);
+        final Random random = new Random(4711);
+        final ArrayList<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i)
+            employees.add(new Employee(random.nextInt(1000), "R" + i, random.nextInt(1000), "Random"));
+
+        // Both trees hold the first thousand values, which are too many for individual additions to pack the rest.
+        packed.addAll(employees.subList(0, 1000));
+        incremental.addAll(employees.subList(0, 1000));
+        packed.addAll(employees.subList(1000, employees.size()));
+        employees.subList(1000, employees.size()).forEach(incremental::add);
+
+        // Packed nodes are full, so the packed tree needs fewer of them.
+        assertThat(packed.size(), is(employees.size()));
+        assertThat(packedContainer.footprint().structureBytes(), is(lessThan(incrementalContainer.footprint().structureBytes())));
+        final Box query = Box.of(200, 300, 600, 500);
+        assertThat(new HashSet<>(packed.within(query)), is(new HashSet<>(incremental.within(query))));
+    }
+
+    @Test
+    public void concurrentQueriesShouldAgree()
+    {
+        final List<Employee> employees = addGrid(30);
+        // Leaves some additions in the buffer, which queries must not apply.
+        m_bySequence.add(new Employee(100, "Outlier", 100, "Grid"));
+
+        final Box query = Box.of(5, 5, 20, 20);
+        final long expected = employees.stream().filter(e -> query.contains(locate(e))).count();
+        final List<Integer> counts = IntStream.range(0, 64).parallel() //
+            .mapToObj(i -> i % 2 == 0 ? m_byLocation.within(query).size() : m_byLocation.nearest(100, 100, 1).size()) //
+            .collect(Collectors.toList());
+        for (int i = 0; i < counts.size(); ++i)
+            assertThat(counts.get(i), is(i % 2 == 0 ? (int) expected : 1));
+        assertThat(m_byLocation.nearest(100, 100, 1).get(0).m_name, is("Outlier"));
+    }
+
+    @Test
+    public void indexesWithSameContentsShouldBeEqual()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final Function<Employee, Box> locator = RTreeIndexTest::locate;
+        // 1000 entries leave some of them in the buffer of each index.
+        final SpatialIndex<Employee> first = container.createSpatialIndex(locator);
+        final SpatialIndex<Employee> second = container.createSpatialIndex(locator);
+        final List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            employees.add(new Employee(i, "E" + i, i % 70, "Grid"));
+        first.addAll(employees);
+
+        assertThat(first.equals(second), is(true));
+        assertThat(first.hashCode(), is(second.hashCode()));
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_byLocation.equals(m_byLocation), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        final String text = m_byLocation.toString();
+        assertThat(text, startsWith("RTreeIndex"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class RadixTreeIndexTest
+{
+    private static final Employee s_romeo = new Employee(10, "Romeo", 18, "Verona");
+    private static final Employee s_romulus = new Employee(11, "Romulus", 30, "Rome");
+    private static final Employee s_rom = new Employee(12, "Rom", 40, "Ferenginar");
+    private static final Employee s_rubens = new Employee(13, "Rubens", 63, "Antwerp");
+    private static final Employee s_otherRomeo = new Employee(14, "Romeo", 17, "Verona");
+
+    private static final Function<Employee, String> s_nameExtractor = e -> e.m_name;
+
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+    private PrefixIndex<Employee> m_byName;
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_byName = m_multiIndexContainer.createPrefixIndex(s_nameExtractor);
+    }
+
+    private void addAllTestData()
+    {
+        m_byName.addAll(Arrays.asList(s_romeo, s_romulus, s_rom, s_rubens, s_otherRomeo));
+    }
+
+    @Test
+    public void creationShouldAlwaysSucceed()
+    {
+        assertThat(m_byName, is(notNullValue()));
+    }
+
+    @Test
+    public void newIndexShouldBeEmpty()
+    {
+        assertThat(m_byName.isEmpty(), is(true));
+        assertThat(m_byName.size(), is(0));
+        assertThat(m_byName.withPrefix(""), is(emptyIterable()));
+        assertThat(m_byName.countWithPrefix(""), is(0));
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        addAllTestData();
+        m_byName.clear();
+        assertThat(m_byName.isEmpty(), is(true));
+        assertThat(m_byName.countWithPrefix("R"), is(0));
+    }
+
+    @Test
+    public void addNullShouldFail()
+    {
+        final boolean b = m_byName.add(null);
+        assertThat(b, is(false));
+        assertThat(m_bySequence.isEmpty(), is(true));
+    }
+
+    @Test
+    public void duplicateKeysShouldBeAllowed()
+    {
+        assertThat(m_byName.add(s_romeo), is(true));
+        assertThat(m_byName.add(s_otherRomeo), is(true));
+        assertThat(m_byName.size(), is(2));
+        assertThat(m_byName.withPrefix("Romeo"), contains(s_romeo, s_otherRomeo));
+    }
+
+    @Test
+    public void prefixLookupShouldReturnLexicographicOrder()
+    {
+        addAllTestData();
+
+        assertThat(m_byName.withPrefix(""), contains(s_rom, s_romeo, s_otherRomeo, s_romulus, s_rubens));
+        assertThat(m_byName.withPrefix("Rom"), contains(s_rom, s_romeo, s_otherRomeo, s_romulus));
+        assertThat(m_byName.withPrefix("Romu"), contains(s_romulus));
+        assertThat(m_byName.withPrefix("Ru"), contains(s_rubens));
+        assertThat(m_byName.withPrefix("Ro"), contains(s_rom, s_romeo, s_otherRomeo, s_romulus));
+        assertThat(m_byName.withPrefix("Romeos"), is(emptyIterable()));
+        assertThat(m_byName.withPrefix("X"), is(emptyIterable()));
+    }
+
+    @Test
+    public void testCountWithPrefix()
+    {
+        addAllTestData();
+
+        assertThat(m_byName.countWithPrefix(""), is(5));
+        assertThat(m_byName.countWithPrefix("R"), is(5));
+        assertThat(m_byName.countWithPrefix("Ro"), is(4));
+        assertThat(m_byName.countWithPrefix("Romeo"), is(2));
+        assertThat(m_byName.countWithPrefix("Rub"), is(1));
+        assertThat(m_byName.countWithPrefix("Rx"), is(0));
+    }
+
+    @Test
+    public void testLimitedPrefixLookup()
+    {
+        addAllTestData();
+
+        assertThat(m_byName.withPrefix("Rom", 2), contains(s_rom, s_romeo));
+        assertThat(m_byName.withPrefix("Ru", 10), contains(s_rubens));
+        assertThat(m_byName.withPrefix("Rom", 0).isEmpty(), is(true));
+    }
+
+    @Test
+    public void removalViaOtherIndexShouldUpdateTree()
+    {
+        addAllTestData();
+
+        m_bySequence.remove(s_rom);
+        assertThat(m_byName.withPrefix("Rom"), contains(s_romeo, s_otherRomeo, s_romulus));
+        m_bySequence.remove(s_romeo);
+        m_bySequence.remove(s_otherRomeo);
+        assertThat(m_byName.withPrefix("Rom"), contains(s_romulus));
+        assertThat(m_byName.countWithPrefix("R"), is(2));
+
+        m_bySequence.add(s_rom);
+        assertThat(m_byName.withPrefix(""), contains(s_rom, s_romulus, s_rubens));
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_byName.equals(m_byName), is(true));
+    }
+
+    @Test
+    public void testSameIndexWithSameKeyExtractorIsEqual()
+    {
+        final PrefixIndex<Employee> other = m_multiIndexContainer.createPrefixIndex(s_nameExtractor);
+        addAllTestData();
+        assertThat(m_byName.hashCode(), is(other.hashCode()));
+        assertThat(m_byName.equals(other), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        final String text = m_byName.toString();
+        assertThat(text, startsWith("RadixTreeIndex"));
+    }
+}
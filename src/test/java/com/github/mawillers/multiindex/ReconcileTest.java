@@ -0,0 +1,159 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.common.base.Equivalence;
+
+@SuppressWarnings("javadoc")
+public final class ReconcileTest
+{
+    private static final Employee s_data2Moved = new Employee(2, "Summers", 25, "Los Angeles");
+    private static final Employee s_data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private UniqueIndex<String, Employee> m_byName;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+        m_byName = m_container.createHashedUniqueIndex(e -> e.m_name);
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+    }
+
+    @Test
+    public void reconcileShouldApplyOnlyTheDifferences()
+    {
+        final Reconciliation result = m_container.reconcile(Arrays.asList(s_data4, s_data2Moved, TD.m_data1), m_byId);
+
+        assertThat(result, is(new Reconciliation(1, 1, 1, 1, 0)));
+        assertThat(m_sequentialIndex, contains(TD.m_data1, s_data2Moved, s_data4));
+        assertThat(m_byId.getOptional(2).get(), is(s_data2Moved));
+        assertThat(m_byId.containsKey(3), is(false));
+    }
+
+    @Test
+    public void unchangedValuesShouldNotBeTouched()
+    {
+        final List<ContainerEvent<Employee>> events = new ArrayList<>();
+        m_container.setEventListener(events::add, Long.MAX_VALUE);
+        final Cursor<Employee> cursor = m_sequentialIndex.cursor();
+        cursor.next();
+
+        final Reconciliation result = m_container.reconcile(Arrays.asList(TD.m_data3, TD.m_data2, TD.m_data1), m_byId);
+
+        assertThat(result.unchanged(), is(3));
+        assertThat(m_sequentialIndex, contains(TD.m_data1, TD.m_data2, TD.m_data3));
+        assertThat(cursor.next(), is(TD.m_data2));
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).kind(), is(ContainerEvent.Kind.RECONCILE));
+        assertThat(events.get(0).affectedCount(), is(0));
+    }
+
+    @Test
+    public void emptySnapshotShouldRemoveAllValues()
+    {
+        assertThat(m_container.reconcile(Collections.emptyList(), m_byId).removed(), is(3));
+        assertThat(m_sequentialIndex.isEmpty(), is(true));
+    }
+
+    @Test
+    public void rejectedReplacementShouldKeepThePreviousValue()
+    {
+        final Employee renamed = new Employee(2, "Giles", 25, "Sunnydale");
+
+        final Reconciliation result = m_container.reconcile(Arrays.asList(TD.m_data1, renamed, TD.m_data3), m_byId);
+
+        assertThat(result.rejected(), is(1));
+        assertThat(m_byId.getOptional(2).get(), is(TD.m_data2));
+        assertThat(m_byName.getOptional("Giles").get(), is(TD.m_data3));
+    }
+
+    @Test
+    public void swappedKeysOfOtherIndexesShouldBeRejected()
+    {
+        final Employee harrisAsSummers = new Employee(1, "Summers", 26, "Sunnydale");
+        final Employee summersAsHarris = new Employee(2, "Harris", 25, "Sunnydale");
+
+        final Reconciliation result = m_container.reconcile(Arrays.asList(harrisAsSummers, summersAsHarris, TD.m_data3), m_byId);
+
+        assertThat(result, is(new Reconciliation(0, 0, 0, 1, 2)));
+        assertThat(m_byName.getOptional("Harris").get(), is(TD.m_data1));
+        assertThat(m_byName.getOptional("Summers").get(), is(TD.m_data2));
+    }
+
+    @Test
+    public void removedValuesShouldFreeKeysOfOtherIndexes()
+    {
+        final Employee newGiles = new Employee(5, "Giles", 60, "Bath");
+
+        final Reconciliation result = m_container.reconcile(Arrays.asList(TD.m_data1, TD.m_data2, newGiles), m_byId);
+
+        assertThat(result, is(new Reconciliation(1, 1, 0, 2, 0)));
+        assertThat(m_byName.getOptional("Giles").get(), is(newGiles));
+    }
+
+    @Test
+    public void identityEquivalenceShouldBeRespected()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final UniqueIndex<String, Employee> byName = container.createHashedUniqueIndex(e -> e.m_name, caseInsensitive());
+        byName.add(TD.m_data1);
+        final Employee shouting = new Employee(1, "HARRIS", 26, "Sunnydale");
+
+        assertThat(container.reconcile(Arrays.asList(shouting), byName), is(new Reconciliation(0, 0, 1, 0, 0)));
+    }
+
+    private static Equivalence<String> caseInsensitive()
+    {
+        return new Equivalence<String>() {
+            @Override
+            protected boolean doEquivalent(String a, String b)
+            {
+                return a.equalsIgnoreCase(b);
+            }
+
+            @Override
+            protected int doHash(String s)
+            {
+                return s.toLowerCase().hashCode();
+            }
+        };
+    }
+
+    @Test
+    public void duplicateKeysShouldThrow()
+    {
+        m_exception.expect(IllegalArgumentException.class);
+        m_container.reconcile(Arrays.asList(TD.m_data2, s_data2Moved), m_byId);
+    }
+
+    @Test
+    public void foreignIdentityShouldThrow()
+    {
+        final MultiIndexContainer<Employee> other = MultiIndexContainer.create();
+        final UniqueIndex<Integer, Employee> foreign = other.createHashedUniqueIndex(e -> e.m_id);
+
+        m_exception.expect(IllegalArgumentException.class);
+        m_container.reconcile(Arrays.asList(TD.m_data1), foreign);
+    }
+}
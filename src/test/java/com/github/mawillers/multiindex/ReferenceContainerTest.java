@@ -0,0 +1,148 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class ReferenceContainerTest
+{
+    private ReferenceContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_bySequence;
+    private UniqueIndex<Integer, Employee> m_byId;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_container = ReferenceContainer.createWeak();
+        m_bySequence = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+    }
+
+    private static void collectGarbageUntil(BooleanSupplier condition) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void newContainerShouldBeEmpty()
+    {
+        assertThat(m_bySequence.isEmpty(), is(true));
+        assertThat(m_bySequence, is(emptyIterable()));
+        assertThat(m_byId.getOptional(1).isPresent(), is(false));
+    }
+
+    @Test
+    public void testAddAndLookup()
+    {
+        assertThat(m_bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3)), is(true));
+        assertThat(m_byId.add(new Employee(1, "Other", 30, "Sunnydale")), is(false));
+        assertThat(m_byId.add(null), is(false));
+
+        assertThat(m_bySequence, contains(TD.m_data1, TD.m_data2, TD.m_data3));
+        assertThat(m_byId.getOptional(2).get(), is(sameInstance(TD.m_data2)));
+        assertThat(m_byId.containsKey(3), is(true));
+        assertThat(m_byId.containsValue(TD.m_data3), is(true));
+        assertThat(m_byId.containsValue("foo"), is(false));
+        assertThat(m_bySequence.contains(TD.m_data1), is(true));
+        assertThat(m_bySequence.size(), is(3));
+    }
+
+    @Test
+    public void testRemove()
+    {
+        m_bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        assertThat(m_byId.remove(2), is(sameInstance(TD.m_data2)));
+        assertThat(m_bySequence.remove(TD.m_data1), is(true));
+        assertThat(m_bySequence.remove(TD.m_data1), is(false));
+        assertThat(m_bySequence, contains(TD.m_data3));
+        assertThat(m_byId.containsKey(1), is(false));
+        assertThat(m_byId.add(TD.m_data1), is(true));
+    }
+
+    @Test
+    public void clearedContainerShouldBeEmpty()
+    {
+        m_bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        m_byId.clear();
+        assertThat(m_bySequence.isEmpty(), is(true));
+        assertThat(m_byId.containsKey(1), is(false));
+    }
+
+    @Test
+    public void collectedValuesShouldBePurgedFromAllIndexes() throws InterruptedException
+    {
+        final List<Employee> retained = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            final Employee e = new Employee(i, "E" + i, 30, "City");
+            m_bySequence.add(e);
+            if (i % 10 == 0)
+                retained.add(e);
+        }
+
+        collectGarbageUntil(() -> m_bySequence.size() == retained.size());
+        assertThat(m_bySequence.size(), is(retained.size()));
+        final List<Employee> values = new ArrayList<>();
+        m_bySequence.forEach(values::add);
+        assertThat(values, is(retained));
+        assertThat(m_byId.containsKey(1), is(false));
+        assertThat(m_byId.getOptional(10).get(), is(sameInstance(retained.get(1))));
+
+        // The key of a collected value is free again.
+        assertThat(m_byId.add(new Employee(1, "New", 30, "City")), is(true));
+    }
+
+    @Test
+    public void valueMayBeItsOwnKey() throws InterruptedException
+    {
+        final ReferenceContainer<String> container = ReferenceContainer.createWeak();
+        final UniqueIndex<String, String> interned = container.createHashedUniqueIndex(s -> s);
+
+        final String canonical = new String("Sunnydale");
+        interned.add(canonical);
+        interned.add(new String("Los Angeles"));
+        assertThat(interned.getOptional(new String("Sunnydale")).get(), is(sameInstance(canonical)));
+
+        collectGarbageUntil(() -> interned.size() == 1);
+        assertThat(interned.size(), is(1));
+        assertThat(interned.containsKey("Los Angeles"), is(false));
+    }
+
+    @Test
+    public void softContainerShouldRetainReachableValues()
+    {
+        final ReferenceContainer<Employee> container = ReferenceContainer.createSoft();
+        final SequentialIndex<Employee> bySequence = container.createSequentialIndex();
+        bySequence.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        System.gc();
+        assertThat(bySequence, contains(TD.m_data1, TD.m_data2));
+    }
+
+    @Test
+    public void creatingIndexWithDataShouldThrow()
+    {
+        m_bySequence.add(TD.m_data1);
+
+        m_exception.expect(IllegalStateException.class);
+        m_container.createSequentialIndex();
+    }
+}
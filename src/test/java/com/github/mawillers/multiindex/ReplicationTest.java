@@ -0,0 +1,307 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class ReplicationTest
+{
+    private static final Employee s_data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+
+    private static final ValueCodec<Employee> s_codec = new ValueCodec<Employee>() {
+        @Override
+        public void write(Employee value, DataOutput out) throws IOException
+        {
+            out.writeInt(value.m_id);
+            out.writeUTF(value.m_name);
+            out.writeInt(value.m_age);
+            out.writeUTF(value.m_city);
+        }
+
+        @Override
+        public Employee read(DataInput in) throws IOException
+        {
+            return new Employee(in.readInt(), in.readUTF(), in.readInt(), in.readUTF());
+        }
+    };
+
+    private MultiIndexContainer<Employee> m_container;
+    private SequentialIndex<Employee> m_sequentialIndex;
+    private UniqueIndex<Integer, Employee> m_byId;
+    private ReplicationPrimary<Employee> m_primary;
+    private final List<ReplicationReplica<Employee>> m_replicas = new ArrayList<>();
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup() throws IOException
+    {
+        m_container = MultiIndexContainer.create();
+        m_sequentialIndex = m_container.createSequentialIndex();
+        m_byId = m_container.createHashedUniqueIndex(e -> e.m_id);
+        m_sequentialIndex.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        m_primary = ReplicationPrimary.create(m_container, s_codec, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void teardown()
+    {
+        m_primary.close();
+        for (ReplicationReplica<Employee> replica : m_replicas)
+            replica.close();
+    }
+
+    private ReplicationReplica<Employee> connect(MultiIndexContainer<Employee> container) throws IOException, InterruptedException
+    {
+        final ReplicationReplica<Employee> replica = ReplicationReplica.connect(container, s_codec, m_primary.address());
+        m_replicas.add(replica);
+        // The first frame is the snapshot.
+        assertThat(replica.awaitSequence(0, 10, TimeUnit.SECONDS), is(true));
+        return replica;
+    }
+
+    private long commit()
+    {
+        synchronized (m_container) {
+            return m_primary.commit();
+        }
+    }
+
+    private static void await(ReplicationReplica<Employee> replica, long sequence) throws InterruptedException
+    {
+        assertThat(replica.awaitSequence(sequence, 10, TimeUnit.SECONDS), is(true));
+    }
+
+    private static List<String> contents(MultiIndexContainer<Employee> container, SequentialIndex<Employee> index)
+    {
+        synchronized (container) {
+            return StreamSupport.stream(index.spliterator(), false).map(Employee::toString).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void replicaShouldBeBootstrappedFromSnapshot() throws Exception
+    {
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        final UniqueIndex<String, Employee> byName = replicaContainer.createHashedUniqueIndex(e -> e.m_name);
+        replicaSequence.add(s_data4);
+
+        connect(replicaContainer);
+
+        assertThat(contents(replicaContainer, replicaSequence), is(contents(m_container, m_sequentialIndex)));
+        synchronized (replicaContainer) {
+            assertThat(byName.getOptional("Giles").get().m_id, is(3));
+            assertThat(byName.containsKey("Rosenberg"), is(false));
+        }
+    }
+
+    @Test
+    public void replicaShouldApplyCommittedBatches() throws Exception
+    {
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        final ReplicationReplica<Employee> replica = connect(replicaContainer);
+
+        synchronized (m_container) {
+            m_sequentialIndex.add(s_data4);
+            m_byId.remove(1);
+        }
+        await(replica, commit());
+        assertThat(contents(replicaContainer, replicaSequence), contains("2:Summers:25:Sunnydale", "3:Giles:54:Sunnydale", "4:Rosenberg:25:Sunnydale"));
+
+        synchronized (m_container) {
+            m_sequentialIndex.clear();
+            m_sequentialIndex.add(TD.m_data1);
+        }
+        await(replica, commit());
+        assertThat(contents(replicaContainer, replicaSequence), contains("1:Harris:26:Sunnydale"));
+    }
+
+    @Test
+    public void commitWithoutModificationsShouldNotAdvanceTheSequence() throws Exception
+    {
+        final ReplicationReplica<Employee> replica = connect(MultiIndexContainer.create());
+        final long sequence = commit();
+
+        assertThat(commit(), is(sequence));
+        assertThat(replica.appliedSequence(), is(sequence));
+    }
+
+    @Test
+    public void replicaShouldKeepItsOwnIndexes() throws Exception
+    {
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        // All employees live in the same city, so this index only accepts one of them at a time.
+        final UniqueIndex<String, Employee> byCity = replicaContainer.createHashedUniqueIndex(e -> e.m_city);
+        final ReplicationReplica<Employee> replica = connect(replicaContainer);
+        assertThat(contents(replicaContainer, replicaSequence), contains("1:Harris:26:Sunnydale"));
+
+        synchronized (m_container) {
+            m_byId.remove(2);
+            m_byId.remove(1);
+            m_sequentialIndex.add(s_data4);
+        }
+        await(replica, commit());
+
+        synchronized (replicaContainer) {
+            assertThat(byCity.getOptional("Sunnydale").get().m_id, is(4));
+        }
+        assertThat(contents(replicaContainer, replicaSequence), contains("4:Rosenberg:25:Sunnydale"));
+    }
+
+    @Test
+    public void replicaShouldBeReadOnly() throws Exception
+    {
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        connect(replicaContainer);
+
+        m_exception.expect(IllegalStateException.class);
+        replicaSequence.add(s_data4);
+    }
+
+    @Test
+    public void closedReplicaShouldBeWritable() throws Exception
+    {
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        connect(replicaContainer).close();
+
+        assertThat(replicaSequence.add(s_data4), is(true));
+        assertThat(replicaSequence.size(), is(4));
+    }
+
+    @Test
+    public void lateReplicaShouldSeeCurrentContents() throws Exception
+    {
+        final MultiIndexContainer<Employee> earlyContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> earlySequence = earlyContainer.createSequentialIndex();
+        final ReplicationReplica<Employee> early = connect(earlyContainer);
+
+        synchronized (m_container) {
+            m_byId.remove(3);
+            m_sequentialIndex.add(s_data4);
+        }
+        final long sequence = commit();
+        // Modifications that have not been committed yet are included in the snapshot of a new replica, and sent to the others.
+        synchronized (m_container) {
+            m_byId.remove(2);
+        }
+
+        final MultiIndexContainer<Employee> lateContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> lateSequence = lateContainer.createSequentialIndex();
+        final ReplicationReplica<Employee> late = connect(lateContainer);
+        await(late, sequence + 1);
+        await(early, sequence + 1);
+
+        assertThat(contents(lateContainer, lateSequence), contains("1:Harris:26:Sunnydale", "4:Rosenberg:25:Sunnydale"));
+        assertThat(contents(earlyContainer, earlySequence), is(contents(lateContainer, lateSequence)));
+        assertThat(m_primary.replicaCount(), is(2));
+    }
+
+    @Test
+    public void closingPrimaryShouldDisconnectReplicas() throws Exception
+    {
+        final ReplicationReplica<Employee> replica = connect(MultiIndexContainer.create());
+        m_primary.close();
+
+        assertThat(replica.awaitSequence(Long.MAX_VALUE, 10, TimeUnit.SECONDS), is(false));
+        assertThat(replica.isConnected(), is(false));
+        assertThat(replica.failure(), is(notNullValue()));
+        assertThat(m_primary.replicaCount(), is(0));
+    }
+
+    @Test
+    public void closedReplicaShouldReportNoFailure() throws Exception
+    {
+        final ReplicationReplica<Employee> replica = connect(MultiIndexContainer.create());
+        replica.close();
+
+        assertThat(replica.isConnected(), is(false));
+        assertThat(replica.failure(), is(nullValue()));
+    }
+
+    @Test
+    public void containerShouldNotBeReplicatedTwice() throws Exception
+    {
+        m_exception.expect(IllegalStateException.class);
+        ReplicationPrimary.create(m_container, s_codec, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @Test
+    public void commitWithoutMonitorShouldThrow()
+    {
+        m_exception.expect(IllegalStateException.class);
+        m_primary.commit();
+    }
+
+    @Test
+    public void modificationWithoutMonitorShouldThrow()
+    {
+        m_exception.expect(IllegalStateException.class);
+        try {
+            m_sequentialIndex.add(s_data4);
+        } finally {
+            assertThat(m_sequentialIndex.size(), is(3));
+        }
+    }
+
+    @Test
+    public void failingSnapshotShouldNotStopAcceptingReplicas() throws Exception
+    {
+        final Employee unwritable = new Employee(5, "Nobody", 30, null);
+        synchronized (m_container) {
+            m_sequentialIndex.add(unwritable);
+        }
+        final ReplicationReplica<Employee> failed = ReplicationReplica.connect(MultiIndexContainer.create(), s_codec, m_primary.address());
+        m_replicas.add(failed);
+        assertThat(failed.awaitSequence(0, 10, TimeUnit.SECONDS), is(false));
+        assertThat(failed.isConnected(), is(false));
+
+        synchronized (m_container) {
+            m_byId.remove(unwritable.m_id);
+        }
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        connect(replicaContainer);
+        assertThat(contents(replicaContainer, replicaSequence), is(contents(m_container, m_sequentialIndex)));
+    }
+
+    @Test
+    public void emptyPrimaryShouldBootstrapEmptyReplica() throws Exception
+    {
+        synchronized (m_container) {
+            m_sequentialIndex.clear();
+        }
+        final MultiIndexContainer<Employee> replicaContainer = MultiIndexContainer.create();
+        final SequentialIndex<Employee> replicaSequence = replicaContainer.createSequentialIndex();
+        connect(replicaContainer);
+
+        assertThat(contents(replicaContainer, replicaSequence), is(empty()));
+    }
+}
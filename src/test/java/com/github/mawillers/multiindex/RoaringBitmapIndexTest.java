@@ -0,0 +1,159 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class RoaringBitmapIndexTest
+{
+    private static final Employee s_young = new Employee(30, "Young", 20, "Sunnydale");
+    private static final Employee s_old = new Employee(31, "Old", 60, "Sunnydale");
+    private static final Employee s_youngAbroad = new Employee(32, "Abroad", 20, "Cleveland");
+
+    private static final Function<Employee, String> s_cityExtractor = e -> e.m_city;
+
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private SequentialIndex<Employee> m_bySequence;
+    private BitmapIndex<String, Employee> m_byCity;
+    private BitmapIndex<Integer, Employee> m_byAge;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+        m_byCity = m_multiIndexContainer.createBitmapIndex(s_cityExtractor);
+        m_byAge = m_multiIndexContainer.createBitmapIndex(e -> e.m_age);
+        m_byCity.addAll(Arrays.asList(s_young, s_old, s_youngAbroad));
+    }
+
+    @Test
+    public void creationShouldAlwaysSucceed()
+    {
+        assertThat(m_byCity, is(notNullValue()));
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        m_byCity.clear();
+        assertThat(m_byCity.isEmpty(), is(true));
+        assertThat(m_byCity.size(), is(0));
+        assertThat(m_byCity.keys(), is(empty()));
+        assertThat(m_byCity.select("Sunnydale").isEmpty(), is(true));
+    }
+
+    @Test
+    public void addNullShouldFail()
+    {
+        assertThat(m_byCity.add(null), is(false));
+        assertThat(m_bySequence.size(), is(3));
+    }
+
+    @Test
+    public void testCount()
+    {
+        assertThat(m_byCity.size(), is(3));
+        assertThat(m_byCity.count("Sunnydale"), is(2));
+        assertThat(m_byCity.count("Cleveland"), is(1));
+        assertThat(m_byCity.count("Nowhere"), is(0));
+        assertThat(m_byCity.keys(), containsInAnyOrder("Sunnydale", "Cleveland"));
+    }
+
+    @Test
+    public void testSelect()
+    {
+        assertThat(m_byCity.select("Sunnydale"), contains(s_young, s_old));
+        assertThat(m_byCity.select("Nowhere").isEmpty(), is(true));
+        assertThat(m_byAge.selectAny(Arrays.asList(60, 99)), contains(s_old));
+    }
+
+    @Test
+    public void testCombinationsAcrossIndexes()
+    {
+        final Selection<Employee> sunnydale = m_byCity.select("Sunnydale");
+        final Selection<Employee> young = m_byAge.select(20);
+
+        assertThat(sunnydale.and(young), contains(s_young));
+        assertThat(sunnydale.and(young).count(), is(1));
+        assertThat(sunnydale.or(young).count(), is(3));
+        assertThat(sunnydale.andNot(young), contains(s_old));
+        assertThat(young.andNot(sunnydale).values(), contains(s_youngAbroad));
+    }
+
+    @Test
+    public void combiningSelectionsOfDifferentContainersShouldFail()
+    {
+        final MultiIndexContainer<Employee> container2 = MultiIndexContainer.create();
+        final BitmapIndex<String, Employee> foreign = container2.createBitmapIndex(s_cityExtractor);
+
+        m_exception.expect(IllegalArgumentException.class);
+        m_byCity.select("Sunnydale").and(foreign.select("Sunnydale"));
+    }
+
+    @Test
+    public void removalViaOtherIndexShouldUpdateBitmaps()
+    {
+        m_bySequence.remove(s_old);
+        assertThat(m_byCity.count("Sunnydale"), is(1));
+        assertThat(m_byAge.keys(), containsInAnyOrder(20));
+
+        m_bySequence.remove(s_youngAbroad);
+        assertThat(m_byCity.keys(), containsInAnyOrder("Sunnydale"));
+
+        // Ordinals of removed entries are reused.
+        m_bySequence.add(s_youngAbroad);
+        assertThat(m_byCity.select("Cleveland"), contains(s_youngAbroad));
+        assertThat(m_byAge.select(20).count(), is(2));
+    }
+
+    @Test
+    public void duplicateValuesShouldBeCountedSeparately()
+    {
+        m_bySequence.add(s_old);
+        assertThat(m_byCity.count("Sunnydale"), is(3));
+        m_bySequence.remove(s_old);
+        assertThat(m_byCity.count("Sunnydale"), is(2));
+        assertThat(m_byAge.select(60), contains(s_old));
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_byCity.equals(m_byCity), is(true));
+    }
+
+    @Test
+    public void testSameIndexWithSameKeyExtractorIsEqual()
+    {
+        final MultiIndexContainer<Employee> container = MultiIndexContainer.create();
+        final BitmapIndex<String, Employee> first = container.createBitmapIndex(s_cityExtractor);
+        final BitmapIndex<String, Employee> second = container.createBitmapIndex(s_cityExtractor);
+        first.add(s_young);
+        assertThat(first.hashCode(), is(second.hashCode()));
+        assertThat(first.equals(second), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        final String text = m_byCity.toString();
+        assertThat(text, startsWith("RoaringBitmapIndex"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class RoaringBitmapTest
+{
+    private static RoaringBitmap bitmapOf(BitSet bits)
+    {
+        final RoaringBitmap result = new RoaringBitmap();
+        bits.stream().forEach(result::add);
+        return result;
+    }
+
+    private static BitSet bitsOf(RoaringBitmap bitmap)
+    {
+        final BitSet result = new BitSet();
+        bitmap.forEach(result::set);
+        return result;
+    }
+
+    private static BitSet randomBits(Random random, int range, int count)
+    {
+        final BitSet result = new BitSet(range);
+        for (int i = 0; i < count; ++i)
+            result.set(random.nextInt(range));
+        return result;
+    }
+
+    @Test
+    public void newBitmapShouldBeEmpty()
+    {
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        assertThat(bitmap.isEmpty(), is(true));
+        assertThat(bitmap.cardinality(), is(0));
+        assertThat(bitmap.contains(0), is(false));
+    }
+
+    @Test
+    public void testAddAndRemove()
+    {
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        bitmap.add(3);
+        bitmap.add(70000);
+        bitmap.add(3);
+        assertThat(bitmap.cardinality(), is(2));
+        assertThat(bitmap.contains(3), is(true));
+        assertThat(bitmap.contains(70000), is(true));
+        assertThat(bitmap.contains(4), is(false));
+
+        bitmap.remove(3);
+        bitmap.remove(5);
+        assertThat(bitmap.cardinality(), is(1));
+        assertThat(bitmap.contains(3), is(false));
+        bitmap.remove(70000);
+        assertThat(bitmap.isEmpty(), is(true));
+    }
+
+    @Test
+    public void denseChunksShouldSurviveConversions()
+    {
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 10000; ++i)
+            bitmap.add(i * 2);
+        assertThat(bitmap.cardinality(), is(10000));
+
+        for (int i = 0; i < 9000; ++i)
+            bitmap.remove(i * 2);
+        assertThat(bitmap.cardinality(), is(1000));
+        assertThat(bitmap.contains(17998), is(false));
+        assertThat(bitmap.contains(18000), is(true));
+
+        final List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        assertThat(values.get(0), is(18000));
+        assertThat(values.get(999), is(19998));
+    }
+
+    @Test
+    public void setOperationsShouldMatchBitSet()
+    {
+        final Random random = new Random(42);
+        // Mix sparse and dense chunks on both sides.
+        for (int count : new int[] { 100, 5000, 60000, 200000 }) {
+            final BitSet a = randomBits(random, 300000, count);
+            final BitSet b = randomBits(random, 300000, 20000);
+            final RoaringBitmap bitmapA = bitmapOf(a);
+            final RoaringBitmap bitmapB = bitmapOf(b);
+
+            final BitSet and = (BitSet) a.clone();
+            and.and(b);
+            final BitSet or = (BitSet) a.clone();
+            or.or(b);
+            final BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+
+            assertThat(bitsOf(RoaringBitmap.and(bitmapA, bitmapB)), is(and));
+            assertThat(RoaringBitmap.and(bitmapA, bitmapB).cardinality(), is(and.cardinality()));
+            assertThat(bitsOf(RoaringBitmap.or(bitmapA, bitmapB)), is(or));
+            assertThat(RoaringBitmap.or(bitmapA, bitmapB).cardinality(), is(or.cardinality()));
+            assertThat(bitsOf(RoaringBitmap.andNot(bitmapA, bitmapB)), is(andNot));
+            assertThat(bitsOf(RoaringBitmap.andNot(bitmapB, bitmapA)).cardinality(), is(b.cardinality() - and.cardinality()));
+
+            // The operands stay unchanged.
+            assertThat(bitsOf(bitmapA), is(a));
+            assertThat(bitsOf(bitmapB), is(b));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.mawillers.multiindex;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyIterable;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("javadoc")
+public final class TreapIndexTest
+{
+    private MultiIndexContainer<Employee> m_multiIndexContainer;
+    private PositionalIndex<Employee> m_byPosition;
+    private SequentialIndex<Employee> m_bySequence;
+
+    @Rule
+    public ExpectedException m_exception = ExpectedException.none();
+
+    @Before
+    public void setup()
+    {
+        m_multiIndexContainer = MultiIndexContainer.create();
+        m_byPosition = m_multiIndexContainer.createPositionalIndex();
+        m_bySequence = m_multiIndexContainer.createSequentialIndex();
+    }
+
+    @Test
+    public void creationShouldAlwaysSucceed()
+    {
+        assertThat(m_byPosition, is(notNullValue()));
+    }
+
+    @Test
+    public void newIndexShouldBeEmpty()
+    {
+        assertThat(m_byPosition.isEmpty(), is(true));
+        assertThat(m_byPosition.size(), is(0));
+        assertThat(m_byPosition, is(emptyIterable()));
+        assertThat(m_byPosition.subList(0, 0).isEmpty(), is(true));
+    }
+
+    @Test
+    public void clearedIndexShouldBeEmpty()
+    {
+        m_byPosition.add(TD.m_data1);
+        m_byPosition.clear();
+        assertThat(m_byPosition.isEmpty(), is(true));
+        assertThat(m_byPosition.indexOf(TD.m_data1), is(-1));
+    }
+
+    @Test
+    public void testPositionalAccess()
+    {
+        m_byPosition.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        assertThat(m_byPosition.get(0), is(sameInstance(TD.m_data1)));
+        assertThat(m_byPosition.get(2), is(sameInstance(TD.m_data3)));
+        assertThat(m_byPosition.indexOf(TD.m_data2), is(1));
+        assertThat(m_byPosition.indexOf(new Object()), is(-1));
+        assertThat(m_byPosition.subList(1, 3), contains(TD.m_data2, TD.m_data3));
+        assertThat(m_byPosition, contains(TD.m_data1, TD.m_data2, TD.m_data3));
+    }
+
+    @Test
+    public void getOutOfRangeShouldThrow()
+    {
+        m_byPosition.add(TD.m_data1);
+
+        m_exception.expect(IndexOutOfBoundsException.class);
+        m_byPosition.get(1);
+    }
+
+    @Test
+    public void testRemoveAt()
+    {
+        m_byPosition.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+
+        assertThat(m_byPosition.removeAt(1), is(sameInstance(TD.m_data2)));
+        assertThat(m_byPosition, contains(TD.m_data1, TD.m_data3));
+        assertThat(m_bySequence, contains(TD.m_data1, TD.m_data3));
+        assertThat(m_byPosition.indexOf(TD.m_data3), is(1));
+    }
+
+    @Test
+    public void removeAtShouldRemoveTheEntryAtThatPosition()
+    {
+        m_byPosition.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data1));
+
+        m_byPosition.removeAt(2);
+        assertThat(m_byPosition, contains(TD.m_data1, TD.m_data2));
+        // Other indexes are free to remove any one of several equal entries.
+        assertThat(m_bySequence, containsInAnyOrder(TD.m_data1, TD.m_data2));
+        assertThat(m_byPosition.indexOf(TD.m_data1), is(0));
+    }
+
+    @Test
+    public void removedIndexShouldRemoveItsOwnEntries()
+    {
+        final Employee data4 = new Employee(4, "Rosenberg", 25, "Sunnydale");
+        m_byPosition.addAll(Arrays.asList(TD.m_data1, TD.m_data2, TD.m_data3));
+        m_multiIndexContainer.removeIndex(m_byPosition);
+        // The new value takes over the ordinal that the removed one had.
+        m_bySequence.remove(TD.m_data1);
+        m_bySequence.add(data4);
+
+        assertThat(m_byPosition.removeAt(0), is(TD.m_data1));
+        assertThat(m_byPosition, contains(TD.m_data2, TD.m_data3));
+        assertThat(m_bySequence, contains(TD.m_data2, TD.m_data3, data4));
+
+        assertThat(m_byPosition.remove(TD.m_data3), is(true));
+        assertThat(m_byPosition.remove(data4), is(false));
+        assertThat(m_byPosition, contains(TD.m_data2));
+        assertThat(m_bySequence, contains(TD.m_data2, data4));
+    }
+
+    @Test
+    public void nullValuesShouldBeSupported()
+    {
+        m_byPosition.add(TD.m_data1);
+        m_byPosition.add(null);
+        assertThat(m_byPosition.indexOf(null), is(1));
+        assertThat(m_byPosition.remove(null), is(true));
+        assertThat(m_byPosition.contains(null), is(false));
+    }
+
+    @Test
+    public void shouldAgreeWithListUnderRandomModifications()
+    {
+        final Random random = new Random(123);
+        final List<Employee> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                final Employee e = new Employee(i, "E" + i, 30, "City");
+                m_bySequence.add(e);
+                expected.add(e);
+            } else {
+                final int position = random.nextInt(expected.size());
+                if (random.nextBoolean())
+                    assertThat(m_byPosition.removeAt(position), is(sameInstance(expected.remove(position))));
+                else
+                    assertThat(m_bySequence.remove(expected.remove(position)), is(true));
+            }
+        }
+
+        assertThat(m_byPosition.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertThat(m_byPosition.get(i), is(sameInstance(expected.get(i))));
+            assertThat(m_byPosition.indexOf(expected.get(i)), is(i));
+        }
+        assertThat(m_byPosition.subList(100, 150), is(expected.subList(100, 150)));
+        final List<Employee> all = new ArrayList<>();
+        m_byPosition.forEach(all::add);
+        assertThat(all, is(expected));
+    }
+
+    @Test
+    public void modificationDuringIterationShouldThrow()
+    {
+        m_byPosition.addAll(Arrays.asList(TD.m_data1, TD.m_data2));
+        final Iterator<Employee> iter = m_byPosition.iterator();
+        iter.next();
+        m_byPosition.removeAt(0);
+
+        m_exception.expect(java.util.ConcurrentModificationException.class);
+        iter.next();
+    }
+
+    @Test
+    public void sameInstanceAlwaysEquals()
+    {
+        assertThat(m_byPosition.equals(m_byPosition), is(true));
+    }
+
+    @Test
+    public void toStringShouldPrependIndexName()
+    {
+        final String text = m_byPosition.toString();
+        assertThat(text, startsWith("TreapIndex"));
+    }
+}